@@ -0,0 +1,38 @@
+/*
+ * AnalyzerFactory.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica;
+
+import net.percederberg.grammatica.parser.Analyzer;
+
+/**
+ * A parse tree analyzer factory. This interface is used by the batch
+ * parser to create a new analyzer for each input parsed, as the
+ * analyzers normally contain state specific to a single parse tree.
+ * The analyzers may be created from several threads concurrently.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public interface AnalyzerFactory {
+
+    /**
+     * Creates a new analyzer.
+     *
+     * @return the new analyzer
+     */
+    Analyzer createAnalyzer();
+}
@@ -0,0 +1,38 @@
+/*
+ * BatchListener.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica;
+
+/**
+ * A batch parse result listener. This interface is used by the
+ * batch parser to pass on each file result as soon as it is
+ * available, so that the results need not be kept in memory until
+ * the whole batch has been parsed. The results are passed in the
+ * same order as the input files, one at a time, but possibly from
+ * different worker threads.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public interface BatchListener {
+
+    /**
+     * Called when the next file result is available.
+     *
+     * @param result         the file result
+     */
+    void batchResult(BatchResult result);
+}
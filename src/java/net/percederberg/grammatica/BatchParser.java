@@ -0,0 +1,420 @@
+/*
+ * BatchParser.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.percederberg.grammatica.parser.Analyzer;
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.ParseCache;
+import net.percederberg.grammatica.parser.ParseException;
+import net.percederberg.grammatica.parser.Parser;
+import net.percederberg.grammatica.parser.ParserCreationException;
+import net.percederberg.grammatica.parser.ParserLogException;
+
+/**
+ * A batch parser for many input files. This class parses a
+ * collection of files concurrently with a bounded number of worker
+ * threads. Each worker thread has its own tokenizer and parser
+ * created from the grammar, which are reused for all the files
+ * parsed by that thread. At most one input file per worker thread
+ * is open and being parsed at any time. Note that the results
+ * returned by parseAll() keep all the analyzers and parse trees in
+ * memory until the whole batch has been parsed. Use a batch
+ * listener to process each result as soon as it is available
+ * instead, which bounds the memory used to a few results per worker
+ * thread. This class is not thread-safe, so a batch parser should
+ * only be used from a single thread at a time.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class BatchParser extends Object {
+
+    /**
+     * The grammar to use.
+     */
+    private Grammar grammar;
+
+    /**
+     * The parsers to use, one per worker thread.
+     */
+    private Parser[] parsers;
+
+    /**
+     * The parse result cache, or null for none.
+     */
+    private ParseCache cache = null;
+
+    /**
+     * The analyzer factory for the current batch, or null.
+     */
+    private AnalyzerFactory factory = null;
+
+    /**
+     * The result listener for the current batch, or null.
+     */
+    private BatchListener listener = null;
+
+    /**
+     * The input files for the current batch.
+     */
+    private File[] inputs = null;
+
+    /**
+     * The results for the current batch. When a result listener is
+     * used, this array only contains the results not yet passed to
+     * the listener.
+     */
+    private BatchResult[] results = null;
+
+    /**
+     * The number of results passed to the result listener in the
+     * current batch. Access is synchronized on this object.
+     */
+    private int delivered = 0;
+
+    /**
+     * The index of the next input file to parse in the current batch.
+     */
+    private AtomicInteger next = new AtomicInteger();
+
+    /**
+     * The first run-time exception thrown by a worker thread in the
+     * current batch, or null.
+     */
+    private volatile RuntimeException failure = null;
+
+    /**
+     * Creates a new batch parser with one worker thread per
+     * available processor.
+     *
+     * @param grammar        the grammar to use
+     *
+     * @throws GrammarException if the parsers couldn't be created
+     *             or initialized correctly
+     */
+    public BatchParser(Grammar grammar) throws GrammarException {
+        this(grammar, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new batch parser.
+     *
+     * @param grammar        the grammar to use
+     * @param threads        the number of worker threads
+     *
+     * @throws GrammarException if the parsers couldn't be created
+     *             or initialized correctly
+     */
+    public BatchParser(Grammar grammar, int threads)
+        throws GrammarException {
+
+        this.grammar = grammar;
+        this.parsers = new Parser[Math.max(threads, 1)];
+        for (int i = 0; i < parsers.length; i++) {
+            parsers[i] = grammar.createParser(grammar.createTokenizer(null));
+        }
+    }
+
+    /**
+     * Returns the grammar used by this batch parser.
+     *
+     * @return the grammar used
+     */
+    public Grammar getGrammar() {
+        return grammar;
+    }
+
+    /**
+     * Returns the number of worker threads used.
+     *
+     * @return the number of worker threads
+     */
+    public int getThreadCount() {
+        return parsers.length;
+    }
+
+    /**
+     * Returns the parse result cache used.
+     *
+     * @return the parse result cache, or
+     *         null if no cache is used
+     */
+    public ParseCache getParseCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the parse result cache to use. Unchanged input files
+     * found in the cache will not be tokenized or parsed again, but
+     * the cached parse trees will still be passed through the
+     * analyzers. By default no cache is used.
+     *
+     * @param cache          the parse result cache, or null for none
+     */
+    public void setParseCache(ParseCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Parses a collection of input files. A new analyzer will be
+     * created for each file, and the file results will be returned
+     * in the same order as the files in the collection. Parse errors
+     * are reported in each file result, so this method only returns
+     * once all files have been parsed. Note that all the results are
+     * kept in memory until then.
+     *
+     * @param files          the collection of input files
+     * @param factory        the analyzer factory, or null for the
+     *                       default analyzer
+     *
+     * @return an array with the result for each input file
+     *
+     * @see #parseAll(Collection, AnalyzerFactory, BatchListener)
+     */
+    public BatchResult[] parseAll(Collection files,
+                                  AnalyzerFactory factory) {
+
+        return run(files, factory, null);
+    }
+
+    /**
+     * Parses a collection of input files. A new analyzer will be
+     * created for each file, and the file results will be passed to
+     * the listener in the same order as the files in the collection.
+     * No result is kept after being passed to the listener. The
+     * worker threads will not parse more than a few files ahead of
+     * the next result to pass, which bounds the memory used. Parse
+     * errors are reported in each file result, so this method only
+     * returns once all files have been parsed.
+     *
+     * @param files          the collection of input files
+     * @param factory        the analyzer factory, or null for the
+     *                       default analyzer
+     * @param listener       the result listener
+     */
+    public void parseAll(Collection files,
+                         AnalyzerFactory factory,
+                         BatchListener listener) {
+
+        run(files, factory, listener);
+    }
+
+    /**
+     * Parses a collection of input files with the worker threads.
+     *
+     * @param files          the collection of input files
+     * @param factory        the analyzer factory, or null
+     * @param listener       the result listener, or null
+     *
+     * @return an array with the results not passed to the listener
+     */
+    private BatchResult[] run(Collection files,
+                              AnalyzerFactory factory,
+                              BatchListener listener) {
+
+        BatchResult[]  res;
+        Thread[]       threads;
+
+        this.factory = factory;
+        this.listener = listener;
+        this.inputs = (File[]) files.toArray(new File[files.size()]);
+        this.results = new BatchResult[inputs.length];
+        this.delivered = 0;
+        this.next.set(0);
+        this.failure = null;
+        threads = new Thread[Math.min(parsers.length, inputs.length)];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Worker(parsers[i]),
+                                    "Grammatica batch parser " + (i + 1));
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            while (threads[i].isAlive()) {
+                try {
+                    threads[i].join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        res = results;
+        this.factory = null;
+        this.listener = null;
+        this.inputs = null;
+        this.results = null;
+        if (failure != null) {
+            throw failure;
+        }
+        return res;
+    }
+
+    /**
+     * Waits until an input file may be parsed. When a result
+     * listener is used, a file is only parsed once it is less than
+     * two files per worker thread ahead of the next result to pass
+     * to the listener.
+     *
+     * @param pos            the input file index
+     *
+     * @return true if the file may be parsed, or
+     *         false if the batch has failed
+     */
+    private synchronized boolean await(int pos) {
+        while (failure == null &&
+               listener != null &&
+               pos >= delivered + 2 * parsers.length) {
+
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // Worker threads are never interrupted
+            }
+        }
+        return failure == null;
+    }
+
+    /**
+     * Stores a file result. When a result listener is used, all the
+     * results available in order are also passed to the listener
+     * and removed.
+     *
+     * @param pos            the input file index
+     * @param result         the file result
+     */
+    private synchronized void deliver(int pos, BatchResult result) {
+        results[pos] = result;
+        if (listener != null) {
+            while (delivered < results.length &&
+                   results[delivered] != null) {
+
+                result = results[delivered];
+                results[delivered++] = null;
+                listener.batchResult(result);
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops the current batch after a run-time exception.
+     *
+     * @param e              the run-time exception thrown
+     */
+    private synchronized void fail(RuntimeException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Parses a single input file.
+     *
+     * @param parser         the parser to use
+     * @param file           the input file to parse
+     *
+     * @return the file result
+     */
+    private BatchResult parse(Parser parser, File file) {
+        Analyzer            analyzer;
+        Reader              input;
+        Node                root = null;
+        ParserLogException  log = null;
+
+        if (factory == null) {
+            analyzer = new Analyzer();
+        } else {
+            analyzer = factory.createAnalyzer();
+        }
+        try {
+            input = new BufferedReader(new FileReader(file));
+        } catch (IOException e) {
+            log = new ParserLogException();
+            log.addError(new ParseException(ParseException.IO_ERROR,
+                                            e.getMessage(),
+                                            -1,
+                                            -1));
+            return new BatchResult(file, analyzer, null, log);
+        }
+        parser.reset(input, analyzer);
+        try {
+            if (cache == null) {
+                root = parser.parse();
+            } else {
+                root = cache.parse(parser, input);
+            }
+        } catch (ParserCreationException e) {
+            throw new UnsupportedOperationException(
+                "internal error in batch parser: " + e.getMessage());
+        } catch (ParserLogException e) {
+            log = e;
+        } finally {
+            parser.getTokenizer().reset(new StringReader(""));
+        }
+        return new BatchResult(file, analyzer, root, log);
+    }
+
+
+    /**
+     * A batch parser worker. Each worker parses input files from
+     * the current batch until no more files remain.
+     */
+    private class Worker implements Runnable {
+
+        /**
+         * The parser to use.
+         */
+        private Parser parser;
+
+        /**
+         * Creates a new batch parser worker.
+         *
+         * @param parser         the parser to use
+         */
+        public Worker(Parser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Parses input files until no more files remain, or until a
+         * run-time exception has been thrown by any worker.
+         */
+        public void run() {
+            int  pos;
+
+            try {
+                while (failure == null &&
+                       (pos = next.getAndIncrement()) < inputs.length &&
+                       await(pos)) {
+
+                    deliver(pos, parse(parser, inputs[pos]));
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * BatchResult.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica;
+
+import java.io.File;
+
+import net.percederberg.grammatica.parser.Analyzer;
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.ParserLogException;
+
+/**
+ * A batch parse result. This class contains the result of parsing a
+ * single input file in a batch, being either a parse tree or the
+ * parse errors found.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class BatchResult extends Object {
+
+    /**
+     * The input file parsed.
+     */
+    private File file;
+
+    /**
+     * The analyzer used.
+     */
+    private Analyzer analyzer;
+
+    /**
+     * The parse tree root node, or null.
+     */
+    private Node root;
+
+    /**
+     * The parse errors found, or null.
+     */
+    private ParserLogException errors;
+
+    /**
+     * Creates a new batch parse result.
+     *
+     * @param file           the input file parsed
+     * @param analyzer       the analyzer used
+     * @param root           the parse tree root node, or null
+     * @param errors         the parse errors found, or null
+     */
+    BatchResult(File file,
+                Analyzer analyzer,
+                Node root,
+                ParserLogException errors) {
+
+        this.file = file;
+        this.analyzer = analyzer;
+        this.root = root;
+        this.errors = errors;
+    }
+
+    /**
+     * Returns the input file parsed.
+     *
+     * @return the input file parsed
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the analyzer used when parsing the input. Any analysis
+     * results stored in the analyzer can be retrieved from here.
+     *
+     * @return the analyzer used
+     */
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * Returns the parse tree root node. Note that the analyzer may
+     * have removed some or all of the parse tree.
+     *
+     * @return the parse tree root node, or
+     *         null if no parse tree was created
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Checks if the input was parsed without errors.
+     *
+     * @return true if no parse errors were found, or
+     *         false otherwise
+     */
+    public boolean isSuccess() {
+        return errors == null;
+    }
+
+    /**
+     * Returns the parse errors found. Input files that couldn't be
+     * read are reported with a single I/O error.
+     *
+     * @return the parse errors found, or
+     *         null if the input was parsed successfully
+     */
+    public ParserLogException getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,549 @@
+/*
+ * Benchmark.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.List;
+
+import net.percederberg.grammatica.parser.Analyzer;
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.ParseException;
+import net.percederberg.grammatica.parser.Parser;
+import net.percederberg.grammatica.parser.ParserCreationException;
+import net.percederberg.grammatica.parser.ParserLogException;
+import net.percederberg.grammatica.parser.ReportFormat;
+import net.percederberg.grammatica.parser.Tokenizer;
+
+/**
+ * A grammar benchmark. This class measures the performance of the
+ * tokenizer, parser and analyzer phases for a set of input files.
+ * The input files are read into memory once, and then processed in
+ * a number of warmup iterations followed by a number of measured
+ * iterations. Each phase is timed separately, and the allocated
+ * bytes and garbage collections during each phase are recorded.
+ *
+ * All the iterations are run in the calling thread, as the
+ * allocation measurements are made per thread.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class Benchmark extends Object {
+
+    /**
+     * The grammar to benchmark.
+     */
+    private Grammar grammar;
+
+    /**
+     * The number of warmup iterations.
+     */
+    private int warmup = 5;
+
+    /**
+     * The number of measured iterations.
+     */
+    private int iterations = 20;
+
+    /**
+     * The analyzer factory, or null for the default analyzer.
+     */
+    private AnalyzerFactory factory = null;
+
+    /**
+     * The number of input files in the last run.
+     */
+    private int fileCount = 0;
+
+    /**
+     * The number of input bytes in the last run.
+     */
+    private long byteCount = 0;
+
+    /**
+     * The phase results from the last run.
+     */
+    private BenchmarkPhase[] phases = new BenchmarkPhase[0];
+
+    /**
+     * The input file that couldn't be processed in the last run, or
+     * null.
+     */
+    private File errorFile = null;
+
+    /**
+     * Creates a new grammar benchmark.
+     *
+     * @param grammar        the grammar to benchmark
+     */
+    public Benchmark(Grammar grammar) {
+        this.grammar = grammar;
+    }
+
+    /**
+     * Returns the number of warmup iterations.
+     *
+     * @return the number of warmup iterations
+     */
+    public int getWarmup() {
+        return warmup;
+    }
+
+    /**
+     * Sets the number of warmup iterations. The warmup iterations
+     * are run before the measured ones, in order to let the JIT
+     * compiler optimize the code. By default 5 warmup iterations
+     * are run.
+     *
+     * @param warmup         the number of warmup iterations
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = Math.max(warmup, 0);
+    }
+
+    /**
+     * Returns the number of measured iterations.
+     *
+     * @return the number of measured iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Sets the number of measured iterations. By default 20
+     * iterations are measured.
+     *
+     * @param iterations     the number of measured iterations
+     */
+    public void setIterations(int iterations) {
+        this.iterations = Math.max(iterations, 1);
+    }
+
+    /**
+     * Sets the analyzer factory to use in the analyzer phase. By
+     * default the analyzer phase uses the default analyzer, which
+     * creates a copy of the parse tree.
+     *
+     * @param factory        the analyzer factory, or null for the
+     *                       default analyzer
+     */
+    public void setAnalyzerFactory(AnalyzerFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the phase results from the last run. The phases are
+     * the tokenizer, parser and analyzer phases, in that order.
+     *
+     * @return the phase results, or
+     *         an empty array if no benchmark has been run
+     */
+    public BenchmarkPhase[] getPhases() {
+        return phases;
+    }
+
+    /**
+     * Returns the input file that couldn't be read, tokenized or
+     * parsed in the last run.
+     *
+     * @return the input file with errors, or
+     *         null if the last run was successful
+     */
+    public File getErrorFile() {
+        return errorFile;
+    }
+
+    /**
+     * Runs the benchmark with a list of input files. Any previous
+     * results will be discarded. All the input files are read and
+     * parsed once before the benchmark starts, so that any errors
+     * are reported before any measurements are made.
+     *
+     * @param files          the list of input files
+     *
+     * @throws IOException if an input file couldn't be read
+     * @throws GrammarException if the tokenizer or parser couldn't
+     *             be created
+     * @throws ParserCreationException if the parser couldn't be
+     *             initialized correctly
+     * @throws ParserLogException if an input file couldn't be
+     *             tokenized or parsed correctly
+     */
+    public void run(List files)
+        throws IOException, GrammarException, ParserCreationException,
+               ParserLogException {
+
+        String[]   inputs = new String[files.size()];
+        Node[]     trees = new Node[inputs.length];
+        Tokenizer  tokenizer = grammar.createTokenizer(null);
+        Parser     parser;
+        long[]     start;
+        long       count;
+        int        j = 0;
+
+        fileCount = inputs.length;
+        byteCount = 0;
+        errorFile = null;
+        parser = grammar.createParser(grammar.createTokenizer(null));
+        try {
+            for (j = 0; j < inputs.length; j++) {
+                inputs[j] = readFile((File) files.get(j));
+                byteCount += ((File) files.get(j)).length();
+            }
+            for (j = 0; j < inputs.length; j++) {
+                tokenize(tokenizer, inputs[j]);
+                parser.reset(new StringReader(inputs[j]), new Analyzer());
+                parser.parse();
+            }
+        } catch (IOException e) {
+            errorFile = (File) files.get(j);
+            throw e;
+        } catch (ParserLogException e) {
+            errorFile = (File) files.get(j);
+            throw e;
+        }
+        phases = new BenchmarkPhase[] {
+            new BenchmarkPhase("tokenizer", "tokens", iterations),
+            new BenchmarkPhase("parser", "nodes", iterations),
+            new BenchmarkPhase("analyzer", "nodes", iterations)
+        };
+        for (int i = 0; i < warmup + iterations; i++) {
+            start = snapshot();
+            count = 0;
+            for (j = 0; j < inputs.length; j++) {
+                count += tokenize(tokenizer, inputs[j]);
+            }
+            record(phases[0], i, count, start);
+            start = snapshot();
+            count = 0;
+            for (j = 0; j < inputs.length; j++) {
+                parser.reset(new StringReader(inputs[j]), new Analyzer());
+                trees[j] = parser.parse();
+                count += 1 + trees[j].getDescendantCount();
+            }
+            record(phases[1], i, count, start);
+            start = snapshot();
+            for (j = 0; j < inputs.length; j++) {
+                createAnalyzer().analyze(trees[j]);
+            }
+            record(phases[2], i, count, start);
+        }
+        tokenizer.reset(null);
+        parser.reset(null);
+    }
+
+    /**
+     * Prints the results from the last run in a readable format.
+     *
+     * @param out            the output stream to use
+     */
+    public void print(PrintStream out) {
+        BenchmarkPhase  phase;
+
+        out.println("Benchmark of " + grammar.getFileName() + ": " +
+                    fileCount + " file(s), " + byteCount + " bytes, " +
+                    warmup + " warmup + " + iterations + " iterations");
+        for (int i = 0; i < phases.length; i++) {
+            phase = phases[i];
+            out.println();
+            out.println("  " + capitalize(phase.getName()) + ":");
+            out.println("    " + capitalize(phase.getUnit()) + ":" +
+                        pad(phase.getUnit().length() + 1) +
+                        phase.getCount() + " per iteration");
+            out.println("    Time (ms):    " +
+                        "min " + millis(phase.getMinTime()) +
+                        ", mean " + millis(phase.getMeanTime()) +
+                        ", max " + millis(phase.getMaxTime()));
+            out.println("    Percentiles:  " +
+                        "p50 " + millis(phase.getPercentileTime(50)) +
+                        ", p90 " + millis(phase.getPercentileTime(90)) +
+                        ", p99 " + millis(phase.getPercentileTime(99)));
+            out.println("    Throughput:   " +
+                        ReportFormat.format("%.0f", phase.getItemRate()) +
+                        " " + phase.getUnit() + "/sec, " +
+                        ReportFormat.format("%.2f", phase.getByteRate()) +
+                        " MB/sec");
+            if (phase.getAllocatedBytes() >= 0) {
+                out.println("    Allocation:   " +
+                            phase.getAllocatedBytes() +
+                            " bytes/iteration, " +
+                            ReportFormat.format("%.2f",
+                                                phase.getAllocationRate()) +
+                            " MB/sec");
+            }
+            out.println("    GC count:     " + phase.getGcCount());
+        }
+    }
+
+    /**
+     * Returns the results from the last run in JSON format.
+     *
+     * @return the JSON results
+     */
+    public String toJson() {
+        StringBuffer    buffer = new StringBuffer();
+        BenchmarkPhase  phase;
+
+        buffer.append("{\n");
+        buffer.append("  \"grammar\": ");
+        buffer.append(quote(grammar.getFileName()));
+        buffer.append(",\n  \"files\": ");
+        buffer.append(fileCount);
+        buffer.append(",\n  \"bytes\": ");
+        buffer.append(byteCount);
+        buffer.append(",\n  \"warmup\": ");
+        buffer.append(warmup);
+        buffer.append(",\n  \"iterations\": ");
+        buffer.append(iterations);
+        buffer.append(",\n  \"phases\": [");
+        for (int i = 0; i < phases.length; i++) {
+            phase = phases[i];
+            buffer.append((i > 0) ? ",\n" : "\n");
+            buffer.append("    {\n");
+            buffer.append("      \"name\": ");
+            buffer.append(quote(phase.getName()));
+            buffer.append(",\n      \"unit\": ");
+            buffer.append(quote(phase.getUnit()));
+            buffer.append(",\n      \"count\": ");
+            buffer.append(phase.getCount());
+            buffer.append(",\n      \"minNanos\": ");
+            buffer.append(phase.getMinTime());
+            buffer.append(",\n      \"meanNanos\": ");
+            buffer.append(phase.getMeanTime());
+            buffer.append(",\n      \"p50Nanos\": ");
+            buffer.append(phase.getPercentileTime(50));
+            buffer.append(",\n      \"p90Nanos\": ");
+            buffer.append(phase.getPercentileTime(90));
+            buffer.append(",\n      \"p99Nanos\": ");
+            buffer.append(phase.getPercentileTime(99));
+            buffer.append(",\n      \"maxNanos\": ");
+            buffer.append(phase.getMaxTime());
+            buffer.append(",\n      \"itemsPerSec\": ");
+            buffer.append(ReportFormat.format("%.1f", phase.getItemRate()));
+            buffer.append(",\n      \"mbPerSec\": ");
+            buffer.append(ReportFormat.format("%.3f", phase.getByteRate()));
+            buffer.append(",\n      \"allocatedBytes\": ");
+            buffer.append(phase.getAllocatedBytes());
+            buffer.append(",\n      \"allocatedMbPerSec\": ");
+            buffer.append(ReportFormat.format("%.3f",
+                                              phase.getAllocationRate()));
+            buffer.append(",\n      \"gcCount\": ");
+            buffer.append(phase.getGcCount());
+            buffer.append("\n    }");
+        }
+        buffer.append("\n  ]\n}\n");
+        return buffer.toString();
+    }
+
+    /**
+     * Tokenizes an input string.
+     *
+     * @param tokenizer      the tokenizer to use
+     * @param input          the input string
+     *
+     * @return the number of tokens found
+     *
+     * @throws ParserLogException if the input couldn't be tokenized
+     *             correctly
+     */
+    private long tokenize(Tokenizer tokenizer, String input)
+        throws ParserLogException {
+
+        ParserLogException  log;
+        long                count = 0;
+
+        tokenizer.reset(new StringReader(input));
+        try {
+            while (tokenizer.next() != null) {
+                count++;
+            }
+        } catch (ParseException e) {
+            log = new ParserLogException();
+            log.addError(e);
+            throw log;
+        }
+        return count;
+    }
+
+    /**
+     * Creates a new analyzer for the analyzer phase.
+     *
+     * @return the new analyzer
+     */
+    private Analyzer createAnalyzer() {
+        if (factory == null) {
+            return new Analyzer();
+        } else {
+            return factory.createAnalyzer();
+        }
+    }
+
+    /**
+     * Records a phase iteration, unless it is a warmup iteration.
+     *
+     * @param phase          the benchmark phase
+     * @param iteration      the iteration number, starting at 0
+     * @param count          the number of items processed
+     * @param start          the iteration start snapshot
+     */
+    private void record(BenchmarkPhase phase,
+                        int iteration,
+                        long count,
+                        long[] start) {
+
+        long[]  end = snapshot();
+
+        if (iteration >= warmup) {
+            phase.record(count,
+                         byteCount,
+                         end[0] - start[0],
+                         (start[1] < 0) ? -1 : end[1] - start[1],
+                         end[2] - start[2]);
+        }
+    }
+
+    /**
+     * Returns a measurement snapshot. The snapshot contains the
+     * current time in nanoseconds, the number of bytes allocated by
+     * the current thread and the total number of garbage collections.
+     * The allocated bytes will be negative if not supported.
+     *
+     * @return the measurement snapshot
+     */
+    private static long[] snapshot() {
+        long[]    res = new long[3];
+        Object    bean = ManagementFactory.getThreadMXBean();
+        Iterator  iter;
+        long      count;
+
+        iter = ManagementFactory.getGarbageCollectorMXBeans().iterator();
+        while (iter.hasNext()) {
+            count = ((GarbageCollectorMXBean) iter.next())
+                .getCollectionCount();
+            res[2] += Math.max(count, 0);
+        }
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            res[1] = ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        } else {
+            res[1] = -1;
+        }
+        res[0] = System.nanoTime();
+        return res;
+    }
+
+    /**
+     * Reads the contents of an input file.
+     *
+     * @param file           the input file
+     *
+     * @return the file contents
+     *
+     * @throws IOException if the file couldn't be read
+     */
+    private static String readFile(File file) throws IOException {
+        StringBuffer  buffer = new StringBuffer();
+        Reader        input = new FileReader(file);
+        char[]        chars = new char[4096];
+        int           length;
+
+        try {
+            while ((length = input.read(chars)) > 0) {
+                buffer.append(chars, 0, length);
+            }
+        } finally {
+            input.close();
+        }
+        return buffer.toString();
+    }
+
+
+    /**
+     * Formats a time in nanoseconds as milliseconds.
+     *
+     * @param nanos          the time in nanoseconds
+     *
+     * @return the formatted number of milliseconds
+     */
+    private static String millis(long nanos) {
+        return ReportFormat.format("%.3f", nanos / 1000000.0);
+    }
+
+    /**
+     * Capitalizes the first character in a string.
+     *
+     * @param str            the string to capitalize
+     *
+     * @return the capitalized string
+     */
+    private static String capitalize(String str) {
+        return Character.toUpperCase(str.charAt(0)) + str.substring(1);
+    }
+
+    /**
+     * Returns a padding string for the readable output. The padding
+     * aligns values after a label of the specified length.
+     *
+     * @param length         the label length
+     *
+     * @return the padding string
+     */
+    private static String pad(int length) {
+        StringBuffer  buffer = new StringBuffer();
+
+        for (int i = length; i < 14; i++) {
+            buffer.append(' ');
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Returns a string as a quoted JSON string.
+     *
+     * @param str            the string to quote
+     *
+     * @return the quoted JSON string
+     */
+    private static String quote(String str) {
+        StringBuffer  buffer = new StringBuffer();
+        char          c;
+
+        buffer.append('"');
+        for (int i = 0; str != null && i < str.length(); i++) {
+            c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.append('\\');
+                buffer.append(c);
+            } else if (c < 0x20) {
+                buffer.append(String.format("\\u%04x", new Integer(c)));
+            } else {
+                buffer.append(c);
+            }
+        }
+        buffer.append('"');
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * BenchmarkPhase.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica;
+
+import java.util.Arrays;
+
+/**
+ * A benchmark phase result. This class contains the timing,
+ * allocation and garbage collection measurements for one phase of a
+ * benchmark, i.e. tokenizing, parsing or analyzing the input files.
+ * Each measured iteration processes all the input files once.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see Benchmark
+ */
+public class BenchmarkPhase extends Object {
+
+    /**
+     * The phase name.
+     */
+    private String name;
+
+    /**
+     * The name of the items counted, such as "tokens" or "nodes".
+     */
+    private String unit;
+
+    /**
+     * The number of items processed per iteration.
+     */
+    private long count = 0;
+
+    /**
+     * The number of input bytes processed per iteration.
+     */
+    private long bytes = 0;
+
+    /**
+     * The sorted iteration times in nanoseconds.
+     */
+    private long[] times;
+
+    /**
+     * The number of iteration times recorded.
+     */
+    private int iterations = 0;
+
+    /**
+     * The total number of bytes allocated in the measured
+     * iterations, or a negative number if not supported.
+     */
+    private long allocated = 0;
+
+    /**
+     * The total number of garbage collections in the measured
+     * iterations.
+     */
+    private long collections = 0;
+
+    /**
+     * Creates a new benchmark phase result.
+     *
+     * @param name           the phase name
+     * @param unit           the name of the items counted
+     * @param iterations     the number of measured iterations
+     */
+    BenchmarkPhase(String name, String unit, int iterations) {
+        this.name = name;
+        this.unit = unit;
+        this.times = new long[iterations];
+    }
+
+    /**
+     * Records a measured iteration.
+     *
+     * @param count          the number of items processed
+     * @param bytes          the number of input bytes processed
+     * @param time           the elapsed time in nanoseconds
+     * @param allocated      the number of bytes allocated, or a
+     *                       negative number if not supported
+     * @param collections    the number of garbage collections
+     */
+    void record(long count,
+                long bytes,
+                long time,
+                long allocated,
+                long collections) {
+
+        this.count = count;
+        this.bytes = bytes;
+        times[iterations++] = Math.max(time, 1);
+        if (allocated < 0 || this.allocated < 0) {
+            this.allocated = -1;
+        } else {
+            this.allocated += allocated;
+        }
+        this.collections += collections;
+        if (iterations == times.length) {
+            Arrays.sort(times);
+        }
+    }
+
+    /**
+     * Returns the phase name.
+     *
+     * @return the phase name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the name of the items counted, such as "tokens" or
+     * "nodes".
+     *
+     * @return the name of the items counted
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Returns the number of items processed per iteration.
+     *
+     * @return the number of items processed per iteration
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of measured iterations.
+     *
+     * @return the number of measured iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the minimum iteration time.
+     *
+     * @return the minimum iteration time in nanoseconds
+     */
+    public long getMinTime() {
+        return (iterations == 0) ? 0 : times[0];
+    }
+
+    /**
+     * Returns the maximum iteration time.
+     *
+     * @return the maximum iteration time in nanoseconds
+     */
+    public long getMaxTime() {
+        return (iterations == 0) ? 0 : times[iterations - 1];
+    }
+
+    /**
+     * Returns the mean iteration time.
+     *
+     * @return the mean iteration time in nanoseconds
+     */
+    public long getMeanTime() {
+        long  total = 0;
+
+        for (int i = 0; i < iterations; i++) {
+            total += times[i];
+        }
+        return (iterations == 0) ? 0 : total / iterations;
+    }
+
+    /**
+     * Returns an iteration time percentile. The nearest-rank method
+     * is used, so the returned value is always one of the measured
+     * iteration times.
+     *
+     * @param percent        the percentile, from 0 to 100
+     *
+     * @return the iteration time percentile in nanoseconds
+     */
+    public long getPercentileTime(double percent) {
+        int  rank;
+
+        if (iterations == 0) {
+            return 0;
+        }
+        rank = (int) Math.ceil(percent / 100.0 * iterations);
+        return times[Math.min(Math.max(rank, 1), iterations) - 1];
+    }
+
+    /**
+     * Returns the number of items processed per second, based on the
+     * mean iteration time.
+     *
+     * @return the number of items processed per second
+     */
+    public double getItemRate() {
+        return perSecond(count);
+    }
+
+    /**
+     * Returns the number of megabytes of input processed per second,
+     * based on the mean iteration time.
+     *
+     * @return the number of input megabytes processed per second
+     */
+    public double getByteRate() {
+        return perSecond(bytes) / (1024 * 1024);
+    }
+
+    /**
+     * Returns the average number of bytes allocated per iteration.
+     *
+     * @return the average number of bytes allocated per iteration, or
+     *         -1 if allocation measurement isn't supported
+     */
+    public long getAllocatedBytes() {
+        if (allocated < 0) {
+            return -1;
+        }
+        return (iterations == 0) ? 0 : allocated / iterations;
+    }
+
+    /**
+     * Returns the number of megabytes allocated per second, based on
+     * the mean iteration time.
+     *
+     * @return the number of megabytes allocated per second, or
+     *         -1 if allocation measurement isn't supported
+     */
+    public double getAllocationRate() {
+        if (allocated < 0) {
+            return -1;
+        }
+        return perSecond(getAllocatedBytes()) / (1024 * 1024);
+    }
+
+    /**
+     * Returns the total number of garbage collections in the measured
+     * iterations.
+     *
+     * @return the number of garbage collections
+     */
+    public long getGcCount() {
+        return collections;
+    }
+
+    /**
+     * Converts an amount per iteration to an amount per second.
+     *
+     * @param amount         the amount per iteration
+     *
+     * @return the amount per second
+     */
+    private double perSecond(long amount) {
+        long  time = getMeanTime();
+
+        return (time == 0) ? 0 : amount * 1000000000.0 / time;
+    }
+}
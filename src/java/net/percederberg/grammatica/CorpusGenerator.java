@@ -0,0 +1,955 @@
+/*
+ * CorpusGenerator.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import net.percederberg.grammatica.parser.ParseException;
+import net.percederberg.grammatica.parser.ProductionPattern;
+import net.percederberg.grammatica.parser.ProductionPatternAlternative;
+import net.percederberg.grammatica.parser.ProductionPatternElement;
+import net.percederberg.grammatica.parser.Token;
+import net.percederberg.grammatica.parser.TokenPattern;
+import net.percederberg.grammatica.parser.TokenSampler;
+import net.percederberg.grammatica.parser.Tokenizer;
+import net.percederberg.grammatica.parser.re.RegExpException;
+
+/**
+ * A grammar-driven input generator. This class creates random,
+ * syntactically valid input documents for a grammar by walking the
+ * production pattern alternatives and elements from the start
+ * production. The token images are created from the token pattern
+ * strings and regular expressions, and checked with the grammar
+ * tokenizer. Adjacent tokens are separated by ignored white space if
+ * the grammar has such a token pattern.
+ *
+ * The document is written directly to the output stream, so the
+ * generated size is only limited by the disk space. The outermost
+ * repeated element keeps repeating until the target size has been
+ * reached, after which the shortest possible completions are
+ * chosen. The nesting depth is kept within the depth limit in the
+ * same way.
+ *
+ * Note that semantic checks (such as identifier references) are not
+ * considered. For grammars without ignored white space, the token
+ * images are chosen so that adjacent tokens don't merge, but this is
+ * only checked for token pairs. The last token image is therefore
+ * kept until the next one has been chosen, so that it can be
+ * replaced if no following image can be separated from it.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class CorpusGenerator extends Object {
+
+    /**
+     * The number of distinct images to create for each token.
+     */
+    private static final int SAMPLE_COUNT = 32;
+
+    /**
+     * The number of attempts to create each token image.
+     */
+    private static final int SAMPLE_ATTEMPTS = 8;
+
+    /**
+     * The preferred maximum token image length.
+     */
+    private static final int MAX_IMAGE_LENGTH = 12;
+
+    /**
+     * The depth value for patterns that cannot be generated.
+     */
+    private static final int INFINITE = Integer.MAX_VALUE / 2;
+
+    /**
+     * The grammar to use.
+     */
+    private Grammar grammar;
+
+    /**
+     * The random number generator.
+     */
+    private Random random = new Random();
+
+    /**
+     * The target document size in characters.
+     */
+    private long targetSize = 64 * 1024;
+
+    /**
+     * The maximum production nesting depth.
+     */
+    private int maxDepth = 30;
+
+    /**
+     * The alternative weights. This map contains arrays of weights
+     * indexed by the production pattern name.
+     */
+    private HashMap weights = new HashMap();
+
+    /**
+     * The token images. This map contains string arrays indexed by
+     * the token pattern id.
+     */
+    private HashMap images = new HashMap();
+
+    /**
+     * The minimum production depths. This map contains integers
+     * indexed by the production pattern id.
+     */
+    private HashMap depths = new HashMap();
+
+    /**
+     * The grammar tokenizer.
+     */
+    private Tokenizer tokenizer = null;
+
+    /**
+     * The token separator, or an empty string for none.
+     */
+    private String separator = "";
+
+    /**
+     * The checked adjacent token image pairs. This map contains
+     * Boolean values indexed by the two images, separated by a
+     * null character. It is only used without a token separator.
+     */
+    private HashMap pairs = new HashMap();
+
+    /**
+     * The token image written directly before the pending one, or
+     * null if the pending token was preceded by a separator.
+     */
+    private String previous = null;
+
+    /**
+     * The last token image chosen, or null. This image is counted
+     * in the number of characters written, but is only written to
+     * the output stream once the next token image has been chosen.
+     */
+    private String pending = null;
+
+    /**
+     * The token images the pending image was chosen from.
+     */
+    private String[] pendingSamples = null;
+
+    /**
+     * The number of tokens generated.
+     */
+    private long tokens = 0;
+
+    /**
+     * The line separator, or null for none.
+     */
+    private String newline = null;
+
+    /**
+     * The current output stream.
+     */
+    private Writer out = null;
+
+    /**
+     * The number of characters written to the current output stream.
+     */
+    private long written = 0;
+
+    /**
+     * The filling element flag. This flag is set while the outermost
+     * repeated element keeps repeating until the target size.
+     */
+    private boolean filling = false;
+
+    /**
+     * Creates a new input generator.
+     *
+     * @param grammar        the grammar to use
+     */
+    public CorpusGenerator(Grammar grammar) {
+        this.grammar = grammar;
+    }
+
+    /**
+     * Sets the random seed. Generators using the same grammar,
+     * settings and seed will generate identical documents.
+     *
+     * @param seed           the random seed
+     */
+    public void setSeed(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Sets the target document size. The document will be at least
+     * this size, unless the grammar and depth limit don't allow it,
+     * and only a little larger. By default 64 kB is used.
+     *
+     * @param size           the target size in characters
+     */
+    public void setTargetSize(long size) {
+        this.targetSize = size;
+    }
+
+    /**
+     * Sets the maximum production nesting depth. Productions that
+     * must be nested deeper than this may still exceed the limit.
+     * By default the limit is 30.
+     *
+     * @param depth          the maximum nesting depth
+     */
+    public void setMaxDepth(int depth) {
+        this.maxDepth = Math.max(depth, 1);
+    }
+
+    /**
+     * Sets the relative weight for a production alternative. The
+     * alternatives are chosen randomly in proportion to their weight,
+     * unless limited by the depth or target size. By default all
+     * alternatives have weight 1.
+     *
+     * @param production     the production pattern name
+     * @param alt            the alternative index, starting at 0
+     * @param weight         the alternative weight, zero or higher
+     *
+     * @throws GrammarException if the production or alternative
+     *             wasn't found in the grammar
+     */
+    public void setWeight(String production, int alt, double weight)
+        throws GrammarException {
+
+        ProductionPattern  pattern;
+        double[]           values;
+
+        pattern = grammar.getProductionPatternByName(production);
+        if (pattern == null) {
+            throw new GrammarException(grammar.getFileName(),
+                                       "unknown production: " +
+                                       production);
+        } else if (alt < 0 || alt >= pattern.getAlternativeCount()) {
+            throw new GrammarException(grammar.getFileName(),
+                                       "production " + production +
+                                       " has no alternative " + alt);
+        }
+        values = (double[]) weights.get(production);
+        if (values == null) {
+            values = new double[pattern.getAlternativeCount()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = 1.0;
+            }
+            weights.put(production, values);
+        }
+        values[alt] = Math.max(weight, 0.0);
+    }
+
+    /**
+     * Generates a random document and writes it to an output stream.
+     * The output stream will not be closed or flushed, so a buffered
+     * stream should be used for best performance.
+     *
+     * @param out            the output stream
+     *
+     * @return the number of characters written
+     *
+     * @throws IOException if the document couldn't be written
+     * @throws GrammarException if the grammar couldn't be used to
+     *             generate any documents
+     */
+    public long generate(Writer out) throws IOException, GrammarException {
+        ProductionPattern  start;
+
+        if (grammar.getProductionPatternCount() <= 0) {
+            throw new GrammarException(grammar.getFileName(),
+                                       "no productions in grammar");
+        }
+        start = grammar.getProductionPattern(0);
+        prepare();
+        if (depth(start) >= INFINITE) {
+            throw new GrammarException(grammar.getFileName(),
+                                       "cannot generate any tokens for " +
+                                       "production " + start.getName());
+        }
+        this.out = out;
+        this.written = 0;
+        this.filling = false;
+        this.previous = null;
+        this.pending = null;
+        this.pendingSamples = null;
+        this.tokens = 0;
+        try {
+            if (!generateProduction(start, 1)) {
+                throw new GrammarException(grammar.getFileName(),
+                                           "cannot generate any tokens " +
+                                           "for production " +
+                                           start.getName());
+            }
+            if (pending != null) {
+                out.write(pending);
+            }
+            if (newline != null) {
+                write(newline);
+            }
+        } finally {
+            this.out = null;
+            tokenizer.reset(new StringReader(""));
+        }
+        return written;
+    }
+
+    /**
+     * Prepares the token images, separators and minimum production
+     * depths.
+     *
+     * @throws GrammarException if the grammar tokenizer couldn't be
+     *             created
+     */
+    private void prepare() throws GrammarException {
+        TokenPattern  pattern;
+        String[]      samples;
+
+        tokenizer = grammar.createTokenizer(null);
+        images.clear();
+        pairs.clear();
+        for (int i = 0; i < grammar.getTokenPatternCount(); i++) {
+            pattern = grammar.getTokenPattern(i);
+            if (!pattern.isIgnore() && !pattern.isError()) {
+                samples = createImages(pattern);
+                if (samples.length > 0) {
+                    images.put(new Integer(pattern.getId()), samples);
+                }
+            }
+        }
+        separator = isIgnored(" ") ? " " : "";
+        newline = isIgnored("\n") ? "\n" : null;
+        calculateDepths();
+    }
+
+    /**
+     * Creates a set of distinct images for a token pattern. Only
+     * images that are tokenized as the same token pattern are
+     * returned.
+     *
+     * @param pattern        the token pattern
+     *
+     * @return the array of token images, possibly empty
+     */
+    private String[] createImages(TokenPattern pattern) {
+
+        ArrayList     list = new ArrayList();
+        TokenSampler  sampler;
+        String        image;
+
+        try {
+            sampler = new TokenSampler(pattern,
+                                       !grammar.getCaseSensitive(),
+                                       random);
+        } catch (RegExpException e) {
+            return new String[0];
+        }
+        for (int i = 0; sampler.canSample() &&
+                        i < SAMPLE_COUNT * SAMPLE_ATTEMPTS; i++) {
+            image = sampler.sample(1 + random.nextInt(MAX_IMAGE_LENGTH));
+            if (!list.contains(image) && isToken(image, pattern)) {
+                list.add(image);
+                if (list.size() >= SAMPLE_COUNT ||
+                    pattern.getType() == TokenPattern.STRING_TYPE) {
+
+                    break;
+                }
+            }
+        }
+        return (String[]) list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * Checks if a string is tokenized as a single token.
+     *
+     * @param str            the string to check
+     * @param pattern        the expected token pattern
+     *
+     * @return true if the string is a token of the pattern, or
+     *         false otherwise
+     */
+    private boolean isToken(String str, TokenPattern pattern) {
+        Token  token;
+
+        if (str.length() == 0) {
+            return false;
+        }
+        try {
+            tokenizer.reset(new StringReader(str));
+            token = tokenizer.next();
+            return token != null
+                && token.getId() == pattern.getId()
+                && token.getImage().equals(str)
+                && tokenizer.next() == null;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks if two adjacent token images are tokenized as two
+     * separate tokens. The results are cached.
+     *
+     * @param first          the first token image
+     * @param second         the second token image
+     *
+     * @return true if the images are tokenized separately, or
+     *         false otherwise
+     */
+    private boolean isSeparate(String first, String second) {
+        String   key = first + "\u0000" + second;
+        Boolean  value = (Boolean) pairs.get(key);
+        Token    token;
+        boolean  res;
+
+        if (value != null) {
+            return value.booleanValue();
+        }
+        try {
+            tokenizer.reset(new StringReader(first + second));
+            token = tokenizer.next();
+            res = token != null && token.getImage().equals(first);
+            token = res ? tokenizer.next() : null;
+            res = token != null
+               && token.getImage().equals(second)
+               && tokenizer.next() == null;
+        } catch (ParseException e) {
+            res = false;
+        }
+        pairs.put(key, Boolean.valueOf(res));
+        return res;
+    }
+
+    /**
+     * Checks if a string is ignored by the tokenizer.
+     *
+     * @param str            the string to check
+     *
+     * @return true if the string is ignored, or
+     *         false otherwise
+     */
+    private boolean isIgnored(String str) {
+        try {
+            tokenizer.reset(new StringReader(str));
+            return tokenizer.next() == null;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Calculates the minimum nesting depth for all productions. The
+     * depths are updated until no further changes are found.
+     */
+    private void calculateDepths() {
+        ProductionPattern  pattern;
+        boolean            changed = true;
+        int                depth;
+
+        depths.clear();
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < grammar.getProductionPatternCount(); i++) {
+                pattern = grammar.getProductionPattern(i);
+                depth = INFINITE;
+                for (int j = 0; j < pattern.getAlternativeCount(); j++) {
+                    depth = Math.min(depth,
+                                     depth(pattern.getAlternative(j)));
+                }
+                if (depth < depth(pattern)) {
+                    depths.put(new Integer(pattern.getId()),
+                               new Integer(depth));
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the minimum nesting depth for a production.
+     *
+     * @param pattern        the production pattern
+     *
+     * @return the minimum nesting depth, or
+     *         INFINITE if the production cannot be generated
+     */
+    private int depth(ProductionPattern pattern) {
+        Integer  value = (Integer) depths.get(new Integer(pattern.getId()));
+
+        return (value == null) ? INFINITE : value.intValue();
+    }
+
+    /**
+     * Returns the minimum nesting depth for a production alternative.
+     * Only the required elements are considered.
+     *
+     * @param alt            the production pattern alternative
+     *
+     * @return the minimum nesting depth, or
+     *         INFINITE if the alternative cannot be generated
+     */
+    private int depth(ProductionPatternAlternative alt) {
+        int  res = 1;
+
+        for (int i = 0; i < alt.getElementCount(); i++) {
+            if (alt.getElement(i).getMinCount() > 0) {
+                res = Math.max(res, depth(alt.getElement(i)));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns the minimum nesting depth for a production element.
+     *
+     * @param elem           the production pattern element
+     *
+     * @return the minimum nesting depth, or
+     *         INFINITE if the element cannot be generated
+     */
+    private int depth(ProductionPatternElement elem) {
+        ProductionPattern  pattern;
+
+        if (elem.isToken()) {
+            return images.containsKey(new Integer(elem.getId())) ? 1
+                                                                 : INFINITE;
+        }
+        pattern = grammar.getProductionPatternById(elem.getId());
+        return (pattern == null) ? INFINITE : 1 + depth(pattern);
+    }
+
+    /**
+     * Generates a production. If the first token generated doesn't
+     * separate from the previous one, the other alternatives are
+     * tried in order of increasing depth.
+     *
+     * @param pattern        the production pattern
+     * @param level          the current nesting level, starting at 1
+     *
+     * @return true if the production was generated, or
+     *         false if no alternative could be started
+     *
+     * @throws IOException if the output couldn't be written
+     * @throws GrammarException if no adjacent token images could be
+     *             separated
+     */
+    private boolean generateProduction(ProductionPattern pattern,
+                                       int level)
+        throws IOException, GrammarException {
+
+        boolean[]  tried = new boolean[pattern.getAlternativeCount()];
+        int        alt = chooseAlternative(pattern, level);
+
+        while (alt >= 0) {
+            if (generateAlternative(pattern.getAlternative(alt), level)) {
+                return true;
+            }
+            tried[alt] = true;
+            alt = chooseRetry(pattern, tried);
+        }
+        return false;
+    }
+
+    /**
+     * Generates a production alternative.
+     *
+     * @param alt            the production pattern alternative
+     * @param level          the current nesting level
+     *
+     * @return true if the alternative was generated, or
+     *         false if its first token couldn't be generated
+     *
+     * @throws IOException if the output couldn't be written
+     * @throws GrammarException if no adjacent token images could be
+     *             separated
+     */
+    private boolean generateAlternative(ProductionPatternAlternative alt,
+                                        int level)
+        throws IOException, GrammarException {
+
+        ProductionPatternElement  elem;
+        long                      start = tokens;
+        boolean                   done;
+
+        for (int i = 0; i < alt.getElementCount(); i++) {
+            elem = alt.getElement(i);
+            if (isRepeating(elem, level)) {
+                done = generateFill(elem, level);
+            } else {
+                done = generateRepeat(elem, chooseCount(elem, level), level);
+            }
+            if (!done && tokens == start) {
+                return false;
+            } else if (!done) {
+                throw new GrammarException(grammar.getFileName(),
+                                           "cannot generate a token " +
+                                           "separate from '" + pending +
+                                           "'");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates a production element a number of times. If the
+     * element cannot be generated once the minimum count has been
+     * reached, the repetition is stopped.
+     *
+     * @param elem           the production pattern element
+     * @param count          the number of repetitions
+     * @param level          the current nesting level
+     *
+     * @return true if the element was generated, or
+     *         false if the minimum count couldn't be generated
+     *
+     * @throws IOException if the output couldn't be written
+     * @throws GrammarException if no adjacent token images could be
+     *             separated
+     */
+    private boolean generateRepeat(ProductionPatternElement elem,
+                                   int count,
+                                   int level)
+        throws IOException, GrammarException {
+
+        for (int i = 0; i < count; i++) {
+            if (!generateElement(elem, level)) {
+                return i >= elem.getMinCount();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates a repeated element until the target size has been
+     * reached. This is only used for the outermost unlimited
+     * repetition.
+     *
+     * @param elem           the production pattern element
+     * @param level          the current nesting level
+     *
+     * @return true if the element was generated, or
+     *         false if the minimum count couldn't be generated
+     *
+     * @throws IOException if the output couldn't be written
+     * @throws GrammarException if no adjacent token images could be
+     *             separated
+     */
+    private boolean generateFill(ProductionPatternElement elem, int level)
+        throws IOException, GrammarException {
+
+        long  before;
+        int   count = 0;
+
+        filling = true;
+        try {
+            do {
+                before = written;
+                if (!generateElement(elem, level)) {
+                    return count >= elem.getMinCount();
+                }
+                count++;
+            } while (count < elem.getMinCount() ||
+                     (written < targetSize && written > before));
+        } finally {
+            filling = false;
+        }
+        return true;
+    }
+
+    /**
+     * Generates a production element once.
+     *
+     * @param elem           the production pattern element
+     * @param level          the current nesting level
+     *
+     * @return true if the element was generated, or
+     *         false if its first token couldn't be generated
+     *
+     * @throws IOException if the output couldn't be written
+     * @throws GrammarException if no adjacent token images could be
+     *             separated
+     */
+    private boolean generateElement(ProductionPatternElement elem,
+                                    int level)
+        throws IOException, GrammarException {
+
+        if (elem.isToken()) {
+            return generateToken(
+                (String[]) images.get(new Integer(elem.getId())));
+        } else {
+            return generateProduction(
+                grammar.getProductionPatternById(elem.getId()),
+                level + 1);
+        }
+    }
+
+    /**
+     * Generates a token. The pending token image is written, followed
+     * by a separator if needed, and a new image is chosen as the
+     * pending one. Without a separator, the new image must not merge
+     * with the pending image. If no such image exists, the pending
+     * image is replaced.
+     *
+     * @param samples        the token images to choose from
+     *
+     * @return true if the token was generated, or
+     *         false if no image could be separated from the pending
+     *         token
+     *
+     * @throws IOException if the output couldn't be written
+     */
+    private boolean generateToken(String[] samples) throws IOException {
+        String  sep = separator;
+        String  image;
+
+        if (pending != null && newline != null && random.nextInt(10) == 0) {
+            sep = newline;
+        }
+        if (pending == null || sep.length() > 0) {
+            image = samples[random.nextInt(samples.length)];
+        } else {
+            image = chooseImage(pending, samples);
+            if (image == null) {
+                image = replacePending(samples);
+            }
+            if (image == null) {
+                return false;
+            }
+        }
+        if (pending != null) {
+            out.write(pending);
+            write(sep);
+        }
+        previous = (sep.length() > 0) ? null : pending;
+        pending = image;
+        pendingSamples = samples;
+        written += image.length();
+        tokens++;
+        return true;
+    }
+
+    /**
+     * Replaces the pending token image with one that is separate
+     * from both the previous image and one of the next token images.
+     *
+     * @param samples        the next token images to choose from
+     *
+     * @return the next token image chosen, or
+     *         null if the pending image couldn't be replaced
+     */
+    private String replacePending(String[] samples) {
+        int     count = pendingSamples.length;
+        int     offset = random.nextInt(count);
+        String  replacement;
+        String  image;
+
+        for (int i = 0; i < count; i++) {
+            replacement = pendingSamples[(offset + i) % count];
+            if (previous == null || isSeparate(previous, replacement)) {
+                image = chooseImage(replacement, samples);
+                if (image != null) {
+                    written += replacement.length() - pending.length();
+                    pending = replacement;
+                    return image;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Chooses a random token image that doesn't merge with a
+     * previous token image.
+     *
+     * @param first          the previous token image
+     * @param samples        the token images to choose from
+     *
+     * @return the token image chosen, or
+     *         null if all images merge with the previous one
+     */
+    private String chooseImage(String first, String[] samples) {
+        int  offset = random.nextInt(samples.length);
+        int  pos;
+
+        for (int i = 0; i < samples.length; i++) {
+            pos = (offset + i) % samples.length;
+            if (isSeparate(first, samples[pos])) {
+                return samples[pos];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Chooses a production alternative. While growing, a weighted
+     * random alternative that fits within the depth limit is chosen.
+     * Otherwise the alternative with the smallest depth is chosen.
+     *
+     * @param pattern        the production pattern
+     * @param level          the current nesting level
+     *
+     * @return the alternative index
+     */
+    private int chooseAlternative(ProductionPattern pattern, int level) {
+        double[]  values = (double[]) weights.get(pattern.getName());
+        double[]  fits = new double[pattern.getAlternativeCount()];
+        double    total = 0;
+        double    value;
+        int       best = 0;
+        int       depth;
+
+        for (int i = 0; i < fits.length; i++) {
+            depth = depth(pattern.getAlternative(i));
+            if (depth < depth(pattern.getAlternative(best))) {
+                best = i;
+            }
+            if (isGrowing() && depth < INFINITE &&
+                level + depth - 1 <= maxDepth) {
+
+                fits[i] = (values == null) ? 1.0 : values[i];
+                total += fits[i];
+            }
+        }
+        if (total <= 0) {
+            return best;
+        }
+        value = random.nextDouble() * total;
+        for (int i = 0; i < fits.length; i++) {
+            value -= fits[i];
+            if (fits[i] > 0 && value < 0) {
+                return i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Chooses a production alternative not yet tried. The untried
+     * alternative with the smallest depth is chosen.
+     *
+     * @param pattern        the production pattern
+     * @param tried          the alternatives already tried
+     *
+     * @return the alternative index, or
+     *         -1 if all alternatives have been tried
+     */
+    private int chooseRetry(ProductionPattern pattern, boolean[] tried) {
+        int  best = -1;
+        int  depth;
+
+        for (int i = 0; i < tried.length; i++) {
+            depth = depth(pattern.getAlternative(i));
+            if (!tried[i] && depth < INFINITE &&
+                (best < 0 || depth < depth(pattern.getAlternative(best)))) {
+
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Checks if an element should be repeated until the target size
+     * has been reached.
+     *
+     * @param elem           the production pattern element
+     * @param level          the current nesting level
+     *
+     * @return true if the element should fill the document, or
+     *         false otherwise
+     */
+    private boolean isRepeating(ProductionPatternElement elem, int level) {
+        return !filling
+            && elem.getMaxCount() == Integer.MAX_VALUE
+            && isGrowing()
+            && isAllowed(elem, level);
+    }
+
+    /**
+     * Chooses the number of repetitions for an element. While
+     * growing, a random count between the minimum and maximum is
+     * chosen, with long repetitions being less likely. Before any
+     * repeated element has started filling the document, the maximum
+     * count is chosen instead, as recursion is then the only way to
+     * grow. Otherwise the minimum count is returned.
+     *
+     * @param elem           the production pattern element
+     * @param level          the current nesting level
+     *
+     * @return the number of repetitions
+     */
+    private int chooseCount(ProductionPatternElement elem, int level) {
+        int  min = elem.getMinCount();
+        int  max = elem.getMaxCount();
+        int  count = min;
+
+        if (!isGrowing() || !isAllowed(elem, level)) {
+            return min;
+        } else if (!filling) {
+            return max;
+        }
+        while (count < max && random.nextInt(3) > 0) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Checks if an element may be generated more times than its
+     * minimum count, without exceeding the depth limit.
+     *
+     * @param elem           the production pattern element
+     * @param level          the current nesting level
+     *
+     * @return true if the element may be generated, or
+     *         false otherwise
+     */
+    private boolean isAllowed(ProductionPatternElement elem, int level) {
+        int  depth = depth(elem);
+
+        return depth < INFINITE && level + depth - 1 <= maxDepth;
+    }
+
+    /**
+     * Checks if the document is still growing towards the target
+     * size.
+     *
+     * @return true if the document is below the target size, or
+     *         false otherwise
+     */
+    private boolean isGrowing() {
+        return written < targetSize;
+    }
+
+    /**
+     * Writes a string to the output stream.
+     *
+     * @param str            the string to write
+     *
+     * @throws IOException if the output couldn't be written
+     */
+    private void write(String str) throws IOException {
+        out.write(str);
+        written += str.length();
+    }
+}
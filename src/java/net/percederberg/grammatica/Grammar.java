@@ -14,17 +14,36 @@
 
 package net.percederberg.grammatica;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 import net.percederberg.grammatica.parser.Analyzer;
 import net.percederberg.grammatica.parser.Parser;
 import net.percederberg.grammatica.parser.ParserCreationException;
 import net.percederberg.grammatica.parser.ParserLogException;
+import net.percederberg.grammatica.parser.PatternSerializer;
 import net.percederberg.grammatica.parser.ProductionPattern;
 import net.percederberg.grammatica.parser.RecursiveDescentParser;
 import net.percederberg.grammatica.parser.TokenPattern;
@@ -35,7 +54,7 @@ import net.percederberg.grammatica.parser.Tokenizer;
  * file and create a lexical analyzer (tokenizer) for the grammar.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 public class Grammar extends Object {
 
@@ -81,6 +100,26 @@ public class Grammar extends Object {
      */
     public static final String VERSION_DECLARATION = "VERSION";
 
+    /**
+     * The compiled grammar file format identifier.
+     */
+    private static final int COMPILED_MAGIC = 0x47524d43;
+
+    /**
+     * The compiled grammar file format version. This number must be
+     * increased whenever the format or the look-ahead analysis is
+     * modified, so that old compiled grammars are rebuilt.
+     */
+    private static final int COMPILED_VERSION = 2;
+
+    /**
+     * The library build hash. This is a hash of the library version
+     * and class files, used in the compiled grammar fingerprints so
+     * that the compiled grammars are rebuilt for each new library
+     * build. This value is null until first calculated.
+     */
+    private static String libraryHash = null;
+
     /**
      * The grammar file name.
      */
@@ -158,7 +197,7 @@ public class Grammar extends Object {
         fileName = file.toString();
         try {
             parser = new GrammarParser(new FileReader(file), first);
-            second.analyze(parser.parse());
+            second.analyzeInPlace(parser.parse());
         } catch (ParserCreationException e) {
             throw new UnsupportedOperationException(
                 "internal error in grammar parser: " + e.getMessage());
@@ -166,6 +205,423 @@ public class Grammar extends Object {
         verify();
     }
 
+    /**
+     * Creates a new empty grammar. The grammar contents must be read
+     * separately.
+     *
+     * @param fileName       the grammar file name
+     */
+    private Grammar(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Loads a grammar from a file, using the default compiled grammar
+     * file if possible. The compiled grammar files are stored in the
+     * ".grammatica/grammars" directory in the user home directory.
+     *
+     * @param file           the grammar file to read
+     *
+     * @return the grammar loaded
+     *
+     * @throws FileNotFoundException if the grammar file could not be
+     *             found
+     * @throws ParserLogException if the grammar file couldn't be
+     *             parsed correctly
+     * @throws GrammarException if the grammar wasn't valid
+     *
+     * @see #load(File, File)
+     * @see #getCompiledFile(File)
+     *
+     * @since 1.7
+     */
+    public static Grammar load(File file)
+        throws FileNotFoundException, ParserLogException,
+               GrammarException {
+
+        return load(file, getCompiledFile(file));
+    }
+
+    /**
+     * Loads a grammar from a file, using a compiled grammar file if
+     * possible. The compiled grammar file contains all the token
+     * and production patterns, including the look-ahead sets, and
+     * is stamped with a fingerprint of the grammar file contents
+     * and the library build. If the compiled grammar file is missing
+     * or was created from a different grammar file or library build,
+     * the grammar file is parsed normally
+     * and a new compiled grammar file written. The same happens if
+     * the compiled grammar file is corrupt, which is detected by a
+     * checksum. Any errors when reading or writing the compiled
+     * grammar file are ignored.
+     *
+     * @param file           the grammar file to read
+     * @param compiled       the compiled grammar file to use
+     *
+     * @return the grammar loaded
+     *
+     * @throws FileNotFoundException if the grammar file could not be
+     *             found
+     * @throws ParserLogException if the grammar file couldn't be
+     *             parsed correctly
+     * @throws GrammarException if the grammar wasn't valid
+     *
+     * @since 1.7
+     */
+    public static Grammar load(File file, File compiled)
+        throws FileNotFoundException, ParserLogException,
+               GrammarException {
+
+        String   fingerprint = fingerprint(file);
+        Grammar  grammar = null;
+
+        if (fingerprint != null && compiled.isFile()) {
+            grammar = readCompiled(file, compiled, fingerprint);
+        }
+        if (grammar == null) {
+            grammar = new Grammar(file);
+            if (fingerprint != null) {
+                grammar.writeCompiled(compiled, fingerprint);
+            }
+        }
+        return grammar;
+    }
+
+    /**
+     * Returns the default compiled grammar file for a grammar file.
+     * The file name is a hash of the absolute grammar file path, so
+     * that each grammar file has its own compiled grammar file.
+     *
+     * @param file           the grammar file
+     *
+     * @return the default compiled grammar file
+     *
+     * @since 1.7
+     */
+    public static File getCompiledFile(File file) {
+        File    dir = new File(System.getProperty("user.home"),
+                               ".grammatica" + File.separator + "grammars");
+        String  path = file.getAbsolutePath();
+        String  name;
+
+        try {
+            name = toHex(MessageDigest.getInstance("SHA-256").digest(
+                path.getBytes("UTF-8"))).substring(0, 32);
+        } catch (Exception e) {
+            name = Integer.toHexString(path.hashCode());
+        }
+        return new File(dir, name + ".compiled");
+    }
+
+    /**
+     * Calculates the fingerprint of a grammar file. The fingerprint
+     * is a hash of the file contents, the compiled grammar file
+     * format version, and the library build hash.
+     *
+     * @param file           the grammar file to read
+     *
+     * @return the grammar fingerprint, or
+     *         null if the file couldn't be read
+     *
+     * @throws FileNotFoundException if the grammar file could not be
+     *             found
+     */
+    private static String fingerprint(File file)
+        throws FileNotFoundException {
+
+        InputStream    input = new FileInputStream(file);
+        MessageDigest  digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+            digest.update((byte) COMPILED_VERSION);
+            digest.update(libraryHash().getBytes("UTF-8"));
+            update(digest, input);
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            try {
+                input.close();
+            } catch (IOException ignore) {
+                // Do nothing
+            }
+        }
+    }
+
+    /**
+     * Returns the library build hash. The hash is calculated from
+     * the library implementation version and the library class
+     * files, i.e. either the library JAR file or all the files in
+     * the library package directory. The hash is only calculated
+     * once, and will be an empty string if the library location
+     * couldn't be read.
+     *
+     * @return the library build hash
+     */
+    private static synchronized String libraryHash() {
+        Package        pkg = Grammar.class.getPackage();
+        String         version;
+        CodeSource     source;
+        URL            url;
+        File           file;
+        MessageDigest  digest;
+
+        if (libraryHash != null) {
+            return libraryHash;
+        }
+        libraryHash = "";
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+            version = (pkg == null) ? null : pkg.getImplementationVersion();
+            if (version != null) {
+                digest.update(version.getBytes("UTF-8"));
+            }
+            source = Grammar.class.getProtectionDomain().getCodeSource();
+            url = (source == null) ? null : source.getLocation();
+            if (url == null || !"file".equals(url.getProtocol())) {
+                return libraryHash;
+            }
+            file = new File(url.toURI());
+            if (file.isDirectory()) {
+                file = new File(file, "net/percederberg/grammatica");
+                update(digest, file, "");
+            } else {
+                update(digest, new FileInputStream(file));
+            }
+            libraryHash = toHex(digest.digest());
+        } catch (Exception ignore) {
+            // Use the empty library hash
+        }
+        return libraryHash;
+    }
+
+    /**
+     * Updates a message digest with all the files below a directory.
+     * The files are processed in sorted order, and the relative file
+     * names are included in the digest.
+     *
+     * @param digest         the message digest to update
+     * @param dir            the directory to read
+     * @param prefix         the relative directory name prefix
+     *
+     * @throws IOException if the files couldn't be read
+     */
+    private static void update(MessageDigest digest, File dir, String prefix)
+        throws IOException {
+
+        File[]  files = dir.listFiles();
+
+        if (files == null) {
+            throw new IOException("cannot read directory " + dir);
+        }
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; i++) {
+            digest.update((prefix + files[i].getName()).getBytes("UTF-8"));
+            if (files[i].isDirectory()) {
+                update(digest, files[i], prefix + files[i].getName() + "/");
+            } else {
+                update(digest, new FileInputStream(files[i]));
+            }
+        }
+    }
+
+    /**
+     * Updates a message digest with the contents of an input stream.
+     * The input stream will be closed by this method.
+     *
+     * @param digest         the message digest to update
+     * @param input          the input stream to read
+     *
+     * @throws IOException if the input stream couldn't be read
+     */
+    private static void update(MessageDigest digest, InputStream input)
+        throws IOException {
+
+        byte[]  bytes = new byte[4096];
+        int     length;
+
+        try {
+            while ((length = input.read(bytes)) > 0) {
+                digest.update(bytes, 0, length);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns the hexadecimal representation of a byte array.
+     *
+     * @param bytes          the byte array
+     *
+     * @return the hexadecimal string
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuffer  buffer = new StringBuffer();
+
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.append(Character.forDigit((bytes[i] >> 4) & 15, 16));
+            buffer.append(Character.forDigit(bytes[i] & 15, 16));
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Reads a compiled grammar file. The grammar will only be
+     * returned if the compiled grammar fingerprint and checksum
+     * match, and the grammar could be verified.
+     *
+     * @param file           the grammar file
+     * @param compiled       the compiled grammar file to read
+     * @param fingerprint    the grammar file fingerprint
+     *
+     * @return the grammar read, or
+     *         null if the compiled grammar couldn't be used
+     */
+    private static Grammar readCompiled(File file,
+                                        File compiled,
+                                        String fingerprint) {
+
+        Grammar             grammar = new Grammar(file.toString());
+        CheckedInputStream  checked;
+        DataInputStream     in = null;
+        String              name;
+        String              value;
+        long                checksum;
+        int                 count;
+
+        try {
+            checked = new CheckedInputStream(new BufferedInputStream(
+                new FileInputStream(compiled)), new CRC32());
+            in = new DataInputStream(checked);
+            if (in.readInt() != COMPILED_MAGIC
+             || in.readInt() != COMPILED_VERSION
+             || !fingerprint.equals(PatternSerializer.readString(in))) {
+
+                return null;
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                name = PatternSerializer.readString(in);
+                value = PatternSerializer.readString(in);
+                grammar.addDeclaration(name, value);
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                grammar.addToken(PatternSerializer.readTokenPattern(in),
+                                 in.readInt(),
+                                 in.readInt());
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                grammar.addProduction(
+                    PatternSerializer.readProductionPattern(in),
+                    in.readInt(),
+                    in.readInt());
+            }
+            checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum || in.read() >= 0) {
+                return null;
+            }
+            grammar.verify();
+            return grammar;
+        } catch (IOException e) {
+            return null;
+        } catch (GrammarException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignore) {
+                    // Do nothing
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes this grammar to a compiled grammar file. The file is
+     * first written to a temporary file that is renamed once
+     * complete, so that concurrent readers never see partial files.
+     * The file ends with a checksum of its contents. Any errors when
+     * writing the file are ignored.
+     *
+     * @param compiled       the compiled grammar file to write
+     * @param fingerprint    the grammar file fingerprint
+     */
+    private void writeCompiled(File compiled, String fingerprint) {
+        File                 dir = compiled.getAbsoluteFile().getParentFile();
+        File                 temp = null;
+        CheckedOutputStream  checked;
+        DataOutputStream     out = null;
+        Iterator             iter;
+        Map.Entry            entry;
+        TokenPattern         token;
+        ProductionPattern    prod;
+        LineRange            range;
+
+        try {
+            dir.mkdirs();
+            temp = File.createTempFile(compiled.getName(), ".tmp", dir);
+            checked = new CheckedOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)), new CRC32());
+            out = new DataOutputStream(checked);
+            out.writeInt(COMPILED_MAGIC);
+            out.writeInt(COMPILED_VERSION);
+            PatternSerializer.writeString(out, fingerprint);
+            out.writeInt(declarations.size());
+            iter = declarations.entrySet().iterator();
+            while (iter.hasNext()) {
+                entry = (Map.Entry) iter.next();
+                PatternSerializer.writeString(out, (String) entry.getKey());
+                PatternSerializer.writeString(out, (String) entry.getValue());
+            }
+            out.writeInt(tokens.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                token = (TokenPattern) tokens.get(i);
+                range = (LineRange) lines.get(token.getName());
+                PatternSerializer.writeTokenPattern(out, token);
+                out.writeInt(range.getStart());
+                out.writeInt(range.getEnd());
+            }
+            out.writeInt(productions.size());
+            for (int i = 0; i < productions.size(); i++) {
+                prod = (ProductionPattern) productions.get(i);
+                range = (LineRange) lines.get(prod.getName());
+                PatternSerializer.writeProductionPattern(out, prod);
+                out.writeInt(range.getStart());
+                out.writeInt(range.getEnd());
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.close();
+            out = null;
+            if (!temp.renameTo(compiled)) {
+                compiled.delete();
+                if (!temp.renameTo(compiled)) {
+                    temp.delete();
+                }
+            }
+        } catch (IOException e) {
+            if (temp != null) {
+                temp.delete();
+            }
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignore) {
+                    // Do nothing
+                }
+            }
+        }
+    }
+
     /**
      * Checks that the grammar is valid.
      *
@@ -15,20 +15,28 @@
 package net.percederberg.grammatica;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import net.percederberg.grammatica.output.CSharpParserGenerator;
 import net.percederberg.grammatica.output.JavaParserGenerator;
 import net.percederberg.grammatica.output.VisualBasicParserGenerator;
 import net.percederberg.grammatica.parser.Analyzer;
-import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.LookAheadProfiler;
 import net.percederberg.grammatica.parser.ParseException;
 import net.percederberg.grammatica.parser.Parser;
 import net.percederberg.grammatica.parser.ParserCreationException;
 import net.percederberg.grammatica.parser.ParserLogException;
+import net.percederberg.grammatica.parser.PerformanceLint;
 import net.percederberg.grammatica.parser.Token;
 import net.percederberg.grammatica.parser.Tokenizer;
 
@@ -38,7 +46,7 @@ import net.percederberg.grammatica.parser.Tokenizer;
  * for information on usage and command-line parameters.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 public class Grammatica extends Object {
 
@@ -51,20 +59,46 @@ public class Grammatica extends Object {
         "for details see the LICENSE.txt file.\n" +
         "\n" +
         "Syntax: Grammatica <grammarfile> <action> [<options>]\n" +
+        "        Grammatica --daemon [<port>]\n" +
         "\n" +
         "Actions:\n" +
         "  --debug\n" +
         "      Debugs the grammar by validating it and printing the\n" +
         "      internal representation.\n" +
+        "  --perf-lint\n" +
+        "      Checks the grammar for performance problems, such as token\n" +
+        "      patterns that need native Java regexps, large automatons\n" +
+        "      or productions with costly look-ahead. The findings are\n" +
+        "      ranked by estimated cost, with suggested rewrites.\n" +
         "  --tokenize <file>\n" +
         "      Debugs the grammar by using it to tokenize the specified\n" +
         "      file. No code has to be generated for this.\n" +
-        "  --parse <file>\n" +
+        "  --parse <file(s)>\n" +
         "      Debugs the grammar by using it to parse the specified\n" +
-        "      file. No code has to be generated for this.\n" +
-        "  --profile <file(s)>\n" +
-        "      Profiles the grammar by using it to parse the specified\n" +
-        "      file(s) and printing a statistic summary.\n" +
+        "      file(s). No code has to be generated for this.\n" +
+        "  --profile <file(s)> [--warmup <n>] [--iterations <n>] [--json]\n" +
+        "      Benchmarks the grammar by repeatedly tokenizing, parsing\n" +
+        "      and analyzing the specified file(s), and printing timing\n" +
+        "      percentiles, throughput, allocation and GC statistics.\n" +
+        "      The defaults are 5 warmup and 20 measured iterations.\n" +
+        "      The --json option prints the results in JSON format.\n" +
+        "  --lookahead <file(s)>\n" +
+        "      Profiles the parser look-ahead decisions while parsing the\n" +
+        "      specified file(s), and prints a report ranked by the\n" +
+        "      number of tokens peeked. Costly decisions point to\n" +
+        "      productions that may benefit from left-factoring.\n" +
+        "\n" +
+        "      The --parse, --profile and --lookahead file arguments may\n" +
+        "      also be directories or glob patterns (such as src/**.txt).\n" +
+        "      With --parse, all matching files are parsed concurrently.\n" +
+        "  --generate <file> [--size <n>] [--depth <n>] [--seed <n>]\n" +
+        "      Generates a random input file for the grammar, useful for\n" +
+        "      scale testing. The target size is given in bytes, with an\n" +
+        "      optional k, m or g suffix (default 64k). The nesting depth\n" +
+        "      limit defaults to 30 productions.\n" +
+        "  --validate <file>\n" +
+        "      Checks that the specified file can be parsed, printing\n" +
+        "      only errors. Requires a daemon (see --port below).\n" +
         "  --csoutput <dir>\n" +
         "      Creates a C# parser for the grammar (in source code).\n" +
         "      The specified directory will be used as output directory\n" +
@@ -78,6 +112,18 @@ public class Grammatica extends Object {
         "      source code). The specified directory will be used as\n" +
         "      output directory for the source code files.\n" +
         "\n" +
+        "Daemon Options:\n" +
+        "  --daemon [<port>]\n" +
+        "      Starts a daemon that keeps grammars and parsers loaded\n" +
+        "      between requests. The daemon only listens on the local\n" +
+        "      loopback interface. The default port is 7907. Requests\n" +
+        "      must include the secret written to the user-only file\n" +
+        "      ~/.grammatica/daemon-<port>.secret.\n" +
+        "  --port <port>\n" +
+        "      Sends a --tokenize, --parse or --validate action to the\n" +
+        "      daemon on the specified port, instead of processing it\n" +
+        "      locally.\n" +
+        "\n" +
         "C# Output Options:\n" +
         "  --csnamespace <package>\n" +
         "      Sets the C# namespace to use in generated source code\n" +
@@ -133,14 +179,22 @@ public class Grammatica extends Object {
             printHelp(null);
             System.exit(1);
         }
+        if (args.length > 0 && args[0].equals("--daemon")) {
+            GrammaticaDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         if (args.length < 2) {
             printHelp("Missing grammar file and/or action");
             System.exit(1);
         }
+        if (args.length == 5 && args[3].equals("--port")) {
+            sendRequest(args);
+            return;
+        }
 
         // Read grammar file
         try {
-            grammar = new Grammar(new File(args[0]));
+            grammar = Grammar.load(new File(args[0]));
         } catch (FileNotFoundException e) {
             printError(args[0], e);
             System.exit(1);
@@ -161,15 +215,21 @@ public class Grammatica extends Object {
         try {
             if (args[1].equals("--debug")) {
                 debug(grammar);
+            } else if (args[1].equals("--perf-lint")) {
+                perfLint(grammar);
             } else if (args.length < 3) {
                 printHelp("missing action file parameter");
                 System.exit(1);
             } else if (args[1].equals("--tokenize")) {
                 tokenize(grammar, new File(args[2]));
             } else if (args[1].equals("--parse")) {
-                parse(grammar, new File(args[2]));
+                parse(grammar, findFiles(args, 2));
             } else if (args[1].equals("--profile")) {
-                profile(grammar, args, 2);
+                profile(args, grammar);
+            } else if (args[1].equals("--lookahead")) {
+                profileLookAhead(grammar, findFiles(args, 2));
+            } else if (args[1].equals("--generate")) {
+                generate(args, grammar);
             } else if (args[1].equals("--javaoutput")) {
                 writeJavaCode(args, grammar);
             } else if (args[1].equals("--csoutput")) {
@@ -431,6 +491,72 @@ public class Grammatica extends Object {
         System.out.print(parser);
     }
 
+    /**
+     * Checks a grammar for performance problems and prints a ranked
+     * report of the findings.
+     *
+     * @param grammar        the grammar to use
+     */
+    private static void perfLint(Grammar grammar) {
+        Tokenizer        tokenizer = null;
+        Parser           parser = null;
+        PerformanceLint  lint;
+
+        // Create tokenizer and parser
+        try {
+            tokenizer = grammar.createTokenizer(null);
+            parser = grammar.createParser(tokenizer);
+        } catch (GrammarException e) {
+            printInternalError(e);
+            System.exit(2);
+        }
+
+        // Print lint findings
+        lint = new PerformanceLint(tokenizer, parser);
+        System.out.println("Performance lint for " + grammar.getFileName() +
+                           ":");
+        System.out.println();
+        if (lint.print(System.out) == 0) {
+            System.out.println("No performance problems found.");
+        }
+    }
+
+    /**
+     * Sends a tokenize, parse or validate request to a daemon. The
+     * command-line arguments are expected to contain the grammar
+     * file, action, input file and port options, in that order. This
+     * method exits the program with the request exit code.
+     *
+     * @param args           the command-line parameters
+     *
+     * @since 1.7
+     */
+    private static void sendRequest(String[] args) {
+        String  action = args[1];
+        int     port;
+
+        if (!action.startsWith("--")) {
+            printHelp("unrecognized option: " + action);
+            System.exit(1);
+        }
+        try {
+            port = Integer.parseInt(args[4]);
+            System.exit(GrammaticaClient.send(port,
+                                              action.substring(2),
+                                              new File(args[0]),
+                                              new File(args[2]),
+                                              System.out,
+                                              System.err));
+        } catch (NumberFormatException e) {
+            printHelp("invalid port number: " + args[4]);
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Error: couldn't contact daemon on port " +
+                               args[4] + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
     /**
      * Tokenizes the specified file with the token patterns from the
      * grammar.
@@ -461,22 +587,144 @@ public class Grammatica extends Object {
     }
 
     /**
-     * Parses the specified file with the grammar.
+     * Finds all the input files matching the command-line arguments.
+     * Each argument may be a file, a directory or a glob pattern.
+     * Directories will be searched recursively for files. If no file
+     * matches an argument, an error will be printed.
+     *
+     * @param args           the command-line arguments
+     * @param first          the index of the first file argument
+     *
+     * @return the list of matching files
+     *
+     * @since 1.7
+     */
+    private static ArrayList findFiles(String[] args, int first) {
+        ArrayList  files = new ArrayList();
+        int        count;
+
+        for (int i = first; i < args.length; i++) {
+            count = files.size();
+            findFiles(args[i], files);
+            if (files.size() == count) {
+                printError(args[i], new FileNotFoundException(args[i]));
+                System.exit(1);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Finds all the input files matching a file, directory or glob
+     * pattern. The glob pattern syntax is the one supported by the
+     * default file system, with the base directory being the path
+     * before the first glob character.
+     *
+     * @param pattern        the file, directory or glob pattern
+     * @param files          the list of files to add to
+     *
+     * @since 1.7
+     */
+    private static void findFiles(String pattern, ArrayList files) {
+        ArrayList    found = new ArrayList();
+        File         base;
+        PathMatcher  matcher;
+        int          pos;
+        int          sep;
+        File         file;
+
+        pos = -1;
+        for (int i = 0; pos < 0 && i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) {
+                pos = i;
+            }
+        }
+        if (pos < 0) {
+            file = new File(pattern);
+            if (file.isDirectory()) {
+                findFiles(file, files);
+            } else if (file.exists()) {
+                files.add(file);
+            }
+            return;
+        }
+        sep = Math.max(pattern.lastIndexOf('/', pos),
+                       pattern.lastIndexOf(File.separatorChar, pos));
+        if (sep < 0) {
+            base = new File(".");
+        } else {
+            base = new File(pattern.substring(0, sep + 1));
+        }
+        matcher = FileSystems.getDefault().getPathMatcher(
+            "glob:" + pattern.substring(sep + 1));
+        findFiles(base, found);
+        for (int i = 0; i < found.size(); i++) {
+            file = (File) found.get(i);
+            if (matcher.matches(base.toPath().relativize(file.toPath()))) {
+                files.add(file);
+            }
+        }
+    }
+
+    /**
+     * Finds all the files in a directory and its subdirectories.
+     * The files will be added in sorted order.
+     *
+     * @param dir            the directory to search
+     * @param files          the list of files to add to
+     *
+     * @since 1.7
+     */
+    private static void findFiles(File dir, ArrayList files) {
+        File[]  children = dir.listFiles();
+
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].isDirectory()) {
+                findFiles(children[i], files);
+            } else if (children[i].isFile()) {
+                files.add(children[i]);
+            }
+        }
+    }
+
+    /**
+     * Parses the specified files with the grammar. If more than one
+     * file is specified, the files will be parsed concurrently and
+     * each parse tree printed in order as soon as it is available.
      *
      * @param grammar        the grammar to use
-     * @param file           the file to parse
+     * @param files          the files to parse
      */
-    private static void parse(Grammar grammar, File file) {
-        Tokenizer  tokenizer;
-        Analyzer   analyzer;
-        Parser     parser;
+    private static void parse(Grammar grammar, ArrayList files) {
+        File             file = (File) files.get(0);
+        Tokenizer        tokenizer;
+        Analyzer         analyzer;
+        Parser           parser;
+        AnalyzerFactory  factory;
+        BatchPrinter     printer = new BatchPrinter();
 
         try {
-            tokenizer = grammar.createTokenizer(new FileReader(file));
-            analyzer = new TreePrinter(System.out);
-            parser = grammar.createParser(tokenizer, analyzer);
-            System.out.println("Parse tree from " + file + ":");
-            parser.parse();
+            if (files.size() == 1) {
+                tokenizer = grammar.createTokenizer(new FileReader(file));
+                analyzer = new TreePrinter(System.out);
+                parser = grammar.createParser(tokenizer, analyzer);
+                System.out.println("Parse tree from " + file + ":");
+                parser.parse();
+                return;
+            }
+            factory = new AnalyzerFactory() {
+                public Analyzer createAnalyzer() {
+                    return new BufferedTreePrinter();
+                }
+            };
+            new BatchParser(grammar).parseAll(files, factory, printer);
+            if (printer.error) {
+                System.exit(1);
+            }
         } catch (FileNotFoundException e) {
             printError(file.toString(), e);
             System.exit(1);
@@ -493,76 +741,102 @@ public class Grammatica extends Object {
     }
 
     /**
-     * Parses the specified file with the grammar and prints
-     * profiling information.
+     * Parses the command-line arguments and benchmarks the tokenizer,
+     * parser and analyzer phases with the specified files. The
+     * results are printed in either a readable or a JSON format.
      *
+     * @param args           the command-line arguments
      * @param grammar        the grammar to use
-     * @param files          the files to parse
-     * @param first          the index of the first file
      */
-    private static void profile(Grammar grammar, String[] files, int first) {
-        File       file = new File(files[first]);
-        Tokenizer  tokenizer;
-        Parser     parser;
-        Node       node;
-        int        fileCount = files.length - first;
-        long       time;
-        int        counter;
+    private static void profile(String[] args, Grammar grammar) {
+        Benchmark  benchmark = new Benchmark(grammar);
+        ArrayList  fileArgs = new ArrayList();
+        boolean    json = false;
+        String[]   names;
 
-        // Profile tokenizer
+        // Read command-line arguments
         try {
-            System.out.println("Tokenizing " + fileCount + " file(s)...");
-            tokenizer = grammar.createTokenizer(new FileReader(file));
-            time = System.currentTimeMillis();
-            counter = 0;
-            for (int i = first; i < files.length; i++) {
-                if (i > first) {
-                    file = new File(files[i]);
-                    tokenizer.reset(new FileReader(file));
-                }
-                while (tokenizer.next() != null) {
-                    counter++;
+            for (int i = 2; i < args.length; i++) {
+                if (args[i].equals("--warmup")) {
+                    benchmark.setWarmup(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--iterations")) {
+                    benchmark.setIterations(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--json")) {
+                    json = true;
+                } else {
+                    fileArgs.add(args[i]);
                 }
             }
-            time = System.currentTimeMillis() - time + 1;
-            System.out.println("  Time elapsed:  " + time + " millisec");
-            System.out.println("  Tokens found:  " + counter);
-            System.out.println("  Average speed: " + (counter / time) +
-                               " tokens/millisec");
-            System.out.println();
+        } catch (NumberFormatException e) {
+            printHelp("invalid number: " + e.getMessage());
+            System.exit(1);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            printHelp("missing option value: " + args[args.length - 1]);
+            System.exit(1);
+        }
+        if (fileArgs.size() == 0) {
+            printHelp("missing action file parameter");
+            System.exit(1);
+        }
+        names = (String[]) fileArgs.toArray(new String[fileArgs.size()]);
+
+        // Run benchmark
+        try {
+            if (!json) {
+                System.out.println("Benchmarking " + benchmark.getWarmup() +
+                                   " warmup + " +
+                                   benchmark.getIterations() +
+                                   " iterations...");
+            }
+            benchmark.run(findFiles(names, 0));
         } catch (FileNotFoundException e) {
-            printError(file.toString(), e);
+            printError(benchmark.getErrorFile().toString(), e);
+            System.exit(1);
+        } catch (IOException e) {
+            printError(e);
             System.exit(1);
         } catch (GrammarException e) {
             printInternalError(e);
             System.exit(2);
-        } catch (ParseException e) {
-            printError(file.toString(), e);
+        } catch (ParserCreationException e) {
+            printInternalError(e);
+            System.exit(2);
+        } catch (ParserLogException e) {
+            printError(benchmark.getErrorFile().toString(), e);
             System.exit(1);
         }
+        if (json) {
+            System.out.print(benchmark.toJson());
+        } else {
+            System.out.println();
+            benchmark.print(System.out);
+        }
+    }
+
+    /**
+     * Parses the specified files while profiling the look-ahead
+     * decisions, and prints a ranked report of the decision points.
+     *
+     * @param grammar        the grammar to use
+     * @param files          the list of files to parse
+     */
+    private static void profileLookAhead(Grammar grammar, ArrayList files) {
+        LookAheadProfiler  profiler = new LookAheadProfiler();
+        File               file = (File) files.get(0);
+        Parser             parser = null;
 
-        // Profile parser
         try {
-            System.out.println("Parsing " + fileCount + " file(s)...");
-            file = new File(files[first]);
-            tokenizer = grammar.createTokenizer(new FileReader(file));
-            parser = grammar.createParser(tokenizer);
-            time = System.currentTimeMillis();
-            counter = 0;
-            for (int i = first; i < files.length; i++) {
-                if (i > first) {
-                    file = new File(files[i]);
+            for (int i = 0; i < files.size(); i++) {
+                file = (File) files.get(i);
+                if (parser == null) {
+                    parser = grammar.createParser(
+                        grammar.createTokenizer(new FileReader(file)));
+                    parser.setMetrics(profiler);
+                } else {
                     parser.reset(new FileReader(file));
                 }
-                node = parser.parse();
-                counter += 1 + node.getDescendantCount();
+                parser.parse();
             }
-            time = System.currentTimeMillis() - time + 1;
-            System.out.println("  Time elapsed:  " + time + " millisec");
-            System.out.println("  Nodes found:   " + counter);
-            System.out.println("  Average speed: " + (counter / time) +
-                               " nodes/millisec");
-            System.out.println();
         } catch (FileNotFoundException e) {
             printError(file.toString(), e);
             System.exit(1);
@@ -576,6 +850,95 @@ public class Grammatica extends Object {
             printError(file.toString(), e);
             System.exit(1);
         }
+        System.out.println("Look-ahead decisions from " + files.size() +
+                           " file(s), ranked by tokens peeked:");
+        System.out.println();
+        profiler.print(System.out, 0);
+    }
+
+    /**
+     * Parses the command-line arguments and generates a random input
+     * file for the grammar.
+     *
+     * @param args           the command-line arguments
+     * @param grammar        the grammar to use
+     */
+    private static void generate(String[] args, Grammar grammar) {
+        CorpusGenerator  gen = new CorpusGenerator(grammar);
+        File             file = new File(args[2]);
+        BufferedWriter   out = null;
+        long             size;
+
+        // Read command-line arguments
+        try {
+            for (int i = 3; i < args.length; i++) {
+                if (args[i].equals("--size")) {
+                    gen.setTargetSize(parseSize(args[++i]));
+                } else if (args[i].equals("--depth")) {
+                    gen.setMaxDepth(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--seed")) {
+                    gen.setSeed(Long.parseLong(args[++i]));
+                } else {
+                    printHelp("unrecognized option: " + args[i]);
+                    System.exit(1);
+                }
+            }
+        } catch (NumberFormatException e) {
+            printHelp("invalid number: " + e.getMessage());
+            System.exit(1);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            printHelp("missing option value: " + args[args.length - 1]);
+            System.exit(1);
+        }
+
+        // Write generated input
+        try {
+            System.out.println("Generating " + file + "...");
+            out = new BufferedWriter(new FileWriter(file));
+            size = gen.generate(out);
+            out.close();
+            System.out.println("Done, " + size + " characters written.");
+        } catch (IOException e) {
+            printError(e);
+            System.exit(1);
+        } catch (GrammarException e) {
+            printError(e);
+            System.exit(1);
+        } finally {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            } catch (IOException ignore) {
+                // Do nothing
+            }
+        }
+    }
+
+    /**
+     * Parses a size value with an optional k, m or g suffix.
+     *
+     * @param str            the size string
+     *
+     * @return the size value
+     *
+     * @throws NumberFormatException if the size couldn't be parsed
+     */
+    private static long parseSize(String str) throws NumberFormatException {
+        String  suffix = str.substring(Math.max(str.length() - 1, 0));
+        long    factor = 1;
+
+        if (suffix.equalsIgnoreCase("k")) {
+            factor = 1024L;
+        } else if (suffix.equalsIgnoreCase("m")) {
+            factor = 1024L * 1024L;
+        } else if (suffix.equalsIgnoreCase("g")) {
+            factor = 1024L * 1024L * 1024L;
+        }
+        if (factor > 1) {
+            str = str.substring(0, str.length() - 1);
+        }
+        return Long.parseLong(str) * factor;
     }
 
     /**
@@ -689,4 +1052,71 @@ public class Grammatica extends Object {
             System.exit(1);
         }
     }
+
+
+    /**
+     * A batch parse result printer. The parse tree and any errors
+     * are printed for each file result.
+     */
+    private static class BatchPrinter implements BatchListener {
+
+        /**
+         * The parse error flag, set if any file had errors.
+         */
+        public boolean error = false;
+
+        /**
+         * Prints a file result.
+         *
+         * @param result         the file result
+         */
+        public void batchResult(BatchResult result) {
+            File  file = result.getFile();
+
+            System.out.println("Parse tree from " + file + ":");
+            System.out.print(result.getAnalyzer());
+            if (!result.isSuccess()) {
+                printError(file.toString(), result.getErrors());
+                error = true;
+            }
+        }
+    }
+
+    /**
+     * A parse tree printer writing to a string buffer. The printed
+     * tree is returned by the toString() method.
+     */
+    private static class BufferedTreePrinter extends TreePrinter {
+
+        /**
+         * The output buffer.
+         */
+        private StringWriter buffer;
+
+        /**
+         * Creates a new buffered parse tree printer.
+         */
+        public BufferedTreePrinter() {
+            this(new StringWriter());
+        }
+
+        /**
+         * Creates a new buffered parse tree printer.
+         *
+         * @param buffer         the output buffer to use
+         */
+        private BufferedTreePrinter(StringWriter buffer) {
+            super(buffer);
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns the printed parse tree.
+         *
+         * @return the printed parse tree
+         */
+        public String toString() {
+            return buffer.toString();
+        }
+    }
 }
@@ -0,0 +1,185 @@
+/*
+ * GrammaticaClient.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * A thin Grammatica daemon client. This class sends a single request
+ * to a running daemon and prints the response. It doesn't load any
+ * grammar or parser classes, so the client startup cost is minimal.
+ * Each request is authenticated with the secret found in the daemon
+ * secret file, which is only readable by the user running the
+ * daemon.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see GrammaticaDaemon
+ */
+public class GrammaticaClient extends Object {
+
+    /**
+     * Returns the daemon secret file for a port number. The file is
+     * located in the ".grammatica" directory in the user home
+     * directory.
+     *
+     * @param port           the daemon port number
+     *
+     * @return the daemon secret file
+     */
+    public static File getSecretFile(int port) {
+        File  dir = new File(System.getProperty("user.home"), ".grammatica");
+
+        return new File(dir, "daemon-" + port + ".secret");
+    }
+
+    /**
+     * Reads the daemon secret for a port number.
+     *
+     * @param port           the daemon port number
+     *
+     * @return the daemon secret
+     *
+     * @throws IOException if the daemon secret file couldn't be read
+     */
+    public static String readSecret(int port) throws IOException {
+        File            file = getSecretFile(port);
+        BufferedReader  reader;
+        String          secret;
+
+        reader = new BufferedReader(new InputStreamReader(
+            new FileInputStream(file), "UTF-8"));
+        try {
+            secret = reader.readLine();
+        } finally {
+            reader.close();
+        }
+        if (secret == null || secret.length() == 0) {
+            throw new IOException("empty daemon secret file: " + file);
+        }
+        return secret;
+    }
+
+    /**
+     * Sends a request to a daemon and prints the response. The
+     * request is preceded by the daemon secret.
+     *
+     * @param port           the daemon port number
+     * @param action         the request action
+     * @param grammar        the grammar file, or null
+     * @param file           the input file, or null
+     * @param out            the output stream
+     * @param err            the error stream
+     *
+     * @return the request exit code
+     *
+     * @throws IOException if the daemon secret couldn't be read, or
+     *             if the daemon couldn't be contacted
+     */
+    public static int send(int port,
+                           String action,
+                           File grammar,
+                           File file,
+                           PrintStream out,
+                           PrintStream err)
+        throws IOException {
+
+        String          secret = readSecret(port);
+        Socket          socket;
+        Writer          writer;
+        BufferedReader  reader;
+        String          line;
+        int             code = 2;
+
+        socket = new Socket(InetAddress.getByName(null), port);
+        try {
+            writer = new OutputStreamWriter(socket.getOutputStream(),
+                                            "UTF-8");
+            writer.write(secret + "\n");
+            if (grammar == null) {
+                writer.write(action + "\n");
+            } else {
+                writer.write(action + "\t" +
+                             grammar.getAbsolutePath() + "\t" +
+                             file.getAbsolutePath() + "\n");
+            }
+            writer.flush();
+            reader = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), "UTF-8"));
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("out ")) {
+                    out.println(line.substring(4));
+                } else if (line.startsWith("err ")) {
+                    err.println(line.substring(4));
+                } else if (line.startsWith("exit ")) {
+                    code = Integer.parseInt(line.substring(5));
+                }
+            }
+        } finally {
+            socket.close();
+        }
+        return code;
+    }
+
+    /**
+     * The client entry point. The arguments are the daemon port
+     * number, followed by either "stop" or the action, grammar file
+     * and input file.
+     *
+     * @param args           the command-line parameters
+     */
+    public static void main(String[] args) {
+        int  code;
+
+        try {
+            if (args.length == 2 && args[1].equals("stop")) {
+                code = send(Integer.parseInt(args[0]), "stop", null, null,
+                            System.out, System.err);
+            } else if (args.length == 4) {
+                code = send(Integer.parseInt(args[0]),
+                            args[1],
+                            new File(args[2]),
+                            new File(args[3]),
+                            System.out,
+                            System.err);
+            } else {
+                System.err.println("Syntax: GrammaticaClient <port> " +
+                                   "<action> <grammarfile> <file>");
+                System.err.println("        GrammaticaClient <port> stop");
+                code = 1;
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Error: invalid port number: " + args[0]);
+            code = 1;
+        } catch (IOException e) {
+            System.err.println("Error: couldn't contact daemon on port " +
+                               args[0] + ": " + e.getMessage());
+            code = 1;
+        }
+        System.exit(code);
+    }
+}
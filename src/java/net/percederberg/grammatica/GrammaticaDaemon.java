@@ -0,0 +1,634 @@
+/*
+ * GrammaticaDaemon.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import net.percederberg.grammatica.parser.Analyzer;
+import net.percederberg.grammatica.parser.ParseException;
+import net.percederberg.grammatica.parser.Parser;
+import net.percederberg.grammatica.parser.ParserCreationException;
+import net.percederberg.grammatica.parser.ParserLogException;
+import net.percederberg.grammatica.parser.Token;
+import net.percederberg.grammatica.parser.Tokenizer;
+
+/**
+ * A long-running Grammatica server. The daemon listens for requests
+ * on a loopback TCP port and keeps all the grammars used loaded,
+ * together with a pool of prepared parsers for each grammar. This
+ * avoids the cost of starting a new Java VM and loading the grammar
+ * for each file processed. Grammar files are reloaded automatically
+ * when modified. Each connection is handled in a separate thread.
+ *
+ * The protocol is line-based and uses UTF-8. Each connection starts
+ * with a line containing the daemon secret. The secret is randomly
+ * generated on startup and written to a file only readable by the
+ * current user (see GrammaticaClient.getSecretFile()), so that other
+ * local users can't send requests. Connections with an invalid
+ * secret are rejected. The request is a single line with a
+ * tab-separated action, grammar file and input file. The action is
+ * one of "tokenize", "parse", "validate" or "stop". The response
+ * consists of output lines prefixed by "out " or "err ", followed
+ * by a final "exit" line with the exit code.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see GrammaticaClient
+ */
+public class GrammaticaDaemon extends Object {
+
+    /**
+     * The default daemon port number.
+     */
+    public static final int DEFAULT_PORT = 7907;
+
+    /**
+     * The server socket.
+     */
+    private ServerSocket server;
+
+    /**
+     * The request handler thread pool.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The loaded grammars. This map contains grammar entries indexed
+     * by the canonical grammar file name.
+     */
+    private HashMap grammars = new HashMap();
+
+    /**
+     * The daemon secret bytes.
+     */
+    private byte[] secret;
+
+    /**
+     * The daemon secret file.
+     */
+    private File secretFile;
+
+    /**
+     * Creates a new daemon listening on a loopback port. A new
+     * daemon secret is written to the secret file for the port.
+     *
+     * @param port           the port number, or zero for any
+     *                       free port
+     *
+     * @throws IOException if the server socket couldn't be opened,
+     *             or if the secret file couldn't be written
+     */
+    public GrammaticaDaemon(int port) throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getByName(null));
+        try {
+            writeSecret();
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Grammatica daemon request");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the port number the daemon is listening on.
+     *
+     * @return the port number
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Creates a new random daemon secret and writes it to the secret
+     * file. Any existing secret file is replaced. The file is
+     * created with read and write permissions for the current user
+     * only.
+     *
+     * @throws IOException if the secret file couldn't be written
+     */
+    private void writeSecret() throws IOException {
+        byte[]        bytes = new byte[32];
+        StringBuffer  buffer = new StringBuffer();
+        File          dir;
+        OutputStream  out;
+
+        new SecureRandom().nextBytes(bytes);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+            buffer.append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        secret = buffer.toString().getBytes("UTF-8");
+        secretFile = GrammaticaClient.getSecretFile(getPort());
+        dir = secretFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("couldn't create directory " + dir);
+        }
+        secretFile.delete();
+        try {
+            out = Files.newOutputStream(Files.createFile(
+                secretFile.toPath(),
+                PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rw-------"))));
+        } catch (UnsupportedOperationException e) {
+            out = Files.newOutputStream(secretFile.toPath(),
+                                        StandardOpenOption.CREATE_NEW);
+            secretFile.setReadable(false, false);
+            secretFile.setWritable(false, false);
+            secretFile.setReadable(true, true);
+            secretFile.setWritable(true, true);
+        }
+        try {
+            out.write(secret);
+            out.write('\n');
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Checks if a line contains the daemon secret. The comparison
+     * time doesn't depend on the number of matching characters.
+     *
+     * @param line           the line to check, or null
+     *
+     * @return true if the line contains the daemon secret, or
+     *         false otherwise
+     *
+     * @throws IOException if the line couldn't be encoded
+     */
+    private boolean isSecret(String line) throws IOException {
+        return line != null
+            && MessageDigest.isEqual(secret, line.getBytes("UTF-8"));
+    }
+
+    /**
+     * Accepts and processes requests until the daemon is stopped.
+     * Each connection is handled in a separate thread.
+     */
+    public void run() {
+        Socket  socket;
+
+        try {
+            while (true) {
+                socket = server.accept();
+                executor.execute(new Request(socket));
+            }
+        } catch (IOException e) {
+            // Server socket closed
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Stops the daemon. No further connections will be accepted, but
+     * requests currently being processed will be completed. The
+     * daemon secret file is removed.
+     */
+    public void stop() {
+        try {
+            server.close();
+        } catch (IOException ignore) {
+            // Do nothing
+        }
+        executor.shutdown();
+        synchronized (this) {
+            if (secretFile != null) {
+                secretFile.delete();
+                secretFile = null;
+            }
+        }
+    }
+
+    /**
+     * Processes a single request.
+     *
+     * @param line           the request line
+     * @param out            the output writer
+     * @param err            the error writer
+     *
+     * @return the request exit code
+     */
+    private int process(String line, PrintWriter out, PrintWriter err) {
+        String[]  request = line.split("\t");
+        Entry     entry;
+        Parser    parser;
+
+        if (request.length == 1 && request[0].equals("stop")) {
+            stop();
+            return 0;
+        } else if (request.length != 3) {
+            err.println("Error: malformed request: " + line);
+            return 1;
+        }
+        try {
+            entry = getEntry(new File(request[1]));
+        } catch (FileNotFoundException e) {
+            err.println("Error: couldn't open file:");
+            err.println("    " + request[1]);
+            return 1;
+        } catch (ParserLogException e) {
+            printErrors(request[1], e, err);
+            return 1;
+        } catch (GrammarException e) {
+            err.println("Error: in " + e.getFile() + ": " + e.getMessage());
+            return 1;
+        }
+        parser = entry.borrowParser(err);
+        if (parser == null) {
+            return 2;
+        }
+        try {
+            return process(request[0],
+                           parser,
+                           new File(request[2]),
+                           out,
+                           err);
+        } finally {
+            entry.returnParser(parser);
+        }
+    }
+
+    /**
+     * Processes a tokenize, parse or validate request.
+     *
+     * @param action         the request action
+     * @param parser         the parser to use
+     * @param file           the input file
+     * @param out            the output writer
+     * @param err            the error writer
+     *
+     * @return the request exit code
+     */
+    private int process(String action,
+                        Parser parser,
+                        File file,
+                        PrintWriter out,
+                        PrintWriter err) {
+
+        Tokenizer  tokenizer = parser.getTokenizer();
+        Analyzer   analyzer;
+        Token      token;
+
+        try {
+            if (action.equals("tokenize")) {
+                tokenizer.reset(new BufferedReader(new FileReader(file)));
+                out.println("Tokens from " + file + ":");
+                while ((token = tokenizer.next()) != null) {
+                    out.println(token);
+                }
+            } else if (action.equals("parse")) {
+                analyzer = new TreePrinter(out);
+                parser.reset(new BufferedReader(new FileReader(file)),
+                             analyzer);
+                out.println("Parse tree from " + file + ":");
+                parser.parse();
+            } else if (action.equals("validate")) {
+                parser.reset(new BufferedReader(new FileReader(file)),
+                             new Analyzer());
+                parser.parse();
+            } else {
+                err.println("Error: unrecognized action: " + action);
+                return 1;
+            }
+        } catch (FileNotFoundException e) {
+            err.println("Error: couldn't open file:");
+            err.println("    " + file);
+            return 1;
+        } catch (ParseException e) {
+            printError(file.toString(), e, err);
+            return 1;
+        } catch (ParserLogException e) {
+            printErrors(file.toString(), e, err);
+            return 1;
+        } catch (ParserCreationException e) {
+            err.println("Error: " + e.getMessage());
+            return 2;
+        } finally {
+            tokenizer.reset(null);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the grammar entry for a grammar file. The grammar will
+     * be loaded if not previously loaded, or if modified since last
+     * loaded.
+     *
+     * @param file           the grammar file
+     *
+     * @return the grammar entry
+     *
+     * @throws FileNotFoundException if the grammar file could not be
+     *             found
+     * @throws ParserLogException if the grammar file couldn't be
+     *             parsed correctly
+     * @throws GrammarException if the grammar wasn't valid
+     */
+    private Entry getEntry(File file)
+        throws FileNotFoundException, ParserLogException, GrammarException {
+
+        String  name;
+        Entry   entry;
+
+        try {
+            name = file.getCanonicalPath();
+        } catch (IOException e) {
+            name = file.getAbsolutePath();
+        }
+        synchronized (grammars) {
+            entry = (Entry) grammars.get(name);
+            if (entry == null || entry.modified != file.lastModified()) {
+                entry = new Entry(file);
+                grammars.put(name, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Prints a list of parse error messages.
+     *
+     * @param file           the input file name
+     * @param e              the parser log exception
+     * @param err            the error writer
+     */
+    private void printErrors(String file,
+                             ParserLogException e,
+                             PrintWriter err) {
+
+        for (int i = 0; i < e.getErrorCount(); i++) {
+            printError(file, e.getError(i), err);
+        }
+    }
+
+    /**
+     * Prints a parse error message.
+     *
+     * @param file           the input file name
+     * @param e              the parse error
+     * @param err            the error writer
+     */
+    private void printError(String file, ParseException e, PrintWriter err) {
+        StringBuffer  buffer = new StringBuffer();
+
+        buffer.append("Error: in ");
+        buffer.append(file);
+        if (e.getLine() > 0) {
+            buffer.append(": line ");
+            buffer.append(e.getLine());
+            buffer.append(", column ");
+            buffer.append(e.getColumn());
+        }
+        buffer.append(":\n    ");
+        buffer.append(e.getErrorMessage());
+        err.println(buffer.toString());
+    }
+
+    /**
+     * Starts a daemon listening on the specified port.
+     *
+     * @param args           the command-line arguments
+     */
+    public static void main(String[] args) {
+        int               port = DEFAULT_PORT;
+        GrammaticaDaemon  daemon;
+
+        try {
+            if (args.length > 0) {
+                port = Integer.parseInt(args[0]);
+            }
+            daemon = new GrammaticaDaemon(port);
+            System.out.println("Grammatica daemon listening on port " +
+                               daemon.getPort());
+            daemon.run();
+        } catch (NumberFormatException e) {
+            System.err.println("Error: invalid port number: " + args[0]);
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * A loaded grammar entry. Each entry contains a grammar and a
+     * pool of idle parsers for the grammar.
+     */
+    private class Entry {
+
+        /**
+         * The grammar file modification time.
+         */
+        public long modified;
+
+        /**
+         * The grammar.
+         */
+        private Grammar grammar;
+
+        /**
+         * The idle parsers.
+         */
+        private ArrayList parsers = new ArrayList();
+
+        /**
+         * Loads a new grammar entry.
+         *
+         * @param file           the grammar file
+         *
+         * @throws FileNotFoundException if the grammar file could
+         *             not be found
+         * @throws ParserLogException if the grammar file couldn't be
+         *             parsed correctly
+         * @throws GrammarException if the grammar wasn't valid
+         */
+        public Entry(File file)
+            throws FileNotFoundException, ParserLogException,
+                   GrammarException {
+
+            this.modified = file.lastModified();
+            this.grammar = Grammar.load(file);
+        }
+
+        /**
+         * Returns an idle parser, or creates a new one if none is
+         * available. The parser must be returned once it is no
+         * longer used.
+         *
+         * @param err            the error writer
+         *
+         * @return the parser, or
+         *         null if no parser could be created
+         */
+        public Parser borrowParser(PrintWriter err) {
+            synchronized (parsers) {
+                if (parsers.size() > 0) {
+                    return (Parser) parsers.remove(parsers.size() - 1);
+                }
+            }
+            try {
+                return grammar.createParser(grammar.createTokenizer(null));
+            } catch (GrammarException e) {
+                err.println("Error: " + e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Returns a parser to the pool of idle parsers.
+         *
+         * @param parser         the parser to return
+         */
+        public void returnParser(Parser parser) {
+            synchronized (parsers) {
+                parsers.add(parser);
+            }
+        }
+    }
+
+
+    /**
+     * A connection request handler.
+     */
+    private class Request implements Runnable {
+
+        /**
+         * The connection socket.
+         */
+        private Socket socket;
+
+        /**
+         * Creates a new request handler.
+         *
+         * @param socket         the connection socket
+         */
+        public Request(Socket socket) {
+            this.socket = socket;
+        }
+
+        /**
+         * Reads and checks the daemon secret, then reads the request
+         * line, processes it and writes the response.
+         */
+        public void run() {
+            BufferedReader  in;
+            PrintWriter     writer;
+            StringWriter    out = new StringWriter();
+            StringWriter    err = new StringWriter();
+            String          line;
+            int             code;
+
+            try {
+                in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), "UTF-8"));
+                writer = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(),
+                                           "UTF-8")));
+                if (!isSecret(in.readLine())) {
+                    writer.println("err Error: invalid daemon secret");
+                    writer.println("exit 2");
+                    writer.flush();
+                    return;
+                }
+                line = in.readLine();
+                if (line == null) {
+                    return;
+                }
+                try {
+                    code = process(line,
+                                   new PrintWriter(out, true),
+                                   new PrintWriter(err, true));
+                } catch (RuntimeException e) {
+                    e.printStackTrace(new PrintWriter(err, true));
+                    code = 2;
+                }
+                writeLines(writer, "out ", out.toString());
+                writeLines(writer, "err ", err.toString());
+                writer.println("exit " + code);
+                writer.flush();
+            } catch (SocketException ignore) {
+                // Connection closed by client
+            } catch (IOException ignore) {
+                // Connection closed by client
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ignore) {
+                    // Do nothing
+                }
+            }
+        }
+
+        /**
+         * Writes all the lines in a string with a prefix.
+         *
+         * @param writer         the output writer
+         * @param prefix         the line prefix
+         * @param text           the text to write
+         */
+        private void writeLines(PrintWriter writer,
+                                String prefix,
+                                String text) {
+
+            int  start = 0;
+            int  end;
+
+            while (start < text.length()) {
+                end = text.indexOf('\n', start);
+                if (end < 0) {
+                    end = text.length();
+                }
+                writer.print(prefix);
+                writer.println(text.substring(start, end).replace("\r", ""));
+                start = end + 1;
+            }
+        }
+    }
+}
@@ -220,7 +220,7 @@ class SecondPassAnalyzer extends GrammarAnalyzer {
                     alt.addElement(elem);
                 }
             } else if (child.getId() == GrammarConstants.PRODUCTION) {
-                node.addValues(child.getAllValues());
+                node.addValues(child);
             }
         }
 
@@ -17,12 +17,16 @@ package net.percederberg.grammatica.ant;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
 
+import net.percederberg.grammatica.Benchmark;
 import net.percederberg.grammatica.Grammar;
 import net.percederberg.grammatica.GrammarException;
 import net.percederberg.grammatica.TreePrinter;
 import net.percederberg.grammatica.parser.Analyzer;
-import net.percederberg.grammatica.parser.Node;
 import net.percederberg.grammatica.parser.ParseException;
 import net.percederberg.grammatica.parser.Parser;
 import net.percederberg.grammatica.parser.ParserCreationException;
@@ -35,7 +39,7 @@ import net.percederberg.grammatica.parser.Tokenizer;
  * grammar in various ways.
  *
  * @author   Per Cederberg
- * @version  1.4
+ * @version  1.7
  * @since    1.4
  */
 public class ValidationElement implements ProcessingElement {
@@ -55,6 +59,21 @@ public class ValidationElement implements ProcessingElement {
      */
     private boolean quiet = false;
 
+    /**
+     * The number of profile warmup iterations, or -1 for default.
+     */
+    private int warmup = -1;
+
+    /**
+     * The number of profile iterations, or -1 for default.
+     */
+    private int iterations = -1;
+
+    /**
+     * The profile JSON output file, or null for none.
+     */
+    private File jsonFile = null;
+
     /**
      * Creates a new validation element.
      */
@@ -91,6 +110,43 @@ public class ValidationElement implements ProcessingElement {
         this.quiet = quiet;
     }
 
+    /**
+     * Sets the number of warmup iterations. This is only used by
+     * the profile validation type.
+     *
+     * @param warmup         the number of warmup iterations
+     *
+     * @since 1.7
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Sets the number of measured iterations. This is only used by
+     * the profile validation type.
+     *
+     * @param iterations     the number of measured iterations
+     *
+     * @since 1.7
+     */
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * Sets the JSON output file. If set, the profile validation type
+     * will also write the benchmark results in JSON format to this
+     * file.
+     *
+     * @param file           the JSON output file
+     *
+     * @since 1.7
+     */
+    public void setJsonfile(File file) {
+        this.jsonFile = file;
+    }
+
     /**
      * Validates all attributes in the element.
      *
@@ -246,8 +302,9 @@ public class ValidationElement implements ProcessingElement {
     }
 
     /**
-     * Parses the input file with the grammar and prints profiling
-     * information.
+     * Benchmarks the tokenizer, parser and analyzer with the input
+     * file and prints profiling information. If a JSON output file
+     * has been set, the results are also written to that file.
      *
      * @param grammar        the grammar to use
      *
@@ -255,50 +312,19 @@ public class ValidationElement implements ProcessingElement {
      *             correctly
      */
     private void profile(Grammar grammar) throws RuntimeException {
-        Tokenizer  tokenizer;
-        Parser     parser;
-        Node       node;
-        long       time;
-        int        counter;
+        Benchmark  benchmark = new Benchmark(grammar);
+        Writer     writer;
 
-        // Profile tokenizer
-        try {
-            tokenizer = grammar.createTokenizer(new FileReader(file));
-            System.out.println("Tokenizing " + file);
-            time = System.currentTimeMillis();
-            counter = 0;
-            while (tokenizer.next() != null) {
-                counter++;
-            }
-            time = System.currentTimeMillis() - time;
-            System.out.println("  Time elapsed:  " + time + " millisec");
-            System.out.println("  Tokens found:  " + counter);
-            System.out.println("  Average speed: " + (counter / time) +
-                               " tokens/millisec");
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e.getMessage());
-        } catch (GrammarException e) {
-            throw new RuntimeException("in grammar " + grammar.getFileName() +
-                                       ": " + e.getMessage());
-        } catch (ParseException e) {
-            throw new RuntimeException("in file " + file + ": " +
-                                       e.getMessage());
+        if (warmup >= 0) {
+            benchmark.setWarmup(warmup);
+        }
+        if (iterations >= 0) {
+            benchmark.setIterations(iterations);
         }
-
-        // Profile parser
         try {
-            tokenizer = grammar.createTokenizer(new FileReader(file));
-            parser = grammar.createParser(tokenizer);
-            System.out.println("Parsing " + file);
-            time = System.currentTimeMillis();
-            node = parser.parse();
-            time = System.currentTimeMillis() - time;
-            counter = 1 + node.getDescendantCount();
-            System.out.println("  Time elapsed:  " + time + " millisec");
-            System.out.println("  Nodes found:   " + counter);
-            System.out.println("  Average speed: " + (counter / time) +
-                               " nodes/millisec");
-        } catch (FileNotFoundException e) {
+            System.out.println("Profiling " + file);
+            benchmark.run(Collections.singletonList(file));
+        } catch (IOException e) {
             throw new RuntimeException(e.getMessage());
         } catch (GrammarException e) {
             throw new RuntimeException("in grammar " + grammar.getFileName() +
@@ -310,5 +336,21 @@ public class ValidationElement implements ProcessingElement {
             throw new RuntimeException("in file " + file + ": " +
                                        e.getMessage());
         }
+        if (!quiet) {
+            benchmark.print(System.out);
+        }
+        if (jsonFile != null) {
+            try {
+                writer = new FileWriter(jsonFile);
+                try {
+                    writer.write(benchmark.toJson());
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("couldn't write " + jsonFile +
+                                           ": " + e.getMessage());
+            }
+        }
     }
 }
@@ -32,10 +32,51 @@ import java.util.ArrayList;
  * right as child nodes are added (to the right).
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 public class Analyzer {
 
+    /**
+     * The child node stack for in place analysis in the current
+     * thread. The stack is shared by all analyzers, as each nested
+     * analysis only uses the stack entries above the ones of the
+     * enclosing analysis.
+     */
+    private static final ThreadLocal STACK = new ThreadLocal();
+
+    /**
+     * The node arena to use for new production nodes, or null for
+     * none.
+     */
+    private NodeArena arena = null;
+
+    /**
+     * Returns the node arena used for new production nodes.
+     *
+     * @return the node arena, or
+     *         null if no arena is used
+     *
+     * @since 1.7
+     */
+    public NodeArena getNodeArena() {
+        return arena;
+    }
+
+    /**
+     * Sets the node arena to use for new production nodes. By
+     * default no arena is used, and all production nodes are
+     * allocated normally.
+     *
+     * @param arena          the node arena, or null for none
+     *
+     * @see Parser#setNodeArena
+     *
+     * @since 1.7
+     */
+    public void setNodeArena(NodeArena arena) {
+        this.arena = arena;
+    }
+
     /**
      * Resets this analyzer when the parser is reset for another
      * input stream. The default implementation of this method does
@@ -65,8 +106,16 @@ public class Analyzer {
      */
     public Node analyze(Node node) throws ParserLogException {
         ParserLogException  log = new ParserLogException();
+        ParserEvents        events = ParserEvents.INSTANCE;
+        Object              event = null;
 
+        if (events != null) {
+            event = events.beginAnalyze();
+        }
         node = analyze(node, log);
+        if (event != null) {
+            events.endAnalyze(event, this, node, log.getErrorCount());
+        }
         if (log.getErrorCount() > 0) {
             throw log;
         }
@@ -87,7 +136,7 @@ public class Analyzer {
      *
      * @return the resulting parse tree node
      */
-    private Node analyze(Node node, ParserLogException log) {
+    Node analyze(Node node, ParserLogException log) {
         Production  prod;
         int         errorCount;
 
@@ -132,10 +181,136 @@ public class Analyzer {
         return null;
     }
 
+    /**
+     * Analyzes a parse tree node in place by traversing all it's
+     * child nodes. The tree traversal is depth-first, and the
+     * callback methods will be called in the same order as for
+     * analyze(). Unlike analyze(), the existing production nodes are
+     * reused instead of creating new ones. The children and values
+     * of each production are removed before calling enter(), and
+     * the children are then added back by the child() callback,
+     * replaced by whatever node the exit() callback returned. An
+     * analysis pass that returns the same nodes will therefore not
+     * allocate any new objects, as the child node stack is reused
+     * by all calls in the same thread. The analyzer callbacks may
+     * analyze other parse trees, and the same analyzer may be used
+     * from several threads, as long as each thread analyzes a
+     * different tree.
+     * Note that the nodes in a compact tree cannot be analyzed in
+     * place.
+     *
+     * @param node           the parse tree node to process
+     *
+     * @return the resulting parse tree node
+     *
+     * @throws ParserLogException if the node analysis discovered
+     *             errors
+     *
+     * @see #analyze(Node)
+     *
+     * @since 1.7
+     */
+    public Node analyzeInPlace(Node node) throws ParserLogException {
+        ParserLogException  log = new ParserLogException();
+        ParserEvents        events = ParserEvents.INSTANCE;
+        Object              event = null;
+        ArrayList           stack = (ArrayList) STACK.get();
+        int                 size;
+
+        if (stack == null) {
+            stack = new ArrayList(32);
+            STACK.set(stack);
+        }
+        size = stack.size();
+        if (events != null) {
+            event = events.beginAnalyze();
+        }
+        try {
+            node = analyzeInPlace(node, stack, log);
+        } finally {
+            while (stack.size() > size) {
+                stack.remove(stack.size() - 1);
+            }
+        }
+        if (event != null) {
+            events.endAnalyze(event, this, node, log.getErrorCount());
+        }
+        if (log.getErrorCount() > 0) {
+            throw log;
+        }
+        return node;
+    }
+
+    /**
+     * Analyzes a parse tree node in place by traversing all it's
+     * child nodes. The child nodes of each production are kept in
+     * the stack list while being processed.
+     *
+     * @param node           the parse tree node to process
+     * @param stack          the child node stack
+     * @param log            the parser error log
+     *
+     * @return the resulting parse tree node
+     */
+    private Node analyzeInPlace(Node node,
+                                ArrayList stack,
+                                ParserLogException log) {
+
+        Production  prod;
+        int         errorCount;
+        int         first;
+        int         count;
+
+        errorCount = log.getErrorCount();
+        node.removeAllValues();
+        if (node instanceof Production) {
+            prod = (Production) node;
+            first = stack.size();
+            count = prod.getChildCount();
+            for (int i = 0; i < count; i++) {
+                stack.add(prod.getChildAt(i));
+            }
+            prod.removeAllChildren();
+            try {
+                enter(prod);
+            } catch (ParseException e) {
+                log.addError(e);
+            }
+            for (int i = 0; i < count; i++) {
+                try {
+                    node = (Node) stack.get(first + i);
+                    child(prod, analyzeInPlace(node, stack, log));
+                } catch (ParseException e) {
+                    log.addError(e);
+                }
+                stack.set(first + i, null);
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                stack.remove(first + i);
+            }
+            node = prod;
+        } else {
+            try {
+                enter(node);
+            } catch (ParseException e) {
+                log.addError(e);
+            }
+        }
+        try {
+            return exit(node);
+        } catch (ParseException e) {
+            if (errorCount == log.getErrorCount()) {
+                log.addError(e);
+            }
+        }
+        return null;
+    }
+
     /**
      * Factory method to create a new production node. This method
      * can be overridden to provide other production implementations
-     * than the default one.
+     * than the default one. If a node arena has been set, the
+     * production node will be taken from the arena.
      *
      * @param pattern        the production pattern
      *
@@ -144,7 +319,11 @@ public class Analyzer {
      * @since 1.5
      */
     protected Production newProduction(ProductionPattern pattern) {
-        return new Production(pattern);
+        if (arena != null) {
+            return arena.newProduction(pattern);
+        } else {
+            return new Production(pattern);
+        }
     }
 
     /**
@@ -305,9 +484,11 @@ public class Analyzer {
 
     /**
      * Returns the node integer value at the specified position. If
-     * either the node is null, or the value is not an instance of
-     * the Integer class, this method will throw a parse exception
-     * with the internal error type.
+     * either the node is null, or the value is not an integer (either
+     * added with addIntValue() or as an instance of the Integer
+     * class), this method will throw a parse exception with the
+     * internal error type. No objects are created when reading
+     * primitive values.
      *
      * @param node           the parse tree node
      * @param pos            the child position
@@ -318,11 +499,8 @@ public class Analyzer {
      *             value wasn't an integer
      */
     protected int getIntValue(Node node, int pos) throws ParseException {
-        Object  value;
-
-        value = getValue(node, pos);
-        if (value instanceof Integer) {
-            return ((Integer) value).intValue();
+        if (getValueType(node, pos) == Integer.class) {
+            return node.getIntValue(pos);
         } else {
             throw new ParseException(
                 ParseException.INTERNAL_ERROR,
@@ -333,6 +511,105 @@ public class Analyzer {
         }
     }
 
+    /**
+     * Returns the node long integer value at the specified position.
+     * If either the node is null, or the value is not an integer or
+     * long integer, this method will throw a parse exception with
+     * the internal error type. No objects are created when reading
+     * primitive values.
+     *
+     * @param node           the parse tree node
+     * @param pos            the child position
+     *
+     * @return the value object
+     *
+     * @throws ParseException if either the node was null, or the
+     *             value wasn't a long integer
+     *
+     * @since 1.7
+     */
+    protected long getLongValue(Node node, int pos) throws ParseException {
+        Class  type = getValueType(node, pos);
+
+        if (type == Long.class || type == Integer.class) {
+            return node.getLongValue(pos);
+        } else {
+            throw new ParseException(
+                ParseException.INTERNAL_ERROR,
+                "node '" + node.getName() + "' has no long integer " +
+                "value at position " + pos,
+                node.getStartLine(),
+                node.getStartColumn());
+        }
+    }
+
+    /**
+     * Returns the node floating-point value at the specified
+     * position. If either the node is null, or the value is not a
+     * double (either added with addDoubleValue() or as an instance
+     * of the Double class), this method will throw a parse exception
+     * with the internal error type. No objects are created when
+     * reading primitive values.
+     *
+     * @param node           the parse tree node
+     * @param pos            the child position
+     *
+     * @return the value object
+     *
+     * @throws ParseException if either the node was null, or the
+     *             value wasn't a double
+     *
+     * @since 1.7
+     */
+    protected double getDoubleValue(Node node, int pos)
+        throws ParseException {
+
+        if (getValueType(node, pos) == Double.class) {
+            return node.getDoubleValue(pos);
+        } else {
+            throw new ParseException(
+                ParseException.INTERNAL_ERROR,
+                "node '" + node.getName() + "' has no double value " +
+                "at position " + pos,
+                node.getStartLine(),
+                node.getStartColumn());
+        }
+    }
+
+    /**
+     * Returns the node value type at the specified position. If
+     * either the node or the value is null, this method will throw a
+     * parse exception with the internal error type.
+     *
+     * @param node           the parse tree node
+     * @param pos            the child position
+     *
+     * @return the value class
+     *
+     * @throws ParseException if either the node or the value was null
+     */
+    private Class getValueType(Node node, int pos) throws ParseException {
+        Class  type;
+
+        if (node == null) {
+            throw new ParseException(
+                ParseException.INTERNAL_ERROR,
+                "attempt to read 'null' parse tree node",
+                -1,
+                -1);
+        }
+        type = node.getValueType(pos);
+        if (type == null) {
+            throw new ParseException(
+                ParseException.INTERNAL_ERROR,
+                "node '" + node.getName() + "' has no value at " +
+                "position " + pos,
+                node.getStartLine(),
+                node.getStartColumn());
+        }
+        return type;
+    }
+
     /**
      * Returns the node string value at the specified position. If
      * either the node is null, or the value is not an instance of
@@ -377,15 +654,28 @@ public class Analyzer {
     protected ArrayList getChildValues(Node node) {
         ArrayList  result = new ArrayList();
         Node       child;
-        ArrayList  values;
 
         for (int i = 0; i < node.getChildCount(); i++) {
             child = node.getChildAt(i);
-            values = child.getAllValues();
-            if (values != null) {
-                result.addAll(values);
+            for (int j = 0; j < child.getValueCount(); j++) {
+                result.add(child.getValue(j));
             }
         }
         return result;
     }
+
+    /**
+     * Adds all the node values for all child nodes to a node. Unlike
+     * getChildValues(), this method copies primitive values without
+     * creating any objects.
+     *
+     * @param node           the parse tree node
+     *
+     * @since 1.7
+     */
+    protected void addChildValues(Node node) {
+        for (int i = 0; i < node.getChildCount(); i++) {
+            node.addValues(node.getChildAt(i));
+        }
+    }
 }
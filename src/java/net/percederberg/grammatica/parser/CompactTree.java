@@ -0,0 +1,993 @@
+/*
+ * CompactTree.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * A compact parse tree. This class stores a parse tree in a set of
+ * parallel primitive arrays, instead of one object per node. Each
+ * node is identified by an index, and the tree structure is kept as
+ * parent, first child and next sibling indices. Token images are
+ * stored in a single shared character array.
+ *
+ * The compact tree can be traversed either directly through the
+ * index-based cursor methods, or through lightweight node views
+ * returned by getRoot() and getNode(). The node views are ordinary
+ * Production and Token instances, so existing analyzers can process
+ * them with Analyzer.analyze(). The node views are created on demand
+ * and then kept, so the same view object is always returned for a
+ * node. The views are read-only, however, and adding child nodes to
+ * them is not supported. Node values may be added to the views.
+ *
+ * A compact tree is normally created during parsing with a
+ * CompactTreeBuilder analyzer, but may also be created from an
+ * existing parse tree. A complete tree can be converted back to
+ * ordinary parse tree nodes with toTree(), and stored in a binary
+ * format with write().
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see CompactTreeBuilder
+ */
+public class CompactTree {
+
+    /**
+     * The initial node array capacity.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The table of patterns referenced by the nodes. The entries are
+     * either TokenPattern or ProductionPattern objects.
+     */
+    private Object[] patterns = new Object[16];
+
+    /**
+     * The number of patterns in the pattern table.
+     */
+    private int patternCount = 0;
+
+    /**
+     * The pattern table index map. This map links each pattern to
+     * its index (as an Integer) in the pattern table.
+     */
+    private HashMap patternIndex = new HashMap();
+
+    /**
+     * The pattern table index for each node.
+     */
+    private int[] type = new int[INITIAL_CAPACITY];
+
+    /**
+     * The parent node index for each node, or -1 for the root.
+     */
+    private int[] parent = new int[INITIAL_CAPACITY];
+
+    /**
+     * The first child node index for each node, or -1 for none.
+     */
+    private int[] firstChild = new int[INITIAL_CAPACITY];
+
+    /**
+     * The next sibling node index for each node, or -1 for none.
+     */
+    private int[] nextSibling = new int[INITIAL_CAPACITY];
+
+    /**
+     * The start line for each token node, or -1 for productions.
+     */
+    private int[] line = new int[INITIAL_CAPACITY];
+
+    /**
+     * The start column for each token node, or -1 for productions.
+     */
+    private int[] column = new int[INITIAL_CAPACITY];
+
+    /**
+     * The token image start offset in the text array for each token
+     * node. A value of -1 is used for token images identical to the
+     * token pattern string (and for productions).
+     */
+    private int[] textStart = new int[INITIAL_CAPACITY];
+
+    /**
+     * The token image length for each token node.
+     */
+    private int[] textLength = new int[INITIAL_CAPACITY];
+
+    /**
+     * The number of nodes in the tree.
+     */
+    private int size = 0;
+
+    /**
+     * The root node index, or -1 if not yet available.
+     */
+    private int root = -1;
+
+    /**
+     * The shared token image character array.
+     */
+    private char[] text = new char[INITIAL_CAPACITY * 4];
+
+    /**
+     * The number of characters used in the text array.
+     */
+    private int textSize = 0;
+
+    /**
+     * The node views created, indexed by node index, or null if no
+     * views have been created.
+     */
+    private Node[] views = null;
+
+    /**
+     * The first child index for each production currently being
+     * built.
+     */
+    private int[] openFirst = new int[16];
+
+    /**
+     * The last child index for each production currently being
+     * built.
+     */
+    private int[] openLast = new int[16];
+
+    /**
+     * The number of productions currently being built.
+     */
+    private int openCount = 0;
+
+    /**
+     * Creates a new empty compact tree.
+     */
+    public CompactTree() {
+        // Nothing to initialize
+    }
+
+    /**
+     * Creates a new compact tree from an existing parse tree. The
+     * existing parse tree is not modified. Any node values are
+     * ignored.
+     *
+     * @param node           the parse tree root node
+     */
+    public CompactTree(Node node) {
+        add(node);
+        trimToSize();
+    }
+
+    /**
+     * Adds a parse tree node and all it's child nodes to this tree.
+     *
+     * @param node           the parse tree node to add
+     */
+    private void add(Node node) {
+        if (node instanceof Token) {
+            addToken((Token) node);
+        } else if (node instanceof Production) {
+            startProduction();
+            for (int i = 0; i < node.getChildCount(); i++) {
+                add(node.getChildAt(i));
+            }
+            endProduction(((Production) node).getPattern());
+        }
+    }
+
+    /**
+     * Starts a new production. Any nodes added before the
+     * corresponding call to endProduction() will become children to
+     * the production.
+     */
+    void startProduction() {
+        if (openCount >= openFirst.length) {
+            openFirst = grow(openFirst, openCount, openCount * 2);
+            openLast = grow(openLast, openCount, openCount * 2);
+        }
+        openFirst[openCount] = -1;
+        openLast[openCount] = -1;
+        openCount++;
+    }
+
+    /**
+     * Ends the current production. A new production node will be
+     * added to the tree with all the nodes added since the
+     * corresponding call to startProduction() as children.
+     *
+     * @param pattern        the production pattern
+     *
+     * @return the production node index
+     */
+    int endProduction(ProductionPattern pattern) {
+        int  index;
+
+        openCount--;
+        index = newNode(pattern);
+        firstChild[index] = openFirst[openCount];
+        for (int i = firstChild[index]; i >= 0; i = nextSibling[i]) {
+            parent[i] = index;
+        }
+        attach(index);
+        return index;
+    }
+
+    /**
+     * Adds a token node to the current production.
+     *
+     * @param token          the token to add
+     *
+     * @return the token node index
+     */
+    int addToken(Token token) {
+        TokenPattern  pattern = token.getPattern();
+        String        image = token.getImage();
+        int           index;
+
+        index = newNode(pattern);
+        line[index] = token.getStartLine();
+        column[index] = token.getStartColumn();
+        if (pattern.getType() == TokenPattern.STRING_TYPE
+         && image.equals(pattern.getPattern())) {
+
+            textStart[index] = -1;
+        } else {
+            if (textSize + image.length() > text.length) {
+                text = grow(text, textSize + image.length());
+            }
+            image.getChars(0, image.length(), text, textSize);
+            textStart[index] = textSize;
+            textSize += image.length();
+        }
+        textLength[index] = image.length();
+        attach(index);
+        return index;
+    }
+
+    /**
+     * Creates a new node in the node arrays. All node links will be
+     * set to -1.
+     *
+     * @param pattern        the token or production pattern
+     *
+     * @return the new node index
+     */
+    private int newNode(Object pattern) {
+        Integer  value = (Integer) patternIndex.get(pattern);
+        int      index;
+
+        if (value == null) {
+            if (patternCount >= patterns.length) {
+                Object[] temp = new Object[patternCount * 2];
+                System.arraycopy(patterns, 0, temp, 0, patternCount);
+                patterns = temp;
+            }
+            value = new Integer(patternCount);
+            patterns[patternCount++] = pattern;
+            patternIndex.put(pattern, value);
+        }
+        if (size >= type.length) {
+            ensureCapacity(size * 2);
+        }
+        index = size++;
+        type[index] = value.intValue();
+        parent[index] = -1;
+        firstChild[index] = -1;
+        nextSibling[index] = -1;
+        line[index] = -1;
+        column[index] = -1;
+        textStart[index] = -1;
+        textLength[index] = 0;
+        return index;
+    }
+
+    /**
+     * Attaches a node to the current production. If no production is
+     * currently being built, the node will become the tree root.
+     *
+     * @param index          the node index
+     */
+    private void attach(int index) {
+        int  last;
+
+        if (openCount <= 0) {
+            root = index;
+        } else {
+            last = openLast[openCount - 1];
+            if (last < 0) {
+                openFirst[openCount - 1] = index;
+            } else {
+                nextSibling[last] = index;
+            }
+            openLast[openCount - 1] = index;
+        }
+    }
+
+    /**
+     * Ensures that the node arrays have the specified capacity.
+     *
+     * @param capacity       the minimum node capacity
+     */
+    private void ensureCapacity(int capacity) {
+        type = grow(type, size, capacity);
+        parent = grow(parent, size, capacity);
+        firstChild = grow(firstChild, size, capacity);
+        nextSibling = grow(nextSibling, size, capacity);
+        line = grow(line, size, capacity);
+        column = grow(column, size, capacity);
+        textStart = grow(textStart, size, capacity);
+        textLength = grow(textLength, size, capacity);
+    }
+
+    /**
+     * Returns a resized copy of an integer array.
+     *
+     * @param array          the array to copy
+     * @param length         the number of array elements to copy
+     * @param capacity       the new array capacity
+     *
+     * @return the resized array copy
+     */
+    private int[] grow(int[] array, int length, int capacity) {
+        int[]  temp = new int[Math.max(capacity, 16)];
+
+        System.arraycopy(array, 0, temp, 0, length);
+        return temp;
+    }
+
+    /**
+     * Returns a resized copy of a character array.
+     *
+     * @param array          the array to copy
+     * @param capacity       the minimum array capacity
+     *
+     * @return the resized array copy
+     */
+    private char[] grow(char[] array, int capacity) {
+        char[]  temp = new char[Math.max(capacity, array.length * 2)];
+
+        System.arraycopy(array, 0, temp, 0, textSize);
+        return temp;
+    }
+
+    /**
+     * Trims the internal arrays to the current tree size. This
+     * method may be called once the tree is complete in order to
+     * minimize the memory used.
+     */
+    public void trimToSize() {
+        char[]  temp;
+
+        if (size < type.length) {
+            type = trim(type);
+            parent = trim(parent);
+            firstChild = trim(firstChild);
+            nextSibling = trim(nextSibling);
+            line = trim(line);
+            column = trim(column);
+            textStart = trim(textStart);
+            textLength = trim(textLength);
+        }
+        if (textSize < text.length) {
+            temp = new char[textSize];
+            System.arraycopy(text, 0, temp, 0, textSize);
+            text = temp;
+        }
+    }
+
+    /**
+     * Returns a copy of an integer array trimmed to the tree size.
+     *
+     * @param array          the array to copy
+     *
+     * @return the trimmed array copy
+     */
+    private int[] trim(int[] array) {
+        int[]  temp = new int[size];
+
+        System.arraycopy(array, 0, temp, 0, size);
+        return temp;
+    }
+
+    /**
+     * Returns the approximate number of bytes of memory used by
+     * this tree.
+     *
+     * @return the approximate memory size in bytes
+     */
+    int getMemorySize() {
+        return 64 + type.length * 32 + text.length * 2 + patternCount * 8;
+    }
+
+    /**
+     * Writes this tree in a compact binary format. The tree patterns
+     * are written by type and id only, so the tree can only be read
+     * back with a parser for the same grammar.
+     *
+     * @param out            the output to write to
+     *
+     * @throws IOException if the tree couldn't be written
+     *
+     * @see #read
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(patternCount);
+        for (int i = 0; i < patternCount; i++) {
+            if (patterns[i] instanceof TokenPattern) {
+                out.writeBoolean(true);
+                out.writeInt(((TokenPattern) patterns[i]).getId());
+            } else {
+                out.writeBoolean(false);
+                out.writeInt(((ProductionPattern) patterns[i]).getId());
+            }
+        }
+        out.writeInt(size);
+        out.writeInt(root);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(type[i]);
+            out.writeInt(parent[i]);
+            out.writeInt(firstChild[i]);
+            out.writeInt(nextSibling[i]);
+            out.writeInt(line[i]);
+            out.writeInt(column[i]);
+            out.writeInt(textStart[i]);
+            out.writeInt(textLength[i]);
+        }
+        out.writeInt(textSize);
+        for (int i = 0; i < textSize; i++) {
+            out.writeChar(text[i]);
+        }
+    }
+
+    /**
+     * Reads a tree in the binary format created by write(). The
+     * token and production patterns are resolved with the specified
+     * parser. All the counts read are checked against the number of
+     * bytes available, and all the node links and text positions are
+     * validated, so that a corrupt input is always reported as an
+     * I/O error.
+     *
+     * @param in             the input to read from
+     * @param parser         the parser with the tree patterns
+     * @param length         the number of bytes available
+     *
+     * @return the compact tree read
+     *
+     * @throws IOException if the tree couldn't be read, if it was
+     *             corrupt, or if it referenced patterns not present
+     *             in the parser
+     *
+     * @see #write
+     */
+    static CompactTree read(DataInput in, Parser parser, long length)
+        throws IOException {
+
+        CompactTree  tree = new CompactTree();
+        Object       pattern;
+        int          id;
+        int          count;
+
+        tree.patternCount = in.readInt();
+        length -= 4;
+        if (tree.patternCount < 0 || tree.patternCount * 5L > length) {
+            throw new IOException("invalid pattern count");
+        }
+        length -= tree.patternCount * 5L;
+        tree.patterns = new Object[Math.max(tree.patternCount, 1)];
+        for (int i = 0; i < tree.patternCount; i++) {
+            if (in.readBoolean()) {
+                id = in.readInt();
+                pattern = parser.getTokenizer().getPattern(id);
+            } else {
+                id = in.readInt();
+                pattern = parser.getPattern(id);
+            }
+            if (pattern == null) {
+                throw new IOException("unknown pattern id " + id);
+            }
+            tree.patterns[i] = pattern;
+            tree.patternIndex.put(pattern, new Integer(i));
+        }
+        count = in.readInt();
+        tree.root = in.readInt();
+        length -= 8;
+        if (count < 0 || count * 32L > length) {
+            throw new IOException("invalid node count");
+        }
+        length -= count * 32L;
+        checkIndex(tree.root, -1, count, "root");
+        tree.ensureCapacity(count);
+        tree.size = count;
+        for (int i = 0; i < tree.size; i++) {
+            tree.type[i] = in.readInt();
+            tree.parent[i] = in.readInt();
+            tree.firstChild[i] = in.readInt();
+            tree.nextSibling[i] = in.readInt();
+            tree.line[i] = in.readInt();
+            tree.column[i] = in.readInt();
+            tree.textStart[i] = in.readInt();
+            tree.textLength[i] = in.readInt();
+            if (tree.type[i] < 0 || tree.type[i] >= tree.patternCount) {
+                throw new IOException("invalid node pattern index");
+            }
+            checkIndex(tree.parent[i], i + 1, count, "parent");
+            checkIndex(tree.firstChild[i], 0, i, "child");
+            checkIndex(tree.nextSibling[i], i + 1, count, "sibling");
+        }
+        for (int i = 0; i < tree.size; i++) {
+            id = tree.firstChild[i];
+            if (id >= 0 && tree.parent[id] != i) {
+                throw new IOException("invalid child index " + id);
+            }
+            id = tree.nextSibling[i];
+            if (id >= 0 && tree.parent[i] < 0) {
+                throw new IOException("invalid sibling index " + id);
+            } else if (id >= 0 && tree.parent[id] != tree.parent[i]) {
+                throw new IOException("invalid sibling index " + id);
+            }
+        }
+        tree.textSize = in.readInt();
+        length -= 4;
+        if (tree.textSize < 0 || tree.textSize * 2L > length) {
+            throw new IOException("invalid text size");
+        }
+        tree.text = new char[tree.textSize];
+        for (int i = 0; i < tree.textSize; i++) {
+            tree.text[i] = in.readChar();
+        }
+        for (int i = 0; i < tree.size; i++) {
+            if (tree.textLength[i] < 0 || tree.textStart[i] < -1) {
+                throw new IOException("invalid text index " + i);
+            } else if (tree.textStart[i] >= 0
+                    && tree.textStart[i] + (long) tree.textLength[i]
+                     > tree.textSize) {
+
+                throw new IOException("invalid text index " + i);
+            }
+        }
+        tree.trimToSize();
+        return tree;
+    }
+
+    /**
+     * Checks that an index read is either -1 or inside a range.
+     *
+     * @param index          the index to check
+     * @param min            the minimum index value (inclusive)
+     * @param max            the maximum index value (exclusive)
+     * @param name           the index name
+     *
+     * @throws IOException if the index was out of range
+     */
+    private static void checkIndex(int index, int min, int max, String name)
+        throws IOException {
+
+        if (index != -1 && (index < min || index >= max)) {
+            throw new IOException("invalid " + name + " index " + index);
+        }
+    }
+
+    /**
+     * Creates a new parse tree from this compact tree. Contrary to
+     * the node views, the parse tree nodes returned are ordinary
+     * Production and Token instances that can be freely modified.
+     * The nodes are created in index order, so each production is
+     * created after all its children.
+     *
+     * @return the parse tree root node, or
+     *         null if the tree is empty
+     */
+    public Node toTree() {
+        Node[]      nodes = new Node[size];
+        Production  prod;
+        Object      pattern;
+
+        for (int i = 0; i < size; i++) {
+            pattern = patterns[type[i]];
+            if (pattern instanceof TokenPattern) {
+                nodes[i] = new Token((TokenPattern) pattern,
+                                     getImage(i),
+                                     line[i],
+                                     column[i]);
+            } else {
+                prod = new Production((ProductionPattern) pattern);
+                for (int j = firstChild[i]; j >= 0; j = nextSibling[j]) {
+                    prod.addChild(nodes[j]);
+                }
+                nodes[i] = prod;
+            }
+        }
+        return (root < 0) ? null : nodes[root];
+    }
+
+    /**
+     * Returns the number of nodes in this tree.
+     *
+     * @return the number of nodes in this tree
+     */
+    public int getNodeCount() {
+        return size;
+    }
+
+    /**
+     * Returns the root node index.
+     *
+     * @return the root node index, or
+     *         -1 if the tree is empty
+     */
+    public int getRootIndex() {
+        return root;
+    }
+
+    /**
+     * Returns the root node view.
+     *
+     * @return the root node view, or
+     *         null if the tree is empty
+     */
+    public Node getRoot() {
+        return getNode(root);
+    }
+
+    /**
+     * Returns a node view for the specified node index. The view is
+     * created on the first call, and the same view object is then
+     * returned for each call with the same index.
+     *
+     * @param index          the node index
+     *
+     * @return the node view, or
+     *         null if the index was out of bounds
+     */
+    public Node getNode(int index) {
+        Object  pattern;
+        Node[]  temp;
+
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        if (views == null || views.length < size) {
+            temp = new Node[size];
+            if (views != null) {
+                System.arraycopy(views, 0, temp, 0, views.length);
+            }
+            views = temp;
+        }
+        if (views[index] == null) {
+            pattern = patterns[type[index]];
+            if (pattern instanceof TokenPattern) {
+                views[index] = new TokenView((TokenPattern) pattern, index);
+            } else {
+                views[index] = new ProductionView((ProductionPattern) pattern,
+                                                  index);
+            }
+        }
+        return views[index];
+    }
+
+    /**
+     * Checks if the specified node is a token node.
+     *
+     * @param index          the node index
+     *
+     * @return true if the node is a token, or
+     *         false otherwise
+     */
+    public boolean isToken(int index) {
+        return patterns[type[index]] instanceof TokenPattern;
+    }
+
+    /**
+     * Returns the node type id.
+     *
+     * @param index          the node index
+     *
+     * @return the node type id
+     */
+    public int getId(int index) {
+        Object  pattern = patterns[type[index]];
+
+        if (pattern instanceof TokenPattern) {
+            return ((TokenPattern) pattern).getId();
+        } else {
+            return ((ProductionPattern) pattern).getId();
+        }
+    }
+
+    /**
+     * Returns the node name.
+     *
+     * @param index          the node index
+     *
+     * @return the node name
+     */
+    public String getName(int index) {
+        Object  pattern = patterns[type[index]];
+
+        if (pattern instanceof TokenPattern) {
+            return ((TokenPattern) pattern).getName();
+        } else {
+            return ((ProductionPattern) pattern).getName();
+        }
+    }
+
+    /**
+     * Returns the parent node index.
+     *
+     * @param index          the node index
+     *
+     * @return the parent node index, or
+     *         -1 for the root node
+     */
+    public int getParentIndex(int index) {
+        return parent[index];
+    }
+
+    /**
+     * Returns the first child node index.
+     *
+     * @param index          the node index
+     *
+     * @return the first child node index, or
+     *         -1 if the node has no children
+     */
+    public int getFirstChildIndex(int index) {
+        return firstChild[index];
+    }
+
+    /**
+     * Returns the next sibling node index.
+     *
+     * @param index          the node index
+     *
+     * @return the next sibling node index, or
+     *         -1 if the node is the last child
+     */
+    public int getNextSiblingIndex(int index) {
+        return nextSibling[index];
+    }
+
+    /**
+     * Returns the number of child nodes.
+     *
+     * @param index          the node index
+     *
+     * @return the number of child nodes
+     */
+    public int getChildCount(int index) {
+        int  count = 0;
+
+        for (int i = firstChild[index]; i >= 0; i = nextSibling[i]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the token image for a token node.
+     *
+     * @param index          the node index
+     *
+     * @return the token image, or
+     *         null if the node isn't a token
+     */
+    public String getImage(int index) {
+        Object  pattern = patterns[type[index]];
+
+        if (!(pattern instanceof TokenPattern)) {
+            return null;
+        } else if (textStart[index] < 0) {
+            return ((TokenPattern) pattern).getPattern();
+        } else {
+            return new String(text, textStart[index], textLength[index]);
+        }
+    }
+
+    /**
+     * Returns the line number of the first character in the node.
+     *
+     * @param index          the node index
+     *
+     * @return the line number of the first character, or
+     *         -1 if not applicable
+     */
+    public int getStartLine(int index) {
+        index = findFirstToken(index);
+        return (index < 0) ? -1 : line[index];
+    }
+
+    /**
+     * Returns the column number of the first character in the node.
+     *
+     * @param index          the node index
+     *
+     * @return the column number of the first character, or
+     *         -1 if not applicable
+     */
+    public int getStartColumn(int index) {
+        index = findFirstToken(index);
+        return (index < 0) ? -1 : column[index];
+    }
+
+    /**
+     * Finds the first token node in a subtree.
+     *
+     * @param index          the subtree root node index
+     *
+     * @return the first token node index, or
+     *         -1 if the subtree contains no tokens
+     */
+    private int findFirstToken(int index) {
+        int  result;
+
+        if (isToken(index)) {
+            return index;
+        }
+        for (int i = firstChild[index]; i >= 0; i = nextSibling[i]) {
+            result = findFirstToken(i);
+            if (result >= 0) {
+                return result;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return a string representation of this object
+     */
+    public String toString() {
+        return "CompactTree(" + size + " nodes, " + textSize + " chars)";
+    }
+
+
+    /**
+     * A production node view. This class provides a read-only
+     * production view of a node in the compact tree.
+     */
+    private class ProductionView extends Production {
+
+        /**
+         * The node index.
+         */
+        private int index;
+
+        /**
+         * The child node indices, or null if not yet read.
+         */
+        private int[] children = null;
+
+        /**
+         * Creates a new production node view.
+         *
+         * @param pattern        the production pattern
+         * @param index          the node index
+         */
+        public ProductionView(ProductionPattern pattern, int index) {
+            super(pattern);
+            this.index = index;
+        }
+
+        /**
+         * Returns the parent node.
+         *
+         * @return the parent parse tree node
+         */
+        public Node getParent() {
+            return getNode(parent[index]);
+        }
+
+        /**
+         * Returns the number of child nodes.
+         *
+         * @return the number of child nodes
+         */
+        public int getChildCount() {
+            return readChildren().length;
+        }
+
+        /**
+         * Returns the child node with the specified index.
+         *
+         * @param pos            the child index, starting at 0
+         *
+         * @return the child node found, or
+         *         null if index out of bounds
+         */
+        public Node getChildAt(int pos) {
+            int[]  list = readChildren();
+
+            if (pos < 0 || pos >= list.length) {
+                return null;
+            } else {
+                return getNode(list[pos]);
+            }
+        }
+
+        /**
+         * Adds a child node. This operation is not supported by the
+         * compact tree views, as the tree structure is stored in the
+         * compact tree arrays. Use toTree() to create a parse tree
+         * that can be modified.
+         *
+         * @param child          the child node to add
+         *
+         * @throws UnsupportedOperationException always
+         */
+        public void addChild(Node child) {
+            throw new UnsupportedOperationException(
+                "compact tree nodes cannot be modified");
+        }
+
+        /**
+         * Reads the child node indices.
+         *
+         * @return the array of child node indices
+         */
+        private int[] readChildren() {
+            int  pos = 0;
+
+            if (children == null) {
+                children = new int[CompactTree.this.getChildCount(index)];
+                for (int i = firstChild[index]; i >= 0; i = nextSibling[i]) {
+                    children[pos++] = i;
+                }
+            }
+            return children;
+        }
+    }
+
+
+    /**
+     * A token node view. This class provides a token view of a node
+     * in the compact tree.
+     */
+    private class TokenView extends Token {
+
+        /**
+         * The node index.
+         */
+        private int index;
+
+        /**
+         * Creates a new token node view.
+         *
+         * @param pattern        the token pattern
+         * @param index          the node index
+         */
+        public TokenView(TokenPattern pattern, int index) {
+            super(pattern,
+                  CompactTree.this.getImage(index),
+                  line[index],
+                  column[index]);
+            this.index = index;
+        }
+
+        /**
+         * Returns the parent node.
+         *
+         * @return the parent parse tree node
+         */
+        public Node getParent() {
+            return getNode(parent[index]);
+        }
+    }
+}
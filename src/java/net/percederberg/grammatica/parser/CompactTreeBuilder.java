@@ -0,0 +1,94 @@
+/*
+ * CompactTreeBuilder.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+/**
+ * A compact parse tree builder. This analyzer stores all nodes in a
+ * compact tree while parsing, instead of creating a normal parse
+ * tree. The parser will therefore return null from the parse()
+ * method, and the resulting tree must be retrieved from this
+ * analyzer. Only the production nodes currently being parsed will
+ * be present as objects during parsing. Generated parsers only
+ * accept their own analyzer type in the constructor, so this
+ * analyzer is normally installed with Parser.reset(Reader, Analyzer).
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see CompactTree
+ */
+public class CompactTreeBuilder extends Analyzer {
+
+    /**
+     * The compact tree being built.
+     */
+    private CompactTree tree = new CompactTree();
+
+    /**
+     * Creates a new compact tree builder.
+     */
+    public CompactTreeBuilder() {
+        // Nothing to initialize
+    }
+
+    /**
+     * Returns the compact tree built. The tree is only complete once
+     * the parser has finished without errors.
+     *
+     * @return the compact tree built
+     */
+    public CompactTree getTree() {
+        return tree;
+    }
+
+    /**
+     * Resets this analyzer when the parser is reset for another
+     * input stream. This will start a new compact tree.
+     */
+    public void reset() {
+        tree = new CompactTree();
+    }
+
+    /**
+     * Called when entering a parse tree node. This method starts a
+     * new production in the compact tree.
+     *
+     * @param node           the node being entered
+     */
+    protected void enter(Node node) {
+        if (node instanceof Production) {
+            tree.startProduction();
+        }
+    }
+
+    /**
+     * Called when exiting a parse tree node. This method adds the
+     * node to the compact tree and returns null, so that no normal
+     * parse tree is created.
+     *
+     * @param node           the node being exited
+     *
+     * @return null, as no parse tree should be created
+     */
+    protected Node exit(Node node) {
+        if (node instanceof Production) {
+            tree.endProduction(((Production) node).getPattern());
+        } else {
+            tree.addToken((Token) node);
+        }
+        return null;
+    }
+}
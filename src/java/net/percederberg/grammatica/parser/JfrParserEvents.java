@@ -0,0 +1,381 @@
+/*
+ * JfrParserEvents.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * A parser event recorder using the Java Flight Recorder (JFR). The
+ * events are only recorded when enabled in the JFR recording, and
+ * only if the duration exceeds the event threshold. The default
+ * thresholds can be changed in the recording settings, for example
+ * with "net.percederberg.grammatica.Parse#threshold=5 ms". This
+ * class must only be loaded if the JFR API is available.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+class JfrParserEvents extends ParserEvents {
+
+    /**
+     * Creates a new JFR event recorder.
+     */
+    public JfrParserEvents() {
+        // Nothing to initialize
+    }
+
+    /**
+     * Starts a tokenizer event.
+     *
+     * @return the event started, or
+     *         null if not recorded
+     */
+    public Object beginTokenize() {
+        TokenizeEvent  event = new TokenizeEvent();
+
+        return begin(event);
+    }
+
+    /**
+     * Finishes a tokenizer event.
+     *
+     * @param event          the event started
+     * @param tokenizer      the tokenizer used
+     * @param tokens         the number of tokens read
+     * @param characters     the number of token characters read
+     * @param errors         the number of tokenizer errors
+     * @param time           the tokenizer time in nanoseconds
+     */
+    public void endTokenize(Object event,
+                            Tokenizer tokenizer,
+                            int tokens,
+                            long characters,
+                            int errors,
+                            long time) {
+
+        TokenizeEvent  e = (TokenizeEvent) event;
+
+        e.end();
+        if (e.shouldCommit()) {
+            e.tokenizer = tokenizer.getClass().getName();
+            e.tokens = tokens;
+            e.characters = characters;
+            e.errors = errors;
+            e.time = time;
+            e.commit();
+        }
+    }
+
+    /**
+     * Starts a parser preparation event.
+     *
+     * @return the event started, or
+     *         null if not recorded
+     */
+    public Object beginPrepare() {
+        PrepareEvent  event = new PrepareEvent();
+
+        return begin(event);
+    }
+
+    /**
+     * Finishes a parser preparation event.
+     *
+     * @param event          the event started
+     * @param parser         the parser prepared
+     */
+    public void endPrepare(Object event, Parser parser) {
+        PrepareEvent  e = (PrepareEvent) event;
+
+        e.end();
+        if (e.shouldCommit()) {
+            e.parser = parser.getClass().getName();
+            e.startProduction = getStartName(parser);
+            e.productions = parser.getPatterns().size();
+            e.commit();
+        }
+    }
+
+    /**
+     * Starts a parse event.
+     *
+     * @return the event started, or
+     *         null if not recorded
+     */
+    public Object beginParse() {
+        ParseEvent  event = new ParseEvent();
+
+        return begin(event);
+    }
+
+    /**
+     * Finishes a parse event.
+     *
+     * @param event          the event started
+     * @param parser         the parser used
+     * @param root           the parse tree root node, or null
+     * @param tokens         the number of tokens consumed
+     * @param errors         the number of parse errors
+     */
+    public void endParse(Object event,
+                         Parser parser,
+                         Node root,
+                         int tokens,
+                         int errors) {
+
+        ParseEvent  e = (ParseEvent) event;
+
+        e.end();
+        if (e.shouldCommit()) {
+            e.parser = parser.getClass().getName();
+            e.startProduction = getStartName(parser);
+            e.characters = parser.getTokenizer().getBuffer().readCount();
+            e.tokens = tokens;
+            e.nodes = (root == null) ? 0 : 1 + root.getDescendantCount();
+            e.errors = errors;
+            e.commit();
+        }
+    }
+
+    /**
+     * Starts an analyzer event.
+     *
+     * @return the event started, or
+     *         null if not recorded
+     */
+    public Object beginAnalyze() {
+        AnalyzeEvent  event = new AnalyzeEvent();
+
+        return begin(event);
+    }
+
+    /**
+     * Finishes an analyzer event.
+     *
+     * @param event          the event started
+     * @param analyzer       the analyzer used
+     * @param node           the parse tree node analyzed
+     * @param errors         the number of analysis errors
+     */
+    public void endAnalyze(Object event,
+                           Analyzer analyzer,
+                           Node node,
+                           int errors) {
+
+        AnalyzeEvent  e = (AnalyzeEvent) event;
+
+        e.end();
+        if (e.shouldCommit()) {
+            e.analyzer = analyzer.getClass().getName();
+            e.nodes = (node == null) ? 0 : 1 + node.getDescendantCount();
+            e.errors = errors;
+            e.commit();
+        }
+    }
+
+    /**
+     * Starts an event if it is enabled.
+     *
+     * @param event          the event to start
+     *
+     * @return the event started, or
+     *         null if not enabled
+     */
+    private Object begin(Event event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Returns the name of the parser start production.
+     *
+     * @param parser         the parser to check
+     *
+     * @return the start production name, or
+     *         null if no productions were added
+     */
+    private String getStartName(Parser parser) {
+        ProductionPattern  pattern = parser.getStartPattern();
+
+        return (pattern == null) ? null : pattern.getName();
+    }
+
+
+    /**
+     * A tokenizer event. Each event covers a batch of tokens.
+     */
+    @Name("net.percederberg.grammatica.Tokenize")
+    @Label("Tokenize")
+    @Description("A batch of tokens read by a Grammatica tokenizer")
+    @Category("Grammatica")
+    @Threshold("20 ms")
+    @StackTrace(false)
+    static class TokenizeEvent extends Event {
+
+        /**
+         * The tokenizer class name.
+         */
+        @Label("Tokenizer")
+        public String tokenizer;
+
+        /**
+         * The number of tokens read.
+         */
+        @Label("Tokens")
+        public int tokens;
+
+        /**
+         * The number of token characters read.
+         */
+        @Label("Characters")
+        public long characters;
+
+        /**
+         * The number of tokenizer errors.
+         */
+        @Label("Errors")
+        public int errors;
+
+        /**
+         * The time spent in the tokenizer. The event duration also
+         * includes the parser work between the tokens in the batch.
+         */
+        @Label("Tokenizer Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long time;
+    }
+
+
+    /**
+     * A parser preparation event.
+     */
+    @Name("net.percederberg.grammatica.Prepare")
+    @Label("Prepare Parser")
+    @Description("The look-ahead analysis of a Grammatica parser")
+    @Category("Grammatica")
+    @Threshold("0 ms")
+    @StackTrace(false)
+    static class PrepareEvent extends Event {
+
+        /**
+         * The parser class name.
+         */
+        @Label("Parser")
+        public String parser;
+
+        /**
+         * The start production name.
+         */
+        @Label("Start Production")
+        public String startProduction;
+
+        /**
+         * The number of production patterns.
+         */
+        @Label("Productions")
+        public int productions;
+    }
+
+
+    /**
+     * A parse event.
+     */
+    @Name("net.percederberg.grammatica.Parse")
+    @Label("Parse")
+    @Description("An input stream parsed by a Grammatica parser")
+    @Category("Grammatica")
+    @Threshold("20 ms")
+    @StackTrace(false)
+    static class ParseEvent extends Event {
+
+        /**
+         * The parser class name.
+         */
+        @Label("Parser")
+        public String parser;
+
+        /**
+         * The start production name.
+         */
+        @Label("Start Production")
+        public String startProduction;
+
+        /**
+         * The number of input characters read.
+         */
+        @Label("Characters")
+        public long characters;
+
+        /**
+         * The number of tokens consumed.
+         */
+        @Label("Tokens")
+        public int tokens;
+
+        /**
+         * The number of parse tree nodes created.
+         */
+        @Label("Nodes")
+        public int nodes;
+
+        /**
+         * The number of parse errors.
+         */
+        @Label("Errors")
+        public int errors;
+    }
+
+
+    /**
+     * An analyzer event.
+     */
+    @Name("net.percederberg.grammatica.Analyze")
+    @Label("Analyze")
+    @Description("A parse tree analyzed by a Grammatica analyzer")
+    @Category("Grammatica")
+    @Threshold("20 ms")
+    @StackTrace(false)
+    static class AnalyzeEvent extends Event {
+
+        /**
+         * The analyzer class name.
+         */
+        @Label("Analyzer")
+        public String analyzer;
+
+        /**
+         * The number of parse tree nodes analyzed.
+         */
+        @Label("Nodes")
+        public int nodes;
+
+        /**
+         * The number of analysis errors.
+         */
+        @Label("Errors")
+        public int errors;
+    }
+}
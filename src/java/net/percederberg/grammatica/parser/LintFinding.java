@@ -0,0 +1,164 @@
+/*
+ * LintFinding.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+/**
+ * A grammar performance lint finding. Each finding concerns a single
+ * token pattern or look-ahead decision point, and contains an
+ * estimated relative cost together with a suggested improvement.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see PerformanceLint
+ */
+public class LintFinding {
+
+    /**
+     * The native regular expression finding type. The token pattern
+     * is not supported by the automaton and is matched with the
+     * java.util.regex package instead.
+     */
+    public static final int NATIVE_REGEXP = 1;
+
+    /**
+     * The large automaton finding type. The token pattern creates an
+     * automaton with many states or epsilon transitions.
+     */
+    public static final int LARGE_AUTOMATON = 2;
+
+    /**
+     * The initial epsilon finding type. The token pattern automaton
+     * cannot be merged with the initial tokenizer state.
+     */
+    public static final int INITIAL_EPSILON = 3;
+
+    /**
+     * The long look-ahead finding type. The decision point needs
+     * more than one token of look-ahead.
+     */
+    public static final int LONG_LOOKAHEAD = 4;
+
+    /**
+     * The repetitive look-ahead finding type. The decision point has
+     * a look-ahead set with repeated token sequences.
+     */
+    public static final int REPETITIVE_LOOKAHEAD = 5;
+
+    /**
+     * The finding type.
+     */
+    private int type;
+
+    /**
+     * The token pattern or decision point name.
+     */
+    private String name;
+
+    /**
+     * The estimated relative cost.
+     */
+    private int cost;
+
+    /**
+     * The finding message.
+     */
+    private String message;
+
+    /**
+     * The suggested improvement.
+     */
+    private String suggestion;
+
+    /**
+     * Creates a new grammar performance lint finding.
+     *
+     * @param type           the finding type
+     * @param name           the token pattern or decision point name
+     * @param cost           the estimated relative cost
+     * @param message        the finding message
+     * @param suggestion     the suggested improvement
+     */
+    LintFinding(int type,
+                String name,
+                int cost,
+                String message,
+                String suggestion) {
+
+        this.type = type;
+        this.name = name;
+        this.cost = cost;
+        this.message = message;
+        this.suggestion = suggestion;
+    }
+
+    /**
+     * Returns the finding type.
+     *
+     * @return the finding type
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the token pattern or decision point name.
+     *
+     * @return the token pattern or decision point name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the estimated relative cost. The cost is roughly the
+     * number of automaton transitions or look-ahead token
+     * comparisons added for each token or decision, so it is only
+     * useful for ranking the findings.
+     *
+     * @return the estimated relative cost
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * Returns the finding message.
+     *
+     * @return the finding message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the suggested improvement.
+     *
+     * @return the suggested improvement
+     */
+    public String getSuggestion() {
+        return suggestion;
+    }
+
+    /**
+     * Returns a string representation of this finding.
+     *
+     * @return a string representation of this finding
+     */
+    public String toString() {
+        return name + ": " + message + " (cost " + cost + ")";
+    }
+}
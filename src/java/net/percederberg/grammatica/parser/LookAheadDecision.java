@@ -0,0 +1,197 @@
+/*
+ * LookAheadDecision.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+/**
+ * A look-ahead decision point profile. A decision point is either
+ * the choice between the alternatives of a production pattern, or
+ * the check for another occurrence of an optional or repeated
+ * element in a production pattern alternative. The profile contains
+ * the number of decisions made and the look-ahead cost.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see LookAheadProfiler
+ */
+public class LookAheadDecision {
+
+    /**
+     * The production pattern.
+     */
+    private ProductionPattern pattern;
+
+    /**
+     * The alternative position, or -1 for the production pattern
+     * alternative choice.
+     */
+    private int alt;
+
+    /**
+     * The element position, or -1 for the production pattern
+     * alternative choice.
+     */
+    private int elem;
+
+    /**
+     * The number of decisions made.
+     */
+    long count = 0;
+
+    /**
+     * The number of alternatives tested.
+     */
+    long alternatives = 0;
+
+    /**
+     * The number of look-ahead tokens peeked.
+     */
+    long tokens = 0;
+
+    /**
+     * The number of default alternatives chosen.
+     */
+    long defaults = 0;
+
+    /**
+     * The number of element matches.
+     */
+    long matches = 0;
+
+    /**
+     * Creates a new look-ahead decision point profile.
+     *
+     * @param pattern        the production pattern
+     * @param alt            the alternative position, or -1
+     * @param elem           the element position, or -1
+     */
+    LookAheadDecision(ProductionPattern pattern, int alt, int elem) {
+        this.pattern = pattern;
+        this.alt = alt;
+        this.elem = elem;
+    }
+
+    /**
+     * Returns the production pattern.
+     *
+     * @return the production pattern
+     */
+    public ProductionPattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns the alternative position.
+     *
+     * @return the alternative position, from 0 and up, or
+     *         -1 for the production pattern alternative choice
+     */
+    public int getAlternative() {
+        return alt;
+    }
+
+    /**
+     * Returns the element position.
+     *
+     * @return the element position, from 0 and up, or
+     *         -1 for the production pattern alternative choice
+     */
+    public int getElement() {
+        return elem;
+    }
+
+    /**
+     * Checks if this is a production pattern alternative choice.
+     *
+     * @return true if this is an alternative choice, or
+     *         false for an element check
+     */
+    public boolean isAlternativeChoice() {
+        return elem < 0;
+    }
+
+    /**
+     * Returns the number of decisions made.
+     *
+     * @return the number of decisions made
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of alternatives tested. This is always zero
+     * for element checks.
+     *
+     * @return the number of alternatives tested
+     */
+    public long getAlternativeCount() {
+        return alternatives;
+    }
+
+    /**
+     * Returns the number of look-ahead tokens peeked.
+     *
+     * @return the number of look-ahead tokens peeked
+     */
+    public long getTokenCount() {
+        return tokens;
+    }
+
+    /**
+     * Returns the number of times the default alternative was
+     * chosen. This is always zero for element checks.
+     *
+     * @return the number of default alternatives chosen
+     */
+    public long getDefaultCount() {
+        return defaults;
+    }
+
+    /**
+     * Returns the number of times the element matched. This is
+     * always zero for alternative choices.
+     *
+     * @return the number of element matches
+     */
+    public long getMatchCount() {
+        return matches;
+    }
+
+    /**
+     * Returns the average number of look-ahead tokens peeked per
+     * decision.
+     *
+     * @return the average number of look-ahead tokens peeked
+     */
+    public double getAverageTokens() {
+        return (count == 0) ? 0 : (double) tokens / count;
+    }
+
+    /**
+     * Returns a description of the decision point.
+     *
+     * @return a description of the decision point
+     */
+    public String toString() {
+        if (isAlternativeChoice()) {
+            return pattern.getName();
+        } else {
+            return pattern.getName() + ", alternative " + (alt + 1) +
+                   ", element " + (elem + 1);
+        }
+    }
+}
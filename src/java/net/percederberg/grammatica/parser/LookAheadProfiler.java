@@ -0,0 +1,259 @@
+/*
+ * LookAheadProfiler.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * A look-ahead decision profiler. This class records the cost of
+ * each look-ahead decision point in a grammar, as reported by the
+ * parser metrics callbacks. The decision points are ranked by the
+ * total number of look-ahead tokens peeked, which points out the
+ * productions that would benefit most from left-factoring. This
+ * class is thread-safe.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see Parser#setMetrics
+ */
+public class LookAheadProfiler implements ParserMetrics {
+
+    /**
+     * The production pattern alternative choices. This map contains
+     * LookAheadDecision objects indexed by the production pattern id.
+     */
+    private HashMap choices = new HashMap();
+
+    /**
+     * The element checks. This map contains LookAheadDecision arrays
+     * indexed by the production pattern alternative object, with
+     * one entry per element.
+     */
+    private IdentityHashMap checks = new IdentityHashMap();
+
+    /**
+     * Creates a new look-ahead decision profiler.
+     */
+    public LookAheadProfiler() {
+        // Nothing to initialize
+    }
+
+    /**
+     * Called when a token has been matched by the tokenizer. Not
+     * used by this profiler.
+     *
+     * @param pattern        the token pattern matched
+     * @param length         the token length in characters
+     */
+    public void tokenMatched(TokenPattern pattern, int length) {
+        // Not used
+    }
+
+    /**
+     * Called when a token matcher has checked the input for a token.
+     * Not used by this profiler.
+     *
+     * @param matcher        the token matcher type
+     * @param time           the time spent, in nanoseconds
+     */
+    public void matcherCompleted(int matcher, long time) {
+        // Not used
+    }
+
+    /**
+     * Called when a production pattern has been parsed. Not used by
+     * this profiler.
+     *
+     * @param pattern        the production pattern parsed
+     * @param time           the time spent, in nanoseconds
+     */
+    public void productionParsed(ProductionPattern pattern, long time) {
+        // Not used
+    }
+
+    /**
+     * Called when a production pattern alternative has been chosen
+     * from the look-ahead tokens.
+     *
+     * @param pattern        the production pattern
+     * @param alternatives   the number of alternatives tested
+     * @param tokens         the number of look-ahead tokens peeked
+     * @param isDefault      the default alternative flag
+     */
+    public synchronized void alternativeChosen(ProductionPattern pattern,
+                                               int alternatives,
+                                               int tokens,
+                                               boolean isDefault) {
+
+        Integer            key = new Integer(pattern.getId());
+        LookAheadDecision  decision = (LookAheadDecision) choices.get(key);
+
+        if (decision == null) {
+            decision = new LookAheadDecision(pattern, -1, -1);
+            choices.put(key, decision);
+        }
+        decision.count++;
+        decision.alternatives += alternatives;
+        decision.tokens += tokens;
+        if (isDefault) {
+            decision.defaults++;
+        }
+    }
+
+    /**
+     * Called when the look-ahead tokens have been checked for an
+     * optional or repeated production pattern element.
+     *
+     * @param alt            the production pattern alternative
+     * @param pos            the element position, from 0 and up
+     * @param tokens         the number of look-ahead tokens peeked
+     * @param match          the element match flag
+     */
+    public synchronized void elementChecked(ProductionPatternAlternative alt,
+                                            int pos,
+                                            int tokens,
+                                            boolean match) {
+
+        LookAheadDecision[]  list = (LookAheadDecision[]) checks.get(alt);
+        ProductionPattern    pattern = alt.getPattern();
+        int                  index = 0;
+
+        if (list == null) {
+            list = new LookAheadDecision[alt.getElementCount()];
+            checks.put(alt, list);
+        }
+        if (list[pos] == null) {
+            while (pattern.getAlternative(index) != alt) {
+                index++;
+            }
+            list[pos] = new LookAheadDecision(pattern, index, pos);
+        }
+        list[pos].count++;
+        list[pos].tokens += tokens;
+        if (match) {
+            list[pos].matches++;
+        }
+    }
+
+    /**
+     * Called when a parse error makes the parser enter error
+     * recovery mode. Not used by this profiler.
+     *
+     * @param e              the error causing the recovery
+     */
+    public void errorRecovered(ParseException e) {
+        // Not used
+    }
+
+    /**
+     * Returns all the decision points recorded. The decision points
+     * are ranked by the total number of look-ahead tokens peeked,
+     * with the most costly first.
+     *
+     * @return an array with all the decision points
+     */
+    public synchronized LookAheadDecision[] getDecisions() {
+        ArrayList            list = new ArrayList(choices.values());
+        ArrayList            arrays = new ArrayList(checks.values());
+        LookAheadDecision[]  elems;
+
+        for (int i = 0; i < arrays.size(); i++) {
+            elems = (LookAheadDecision[]) arrays.get(i);
+            for (int j = 0; j < elems.length; j++) {
+                if (elems[j] != null) {
+                    list.add(elems[j]);
+                }
+            }
+        }
+        Collections.sort(list, new Comparator() {
+            public int compare(Object obj1, Object obj2) {
+                LookAheadDecision  d1 = (LookAheadDecision) obj1;
+                LookAheadDecision  d2 = (LookAheadDecision) obj2;
+
+                if (d1.tokens != d2.tokens) {
+                    return (d1.tokens > d2.tokens) ? -1 : 1;
+                } else if (d1.count != d2.count) {
+                    return (d1.count > d2.count) ? -1 : 1;
+                } else {
+                    return d1.toString().compareTo(d2.toString());
+                }
+            }
+        });
+        return (LookAheadDecision[]) list.toArray(
+            new LookAheadDecision[list.size()]);
+    }
+
+    /**
+     * Removes all the decision points recorded.
+     */
+    public synchronized void reset() {
+        choices.clear();
+        checks.clear();
+    }
+
+    /**
+     * Prints a ranked report of the decision points. Each line
+     * contains the total and average number of look-ahead tokens
+     * peeked, the number of decisions, the average number of
+     * alternatives tested and the percentage of default alternatives
+     * chosen (or element matches for element checks).
+     *
+     * @param out            the output stream to use
+     * @param limit          the maximum number of decision points,
+     *                       or zero (0) for all
+     */
+    public void print(PrintStream out, int limit) {
+        LookAheadDecision[]  decisions = getDecisions();
+        LookAheadDecision    d;
+        int                  count = decisions.length;
+        String               alts;
+        double               percent;
+
+        if (limit > 0 && limit < count) {
+            count = limit;
+        }
+        out.println("    Tokens    Avg  Decisions   Alts  Dflt/Match  " +
+                    "Decision point");
+        for (int i = 0; i < count; i++) {
+            d = decisions[i];
+            if (d.count == 0) {
+                alts = "-";
+                percent = 0;
+            } else if (d.isAlternativeChoice()) {
+                alts = ReportFormat.format("%.2f", (double) d.alternatives /
+                                                   d.count);
+                percent = 100.0 * d.defaults / d.count;
+            } else {
+                alts = "-";
+                percent = 100.0 * d.matches / d.count;
+            }
+            out.println(ReportFormat.format("%10d", new Long(d.tokens)) +
+                        " " +
+                        ReportFormat.format("%6.2f", d.getAverageTokens()) +
+                        " " +
+                        ReportFormat.format("%10d", new Long(d.count)) +
+                        " " + ReportFormat.format("%6s", alts) + " " +
+                        ReportFormat.format("%10.1f%%", percent) + "  " +
+                        d);
+        }
+    }
+}
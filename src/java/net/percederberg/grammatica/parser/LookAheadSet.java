@@ -14,6 +14,9 @@
 
 package net.percederberg.grammatica.parser;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -28,7 +31,7 @@ import java.util.ArrayList;
  * conflicting sequences can be repeated (would cause infinite loop).
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 class LookAheadSet {
 
@@ -78,6 +81,17 @@ class LookAheadSet {
         return elements.size() == 0;
     }
 
+    /**
+     * Returns the number of token sequences in this set.
+     *
+     * @return the number of token sequences
+     *
+     * @since 1.7
+     */
+    public int size() {
+        return elements.size();
+    }
+
     /**
      * Returns the length of the shortest token sequence in this
      * set. This method will return zero (0) if the set is empty.
@@ -535,6 +549,65 @@ class LookAheadSet {
         return result;
     }
 
+    /**
+     * Writes this look-ahead set in a binary format.
+     *
+     * @param out            the output to write to
+     *
+     * @throws IOException if the set couldn't be written
+     *
+     * @see #read
+     *
+     * @since 1.7
+     */
+    void write(DataOutput out) throws IOException {
+        Sequence  seq;
+
+        out.writeInt(maxLength);
+        out.writeInt(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            seq = (Sequence) elements.get(i);
+            out.writeBoolean(seq.repeat);
+            out.writeInt(seq.length());
+            for (int j = 0; j < seq.length(); j++) {
+                out.writeInt(seq.getToken(j).intValue());
+            }
+        }
+    }
+
+    /**
+     * Reads a look-ahead set in the binary format created by
+     * write().
+     *
+     * @param in             the input to read from
+     *
+     * @return the look-ahead set read
+     *
+     * @throws IOException if the set couldn't be read
+     *
+     * @see #write
+     *
+     * @since 1.7
+     */
+    static LookAheadSet read(DataInput in) throws IOException {
+        LookAheadSet  set = new LookAheadSet(in.readInt());
+        Sequence      seq;
+        int           count;
+        int           length;
+
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            seq = set.new Sequence();
+            seq.repeat = in.readBoolean();
+            length = in.readInt();
+            for (int j = 0; j < length; j++) {
+                seq.tokens.add(new Integer(in.readInt()));
+            }
+            set.elements.add(seq);
+        }
+        return set;
+    }
+
     /**
      * Returns a string representation of this object.
      *
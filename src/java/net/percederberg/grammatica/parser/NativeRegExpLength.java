@@ -0,0 +1,395 @@
+/*
+ * NativeRegExpLength.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+/**
+ * A maximum match length estimator for java.util.regex patterns.
+ * The estimate is an upper bound on the number of characters that
+ * must be buffered to match the pattern, including any look-ahead.
+ * Character sets, escapes and the '.' wildcard are counted as two
+ * characters, to allow for surrogate pairs. Boundary assertions are
+ * counted as the characters they may need to look at after the
+ * match, so that a match reaching the estimated length is never
+ * accepted without checking a trailing assertion. Patterns with
+ * unbounded repeats, back references or unknown syntax are reported
+ * as unbounded.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+class NativeRegExpLength {
+
+    /**
+     * The length value for unbounded patterns.
+     */
+    public static final int UNBOUNDED = -1;
+
+    /**
+     * The regular expression pattern.
+     */
+    private String pattern;
+
+    /**
+     * The current position in the pattern.
+     */
+    private int pos = 0;
+
+    /**
+     * The unbounded pattern flag. Set when a construct without a
+     * known maximum length is found.
+     */
+    private boolean unbounded = false;
+
+    /**
+     * Estimates the maximum match length for a regular expression.
+     *
+     * @param pattern        the regular expression pattern
+     *
+     * @return the maximum match length, or
+     *         UNBOUNDED if no maximum length could be found
+     */
+    public static int estimate(String pattern) {
+        NativeRegExpLength  parser = new NativeRegExpLength(pattern);
+        long                length;
+
+        length = parser.parseExpr();
+        if (parser.unbounded || parser.pos < pattern.length()) {
+            return UNBOUNDED;
+        }
+        return (int) length;
+    }
+
+    /**
+     * Creates a new maximum match length estimator.
+     *
+     * @param pattern        the regular expression pattern
+     */
+    private NativeRegExpLength(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Parses a regular expression alternative list.
+     *
+     * @return the maximum length of any alternative
+     */
+    private long parseExpr() {
+        long  length = parseTerm();
+
+        while (peekChar() == '|') {
+            pos++;
+            length = Math.max(length, parseTerm());
+        }
+        return length;
+    }
+
+    /**
+     * Parses a regular expression term, i.e. a sequence of atoms.
+     *
+     * @return the maximum term length
+     */
+    private long parseTerm() {
+        long  length = 0;
+
+        while (peekChar() >= 0 && peekChar() != '|' && peekChar() != ')') {
+            length = limit(length + parseRepeat(parseAtom()));
+        }
+        return length;
+    }
+
+    /**
+     * Parses an optional regular expression repeat modifier.
+     *
+     * @param length         the maximum atom length
+     *
+     * @return the maximum repeated atom length
+     */
+    private long parseRepeat(long length) {
+        long  max;
+
+        switch (peekChar()) {
+        case '?':
+            pos++;
+            break;
+        case '*':
+        case '+':
+            pos++;
+            unbounded = true;
+            break;
+        case '{':
+            pos++;
+            max = readNumber();
+            if (peekChar() == ',') {
+                pos++;
+                max = (peekChar() == '}') ? -1 : readNumber();
+            }
+            if (max < 0 || readChar() != '}') {
+                unbounded = true;
+            } else {
+                length = limit(length * max);
+            }
+            break;
+        default:
+            return length;
+        }
+        if (peekChar() == '?' || peekChar() == '+') {
+            pos++;
+        }
+        return length;
+    }
+
+    /**
+     * Parses a regular expression atom.
+     *
+     * @return the maximum atom length
+     */
+    private long parseAtom() {
+        boolean  behind = false;
+        long     length;
+        int      c;
+
+        switch (readChar()) {
+        case '(':
+            if (peekChar() == '?') {
+                pos++;
+                c = readChar();
+                if (c == '<' && (peekChar() == '=' || peekChar() == '!')) {
+                    pos++;
+                    behind = true;
+                } else if (c == '<') {
+                    skipTo('>');
+                } else if (c != ':' && c != '=' && c != '!' && c != '>') {
+                    pos--;
+                    if (!parseFlags()) {
+                        return 0;
+                    }
+                }
+            }
+            length = parseExpr();
+            if (readChar() != ')') {
+                unbounded = true;
+            }
+            return behind ? 0 : length;
+        case '[':
+            skipCharSet();
+            return 2;
+        case '\\':
+            return parseEscape();
+        case '.':
+            return 2;
+        case '^':
+            return 0;
+        case '$':
+            return 3;
+        default:
+            return 1;
+        }
+    }
+
+    /**
+     * Parses the flags in a regular expression group. The comments
+     * flag changes the pattern syntax, so it makes the pattern
+     * unbounded.
+     *
+     * @return true if a group expression follows, or
+     *         false if this was a flag group
+     */
+    private boolean parseFlags() {
+        int  c;
+
+        while (true) {
+            c = readChar();
+            if (c == ':') {
+                return true;
+            } else if (c == ')' || c < 0) {
+                unbounded |= (c < 0);
+                return false;
+            } else if (c == 'x') {
+                unbounded = true;
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a regular expression character set.
+     */
+    private void skipCharSet() {
+        int  depth = 1;
+        int  c;
+
+        if (peekChar() == '^') {
+            pos++;
+        }
+        if (peekChar() == ']') {
+            pos++;
+        }
+        while (depth > 0) {
+            c = readChar();
+            if (c < 0) {
+                unbounded = true;
+                return;
+            } else if (c == '\\' && peekChar() == 'Q') {
+                skipTo('\\');
+            } else if (c == '\\') {
+                pos++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Parses a regular expression escape sequence.
+     *
+     * @return the maximum escape sequence length
+     */
+    private long parseEscape() {
+        int  c = readChar();
+        int  start = pos;
+        int  end;
+
+        switch (c) {
+        case 'Q':
+            end = pattern.indexOf("\\E", pos);
+            end = (end < 0) ? pattern.length() : end;
+            skipTo('\\');
+            return end - start;
+        case 'k':
+            skipTo('>');
+            // Fall through
+        case 'X':
+            unbounded = true;
+            return 0;
+        case 'b':
+        case 'B':
+            if (peekChar() == '{') {
+                skipTo('}');
+                unbounded = true;
+            }
+            return 2;
+        case 'Z':
+            return 3;
+        case 'z':
+            return 1;
+        case 'A':
+        case 'G':
+            return 0;
+        case 'p':
+        case 'P':
+        case 'x':
+        case 'N':
+            if (peekChar() == '{') {
+                skipTo('}');
+            } else {
+                pos += (c == 'x') ? 2 : 1;
+            }
+            return 2;
+        case 'u':
+            pos += 4;
+            return 1;
+        case 'c':
+            pos++;
+            return 1;
+        case '0':
+            while (peekChar() >= '0' && peekChar() <= '7') {
+                pos++;
+            }
+            return 1;
+        default:
+            if (c >= '1' && c <= '9') {
+                unbounded = true;
+                return 0;
+            }
+            return Character.isLetter(c) ? 2 : 1;
+        }
+    }
+
+    /**
+     * Skips pattern characters up to and including a specified
+     * character. For the '\\' character, the pattern is skipped up
+     * to and including the next '\\E' sequence instead.
+     *
+     * @param end            the last character to skip
+     */
+    private void skipTo(char end) {
+        int  index;
+
+        if (end == '\\') {
+            index = pattern.indexOf("\\E", pos);
+            pos = (index < 0) ? pattern.length() : index + 2;
+        } else {
+            index = pattern.indexOf(end, pos);
+            unbounded |= (index < 0);
+            pos = (index < 0) ? pattern.length() : index + 1;
+        }
+    }
+
+    /**
+     * Reads a decimal number from the pattern.
+     *
+     * @return the number read, or
+     *         -1 if no number was found
+     */
+    private long readNumber() {
+        long  value = -1;
+
+        while (peekChar() >= '0' && peekChar() <= '9') {
+            value = limit(Math.max(value, 0) * 10 + readChar() - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Reads the next pattern character.
+     *
+     * @return the character read, or
+     *         -1 if the end of the pattern was reached
+     */
+    private int readChar() {
+        int  c = peekChar();
+
+        pos++;
+        return c;
+    }
+
+    /**
+     * Returns the next pattern character without reading it.
+     *
+     * @return the next character, or
+     *         -1 if the end of the pattern was reached
+     */
+    private int peekChar() {
+        return (pos < pattern.length()) ? pattern.charAt(pos) : -1;
+    }
+
+    /**
+     * Limits a length value to the supported range. Lengths larger
+     * than the maximum integer value make the pattern unbounded.
+     *
+     * @param length         the length value
+     *
+     * @return the length value
+     */
+    private long limit(long length) {
+        if (length > Integer.MAX_VALUE) {
+            unbounded = true;
+            return Integer.MAX_VALUE;
+        }
+        return length;
+    }
+}
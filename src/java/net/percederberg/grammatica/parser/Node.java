@@ -24,7 +24,7 @@ import java.util.Vector;
  * in the parse tree, i.e. by the token and production classes.
  *
  * @author   Per Cederberg
- * @version  1.2
+ * @version  1.7
  */
 public abstract class Node {
 
@@ -34,9 +34,43 @@ public abstract class Node {
     private Node parent = null;
 
     /**
-     * The computed node values.
+     * The marker for integer values in the values array.
      */
-    private ArrayList values = null;
+    private static final Object INT_VALUE = new Object();
+
+    /**
+     * The marker for long integer values in the values array.
+     */
+    private static final Object LONG_VALUE = new Object();
+
+    /**
+     * The marker for floating-point values in the values array.
+     */
+    private static final Object DOUBLE_VALUE = new Object();
+
+    /**
+     * The computed node values. Primitive values are stored as type
+     * markers, with the value bits stored in the numbers array.
+     */
+    private Object[] values = null;
+
+    /**
+     * The primitive node value bits. Only the positions marked in
+     * the values array are used.
+     */
+    private long[] numbers = null;
+
+    /**
+     * The number of computed node values in the value arrays.
+     */
+    private int valueCount = 0;
+
+    /**
+     * The computed node value list. This list is only created if
+     * requested by getAllValues(), and will then contain all node
+     * values in place of the value arrays.
+     */
+    private ArrayList valueList = null;
 
     /**
      * Checks if this node is hidden, i.e. if it should not be visible
@@ -208,17 +242,18 @@ public abstract class Node {
      * @return the number of values associated with this node
      */
     public int getValueCount() {
-        if (values == null) {
-            return 0;
+        if (valueList != null) {
+            return valueList.size();
         } else {
-            return values.size();
+            return valueCount;
         }
     }
 
     /**
      * Returns a computed value of this node, if previously set. A
      * value may be used for storing intermediate results in the parse
-     * tree during analysis.
+     * tree during analysis. Note that primitive values will be
+     * returned as new Integer, Long or Double objects.
      *
      * @param pos             the value position, starting at 0
      *
@@ -226,17 +261,177 @@ public abstract class Node {
      *         null if not set
      */
     public Object getValue(int pos) {
-        if (values == null || pos < 0 || pos >= values.size()) {
+        Object  value;
+
+        if (valueList != null) {
+            return getListValue(pos);
+        } else if (pos < 0 || pos >= valueCount) {
+            return null;
+        }
+        value = values[pos];
+        if (value == INT_VALUE) {
+            return new Integer((int) numbers[pos]);
+        } else if (value == LONG_VALUE) {
+            return new Long(numbers[pos]);
+        } else if (value == DOUBLE_VALUE) {
+            return new Double(Double.longBitsToDouble(numbers[pos]));
+        } else {
+            return value;
+        }
+    }
+
+    /**
+     * Returns the type of a computed value of this node. For
+     * primitive values the corresponding wrapper class is returned,
+     * i.e. the same class as for the object returned by getValue().
+     * This method does not create any new objects.
+     *
+     * @param pos             the value position, starting at 0
+     *
+     * @return the computed node value class, or
+     *         null if not set
+     *
+     * @since 1.7
+     */
+    public Class getValueType(int pos) {
+        Object  value;
+
+        if (valueList != null) {
+            value = getListValue(pos);
+        } else if (pos < 0 || pos >= valueCount) {
+            return null;
+        } else if (values[pos] == INT_VALUE) {
+            return Integer.class;
+        } else if (values[pos] == LONG_VALUE) {
+            return Long.class;
+        } else if (values[pos] == DOUBLE_VALUE) {
+            return Double.class;
+        } else {
+            value = values[pos];
+        }
+        return (value == null) ? null : value.getClass();
+    }
+
+    /**
+     * Returns a computed integer value of this node. Values added
+     * with addIntValue() are returned directly, and other numeric
+     * values are converted as by Number.intValue().
+     *
+     * @param pos             the value position, starting at 0
+     *
+     * @return the computed node value, or
+     *         zero if not set or not numeric
+     *
+     * @since 1.7
+     */
+    public int getIntValue(int pos) {
+        Object  value;
+
+        if (valueList == null && pos >= 0 && pos < valueCount) {
+            value = values[pos];
+            if (value == INT_VALUE || value == LONG_VALUE) {
+                return (int) numbers[pos];
+            } else if (value == DOUBLE_VALUE) {
+                return (int) Double.longBitsToDouble(numbers[pos]);
+            }
+        } else {
+            value = getValue(pos);
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a computed long integer value of this node. Values
+     * added with addIntValue() or addLongValue() are returned
+     * directly, and other numeric values are converted as by
+     * Number.longValue().
+     *
+     * @param pos             the value position, starting at 0
+     *
+     * @return the computed node value, or
+     *         zero if not set or not numeric
+     *
+     * @since 1.7
+     */
+    public long getLongValue(int pos) {
+        Object  value;
+
+        if (valueList == null && pos >= 0 && pos < valueCount) {
+            value = values[pos];
+            if (value == INT_VALUE || value == LONG_VALUE) {
+                return numbers[pos];
+            } else if (value == DOUBLE_VALUE) {
+                return (long) Double.longBitsToDouble(numbers[pos]);
+            }
+        } else {
+            value = getValue(pos);
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else {
+            return 0L;
+        }
+    }
+
+    /**
+     * Returns a computed floating-point value of this node. Values
+     * added with addDoubleValue() are returned directly, and other
+     * numeric values are converted as by Number.doubleValue().
+     *
+     * @param pos             the value position, starting at 0
+     *
+     * @return the computed node value, or
+     *         zero if not set or not numeric
+     *
+     * @since 1.7
+     */
+    public double getDoubleValue(int pos) {
+        Object  value;
+
+        if (valueList == null && pos >= 0 && pos < valueCount) {
+            value = values[pos];
+            if (value == INT_VALUE || value == LONG_VALUE) {
+                return numbers[pos];
+            } else if (value == DOUBLE_VALUE) {
+                return Double.longBitsToDouble(numbers[pos]);
+            }
+        } else {
+            value = getValue(pos);
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else {
+            return 0.0;
+        }
+    }
+
+    /**
+     * Returns a computed value from the value list.
+     *
+     * @param pos             the value position, starting at 0
+     *
+     * @return the computed node value, or
+     *         null if not set
+     */
+    private Object getListValue(int pos) {
+        if (pos < 0 || pos >= valueList.size()) {
             return null;
         } else {
-            return values.get(pos);
+            return valueList.get(pos);
         }
     }
 
     /**
      * Returns the vector with all the computed values for this node.
      * Note that the vector is not a copy, so changes will affect the
-     * values in this node (as it is the same object).
+     * values in this node (as it is the same object). Once this
+     * method has been called, all values in this node will be stored
+     * as objects in the returned list, meaning that any primitive
+     * values will be converted to objects.
      *
      * @return a vector with all values, or
      *         null if no values have been set
@@ -244,7 +439,19 @@ public abstract class Node {
      * @since 1.2
      */
     public ArrayList getAllValues() {
-        return values;
+        ArrayList  list;
+
+        if (valueList == null && valueCount > 0) {
+            list = new ArrayList(valueCount);
+            for (int i = 0; i < valueCount; i++) {
+                list.add(getValue(i));
+            }
+            valueList = list;
+            values = null;
+            numbers = null;
+            valueCount = 0;
+        }
+        return valueList;
     }
 
     /**
@@ -255,14 +462,105 @@ public abstract class Node {
      * @param value          the node value
      */
     public void addValue(Object value) {
-        if (value != null) {
-            if (this.values == null) {
-                this.values = new ArrayList();
-            }
-            values.add(value);
+        int  pos;
+
+        if (value == null) {
+            // Do nothing
+        } else if (valueList != null) {
+            valueList.add(value);
+        } else {
+            pos = newValue();
+            values[pos] = value;
+        }
+    }
+
+    /**
+     * Adds a computed integer value to this node. The value is
+     * stored without creating an Integer object, and can be read
+     * back with getIntValue().
+     *
+     * @param value          the node value
+     *
+     * @since 1.7
+     */
+    public void addIntValue(int value) {
+        int  pos;
+
+        if (valueList != null) {
+            valueList.add(new Integer(value));
+        } else {
+            pos = newValue();
+            values[pos] = INT_VALUE;
+            numbers[pos] = value;
         }
     }
 
+    /**
+     * Adds a computed long integer value to this node. The value is
+     * stored without creating a Long object, and can be read back
+     * with getLongValue().
+     *
+     * @param value          the node value
+     *
+     * @since 1.7
+     */
+    public void addLongValue(long value) {
+        int  pos;
+
+        if (valueList != null) {
+            valueList.add(new Long(value));
+        } else {
+            pos = newValue();
+            values[pos] = LONG_VALUE;
+            numbers[pos] = value;
+        }
+    }
+
+    /**
+     * Adds a computed floating-point value to this node. The value
+     * is stored without creating a Double object, and can be read
+     * back with getDoubleValue().
+     *
+     * @param value          the node value
+     *
+     * @since 1.7
+     */
+    public void addDoubleValue(double value) {
+        int  pos;
+
+        if (valueList != null) {
+            valueList.add(new Double(value));
+        } else {
+            pos = newValue();
+            values[pos] = DOUBLE_VALUE;
+            numbers[pos] = Double.doubleToRawLongBits(value);
+        }
+    }
+
+    /**
+     * Adds a new value slot to the value arrays. The arrays will be
+     * created or grown as needed.
+     *
+     * @return the new value position
+     */
+    private int newValue() {
+        Object[]  temp;
+        long[]    bits;
+
+        if (values == null) {
+            values = new Object[2];
+            numbers = new long[2];
+        } else if (valueCount >= values.length) {
+            temp = new Object[valueCount * 2];
+            System.arraycopy(values, 0, temp, 0, valueCount);
+            values = temp;
+            bits = new long[valueCount * 2];
+            System.arraycopy(numbers, 0, bits, 0, valueCount);
+            numbers = bits;
+        }
+        return valueCount++;
+    }
+
     /**
      * Adds a set of computed values to this node.
      *
@@ -292,10 +590,40 @@ public abstract class Node {
     }
 
     /**
-     * Removes all computed values stored in this node.
+     * Adds all the computed values from another node to this node.
+     * Primitive values are copied without creating any objects.
+     *
+     * @param node           the node to copy values from
+     *
+     * @since 1.7
+     */
+    public void addValues(Node node) {
+        int  count = node.getValueCount();
+        int  pos;
+
+        if (node.valueList != null || valueList != null) {
+            for (int i = 0; i < count; i++) {
+                addValue(node.getValue(i));
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                pos = newValue();
+                values[pos] = node.values[i];
+                numbers[pos] = node.numbers[i];
+            }
+        }
+    }
+
+    /**
+     * Removes all computed values stored in this node. Any value
+     * arrays allocated are kept for reuse.
      */
     public void removeAllValues() {
-        values = null;
+        for (int i = 0; i < valueCount; i++) {
+            values[i] = null;
+        }
+        valueCount = 0;
+        valueList = null;
     }
 
     /**
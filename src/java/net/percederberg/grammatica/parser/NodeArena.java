@@ -0,0 +1,164 @@
+/*
+ * NodeArena.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+/**
+ * A parse tree node arena. This class provides a pool of production
+ * and token nodes that are reused between parses. All nodes handed
+ * out by the arena are recycled at once when release() is called,
+ * so a service that parses, analyzes and discards a tree for each
+ * request will only allocate new nodes until the arena has grown to
+ * the size of the largest tree.
+ *
+ * The arena is installed in a parser with Parser.setNodeArena(), or
+ * separately in an analyzer or tokenizer. Once release() has been
+ * called, no node previously returned by the arena may be used
+ * (since it will be reinitialized when reused). Note that this class
+ * is not thread-safe, so each thread must use its own arena.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class NodeArena {
+
+    /**
+     * The pooled production nodes.
+     */
+    private Production[] productions = new Production[64];
+
+    /**
+     * The number of production nodes in use.
+     */
+    private int productionCount = 0;
+
+    /**
+     * The pooled token nodes.
+     */
+    private Token[] tokens = new Token[64];
+
+    /**
+     * The number of token nodes in use.
+     */
+    private int tokenCount = 0;
+
+    /**
+     * Creates a new empty node arena.
+     */
+    public NodeArena() {
+        // Nothing to initialize
+    }
+
+    /**
+     * Returns the number of production nodes currently in use.
+     *
+     * @return the number of production nodes in use
+     */
+    public int getProductionCount() {
+        return productionCount;
+    }
+
+    /**
+     * Returns the number of token nodes currently in use.
+     *
+     * @return the number of token nodes in use
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Returns a production node from the arena. A pooled node will
+     * be reinitialized if available, otherwise a new node is created.
+     *
+     * @param pattern        the production pattern
+     *
+     * @return the production node
+     */
+    public Production newProduction(ProductionPattern pattern) {
+        Production  node;
+
+        if (productionCount >= productions.length) {
+            Production[] temp = new Production[productions.length * 2];
+            System.arraycopy(productions, 0, temp, 0, productionCount);
+            productions = temp;
+        }
+        node = productions[productionCount];
+        if (node == null) {
+            node = new Production(pattern);
+            productions[productionCount] = node;
+        } else {
+            node.init(pattern);
+        }
+        productionCount++;
+        return node;
+    }
+
+    /**
+     * Returns a token node from the arena. A pooled node will be
+     * reinitialized if available, otherwise a new node is created.
+     *
+     * @param pattern        the token pattern
+     * @param image          the token image (i.e. characters)
+     * @param line           the line number of the first character
+     * @param column         the column number of the first character
+     *
+     * @return the token node
+     */
+    public Token newToken(TokenPattern pattern,
+                          String image,
+                          int line,
+                          int column) {
+
+        Token  node;
+
+        if (tokenCount >= tokens.length) {
+            Token[] temp = new Token[tokens.length * 2];
+            System.arraycopy(tokens, 0, temp, 0, tokenCount);
+            tokens = temp;
+        }
+        node = tokens[tokenCount];
+        if (node == null) {
+            node = new Token(pattern, image, line, column);
+            tokens[tokenCount] = node;
+        } else {
+            node.init(pattern, image, line, column);
+        }
+        tokenCount++;
+        return node;
+    }
+
+    /**
+     * Releases all nodes handed out by this arena. The nodes will be
+     * reused by subsequent calls, so the caller must not retain any
+     * references to them.
+     */
+    public void release() {
+        productionCount = 0;
+        tokenCount = 0;
+    }
+
+    /**
+     * Releases all nodes and discards the pooled node objects. This
+     * method may be used to free the memory held by the arena after
+     * an unusually large parse.
+     */
+    public void clear() {
+        productions = new Production[64];
+        productionCount = 0;
+        tokens = new Token[64];
+        tokenCount = 0;
+    }
+}
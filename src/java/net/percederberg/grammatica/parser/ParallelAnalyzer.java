@@ -0,0 +1,271 @@
+/*
+ * ParallelAnalyzer.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A parallel parse tree analysis driver. This class analyzes a parse
+ * tree with an analyzer, processing independent subtrees in parallel.
+ * The subtrees are rooted at productions that have been marked as
+ * parallel-safe, typically top-level declarations or similar. Each
+ * such subtree is analyzed as a separate task in a fork-join pool,
+ * while the remaining tree spine is analyzed serially in the current
+ * thread. The subtree tasks of a spine production are forked once
+ * the production has been entered, so the analyzer callbacks for the
+ * spine are called in the same order as in a serial analysis.
+ *
+ * The analyzer callbacks for the parallel subtrees will be called
+ * concurrently from several threads, so the analyzer must be able to
+ * handle this (i.e. not modify any shared state while processing
+ * these subtrees). Parallel-safe productions nested inside another
+ * parallel subtree are analyzed as part of that subtree. The errors
+ * found are merged in tree order, so the error log will be identical
+ * to the one produced by a serial analysis.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class ParallelAnalyzer {
+
+    /**
+     * The analyzer to use.
+     */
+    private Analyzer analyzer;
+
+    /**
+     * The fork-join pool to use for the subtree tasks.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The set of parallel-safe production ids. The set contains
+     * Integer values.
+     */
+    private HashSet parallelIds = new HashSet();
+
+    /**
+     * Creates a new parallel analysis driver. The common fork-join
+     * pool will be used for the subtree tasks.
+     *
+     * @param analyzer       the analyzer to use
+     */
+    public ParallelAnalyzer(Analyzer analyzer) {
+        this(analyzer, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new parallel analysis driver.
+     *
+     * @param analyzer       the analyzer to use
+     * @param pool           the fork-join pool to use
+     */
+    public ParallelAnalyzer(Analyzer analyzer, ForkJoinPool pool) {
+        this.analyzer = analyzer;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the analyzer used.
+     *
+     * @return the analyzer used
+     */
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * Marks a production as parallel-safe. Subtrees rooted at a
+     * production with this id will be analyzed in parallel.
+     *
+     * @param id             the production pattern id
+     */
+    public void addParallelProduction(int id) {
+        parallelIds.add(new Integer(id));
+    }
+
+    /**
+     * Checks if a node is the root of a parallel-safe subtree.
+     *
+     * @param node           the parse tree node
+     *
+     * @return true if the node is parallel-safe, or
+     *         false otherwise
+     */
+    private boolean isParallel(Node node) {
+        return node instanceof Production
+            && parallelIds.contains(new Integer(node.getId()));
+    }
+
+    /**
+     * Analyzes a parse tree node. The parallel-safe subtrees are
+     * analyzed concurrently, and the remaining nodes are analyzed
+     * serially in the same order as by Analyzer.analyze(). If the
+     * analyzer uses a node arena, the whole tree will be analyzed
+     * serially (as the arena isn't thread-safe).
+     *
+     * @param node           the parse tree node to process
+     *
+     * @return the resulting parse tree node
+     *
+     * @throws ParserLogException if the node analysis discovered
+     *             errors
+     *
+     * @see Analyzer#analyze(Node)
+     */
+    public Node analyze(Node node) throws ParserLogException {
+        ParserLogException  log = new ParserLogException();
+        ParserEvents        events = ParserEvents.INSTANCE;
+        Object              event = null;
+        SubtreeTask         task;
+
+        if (analyzer.getNodeArena() != null || parallelIds.isEmpty()) {
+            return analyzer.analyze(node);
+        }
+        if (events != null) {
+            event = events.beginAnalyze();
+        }
+        if (isParallel(node)) {
+            task = new SubtreeTask(node);
+            pool.invoke(task);
+            node = task.join(log);
+        } else {
+            node = analyze(node, log);
+        }
+        if (event != null) {
+            events.endAnalyze(event, analyzer, node, log.getErrorCount());
+        }
+        if (log.getErrorCount() > 0) {
+            throw log;
+        }
+        return node;
+    }
+
+    /**
+     * Analyzes the tree spine serially. This method mirrors the
+     * analysis in Analyzer, but forks a subtree task for each
+     * parallel-safe child after the production has been entered.
+     * The subtree tasks are joined in tree order, so the spine
+     * analysis of the remaining children overlaps with them.
+     *
+     * @param node           the parse tree node to process
+     * @param log            the parser error log
+     *
+     * @return the resulting parse tree node
+     */
+    private Node analyze(Node node, ParserLogException log) {
+        SubtreeTask[]  tasks;
+        Production     prod;
+        Node           child;
+        int            errorCount;
+
+        if (!(node instanceof Production)) {
+            return analyzer.analyze(node, log);
+        }
+        errorCount = log.getErrorCount();
+        prod = analyzer.newProduction(((Production) node).getPattern());
+        try {
+            analyzer.enter(prod);
+        } catch (ParseException e) {
+            log.addError(e);
+        }
+        tasks = new SubtreeTask[node.getChildCount()];
+        for (int i = 0; i < tasks.length; i++) {
+            child = node.getChildAt(i);
+            if (isParallel(child)) {
+                tasks[i] = new SubtreeTask(child);
+                pool.execute(tasks[i]);
+            }
+        }
+        for (int i = 0; i < tasks.length; i++) {
+            if (tasks[i] != null) {
+                child = tasks[i].join(log);
+            } else {
+                child = analyze(node.getChildAt(i), log);
+            }
+            try {
+                analyzer.child(prod, child);
+            } catch (ParseException e) {
+                log.addError(e);
+            }
+        }
+        try {
+            return analyzer.exit(prod);
+        } catch (ParseException e) {
+            if (errorCount == log.getErrorCount()) {
+                log.addError(e);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * A subtree analysis task. This task analyzes a single subtree
+     * and stores the result and any errors found.
+     */
+    private class SubtreeTask extends RecursiveAction {
+
+        /**
+         * The subtree root node.
+         */
+        public Node node;
+
+        /**
+         * The resulting subtree root node.
+         */
+        public Node result = null;
+
+        /**
+         * The subtree error log.
+         */
+        public ParserLogException log = new ParserLogException();
+
+        /**
+         * Creates a new subtree analysis task.
+         *
+         * @param node           the subtree root node
+         */
+        public SubtreeTask(Node node) {
+            this.node = node;
+        }
+
+        /**
+         * Analyzes the subtree.
+         */
+        protected void compute() {
+            result = analyzer.analyze(node, log);
+        }
+
+        /**
+         * Waits for the subtree analysis to complete. Any errors
+         * found will be added to the specified error log.
+         *
+         * @param errors         the parser error log to add to
+         *
+         * @return the resulting subtree root node
+         */
+        public Node join(ParserLogException errors) {
+            join();
+            for (int i = 0; i < log.getErrorCount(); i++) {
+                errors.addError(log.getError(i));
+            }
+            return result;
+        }
+    }
+}
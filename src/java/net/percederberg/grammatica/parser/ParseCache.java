@@ -0,0 +1,609 @@
+/*
+ * ParseCache.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressed parse result cache. This class caches parse
+ * trees keyed by a fingerprint of the parser grammar and a hash of
+ * the input text. On a cache hit, the parse tree is recreated and
+ * passed through the parser analyzer without tokenizing or parsing
+ * the input. On a cache miss, the input is parsed normally and the
+ * resulting parse tree stored before being analyzed.
+ *
+ * The parse trees are stored as compact trees in a size-bounded
+ * memory cache, with the least recently used trees evicted first.
+ * Optionally, the trees can also be stored in a directory on disk,
+ * which is checked on each memory cache miss. Only successful parse
+ * results are cached. Any errors reported by the analyzer will be
+ * reported on each cache hit.
+ *
+ * A single cache can be used concurrently by any number of threads
+ * and parsers. The memory cache is divided into a number of
+ * separately locked segments, so that concurrent lookups seldom
+ * block each other. Each segment is kept within its share of the
+ * maximum memory size, except that its most recently added tree is
+ * always kept. Trees up to the full maximum memory size can
+ * therefore be cached.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see CompactTree
+ */
+public class ParseCache {
+
+    /**
+     * The number of memory cache segments. Must be a power of two.
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * The disk cache file name suffix.
+     */
+    private static final String FILE_SUFFIX = ".tree";
+
+    /**
+     * The disk cache file format identifier.
+     */
+    private static final int FILE_MAGIC = 0x47504331;
+
+    /**
+     * The memory cache segments.
+     */
+    private Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * The disk cache directory, or null for none.
+     */
+    private File dir;
+
+    /**
+     * The grammar fingerprint map. This map contains the grammar
+     * fingerprint strings indexed by parser.
+     */
+    private Map fingerprints = new WeakHashMap();
+
+    /**
+     * The number of cache hits.
+     */
+    private AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of cache misses.
+     */
+    private AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new memory-only parse cache.
+     *
+     * @param maxSize        the maximum memory size in bytes
+     */
+    public ParseCache(long maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * Creates a new parse cache with an optional disk tier. The disk
+     * directory will be created if it doesn't exist. Files in the
+     * disk directory are never removed by the cache.
+     *
+     * @param maxSize        the maximum memory size in bytes
+     * @param dir            the disk cache directory, or null for
+     *                       none
+     */
+    public ParseCache(long maxSize, File dir) {
+        this.dir = dir;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(maxSize / SEGMENTS, maxSize);
+        }
+        if (dir != null) {
+            dir.mkdirs();
+        }
+    }
+
+    /**
+     * Returns the number of cache hits.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of cache misses.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the approximate memory size of the cached trees.
+     *
+     * @return the approximate memory size in bytes
+     */
+    public long getMemorySize() {
+        long  total = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            total += segments[i].getMemorySize();
+        }
+        return total;
+    }
+
+    /**
+     * Removes all trees from the memory cache. The disk cache is
+     * not modified.
+     */
+    public void clear() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].clear();
+        }
+    }
+
+    /**
+     * Parses an input stream with a parser, using the cache if
+     * possible. The whole input stream is read before parsing, in
+     * order to compute the cache key. The parse tree returned is
+     * the result from the parser analyzer, exactly as if the
+     * Parser.parse() method had been called. Note that the parser
+     * input stream will be reset by this method.
+     *
+     * @param parser         the parser to use
+     * @param input          the input stream to parse
+     *
+     * @return the parse tree
+     *
+     * @throws ParserCreationException if the parser couldn't be
+     *             initialized correctly
+     * @throws ParserLogException if the input couldn't be read or
+     *             parsed correctly
+     */
+    public Node parse(Parser parser, Reader input)
+        throws ParserCreationException, ParserLogException {
+
+        Analyzer            analyzer = parser.getAnalyzer();
+        CompactTreeBuilder  builder;
+        CompactTree         tree;
+        String              text;
+        String              key;
+
+        text = read(input);
+        key = createKey(parser, text);
+        tree = get(key, parser);
+        if (tree == null) {
+            misses.incrementAndGet();
+            builder = new CompactTreeBuilder();
+            parser.reset(new StringReader(text), builder);
+            try {
+                parser.parse();
+            } finally {
+                parser.reset(new StringReader(""), analyzer);
+            }
+            tree = builder.getTree();
+            tree.trimToSize();
+            put(key, tree);
+        } else {
+            hits.incrementAndGet();
+            parser.reset(new StringReader(""), analyzer);
+        }
+        if (tree.getRootIndex() < 0) {
+            return null;
+        }
+        return analyzer.analyzeInPlace(tree.toTree());
+    }
+
+    /**
+     * Reads the whole input stream into a string. The input stream
+     * will be closed afterwards.
+     *
+     * @param input          the input stream to read
+     *
+     * @return the input text
+     *
+     * @throws ParserLogException if the input couldn't be read
+     */
+    private String read(Reader input) throws ParserLogException {
+        StringBuffer        buffer = new StringBuffer();
+        char[]              chars = new char[4096];
+        ParserLogException  log;
+        int                 length;
+
+        try {
+            try {
+                while ((length = input.read(chars)) > 0) {
+                    buffer.append(chars, 0, length);
+                }
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            log = new ParserLogException();
+            log.addError(new ParseException(ParseException.IO_ERROR,
+                                            e.getMessage(),
+                                            -1,
+                                            -1));
+            throw log;
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Creates a cache key for a parser and input text. The key is a
+     * hexadecimal hash string of the parser grammar fingerprint and
+     * the input text. The parser will be prepared before the
+     * fingerprint is first computed, so that it is the same for all
+     * parsers with the same grammar.
+     *
+     * @param parser         the parser to use
+     * @param text           the input text
+     *
+     * @return the cache key
+     *
+     * @throws ParserCreationException if the parser couldn't be
+     *             initialized correctly
+     */
+    private String createKey(Parser parser, String text)
+        throws ParserCreationException {
+
+        String         fingerprint;
+        MessageDigest  digest = createDigest();
+
+        synchronized (fingerprints) {
+            fingerprint = (String) fingerprints.get(parser);
+        }
+        if (fingerprint == null) {
+            parser.prepare();
+            fingerprint = fingerprint(parser);
+            synchronized (fingerprints) {
+                fingerprints.put(parser, fingerprint);
+            }
+        }
+        update(digest, fingerprint);
+        update(digest, text);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates a grammar fingerprint for a parser. The fingerprint is
+     * a hash of the parser and tokenizer pattern descriptions.
+     *
+     * @param parser         the parser to use
+     *
+     * @return the grammar fingerprint
+     */
+    static String fingerprint(Parser parser) {
+        MessageDigest  digest = createDigest();
+        Tokenizer      tokenizer = parser.getTokenizer();
+
+        update(digest, tokenizer.ignoreCase ? "i" : "c");
+        update(digest, tokenizer.toString());
+        update(digest, parser.toString());
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates a new message digest for computing hashes.
+     *
+     * @return the new message digest
+     */
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(
+                "SHA-256 message digest not available");
+        }
+    }
+
+    /**
+     * Updates a message digest with a string. The string length is
+     * included first, so that consecutive strings cannot collide.
+     *
+     * @param digest         the message digest
+     * @param str            the string to add
+     */
+    private static void update(MessageDigest digest, String str) {
+        byte[]  bytes = new byte[4096];
+        int     pos = 0;
+        char    c;
+
+        digest.update(Integer.toString(str.length()).getBytes());
+        digest.update((byte) ':');
+        for (int i = 0; i < str.length(); i++) {
+            if (pos + 2 > bytes.length) {
+                digest.update(bytes, 0, pos);
+                pos = 0;
+            }
+            c = str.charAt(i);
+            bytes[pos++] = (byte) (c >> 8);
+            bytes[pos++] = (byte) c;
+        }
+        digest.update(bytes, 0, pos);
+    }
+
+    /**
+     * Converts a byte array to a hexadecimal string.
+     *
+     * @param bytes          the byte array
+     *
+     * @return the hexadecimal string
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuffer  buffer = new StringBuffer(bytes.length * 2);
+
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+            buffer.append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Returns a cached tree. The memory cache is checked first, and
+     * then the disk cache (if available). Trees found in the disk
+     * cache are added to the memory cache.
+     *
+     * @param key            the cache key
+     * @param parser         the parser to use for reading patterns
+     *
+     * @return the cached tree, or
+     *         null if not found
+     */
+    private CompactTree get(String key, Parser parser) {
+        Segment      segment = getSegment(key);
+        CompactTree  tree = segment.get(key);
+
+        if (tree == null && dir != null) {
+            tree = readFile(key, parser);
+            if (tree != null) {
+                segment.put(key, tree);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Adds a tree to the cache. The tree will be added to the memory
+     * cache and written to the disk cache (if available).
+     *
+     * @param key            the cache key
+     * @param tree           the tree to add
+     */
+    private void put(String key, CompactTree tree) {
+        getSegment(key).put(key, tree);
+        if (dir != null) {
+            writeFile(key, tree);
+        }
+    }
+
+    /**
+     * Returns the memory cache segment for a key.
+     *
+     * @param key            the cache key
+     *
+     * @return the memory cache segment
+     */
+    private Segment getSegment(String key) {
+        return segments[key.hashCode() & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Reads a tree from the disk cache. Any error when reading the
+     * file is treated as a cache miss, and the file is deleted.
+     *
+     * @param key            the cache key
+     * @param parser         the parser to use for reading patterns
+     *
+     * @return the tree read, or
+     *         null if not found
+     */
+    private CompactTree readFile(String key, Parser parser) {
+        File             file = new File(dir, key + FILE_SUFFIX);
+        DataInputStream  in = null;
+        CompactTree      tree = null;
+
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+            if (in.readInt() == FILE_MAGIC) {
+                tree = CompactTree.read(in, parser, file.length() - 4);
+            }
+        } catch (IOException e) {
+            tree = null;
+        } catch (RuntimeException e) {
+            tree = null;
+        } finally {
+            close(in);
+        }
+        if (tree == null) {
+            file.delete();
+        }
+        return tree;
+    }
+
+    /**
+     * Writes a tree to the disk cache. The tree is first written to
+     * a temporary file that is renamed once complete, so concurrent
+     * readers never see partial files. Any error when writing the
+     * file is ignored.
+     *
+     * @param key            the cache key
+     * @param tree           the tree to write
+     */
+    private void writeFile(String key, CompactTree tree) {
+        File              file = new File(dir, key + FILE_SUFFIX);
+        File              temp = null;
+        DataOutputStream  out = null;
+
+        try {
+            temp = File.createTempFile(key, ".tmp", dir);
+            out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+            out.writeInt(FILE_MAGIC);
+            tree.write(out);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            if (temp != null) {
+                temp.delete();
+            }
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Closes an input or output stream, ignoring any errors.
+     *
+     * @param stream         the stream to close, or null
+     */
+    private void close(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ignore) {
+                // Do nothing
+            }
+        }
+    }
+
+
+    /**
+     * A memory cache segment. Each segment contains a separately
+     * locked part of the memory cache, ordered from the least to
+     * the most recently used tree.
+     */
+    private static class Segment {
+
+        /**
+         * The cached trees indexed by key, in access order.
+         */
+        private LinkedHashMap trees = new LinkedHashMap(16, 0.75f, true);
+
+        /**
+         * The maximum memory size in bytes.
+         */
+        private long maxSize;
+
+        /**
+         * The maximum memory size of a single tree in bytes.
+         */
+        private long maxTreeSize;
+
+        /**
+         * The current memory size in bytes.
+         */
+        private long size = 0;
+
+        /**
+         * Creates a new memory cache segment.
+         *
+         * @param maxSize        the maximum memory size in bytes
+         * @param maxTreeSize    the maximum tree memory size in bytes
+         */
+        public Segment(long maxSize, long maxTreeSize) {
+            this.maxSize = maxSize;
+            this.maxTreeSize = maxTreeSize;
+        }
+
+        /**
+         * Returns the current memory size.
+         *
+         * @return the current memory size in bytes
+         */
+        public synchronized long getMemorySize() {
+            return size;
+        }
+
+        /**
+         * Returns a cached tree. The tree will be marked as the most
+         * recently used.
+         *
+         * @param key            the cache key
+         *
+         * @return the cached tree, or
+         *         null if not found
+         */
+        public synchronized CompactTree get(String key) {
+            return (CompactTree) trees.get(key);
+        }
+
+        /**
+         * Adds a tree to this segment. The least recently used trees
+         * will be evicted until the segment memory size is within
+         * the limit, or only the added tree remains. Trees larger
+         * than the maximum tree size are not added.
+         *
+         * @param key            the cache key
+         * @param tree           the tree to add
+         */
+        public synchronized void put(String key, CompactTree tree) {
+            CompactTree  old;
+            Iterator     iter;
+
+            if (tree.getMemorySize() > maxTreeSize) {
+                return;
+            }
+            old = (CompactTree) trees.put(key, tree);
+            if (old != null) {
+                size -= old.getMemorySize();
+            }
+            size += tree.getMemorySize();
+            iter = trees.values().iterator();
+            while (size > maxSize && trees.size() > 1) {
+                size -= ((CompactTree) iter.next()).getMemorySize();
+                iter.remove();
+            }
+        }
+
+        /**
+         * Removes all trees from this segment.
+         */
+        public synchronized void clear() {
+            trees.clear();
+            size = 0;
+        }
+    }
+}
@@ -24,7 +24,7 @@ import java.util.HashMap;
  * interface, as well as token handling.
  *
  * @author   Per Cederberg
- * @version  1.6
+ * @version  1.7
  */
 public abstract class Parser {
 
@@ -77,6 +77,22 @@ public abstract class Parser {
      */
     private int errorRecovery = -1;
 
+    /**
+     * The metrics listener, or null if not used.
+     */
+    private ParserMetrics metrics = null;
+
+    /**
+     * The number of look-ahead tokens peeked. This counter is updated
+     * by peekToken() and reset for each measured decision.
+     */
+    private int peekCount = 0;
+
+    /**
+     * The number of tokens consumed in the current parse.
+     */
+    private int tokenCount = 0;
+
     /**
      * Creates a new parser.
      *
@@ -182,6 +198,64 @@ public abstract class Parser {
         return analyzer;
     }
 
+    /**
+     * Returns the node arena in use by this parser.
+     *
+     * @return the node arena in use, or
+     *         null if no arena is used
+     *
+     * @since 1.7
+     */
+    public NodeArena getNodeArena() {
+        return tokenizer.getNodeArena();
+    }
+
+    /**
+     * Sets the node arena to use for all new parse tree nodes. The
+     * arena will be set in both the tokenizer and the analyzer, and
+     * also in any analyzer later provided to reset(). Once a parse
+     * tree is no longer needed, all its nodes can be recycled with
+     * NodeArena.release(). By default no arena is used.
+     *
+     * @param arena          the node arena, or null for none
+     *
+     * @since 1.7
+     */
+    public void setNodeArena(NodeArena arena) {
+        tokenizer.setNodeArena(arena);
+        analyzer.setNodeArena(arena);
+    }
+
+    /**
+     * Returns the metrics listener used by this parser.
+     *
+     * @return the metrics listener, or
+     *         null if not used
+     *
+     * @since 1.7
+     */
+    public ParserMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics listener. The listener will be set in both
+     * the parser and the tokenizer, and notified of all tokens
+     * matched, productions parsed, look-ahead decisions and error
+     * recovery events. The same listener may be shared by several
+     * parsers. By default no listener is used.
+     *
+     * @param metrics        the metrics listener, or null for none
+     *
+     * @see ParserStatistics
+     *
+     * @since 1.7
+     */
+    public void setMetrics(ParserMetrics metrics) {
+        this.metrics = metrics;
+        tokenizer.setMetrics(metrics);
+    }
+
     /**
      * Sets the parser initialized flag. Normally this flag is set by
      * the prepare() method, but this method allows further
@@ -336,7 +410,8 @@ public abstract class Parser {
      * the error log in the parser. It is normally called in order to
      * reuse a parser and tokenizer pair with multiple input streams,
      * thereby avoiding the cost of re-analyzing the grammar
-     * structures.
+     * structures. Any node arena in use will also be set in the new
+     * analyzer.
      *
      * @param input          the new input stream to read
      * @param analyzer       the new analyzer call-back to use
@@ -347,6 +422,9 @@ public abstract class Parser {
      */
     public void reset(Reader input, Analyzer analyzer) {
         this.tokenizer.reset(input);
+        if (tokenizer.getNodeArena() != null) {
+            analyzer.setNodeArena(tokenizer.getNodeArena());
+        }
         this.analyzer = analyzer;
     }
 
@@ -372,7 +450,9 @@ public abstract class Parser {
      * @see Tokenizer#reset
      */
     public Node parse() throws ParserCreationException, ParserLogException {
-        Node  root = null;
+        ParserEvents  events = ParserEvents.INSTANCE;
+        Object        event = null;
+        Node          root = null;
 
         // Initialize parser
         if (!initialized) {
@@ -381,12 +461,25 @@ public abstract class Parser {
         this.tokens.clear();
         this.errorLog = new ParserLogException();
         this.errorRecovery = -1;
+        this.tokenCount = 0;
 
         // Parse input
+        if (events != null) {
+            event = events.beginParse();
+        }
         try {
             root = parseStart();
         } catch (ParseException e) {
             addError(e, true);
+        } finally {
+            tokenizer.stopPipeline();
+        }
+        if (event != null) {
+            events.endParse(event,
+                            this,
+                            root,
+                            tokenCount,
+                            errorLog.getErrorCount());
         }
 
         // Check for errors
@@ -436,6 +529,9 @@ public abstract class Parser {
     void addError(ParseException e, boolean recovery) {
         if (errorRecovery <= 0) {
             errorLog.addError(e);
+            if (recovery && metrics != null) {
+                metrics.errorRecovered(e);
+            }
         }
         if (recovery) {
             errorRecovery = 3;
@@ -498,7 +594,8 @@ public abstract class Parser {
     }
 
     /**
-     * Handles the parser leaving a production. This method calls the
+     * Handles the parser leaving a production. This method captures
+     * the production position and descendant count, calls the
      * appropriate analyzer call-back if the node is not hidden, and
      * returns the result. Note that this method will not call any
      * call-back if an error requiring recovery has occurred.
@@ -509,6 +606,9 @@ public abstract class Parser {
      *         null if no parse tree should be created
      */
     Node exitNode(Node node) {
+        if (node instanceof Production) {
+            ((Production) node).updateCache();
+        }
         if (!node.isHidden() && errorRecovery < 0) {
             try {
                 return analyzer.exit(node);
@@ -560,6 +660,7 @@ public abstract class Parser {
 
         if (token != null) {
             tokens.remove(0);
+            tokenCount++;
             return token;
         } else {
             throw new ParseException(
@@ -617,6 +718,9 @@ public abstract class Parser {
     Token peekToken(int steps) {
         Token  token;
 
+        if (steps >= peekCount) {
+            peekCount = steps + 1;
+        }
         while (steps >= tokens.size()) {
             try {
                 token = tokenizer.next();
@@ -632,6 +736,19 @@ public abstract class Parser {
         return (Token) tokens.get(steps);
     }
 
+    /**
+     * Returns the number of look-ahead tokens peeked since the last
+     * call, and resets the counter.
+     *
+     * @return the number of look-ahead tokens peeked
+     */
+    int resetPeekCount() {
+        int  res = peekCount;
+
+        peekCount = 0;
+        return res;
+    }
+
     /**
      * Returns a string representation of this parser. The string will
      * contain all the production definitions and various additional
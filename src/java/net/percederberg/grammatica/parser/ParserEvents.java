@@ -0,0 +1,152 @@
+/*
+ * ParserEvents.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+/**
+ * A parser event recorder. This class reports the tokenizer, parser
+ * and analyzer phases to the Java Flight Recorder (JFR). The JFR
+ * implementation is only loaded if the JFR API is available in the
+ * current Java runtime, so the parser can still be used without it.
+ * Each event is started with a begin method and finished with the
+ * corresponding end method. The begin methods return null if the
+ * event isn't currently recorded, in which case the end method
+ * shouldn't be called.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+abstract class ParserEvents {
+
+    /**
+     * The number of tokens to include in each tokenizer event.
+     */
+    public static final int TOKEN_BATCH_SIZE = 1024;
+
+    /**
+     * The event recorder instance, or null if JFR isn't available.
+     */
+    public static final ParserEvents INSTANCE = create();
+
+    /**
+     * Creates the JFR event recorder. The implementation class is
+     * loaded by name, so that no JFR classes are loaded unless
+     * available.
+     *
+     * @return the JFR event recorder, or
+     *         null if JFR isn't available
+     */
+    private static ParserEvents create() {
+        String  name = "net.percederberg.grammatica.parser.JfrParserEvents";
+
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (ParserEvents) Class.forName(name)
+                .getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts a tokenizer event. Each tokenizer event covers a batch
+     * of tokens, as recording every token would be too costly. As
+     * the parser work between the tokens is also included in the
+     * batch, the time spent in the tokenizer is measured separately.
+     *
+     * @return the event started, or
+     *         null if not recorded
+     */
+    public abstract Object beginTokenize();
+
+    /**
+     * Finishes a tokenizer event.
+     *
+     * @param event          the event started
+     * @param tokenizer      the tokenizer used
+     * @param tokens         the number of tokens read
+     * @param characters     the number of token characters read
+     * @param errors         the number of tokenizer errors
+     * @param time           the tokenizer time in nanoseconds
+     */
+    public abstract void endTokenize(Object event,
+                                     Tokenizer tokenizer,
+                                     int tokens,
+                                     long characters,
+                                     int errors,
+                                     long time);
+
+    /**
+     * Starts a parser preparation event.
+     *
+     * @return the event started, or
+     *         null if not recorded
+     */
+    public abstract Object beginPrepare();
+
+    /**
+     * Finishes a parser preparation event.
+     *
+     * @param event          the event started
+     * @param parser         the parser prepared
+     */
+    public abstract void endPrepare(Object event, Parser parser);
+
+    /**
+     * Starts a parse event.
+     *
+     * @return the event started, or
+     *         null if not recorded
+     */
+    public abstract Object beginParse();
+
+    /**
+     * Finishes a parse event.
+     *
+     * @param event          the event started
+     * @param parser         the parser used
+     * @param root           the parse tree root node, or null
+     * @param tokens         the number of tokens consumed
+     * @param errors         the number of parse errors
+     */
+    public abstract void endParse(Object event,
+                                  Parser parser,
+                                  Node root,
+                                  int tokens,
+                                  int errors);
+
+    /**
+     * Starts an analyzer event.
+     *
+     * @return the event started, or
+     *         null if not recorded
+     */
+    public abstract Object beginAnalyze();
+
+    /**
+     * Finishes an analyzer event.
+     *
+     * @param event          the event started
+     * @param analyzer       the analyzer used
+     * @param node           the parse tree node analyzed
+     * @param errors         the number of analysis errors
+     */
+    public abstract void endAnalyze(Object event,
+                                    Analyzer analyzer,
+                                    Node node,
+                                    int errors);
+}
@@ -0,0 +1,113 @@
+/*
+ * ParserMetrics.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+/**
+ * A parser instrumentation listener. This interface is called by the
+ * tokenizer and parser when set, reporting token matches, matcher
+ * times, production parsing times, look-ahead decisions and error
+ * recovery. No calls are made and no time measurements are taken
+ * when no listener is set. The tokenizer may be called from other
+ * threads in the pipelined or parallel split modes, so
+ * implementations should be thread-safe.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see Parser#setMetrics
+ * @see Tokenizer#setMetrics
+ */
+public interface ParserMetrics {
+
+    /**
+     * The string DFA token matcher type.
+     */
+    int STRING_MATCHER = 0;
+
+    /**
+     * The regular expression NFA token matcher type.
+     */
+    int NFA_MATCHER = 1;
+
+    /**
+     * The regular expression token matcher type.
+     */
+    int REGEXP_MATCHER = 2;
+
+    /**
+     * Called when a token has been matched by the tokenizer. This
+     * includes ignored and error tokens.
+     *
+     * @param pattern        the token pattern matched
+     * @param length         the token length in characters
+     */
+    void tokenMatched(TokenPattern pattern, int length);
+
+    /**
+     * Called when a token matcher has checked the input for a token.
+     * Each tokenizer matcher is called once for every token read.
+     *
+     * @param matcher        the token matcher type
+     * @param time           the time spent, in nanoseconds
+     */
+    void matcherCompleted(int matcher, long time);
+
+    /**
+     * Called when a production pattern has been parsed. The time
+     * spent includes the parsing of all nested productions.
+     *
+     * @param pattern        the production pattern parsed
+     * @param time           the time spent, in nanoseconds
+     */
+    void productionParsed(ProductionPattern pattern, long time);
+
+    /**
+     * Called when a production pattern alternative has been chosen
+     * from the look-ahead tokens.
+     *
+     * @param pattern        the production pattern
+     * @param alternatives   the number of alternatives tested
+     * @param tokens         the number of look-ahead tokens peeked
+     * @param isDefault      the default alternative flag
+     */
+    void alternativeChosen(ProductionPattern pattern,
+                           int alternatives,
+                           int tokens,
+                           boolean isDefault);
+
+    /**
+     * Called when the look-ahead tokens have been checked for an
+     * optional or repeated production pattern element.
+     *
+     * @param alt            the production pattern alternative
+     * @param pos            the element position, from 0 and up
+     * @param tokens         the number of look-ahead tokens peeked
+     * @param match          the element match flag
+     */
+    void elementChecked(ProductionPatternAlternative alt,
+                        int pos,
+                        int tokens,
+                        boolean match);
+
+    /**
+     * Called when a parse error makes the parser enter error
+     * recovery mode. Errors found during the recovery are not
+     * reported, as they are not added to the error log either.
+     *
+     * @param e              the error causing the recovery
+     */
+    void errorRecovered(ParseException e);
+}
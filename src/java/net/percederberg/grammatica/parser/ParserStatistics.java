@@ -0,0 +1,698 @@
+/*
+ * ParserStatistics.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A parser metrics collector. This class aggregates the counters
+ * reported by any number of tokenizers and parsers, both in total
+ * and per token or production pattern. The aggregate counters can be
+ * exposed as a JMX MBean with the register() method. Note that the
+ * inclusive production times overlap for recursive productions, as
+ * each nested invocation is included in the time of the enclosing
+ * ones. This class is thread-safe. Each thread updates its own
+ * counters without locking, in arrays indexed by the pattern id, and
+ * the counters from all threads are merged when read. Counters read
+ * while parsing is in progress may therefore be slightly out of
+ * date. Patterns with negative ids are not counted.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class ParserStatistics implements ParserMetrics,
+                                         ParserStatisticsMBean {
+
+    /**
+     * The maximum number of lines in the pattern summaries.
+     */
+    private static final int TOP_COUNT = 10;
+
+    /**
+     * The counters for the current thread. A new thread-local
+     * variable is created on reset, so that all threads start over
+     * with new counters.
+     */
+    private volatile ThreadLocal local = new ThreadLocal();
+
+    /**
+     * The counters for all live threads. Access to this list, and to
+     * the retired counters, is synchronized on the list.
+     */
+    private ArrayList threads = new ArrayList();
+
+    /**
+     * The merged counters from all threads that have terminated.
+     */
+    private Counters retired = new Counters(null);
+
+    /**
+     * The registered MBean object name, or null if not registered.
+     */
+    private ObjectName objectName = null;
+
+    /**
+     * Creates a new parser metrics collector.
+     */
+    public ParserStatistics() {
+        // Nothing to initialize
+    }
+
+    /**
+     * Registers this object as an MBean in the platform MBean server.
+     * Any previous registration will be removed first.
+     *
+     * @param name           the MBean object name, for example
+     *                       "net.percederberg.grammatica:type=Parser"
+     *
+     * @throws JMException if the MBean couldn't be registered
+     */
+    public void register(String name) throws JMException {
+        MBeanServer  server = ManagementFactory.getPlatformMBeanServer();
+
+        unregister();
+        objectName = new ObjectName(name);
+        server.registerMBean(this, objectName);
+    }
+
+    /**
+     * Removes this object from the platform MBean server. If not
+     * registered, nothing is done.
+     *
+     * @throws JMException if the MBean couldn't be unregistered
+     */
+    public void unregister() throws JMException {
+        MBeanServer  server = ManagementFactory.getPlatformMBeanServer();
+
+        if (objectName != null) {
+            server.unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    /**
+     * Called when a token has been matched by the tokenizer. This
+     * includes ignored and error tokens.
+     *
+     * @param pattern        the token pattern matched
+     * @param length         the token length in characters
+     */
+    public void tokenMatched(TokenPattern pattern, int length) {
+        Counter  counter = counters().findToken(pattern);
+
+        counter.count++;
+        counter.size += length;
+    }
+
+    /**
+     * Called when a token matcher has checked the input for a token.
+     *
+     * @param matcher        the token matcher type
+     * @param time           the time spent, in nanoseconds
+     */
+    public void matcherCompleted(int matcher, long time) {
+        counters().matcherTimes[matcher] += time;
+    }
+
+    /**
+     * Called when a production pattern has been parsed.
+     *
+     * @param pattern        the production pattern parsed
+     * @param time           the time spent, in nanoseconds
+     */
+    public void productionParsed(ProductionPattern pattern, long time) {
+        Counter  counter = counters().findProduction(pattern);
+
+        counter.count++;
+        counter.time += time;
+    }
+
+    /**
+     * Called when a production pattern alternative has been chosen
+     * from the look-ahead tokens.
+     *
+     * @param pattern        the production pattern
+     * @param alternatives   the number of alternatives tested
+     * @param tokens         the number of look-ahead tokens peeked
+     * @param isDefault      the default alternative flag
+     */
+    public void alternativeChosen(ProductionPattern pattern,
+                                  int alternatives,
+                                  int tokens,
+                                  boolean isDefault) {
+
+        Counter  counter = counters().findProduction(pattern);
+
+        counter.decisions++;
+        counter.size += tokens;
+    }
+
+    /**
+     * Called when the look-ahead tokens have been checked for an
+     * optional or repeated production pattern element. These checks
+     * are not included in the statistics.
+     *
+     * @param alt            the production pattern alternative
+     * @param pos            the element position, from 0 and up
+     * @param tokens         the number of look-ahead tokens peeked
+     * @param match          the element match flag
+     *
+     * @see LookAheadProfiler
+     */
+    public void elementChecked(ProductionPatternAlternative alt,
+                               int pos,
+                               int tokens,
+                               boolean match) {
+
+        // Not included in the statistics
+    }
+
+    /**
+     * Called when the parser enters error recovery mode.
+     *
+     * @param e              the error causing the recovery
+     */
+    public void errorRecovered(ParseException e) {
+        counters().errors++;
+    }
+
+    /**
+     * Returns the number of tokens matched.
+     *
+     * @return the number of tokens matched
+     */
+    public long getTokenCount() {
+        return sum(merge().tokens, false);
+    }
+
+    /**
+     * Returns the number of tokens matched for a token pattern.
+     *
+     * @param pattern        the token pattern
+     *
+     * @return the number of tokens matched
+     */
+    public long getTokenCount(TokenPattern pattern) {
+        Counter  counter = find(merge().tokens, pattern.getId());
+
+        return (counter == null) ? 0 : counter.count;
+    }
+
+    /**
+     * Returns the number of characters in all tokens matched.
+     *
+     * @return the number of token characters
+     */
+    public long getTokenCharacters() {
+        return sum(merge().tokens, true);
+    }
+
+    /**
+     * Returns the time spent in the string DFA token matcher.
+     *
+     * @return the time spent, in nanoseconds
+     */
+    public long getStringMatcherTime() {
+        return merge().matcherTimes[STRING_MATCHER];
+    }
+
+    /**
+     * Returns the time spent in the regular expression NFA token
+     * matcher.
+     *
+     * @return the time spent, in nanoseconds
+     */
+    public long getNfaMatcherTime() {
+        return merge().matcherTimes[NFA_MATCHER];
+    }
+
+    /**
+     * Returns the time spent in the regular expression token
+     * matcher.
+     *
+     * @return the time spent, in nanoseconds
+     */
+    public long getRegExpMatcherTime() {
+        return merge().matcherTimes[REGEXP_MATCHER];
+    }
+
+    /**
+     * Returns the number of productions parsed.
+     *
+     * @return the number of productions parsed
+     */
+    public long getProductionCount() {
+        return sum(merge().productions, false);
+    }
+
+    /**
+     * Returns the number of times a production pattern was parsed.
+     *
+     * @param pattern        the production pattern
+     *
+     * @return the number of productions parsed
+     */
+    public long getProductionCount(ProductionPattern pattern) {
+        Counter  counter = find(merge().productions, pattern.getId());
+
+        return (counter == null) ? 0 : counter.count;
+    }
+
+    /**
+     * Returns the inclusive time spent parsing a production pattern.
+     *
+     * @param pattern        the production pattern
+     *
+     * @return the time spent, in nanoseconds
+     */
+    public long getProductionTime(ProductionPattern pattern) {
+        Counter  counter = find(merge().productions, pattern.getId());
+
+        return (counter == null) ? 0 : counter.time;
+    }
+
+    /**
+     * Returns the number of production alternative decisions.
+     *
+     * @return the number of alternative decisions
+     */
+    public long getDecisionCount() {
+        Counter[]  list = merge().productions;
+        long       res = 0;
+
+        for (int i = 0; i < list.length; i++) {
+            if (list[i] != null) {
+                res += list[i].decisions;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns the number of look-ahead tokens peeked in all the
+     * production alternative decisions.
+     *
+     * @return the number of look-ahead tokens peeked
+     */
+    public long getLookAheadCount() {
+        return sum(merge().productions, true);
+    }
+
+    /**
+     * Returns the number of error recovery events.
+     *
+     * @return the number of error recovery events
+     */
+    public long getErrorRecoveryCount() {
+        return merge().errors;
+    }
+
+    /**
+     * Returns a summary of the most frequently matched token
+     * patterns. Each line contains the pattern name, the match count
+     * and the number of characters matched.
+     *
+     * @return an array with one line per token pattern
+     */
+    public String[] getTopTokens() {
+        ArrayList  list = sort(merge().tokens, false);
+        String[]   res = new String[list.size()];
+        Counter    counter;
+
+        for (int i = 0; i < res.length; i++) {
+            counter = (Counter) list.get(i);
+            res[i] = counter.name + ": " + counter.count + " tokens, " +
+                     counter.size + " characters";
+        }
+        return res;
+    }
+
+    /**
+     * Returns a summary of the production patterns with the most
+     * inclusive time. Each line contains the pattern name, the
+     * number of invocations, the inclusive time and the average
+     * number of look-ahead tokens per decision.
+     *
+     * @return an array with one line per production pattern
+     */
+    public String[] getTopProductions() {
+        ArrayList  list = sort(merge().productions, true);
+        String[]   res = new String[list.size()];
+        Counter    counter;
+        double     avg;
+
+        for (int i = 0; i < res.length; i++) {
+            counter = (Counter) list.get(i);
+            avg = (counter.decisions == 0) ?
+                  0 : (double) counter.size / counter.decisions;
+            res[i] = counter.name + ": " + counter.count + " calls, " +
+                     ReportFormat.format("%.3f", counter.time / 1000000.0) +
+                     " ms, " + ReportFormat.format("%.2f", avg) +
+                     " look-ahead tokens";
+        }
+        return res;
+    }
+
+    /**
+     * Resets all the counters to zero. Each thread will start over
+     * with new counters on the next update.
+     */
+    public void reset() {
+        synchronized (threads) {
+            local = new ThreadLocal();
+            threads.clear();
+            retired = new Counters(null);
+        }
+    }
+
+    /**
+     * Returns the counters for the current thread. New counters are
+     * created on the first call from each thread.
+     *
+     * @return the counters for the current thread
+     */
+    private Counters counters() {
+        Counters  counters = (Counters) local.get();
+
+        return (counters != null) ? counters : createCounters();
+    }
+
+    /**
+     * Creates the counters for the current thread. Any counters for
+     * terminated threads are merged into the retired counters at
+     * the same time, so that only live threads have their own
+     * counters.
+     *
+     * @return the new counters for the current thread
+     */
+    private Counters createCounters() {
+        Counters  counters;
+
+        synchronized (threads) {
+            for (int i = threads.size() - 1; i >= 0; i--) {
+                counters = (Counters) threads.get(i);
+                if (!counters.owner.isAlive()) {
+                    retired.add(counters);
+                    threads.remove(i);
+                }
+            }
+            counters = new Counters(Thread.currentThread());
+            threads.add(counters);
+            local.set(counters);
+        }
+        return counters;
+    }
+
+    /**
+     * Returns the merged counters from all threads.
+     *
+     * @return the new merged counters
+     */
+    private Counters merge() {
+        Counters  res = new Counters(null);
+
+        synchronized (threads) {
+            res.add(retired);
+            for (int i = 0; i < threads.size(); i++) {
+                res.add((Counters) threads.get(i));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns a pattern counter from a counter array.
+     *
+     * @param list           the counter array
+     * @param id             the pattern id
+     *
+     * @return the pattern counter, or
+     *         null if not found
+     */
+    private Counter find(Counter[] list, int id) {
+        return (id >= 0 && id < list.length) ? list[id] : null;
+    }
+
+    /**
+     * Returns the sum of the counts or sizes in a counter array.
+     *
+     * @param list           the counter array
+     * @param size           the size flag, or false for the counts
+     *
+     * @return the sum of all counter values
+     */
+    private long sum(Counter[] list, boolean size) {
+        long  res = 0;
+
+        for (int i = 0; i < list.length; i++) {
+            if (list[i] != null) {
+                res += size ? list[i].size : list[i].count;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns the top counters in a counter array. The counters are
+     * sorted in descending order, either by count or by time.
+     *
+     * @param counters       the counter array
+     * @param time           the time sort flag, or false for count
+     *
+     * @return the list of top counters
+     */
+    private ArrayList sort(Counter[] counters, final boolean time) {
+        ArrayList  list = new ArrayList();
+
+        for (int i = 0; i < counters.length; i++) {
+            if (counters[i] != null) {
+                list.add(counters[i]);
+            }
+        }
+        Collections.sort(list, new Comparator() {
+            public int compare(Object obj1, Object obj2) {
+                Counter  c1 = (Counter) obj1;
+                Counter  c2 = (Counter) obj2;
+                long     v1 = time ? c1.time : c1.count;
+                long     v2 = time ? c2.time : c2.count;
+
+                return (v1 > v2) ? -1 : ((v1 < v2) ? 1 : 0);
+            }
+        });
+        while (list.size() > TOP_COUNT) {
+            list.remove(list.size() - 1);
+        }
+        return list;
+    }
+
+
+    /**
+     * The counters for a single thread. Only the owner thread
+     * updates the counters, so no locking is needed.
+     */
+    private static class Counters {
+
+        /**
+         * The owner thread, or null for merged counters.
+         */
+        public Thread owner;
+
+        /**
+         * The token pattern counters, indexed by pattern id.
+         */
+        public Counter[] tokens = new Counter[0];
+
+        /**
+         * The production pattern counters, indexed by pattern id.
+         */
+        public Counter[] productions = new Counter[0];
+
+        /**
+         * The time spent in each token matcher, in nanoseconds. The
+         * array is indexed by the matcher type.
+         */
+        public long[] matcherTimes = new long[3];
+
+        /**
+         * The number of error recovery events.
+         */
+        public long errors = 0;
+
+        /**
+         * Creates new thread counters.
+         *
+         * @param owner          the owner thread, or null
+         */
+        public Counters(Thread owner) {
+            this.owner = owner;
+        }
+
+        /**
+         * Finds or creates a token pattern counter.
+         *
+         * @param pattern        the token pattern
+         *
+         * @return the token pattern counter
+         */
+        public Counter findToken(TokenPattern pattern) {
+            int  id = pattern.getId();
+
+            if (id < 0) {
+                return new Counter(pattern.getName());
+            } else if (id >= tokens.length) {
+                tokens = grow(tokens, id + 1);
+            }
+            if (tokens[id] == null) {
+                tokens[id] = new Counter(pattern.getName());
+            }
+            return tokens[id];
+        }
+
+        /**
+         * Finds or creates a production pattern counter.
+         *
+         * @param pattern        the production pattern
+         *
+         * @return the production pattern counter
+         */
+        public Counter findProduction(ProductionPattern pattern) {
+            int  id = pattern.getId();
+
+            if (id < 0) {
+                return new Counter(pattern.getName());
+            } else if (id >= productions.length) {
+                productions = grow(productions, id + 1);
+            }
+            if (productions[id] == null) {
+                productions[id] = new Counter(pattern.getName());
+            }
+            return productions[id];
+        }
+
+        /**
+         * Adds all the values from other counters to these ones.
+         *
+         * @param other          the counters to add
+         */
+        public void add(Counters other) {
+            tokens = add(tokens, other.tokens);
+            productions = add(productions, other.productions);
+            for (int i = 0; i < matcherTimes.length; i++) {
+                matcherTimes[i] += other.matcherTimes[i];
+            }
+            errors += other.errors;
+        }
+
+        /**
+         * Adds all the pattern counters from one array to another.
+         *
+         * @param list           the counter array to add to
+         * @param other          the counter array to add
+         *
+         * @return the counter array added to, possibly grown
+         */
+        private static Counter[] add(Counter[] list, Counter[] other) {
+            if (other.length > list.length) {
+                list = grow(list, other.length);
+            }
+            for (int i = 0; i < other.length; i++) {
+                if (other[i] != null) {
+                    if (list[i] == null) {
+                        list[i] = new Counter(other[i].name);
+                    }
+                    list[i].add(other[i]);
+                }
+            }
+            return list;
+        }
+
+        /**
+         * Grows a counter array to at least a minimum size.
+         *
+         * @param list           the counter array
+         * @param size           the minimum size
+         *
+         * @return the new counter array
+         */
+        private static Counter[] grow(Counter[] list, int size) {
+            Counter[]  res = new Counter[Math.max(list.length * 2, size)];
+
+            System.arraycopy(list, 0, res, 0, list.length);
+            return res;
+        }
+    }
+
+
+    /**
+     * A token or production pattern counter.
+     */
+    private static class Counter {
+
+        /**
+         * The pattern name.
+         */
+        public final String name;
+
+        /**
+         * The number of tokens matched or productions parsed.
+         */
+        public long count = 0;
+
+        /**
+         * The number of token characters, or the number of
+         * look-ahead tokens peeked for productions.
+         */
+        public long size = 0;
+
+        /**
+         * The inclusive production time, in nanoseconds.
+         */
+        public long time = 0;
+
+        /**
+         * The number of production alternative decisions.
+         */
+        public long decisions = 0;
+
+        /**
+         * Creates a new pattern counter.
+         *
+         * @param name           the pattern name
+         */
+        public Counter(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Adds all the values from another counter to this one.
+         *
+         * @param other          the counter to add
+         */
+        public void add(Counter other) {
+            count += other.count;
+            size += other.size;
+            time += other.time;
+            decisions += other.decisions;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * ParserStatisticsMBean.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+/**
+ * The JMX management interface for the parser statistics. This
+ * interface exposes the aggregate parser counters, together with
+ * short summaries of the hottest token and production patterns.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ *
+ * @see ParserStatistics#register
+ */
+public interface ParserStatisticsMBean {
+
+    /**
+     * Returns the number of tokens matched.
+     *
+     * @return the number of tokens matched
+     */
+    long getTokenCount();
+
+    /**
+     * Returns the number of characters in all tokens matched.
+     *
+     * @return the number of token characters
+     */
+    long getTokenCharacters();
+
+    /**
+     * Returns the time spent in the string DFA token matcher.
+     *
+     * @return the time spent, in nanoseconds
+     */
+    long getStringMatcherTime();
+
+    /**
+     * Returns the time spent in the regular expression NFA token
+     * matcher.
+     *
+     * @return the time spent, in nanoseconds
+     */
+    long getNfaMatcherTime();
+
+    /**
+     * Returns the time spent in the regular expression token
+     * matcher.
+     *
+     * @return the time spent, in nanoseconds
+     */
+    long getRegExpMatcherTime();
+
+    /**
+     * Returns the number of productions parsed.
+     *
+     * @return the number of productions parsed
+     */
+    long getProductionCount();
+
+    /**
+     * Returns the number of production alternative decisions.
+     *
+     * @return the number of alternative decisions
+     */
+    long getDecisionCount();
+
+    /**
+     * Returns the number of look-ahead tokens peeked in all the
+     * production alternative decisions.
+     *
+     * @return the number of look-ahead tokens peeked
+     */
+    long getLookAheadCount();
+
+    /**
+     * Returns the number of error recovery events.
+     *
+     * @return the number of error recovery events
+     */
+    long getErrorRecoveryCount();
+
+    /**
+     * Returns a summary of the most frequently matched token
+     * patterns. Each line contains the pattern name, the match count
+     * and the number of characters matched.
+     *
+     * @return an array with one line per token pattern
+     */
+    String[] getTopTokens();
+
+    /**
+     * Returns a summary of the production patterns with the most
+     * inclusive time. Each line contains the pattern name, the
+     * number of invocations, the inclusive time and the average
+     * number of look-ahead tokens per decision.
+     *
+     * @return an array with one line per production pattern
+     */
+    String[] getTopProductions();
+
+    /**
+     * Resets all the counters to zero.
+     */
+    void reset();
+}
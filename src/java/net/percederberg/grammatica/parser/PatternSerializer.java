@@ -0,0 +1,269 @@
+/*
+ * PatternSerializer.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A token and production pattern serializer. This class writes and
+ * reads patterns in a compact binary format, including any
+ * look-ahead sets calculated when a parser was prepared. Production
+ * patterns read with complete look-ahead sets are marked as
+ * precomputed, so that preparing a new parser with them doesn't
+ * repeat the look-ahead analysis. This requires that the patterns
+ * are used with the same set of other patterns as when written.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class PatternSerializer {
+
+    /**
+     * Creates a new pattern serializer. This constructor is private
+     * as all the methods are static.
+     */
+    private PatternSerializer() {
+        // Nothing to initialize
+    }
+
+    /**
+     * Writes a token pattern.
+     *
+     * @param out            the output to write to
+     * @param pattern        the token pattern to write
+     *
+     * @throws IOException if the pattern couldn't be written
+     */
+    public static void writeTokenPattern(DataOutput out,
+                                         TokenPattern pattern)
+        throws IOException {
+
+        out.writeInt(pattern.getId());
+        writeString(out, pattern.getName());
+        out.writeInt(pattern.getType());
+        writeString(out, pattern.getPattern());
+        out.writeBoolean(pattern.isError());
+        writeString(out, pattern.getErrorMessage());
+        out.writeBoolean(pattern.isIgnore());
+        writeString(out, pattern.getIgnoreMessage());
+        writeString(out, pattern.getDebugInfo());
+    }
+
+    /**
+     * Reads a token pattern written by writeTokenPattern().
+     *
+     * @param in             the input to read from
+     *
+     * @return the token pattern read
+     *
+     * @throws IOException if the pattern couldn't be read
+     */
+    public static TokenPattern readTokenPattern(DataInput in)
+        throws IOException {
+
+        TokenPattern  pattern;
+        int           id = in.readInt();
+        String        name = readString(in);
+        int           type = in.readInt();
+        boolean       flag;
+        String        message;
+
+        pattern = new TokenPattern(id, name, type, readString(in));
+        flag = in.readBoolean();
+        message = readString(in);
+        if (flag) {
+            pattern.setError(message);
+        }
+        flag = in.readBoolean();
+        message = readString(in);
+        if (flag) {
+            pattern.setIgnore(message);
+        }
+        pattern.setDebugInfo(readString(in));
+        return pattern;
+    }
+
+    /**
+     * Writes a production pattern. All alternatives, elements and
+     * look-ahead sets will also be written.
+     *
+     * @param out            the output to write to
+     * @param pattern        the production pattern to write
+     *
+     * @throws IOException if the pattern couldn't be written
+     */
+    public static void writeProductionPattern(DataOutput out,
+                                              ProductionPattern pattern)
+        throws IOException {
+
+        ProductionPatternAlternative  alt;
+        ProductionPatternElement      elem;
+
+        out.writeInt(pattern.getId());
+        writeString(out, pattern.getName());
+        out.writeBoolean(pattern.isSynthetic());
+        writeLookAhead(out, pattern.getLookAhead());
+        out.writeInt(pattern.getAlternativeCount());
+        for (int i = 0; i < pattern.getAlternativeCount(); i++) {
+            alt = pattern.getAlternative(i);
+            out.writeBoolean(alt == pattern.getDefaultAlternative());
+            writeLookAhead(out, alt.getLookAhead());
+            out.writeInt(alt.getElementCount());
+            for (int j = 0; j < alt.getElementCount(); j++) {
+                elem = alt.getElement(j);
+                out.writeBoolean(elem.isToken());
+                out.writeInt(elem.getId());
+                out.writeInt(elem.getMinCount());
+                out.writeInt(elem.getMaxCount());
+                writeLookAhead(out, elem.getLookAhead());
+            }
+        }
+    }
+
+    /**
+     * Reads a production pattern written by writeProductionPattern().
+     * If the pattern and all its alternatives had look-ahead sets
+     * when written, the pattern will be marked as precomputed.
+     *
+     * @param in             the input to read from
+     *
+     * @return the production pattern read
+     *
+     * @throws IOException if the pattern couldn't be read
+     */
+    public static ProductionPattern readProductionPattern(DataInput in)
+        throws IOException {
+
+        ProductionPattern             pattern;
+        ProductionPatternAlternative  alt;
+        ProductionPatternElement      elem;
+        boolean                       complete;
+        int                           defaultAlt = -1;
+        int                           count;
+        int                           elements;
+
+        pattern = new ProductionPattern(in.readInt(), readString(in));
+        pattern.setSynthetic(in.readBoolean());
+        pattern.setLookAhead(readLookAhead(in));
+        complete = pattern.getLookAhead() != null;
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            alt = new ProductionPatternAlternative();
+            if (in.readBoolean()) {
+                defaultAlt = i;
+            }
+            alt.setLookAhead(readLookAhead(in));
+            complete = complete && alt.getLookAhead() != null;
+            elements = in.readInt();
+            for (int j = 0; j < elements; j++) {
+                elem = new ProductionPatternElement(in.readBoolean(),
+                                                    in.readInt(),
+                                                    in.readInt(),
+                                                    in.readInt());
+                elem.setLookAhead(readLookAhead(in));
+                alt.addElement(elem);
+            }
+            try {
+                pattern.addAlternative(alt);
+            } catch (ParserCreationException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        pattern.setDefaultAlternative(defaultAlt);
+        pattern.setPrecomputed(complete);
+        return pattern;
+    }
+
+    /**
+     * Writes an optional look-ahead set.
+     *
+     * @param out            the output to write to
+     * @param set            the look-ahead set, or null
+     *
+     * @throws IOException if the set couldn't be written
+     */
+    private static void writeLookAhead(DataOutput out, LookAheadSet set)
+        throws IOException {
+
+        out.writeBoolean(set != null);
+        if (set != null) {
+            set.write(out);
+        }
+    }
+
+    /**
+     * Reads an optional look-ahead set.
+     *
+     * @param in             the input to read from
+     *
+     * @return the look-ahead set read, or null
+     *
+     * @throws IOException if the set couldn't be read
+     */
+    private static LookAheadSet readLookAhead(DataInput in)
+        throws IOException {
+
+        return in.readBoolean() ? LookAheadSet.read(in) : null;
+    }
+
+    /**
+     * Writes an optional string. Contrary to DataOutput.writeUTF(),
+     * this method supports null and strings of any length.
+     *
+     * @param out            the output to write to
+     * @param str            the string to write, or null
+     *
+     * @throws IOException if the string couldn't be written
+     */
+    public static void writeString(DataOutput out, String str)
+        throws IOException {
+
+        if (str == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(str.length());
+            out.writeChars(str);
+        }
+    }
+
+    /**
+     * Reads an optional string written by writeString(). The string
+     * buffer grows as the characters are read, so that a corrupt
+     * length doesn't allocate more memory than the input size.
+     *
+     * @param in             the input to read from
+     *
+     * @return the string read, or null
+     *
+     * @throws IOException if the string couldn't be read
+     */
+    public static String readString(DataInput in) throws IOException {
+        int           length = in.readInt();
+        StringBuffer  buffer;
+
+        if (length < 0) {
+            return null;
+        }
+        buffer = new StringBuffer(Math.min(length, 1024));
+        for (int i = 0; i < length; i++) {
+            buffer.append(in.readChar());
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * PerformanceLint.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import net.percederberg.grammatica.parser.re.RegExpException;
+
+/**
+ * A grammar performance lint checker. This class analyzes the token
+ * patterns in a tokenizer and the look-ahead sets in a prepared
+ * parser, reporting the constructs known to slow down tokenizing or
+ * parsing. The findings are ranked by an estimated relative cost:
+ *
+ * <ul>
+ *   <li>Regular expressions that fall back to java.util.regex are
+ *       matched separately for every token read, at a fixed high
+ *       cost.
+ *   <li>Regular expressions entered through an initial epsilon are
+ *       traversed for every token read, costing their number of
+ *       automaton states.
+ *   <li>Large regular expression automata cost their number of
+ *       epsilon transitions.
+ *   <li>Look-ahead decisions needing more than one token cost the
+ *       number of token comparisons in the look-ahead sets, doubled
+ *       for repetitive look-ahead sets.
+ * </ul>
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class PerformanceLint {
+
+    /**
+     * The fixed cost for a native regular expression.
+     */
+    private static final int NATIVE_COST = 100;
+
+    /**
+     * The number of automaton states considered large.
+     */
+    private static final int LARGE_STATES = 64;
+
+    /**
+     * The number of automaton epsilon transitions considered large.
+     */
+    private static final int LARGE_EPSILONS = 32;
+
+    /**
+     * The tokenizer to check.
+     */
+    private Tokenizer tokenizer;
+
+    /**
+     * The parser to check.
+     */
+    private Parser parser;
+
+    /**
+     * The findings from the last check.
+     */
+    private ArrayList findings = new ArrayList();
+
+    /**
+     * Creates a new grammar performance lint checker. The parser
+     * must have been prepared, so that the look-ahead sets have been
+     * calculated.
+     *
+     * @param tokenizer      the tokenizer to check
+     * @param parser         the prepared parser to check, or null
+     */
+    public PerformanceLint(Tokenizer tokenizer, Parser parser) {
+        this.tokenizer = tokenizer;
+        this.parser = parser;
+    }
+
+    /**
+     * Checks the tokenizer and parser for performance problems.
+     *
+     * @return the findings, ranked by decreasing cost
+     */
+    public LintFinding[] check() {
+        TokenPattern[]  patterns = tokenizer.getAllPatterns();
+        Iterator        iter;
+
+        findings.clear();
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].getType() == TokenPattern.REGEXP_TYPE) {
+                checkToken(patterns[i]);
+            }
+        }
+        if (parser != null) {
+            iter = parser.getPatterns().iterator();
+            while (iter.hasNext()) {
+                checkProduction((ProductionPattern) iter.next());
+            }
+        }
+        Collections.sort(findings, new Comparator() {
+            public int compare(Object obj1, Object obj2) {
+                LintFinding  f1 = (LintFinding) obj1;
+                LintFinding  f2 = (LintFinding) obj2;
+
+                return f2.getCost() - f1.getCost();
+            }
+        });
+        return (LintFinding[]) findings.toArray(
+            new LintFinding[findings.size()]);
+    }
+
+    /**
+     * Checks a regular expression token pattern.
+     *
+     * @param pattern        the token pattern to check
+     */
+    private void checkToken(TokenPattern pattern) {
+        TokenRegExpParser  re;
+        String             stats;
+        int                length;
+
+        try {
+            re = new TokenRegExpParser(pattern.getPattern(),
+                                       tokenizer.ignoreCase);
+        } catch (RegExpException e) {
+            length = NativeRegExpLength.estimate(pattern.getPattern());
+            if (length == NativeRegExpLength.UNBOUNDED) {
+                stats = "; the match length is unbounded, so long " +
+                        "tokens are matched repeatedly";
+            } else {
+                stats = "; matches at most " + length + " characters";
+            }
+            findings.add(new LintFinding(
+                LintFinding.NATIVE_REGEXP,
+                pattern.getName(),
+                NATIVE_COST,
+                "regular expression uses java.util.regex, as the " +
+                "automaton doesn't support it: " + e.getMessage() +
+                stats,
+                "rewrite it with characters, character sets, groups, " +
+                "alternatives and greedy repeats only, or split it " +
+                "into several tokens"));
+            return;
+        }
+        stats = re.getDebugInfo();
+        if (re.isStartReentrant()) {
+            findings.add(new LintFinding(
+                LintFinding.INITIAL_EPSILON,
+                pattern.getName(),
+                re.getStateCount(),
+                "automaton is entered through an initial epsilon " +
+                "transition for every token read (" + stats + ")",
+                "avoid repeating the start of the regular expression, " +
+                "for example by writing x(x)* instead of (x)+"));
+        }
+        if (re.getStateCount() > LARGE_STATES
+         || re.getEpsilonCount() > LARGE_EPSILONS) {
+
+            findings.add(new LintFinding(
+                LintFinding.LARGE_AUTOMATON,
+                pattern.getName(),
+                re.getEpsilonCount(),
+                "large automaton (" + stats + ")",
+                "simplify nested groups and optional parts, or match " +
+                "keywords with separate string tokens"));
+        }
+    }
+
+    /**
+     * Checks the look-ahead decision points in a production pattern.
+     *
+     * @param pattern        the production pattern to check
+     */
+    private void checkProduction(ProductionPattern pattern) {
+        ProductionPatternAlternative  alt;
+        ProductionPatternElement      elem;
+        LookAheadSet[]                sets;
+        String                        name;
+
+        sets = new LookAheadSet[pattern.getAlternativeCount()];
+        for (int i = 0; i < sets.length; i++) {
+            sets[i] = pattern.getAlternative(i).getLookAhead();
+        }
+        checkDecision(pattern.getName(), sets, "alternatives");
+        for (int i = 0; i < pattern.getAlternativeCount(); i++) {
+            alt = pattern.getAlternative(i);
+            for (int j = 0; j < alt.getElementCount(); j++) {
+                elem = alt.getElement(j);
+                if (elem.getMinCount() < elem.getMaxCount()) {
+                    name = pattern.getName() + ", alternative " + (i + 1) +
+                           ", element " + (j + 1);
+                    sets = new LookAheadSet[] { elem.getLookAhead() };
+                    checkDecision(name, sets, "repeated element");
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks a look-ahead decision point.
+     *
+     * @param name           the decision point name
+     * @param sets           the look-ahead sets tested
+     * @param desc           the decision point description
+     */
+    private void checkDecision(String name,
+                               LookAheadSet[] sets,
+                               String desc) {
+
+        boolean  repetitive = false;
+        int      length = 0;
+        int      count = 0;
+        int      cost = 0;
+
+        for (int i = 0; i < sets.length; i++) {
+            if (sets[i] != null) {
+                repetitive |= sets[i].isRepetitive();
+                length = Math.max(length, sets[i].getMaxLength());
+                count += sets[i].size();
+                cost += sets[i].size() * sets[i].getMaxLength();
+            }
+        }
+        if (repetitive) {
+            findings.add(new LintFinding(
+                LintFinding.REPETITIVE_LOOKAHEAD,
+                name,
+                cost * 2,
+                desc + " need repetitive look-ahead of up to " +
+                length + " tokens, with " + count + " token sequences",
+                "make the repetition unambiguous, for example by " +
+                "moving it into a separate production ending with a " +
+                "distinct token"));
+        } else if (length > 1) {
+            findings.add(new LintFinding(
+                LintFinding.LONG_LOOKAHEAD,
+                name,
+                cost,
+                desc + " need " + length + " tokens of look-ahead, " +
+                "with " + count + " token sequences",
+                "left-factor the common prefix into a separate " +
+                "production, so that one token decides"));
+        }
+    }
+
+    /**
+     * Checks the tokenizer and parser, and prints a report with the
+     * findings ranked by decreasing cost.
+     *
+     * @param out            the output stream to use
+     *
+     * @return the number of findings
+     */
+    public int print(PrintStream out) {
+        LintFinding[]  list = check();
+
+        for (int i = 0; i < list.length; i++) {
+            out.println("[" + list[i].getCost() + "] " +
+                        list[i].getName() + ": " + list[i].getMessage());
+            out.println("    Suggestion: " + list[i].getSuggestion());
+        }
+        return list.length;
+    }
+}
@@ -22,8 +22,13 @@ import java.util.ArrayList;
  * by a parser, that adds children a according to a set of production
  * patterns (i.e. grammar rules).
  *
+ * The production start and end positions and the descendant count
+ * are cached once computed, and are recalculated only when a child
+ * is added. Note that changes made further down in the tree after
+ * the production has been completed will not be reflected.
+ *
  * @author   Per Cederberg
- * @version  1.1
+ * @version  1.7
  */
 public class Production extends Node {
 
@@ -33,9 +38,36 @@ public class Production extends Node {
     private ProductionPattern pattern;
 
     /**
-     * The child nodes.
+     * The child nodes, or null if no children have been added.
+     */
+    private ArrayList children = null;
+
+    /**
+     * The cached line number of the first character, or -1.
+     */
+    private int startLine = -1;
+
+    /**
+     * The cached column number of the first character, or -1.
+     */
+    private int startColumn = -1;
+
+    /**
+     * The cached line number of the last character, or -1.
      */
-    private ArrayList children;
+    private int endLine = -1;
+
+    /**
+     * The cached column number of the last character, or -1.
+     */
+    private int endColumn = -1;
+
+    /**
+     * The cached number of descendant nodes. This value is also used
+     * as a flag for the other cached values, being set to -1 if the
+     * cached values must be recalculated.
+     */
+    private int descendants = -1;
 
     /**
      * Creates a new production node.
@@ -44,7 +76,23 @@ public class Production extends Node {
      */
     public Production(ProductionPattern pattern) {
         this.pattern = pattern;
-        this.children = new ArrayList();
+    }
+
+    /**
+     * Reinitializes this production node for reuse. All child nodes,
+     * values and cached data will be removed. The child list object
+     * is kept to avoid allocating a new one.
+     *
+     * @param pattern        the new production pattern
+     *
+     * @see NodeArena
+     */
+    void init(ProductionPattern pattern) {
+        this.pattern = pattern;
+        removeAllChildren();
+        descendants = -1;
+        setParent(null);
+        removeAllValues();
     }
 
     /**
@@ -87,13 +135,114 @@ public class Production extends Node {
         return pattern.getName();
     }
 
+    /**
+     * The line number of the first character in this node. This
+     * value will be fetched from the first child with a line number,
+     * and is cached for subsequent calls.
+     *
+     * @return the line number of the first character, or
+     *         -1 if not applicable
+     *
+     * @since 1.7
+     */
+    public int getStartLine() {
+        if (descendants < 0) {
+            updateCache();
+        }
+        return startLine;
+    }
+
+    /**
+     * The column number of the first character in this node. This
+     * value will be fetched from the first child with a column
+     * number, and is cached for subsequent calls.
+     *
+     * @return the column number of the first token character, or
+     *         -1 if not applicable
+     *
+     * @since 1.7
+     */
+    public int getStartColumn() {
+        if (descendants < 0) {
+            updateCache();
+        }
+        return startColumn;
+    }
+
+    /**
+     * The line number of the last character in this node. This value
+     * will be fetched from the last child with a line number, and is
+     * cached for subsequent calls.
+     *
+     * @return the line number of the last token character, or
+     *         -1 if not applicable
+     *
+     * @since 1.7
+     */
+    public int getEndLine() {
+        if (descendants < 0) {
+            updateCache();
+        }
+        return endLine;
+    }
+
+    /**
+     * The column number of the last character in this node. This
+     * value will be fetched from the last child with a column
+     * number, and is cached for subsequent calls.
+     *
+     * @return the column number of the last token character, or
+     *         -1 if not applicable
+     *
+     * @since 1.7
+     */
+    public int getEndColumn() {
+        if (descendants < 0) {
+            updateCache();
+        }
+        return endColumn;
+    }
+
+    /**
+     * Returns the number of descendant nodes. This value is cached
+     * for subsequent calls.
+     *
+     * @return the number of descendant nodes
+     *
+     * @since 1.7
+     */
+    public int getDescendantCount() {
+        if (descendants < 0) {
+            updateCache();
+        }
+        return descendants;
+    }
+
+    /**
+     * Updates the cached start and end positions and the descendant
+     * count from the child nodes. This method is called by the
+     * parser when a production is completed, and otherwise when a
+     * cached value is first requested. As the child nodes have their
+     * own cached values, this is proportional to the number of
+     * children only.
+     *
+     * @since 1.7
+     */
+    void updateCache() {
+        startLine = super.getStartLine();
+        startColumn = super.getStartColumn();
+        endLine = super.getEndLine();
+        endColumn = super.getEndColumn();
+        descendants = super.getDescendantCount();
+    }
+
     /**
      * Returns the number of child nodes.
      *
      * @return the number of child nodes
      */
     public int getChildCount() {
-        return children.size();
+        return (children == null) ? 0 : children.size();
     }
 
     /**
@@ -105,7 +254,7 @@ public class Production extends Node {
      *         null if index out of bounds
      */
     public Node getChildAt(int index) {
-        if (index < 0 || index >= children.size()) {
+        if (children == null || index < 0 || index >= children.size()) {
             return null;
         } else {
             return (Node) children.get(index);
@@ -121,7 +270,25 @@ public class Production extends Node {
     public void addChild(Node child) {
         if (child != null) {
             child.setParent(this);
+            if (children == null) {
+                children = new ArrayList();
+            }
             children.add(child);
+            descendants = -1;
+        }
+    }
+
+    /**
+     * Removes all child nodes. The child list object is kept in
+     * order to avoid allocating a new one when children are added
+     * again.
+     *
+     * @since 1.7
+     */
+    void removeAllChildren() {
+        if (children != null) {
+            children.clear();
+            descendants = -1;
         }
     }
 
@@ -24,7 +24,7 @@ import java.util.ArrayList;
  * production pattern from production pattern elements.
  *
  * @author   Per Cederberg
- * @version  1.0
+ * @version  1.7
  */
 public class ProductionPattern {
 
@@ -62,6 +62,13 @@ public class ProductionPattern {
      */
     private LookAheadSet lookAhead;
 
+    /**
+     * The precomputed look-ahead flag. If this flag is set, the
+     * look-ahead sets for this pattern have been restored from a
+     * previous parser preparation and needn't be calculated again.
+     */
+    private boolean precomputed = false;
+
     /**
      * Creates a new production pattern.
      *
@@ -306,6 +313,32 @@ public class ProductionPattern {
         this.lookAhead = lookAhead;
     }
 
+    /**
+     * Checks if the look-ahead sets for this pattern have been
+     * precomputed.
+     *
+     * @return true if the look-ahead sets are precomputed, or
+     *         false otherwise
+     *
+     * @since 1.7
+     */
+    boolean isPrecomputed() {
+        return precomputed;
+    }
+
+    /**
+     * Sets the precomputed look-ahead flag. This flag should only
+     * be set when all the look-ahead sets for the pattern (and its
+     * alternatives and elements) have been restored.
+     *
+     * @param precomputed    the new precomputed flag
+     *
+     * @since 1.7
+     */
+    void setPrecomputed(boolean precomputed) {
+        this.precomputed = precomputed;
+    }
+
     /**
      * Returns the default pattern alternative. The default
      * alternative is used when no other alternative matches.
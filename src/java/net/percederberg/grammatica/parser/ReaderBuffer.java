@@ -29,7 +29,7 @@ import java.io.Reader;
  * kept to enable boundary condition checks.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  * @since    1.5
  */
 public class ReaderBuffer implements CharSequence {
@@ -74,6 +74,11 @@ public class ReaderBuffer implements CharSequence {
      */
     private int column = 1;
 
+    /**
+     * The total number of characters read from the buffer.
+     */
+    private long total = 0;
+
     /**
      * Creates a new tokenizer character buffer.
      *
@@ -111,6 +116,19 @@ public class ReaderBuffer implements CharSequence {
         return pos;
     }
 
+    /**
+     * Returns the total number of characters read. Unlike the
+     * current buffer position, this number is counted from the start
+     * of the input stream.
+     *
+     * @return the total number of characters read
+     *
+     * @since 1.7
+     */
+    public long readCount() {
+        return total;
+    }
+
     /**
      * Returns the current line number. This number is the input
      * source line number of the current position.
@@ -249,6 +267,7 @@ public class ReaderBuffer implements CharSequence {
             updateLineColumnNumbers(count);
             result = new String(buffer, pos, count);
             pos += count;
+            total += count;
             if (input == null && pos >= length) {
                 dispose();
             }
@@ -25,10 +25,17 @@ import java.util.Iterator;
  * that is has to consider.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 public class RecursiveDescentParser extends Parser {
 
+    /**
+     * The number of production pattern alternatives tested. This
+     * counter is updated by isNext() and reset for each measured
+     * decision.
+     */
+    private int altCount = 0;
+
     /**
      * Creates a new parser.
      *
@@ -117,26 +124,39 @@ public class RecursiveDescentParser extends Parser {
      * Initializes the parser. All the added production patterns will
      * be analyzed for ambiguities and errors. This method also
      * initializes the internal data structures used during the
-     * parsing.
+     * parsing. Patterns with precomputed look-ahead sets (restored
+     * from a compiled grammar) will not be analyzed again.
      *
      * @throws ParserCreationException if the parser couldn't be
      *             initialized correctly
      */
     public void prepare() throws ParserCreationException {
-        Iterator  iter;
+        ParserEvents       events = ParserEvents.INSTANCE;
+        Object             event = null;
+        Iterator           iter;
+        ProductionPattern  pattern;
 
         // Performs production pattern checks
+        if (events != null) {
+            event = events.beginPrepare();
+        }
         super.prepare();
         setInitialized(false);
 
         // Calculate production look-ahead sets
         iter = getPatterns().iterator();
         while (iter.hasNext()) {
-            calculateLookAhead((ProductionPattern) iter.next());
+            pattern = (ProductionPattern) iter.next();
+            if (!pattern.isPrecomputed()) {
+                calculateLookAhead(pattern);
+            }
         }
 
         // Set initialized flag
         setInitialized(true);
+        if (event != null) {
+            events.endPrepare(event, this);
+        }
     }
 
     /**
@@ -181,6 +201,42 @@ public class RecursiveDescentParser extends Parser {
     private Node parsePattern(ProductionPattern pattern)
         throws ParseException {
 
+        ParserMetrics                 metrics = getMetrics();
+        ProductionPatternAlternative  alt;
+        long                          time;
+
+        if (metrics == null) {
+            return parseAlternative(findNext(pattern));
+        }
+        time = System.nanoTime();
+        try {
+            resetPeekCount();
+            altCount = 0;
+            alt = findNext(pattern);
+            metrics.alternativeChosen(pattern,
+                                      altCount,
+                                      resetPeekCount(),
+                                      alt == pattern.getDefaultAlternative());
+            return parseAlternative(alt);
+        } finally {
+            metrics.productionParsed(pattern, System.nanoTime() - time);
+        }
+    }
+
+    /**
+     * Finds the production pattern alternative matching the next
+     * tokens.
+     *
+     * @param pattern        the production pattern
+     *
+     * @return the production pattern alternative found
+     *
+     * @throws ParseException if no alternative matched the next
+     *             tokens
+     */
+    private ProductionPatternAlternative findNext(ProductionPattern pattern)
+        throws ParseException {
+
         ProductionPatternAlternative  alt;
         ProductionPatternAlternative  defaultAlt;
 
@@ -188,13 +244,13 @@ public class RecursiveDescentParser extends Parser {
         for (int i = 0; i < pattern.getAlternativeCount(); i++) {
             alt = pattern.getAlternative(i);
             if (defaultAlt != alt && isNext(alt)) {
-                return parseAlternative(alt);
+                return alt;
             }
         }
         if (defaultAlt == null || !isNext(defaultAlt)) {
             throwParseException(findUnion(pattern));
         }
-        return parseAlternative(defaultAlt);
+        return defaultAlt;
     }
 
     /**
@@ -217,7 +273,7 @@ public class RecursiveDescentParser extends Parser {
         enterNode(node);
         for (int i = 0; i < alt.getElementCount(); i++) {
             try {
-                parseElement(node, alt.getElement(i));
+                parseElement(node, alt, i);
             } catch (ParseException e) {
                 addError(e, true);
                 nextToken();
@@ -233,19 +289,22 @@ public class RecursiveDescentParser extends Parser {
      * on the analyzer callbacks.
      *
      * @param node           the production parse tree node
-     * @param elem           the production pattern element to parse
+     * @param alt            the production pattern alternative
+     * @param pos            the element position to parse
      *
      * @throws ParseException if the input couldn't be parsed
      *             correctly
      */
     private void parseElement(Production node,
-                              ProductionPatternElement elem)
+                              ProductionPatternAlternative alt,
+                              int pos)
         throws ParseException {
 
-        Node  child;
+        ProductionPatternElement  elem = alt.getElement(pos);
+        Node                      child;
 
         for (int i = 0; i < elem.getMaxCount(); i++) {
-            if (i < elem.getMinCount() || isNext(elem)) {
+            if (i < elem.getMinCount() || isNext(alt, pos)) {
                 if (elem.isToken()) {
                     child = nextToken(elem.getId());
                     enterNode(child);
@@ -293,6 +352,7 @@ public class RecursiveDescentParser extends Parser {
     private boolean isNext(ProductionPatternAlternative alt) {
         LookAheadSet  set = alt.getLookAhead();
 
+        altCount++;
         if (set == null) {
             return false;
         } else {
@@ -300,6 +360,29 @@ public class RecursiveDescentParser extends Parser {
         }
     }
 
+    /**
+     * Checks if the next tokens match a production pattern element.
+     * The check is reported to the metrics listener, if one is set.
+     *
+     * @param alt            the production pattern alternative
+     * @param pos            the element position to check
+     *
+     * @return true if the next tokens match, or
+     *         false otherwise
+     */
+    private boolean isNext(ProductionPatternAlternative alt, int pos) {
+        ParserMetrics  metrics = getMetrics();
+        boolean        match;
+
+        if (metrics == null) {
+            return isNext(alt.getElement(pos));
+        }
+        resetPeekCount();
+        match = isNext(alt.getElement(pos));
+        metrics.elementChecked(alt, pos, resetPeekCount(), match);
+        return match;
+    }
+
     /**
      * Checks if the next tokens match a production pattern element.
      * If the element has a look-ahead set it will be used, otherwise
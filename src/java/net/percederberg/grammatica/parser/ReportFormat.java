@@ -0,0 +1,61 @@
+/*
+ * ReportFormat.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+import java.util.Locale;
+
+/**
+ * A report value formatter. This class formats the numbers in the
+ * parser statistics, profiler and benchmark reports. The root locale
+ * is always used, so that the decimal separator is always a period.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class ReportFormat {
+
+    /**
+     * Creates a new report value formatter. This constructor is
+     * private as all the methods are static.
+     */
+    private ReportFormat() {
+        // Nothing to initialize
+    }
+
+    /**
+     * Formats a number with a format string.
+     *
+     * @param pattern        the format pattern
+     * @param value          the number to format
+     *
+     * @return the formatted number
+     */
+    public static String format(String pattern, double value) {
+        return format(pattern, new Double(value));
+    }
+
+    /**
+     * Formats a value with a format string.
+     *
+     * @param pattern        the format pattern
+     * @param value          the value to format
+     *
+     * @return the formatted value
+     */
+    public static String format(String pattern, Object value) {
+        return String.format(Locale.ROOT, pattern, value);
+    }
+}
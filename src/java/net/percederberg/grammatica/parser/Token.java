@@ -75,6 +75,22 @@ public class Token extends Node {
      * @param col            the column number of the first character
      */
     public Token(TokenPattern pattern, String image, int line, int col) {
+        init(pattern, image, line, col);
+    }
+
+    /**
+     * Initializes this token. This method is also used to reuse a
+     * token node, in which case any previous values and token list
+     * links are removed.
+     *
+     * @param pattern        the token pattern
+     * @param image          the token image (i.e. characters)
+     * @param line           the line number of the first character
+     * @param col            the column number of the first character
+     *
+     * @see NodeArena
+     */
+    void init(TokenPattern pattern, String image, int line, int col) {
         this.pattern = pattern;
         this.image = image;
         this.startLine = line;
@@ -86,6 +102,10 @@ public class Token extends Node {
             this.endLine++;
             this.endColumn = image.length() - pos;
         }
+        this.previous = null;
+        this.next = null;
+        setParent(null);
+        removeAllValues();
     }
 
     /**
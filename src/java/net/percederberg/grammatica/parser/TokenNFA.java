@@ -15,7 +15,10 @@
 package net.percederberg.grammatica.parser;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 
+import net.percederberg.grammatica.parser.re.RangeTable;
 import net.percederberg.grammatica.parser.re.RegExpException;
 
 /**
@@ -28,7 +31,7 @@ import net.percederberg.grammatica.parser.re.RegExpException;
  * does not use recursion, but iterates in a loop instead.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  * @since    1.5
  */
 class TokenNFA {
@@ -195,6 +198,59 @@ class TokenNFA {
     }
 
 
+    /**
+     * Checks if any transition reachable from a state matches the
+     * specified character. This is used to check if a regular
+     * expression can possibly match a string containing a character.
+     *
+     * @param start          the start state
+     * @param ch             the character to check
+     *
+     * @return true if the character may be matched, or
+     *         false otherwise
+     */
+    static boolean canMatch(State start, char ch) {
+        ArrayList   queue = new ArrayList();
+        HashSet     visited = new HashSet();
+        State       state;
+        Transition  trans;
+
+        queue.add(start);
+        visited.add(start);
+        while (queue.size() > 0) {
+            state = (State) queue.remove(queue.size() - 1);
+            for (int i = 0; i < state.outgoing.length; i++) {
+                trans = state.outgoing[i];
+                if (trans.match(ch)) {
+                    return true;
+                }
+                if (visited.add(trans.state)) {
+                    queue.add(trans.state);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an automaton only matches a single character, i.e.
+     * consists of a single character transition from the start to
+     * the end state.
+     *
+     * @param start          the start state
+     * @param end            the end state
+     *
+     * @return true if a single character is matched, or
+     *         false otherwise
+     */
+    static boolean isSingleCharacter(State start, State end) {
+        return start.outgoing.length == 1
+            && !(start.outgoing[0] instanceof EpsilonTransition)
+            && start.outgoing[0].state == end
+            && end.outgoing.length == 0
+            && start.incoming.length == 0;
+    }
+
     /**
      * An NFA state. The NFA consists of a series of states, each
      * having zero or more transitions to other states.
@@ -583,7 +639,22 @@ class TokenNFA {
 
     /**
      * A character range match transition. Used for user-defined
-     * character sets in regular expressions.
+     * character sets in regular expressions. The character set may
+     * also contain nested character set transitions, and may be
+     * intersected with other character set transitions. In
+     * case-insensitive mode, a character matches if either it or
+     * its lower-case or upper-case form is in the set.<p>
+     *
+     * The character set is compiled when it is added to the
+     * automaton (or otherwise on the first match) into a range
+     * table, i.e. a sorted array of non-overlapping minimum and
+     * maximum character pairs, and a bitmap for the ASCII
+     * characters. If all the nested sets and intersections are also
+     * character range transitions, the table includes them together
+     * with the case folding and inverse flag, so that matching is a
+     * single binary search. Otherwise the table only contains the
+     * characters and ranges, and the remaining transitions are
+     * checked for each non-ASCII character.
      */
     protected static class CharRangeTransition extends Transition {
 
@@ -598,10 +669,55 @@ class TokenNFA {
         protected boolean ignoreCase;
 
         /**
-         * The character set content. This array may contain either
-         * range objects or Character objects.
+         * The ASCII-only case folding flag. If set, only ASCII
+         * characters are case-insensitive, as with the (?i) flag in
+         * java.util.regex.
+         */
+        protected boolean asciiCase;
+
+        /**
+         * The characters and character ranges added. The array
+         * contains pairs of minimum and maximum characters, in the
+         * order they were added.
+         */
+        private char[] pairs = new char[0];
+
+        /**
+         * The nested character set transitions added.
+         */
+        private Transition[] sets = new Transition[0];
+
+        /**
+         * The character set intersections. A character must also be
+         * matched by each of these transitions.
+         */
+        private Transition[] intersections = new Transition[0];
+
+        /**
+         * The compiled range table. If this character set is fully
+         * compiled, the table contains exactly the characters
+         * matched. Otherwise it only contains the characters and
+         * ranges added (and any fully compiled nested sets).
+         */
+        private char[] table = null;
+
+        /**
+         * The fully compiled flag.
          */
-        private Object[] contents = new Object[0];
+        private boolean compiled = false;
+
+        /**
+         * The nested character sets not included in the range table.
+         * Only used if this set isn't fully compiled.
+         */
+        private Transition[] others = null;
+
+        /**
+         * The compiled ASCII character bitmap, or null if this
+         * character set hasn't been compiled. Bit (c % 64) in
+         * element (c / 64) is set if character c is matched.
+         */
+        private long[] ascii = null;
 
         /**
          * Creates a new character range transition.
@@ -611,9 +727,28 @@ class TokenNFA {
          * @param state          the target state
          */
         public CharRangeTransition(boolean inverse, boolean ignoreCase, State state) {
+            this(inverse, ignoreCase, false, state);
+        }
+
+        /**
+         * Creates a new character range transition.
+         *
+         * @param inverse        the inverse match flag
+         * @param ignoreCase     the case-insensitive match flag
+         * @param asciiCase      the ASCII-only case folding flag
+         * @param state          the target state
+         *
+         * @since 1.7
+         */
+        public CharRangeTransition(boolean inverse,
+                                   boolean ignoreCase,
+                                   boolean asciiCase,
+                                   State state) {
+
             super(state);
             this.inverse = inverse;
             this.ignoreCase = ignoreCase;
+            this.asciiCase = asciiCase;
         }
 
         /**
@@ -624,23 +759,17 @@ class TokenNFA {
          *         false otherwise
          */
         public boolean isAscii() {
-            Object     obj;
-            Character  c;
-
-            if (inverse) {
+            if (inverse || ignoreCase) {
                 return false;
             }
-            for (int i = 0; i < contents.length; i++) {
-                obj = contents[i];
-                if (obj instanceof Character) {
-                    c = (Character) obj;
-                    if (c.charValue() < 0 || 128 <= c.charValue()) {
-                        return false;
-                    }
-                } else if (obj instanceof Range) {
-                    if (!((Range) obj).isAscii()) {
-                        return false;
-                    }
+            for (int i = 0; i < pairs.length; i++) {
+                if (pairs[i] >= 128) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < sets.length; i++) {
+                if (!sets[i].isAscii()) {
+                    return false;
                 }
             }
             return true;
@@ -652,10 +781,7 @@ class TokenNFA {
          * @param c              the character to add
          */
         public void addCharacter(char c) {
-            if (ignoreCase) {
-                c = Character.toLowerCase(c);
-            }
-            addContent(new Character(c));
+            addRange(c, c);
         }
 
         /**
@@ -665,24 +791,41 @@ class TokenNFA {
          * @param max            the maximum character value
          */
         public void addRange(char min, char max) {
-            if (ignoreCase) {
-                min = Character.toLowerCase(min);
-                max = Character.toLowerCase(max);
-            }
-            addContent(new Range(min, max));
+            char[]  temp = pairs;
+
+            pairs = new char[temp.length + 2];
+            System.arraycopy(temp, 0, pairs, 0, temp.length);
+            pairs[temp.length] = min;
+            pairs[temp.length + 1] = max;
+            ascii = null;
         }
 
         /**
-         * Adds an object to the character set content array.
+         * Adds a nested character set to this character set. Any
+         * character matched by the nested transition will also be
+         * matched by this character set.
+         *
+         * @param set            the nested character set transition
          *
-         * @param obj            the object to add
+         * @since 1.7
          */
-        private void addContent(Object obj) {
-            Object[]  temp = contents;
+        public void addSet(Transition set) {
+            sets = append(sets, set);
+            ascii = null;
+        }
 
-            contents = new Object[temp.length + 1];
-            System.arraycopy(temp, 0, contents, 0, temp.length);
-            contents[temp.length] = obj;
+        /**
+         * Adds an intersection to this character set. Only the
+         * characters matched by both this character set and the
+         * intersection transition will be matched.
+         *
+         * @param set            the intersection transition
+         *
+         * @since 1.7
+         */
+        public void addIntersection(Transition set) {
+            intersections = append(intersections, set);
+            ascii = null;
         }
 
         /**
@@ -694,28 +837,142 @@ class TokenNFA {
          *         false otherwise
          */
         public boolean match(char ch) {
-            Object     obj;
-            Character  c;
-            Range      r;
+            long[]  bits = ascii;
 
-            if (ignoreCase) {
-                ch = Character.toLowerCase(ch);
+            if (bits == null) {
+                bits = compile();
             }
-            for (int i = 0; i < contents.length; i++) {
-                obj = contents[i];
-                if (obj instanceof Character) {
-                    c = (Character) obj;
-                    if (c.charValue() == ch) {
-                        return !inverse;
-                    }
-                } else if (obj instanceof Range) {
-                    r = (Range) obj;
-                    if (r.inside(ch)) {
-                        return !inverse;
+            if (ch < 128) {
+                return (bits[ch >> 6] & (1L << ch)) != 0;
+            } else if (compiled) {
+                return RangeTable.contains(table, ch);
+            } else {
+                return matchSlow(ch);
+            }
+        }
+
+        /**
+         * Checks if the specified character matches the transition.
+         * This method checks the nested sets and intersections not
+         * included in the range table.
+         *
+         * @param ch             the character to check
+         *
+         * @return true if the character matches, or
+         *         false otherwise
+         */
+        private boolean matchSlow(char ch) {
+            boolean  found = inSet(ch);
+
+            if (!found && ignoreCase && (!asciiCase || ch < 128)) {
+                found = inSet(Character.toLowerCase(ch))
+                     || inSet(Character.toUpperCase(ch));
+            }
+            return found != inverse;
+        }
+
+        /**
+         * Checks if the specified character is in this character set.
+         * This method doesn't take the inverse or case-insensitive
+         * flags into account, and is only used if the set isn't fully
+         * compiled.
+         *
+         * @param ch             the character to check
+         *
+         * @return true if the character is in the set, or
+         *         false otherwise
+         */
+        private boolean inSet(char ch) {
+            boolean  found = RangeTable.contains(table, ch);
+
+            for (int i = 0; !found && i < others.length; i++) {
+                found = others[i].match(ch);
+            }
+            for (int i = 0; found && i < intersections.length; i++) {
+                found = intersections[i].match(ch);
+            }
+            return found;
+        }
+
+        /**
+         * Compiles this character set, unless already compiled. This
+         * is called when the set is added to the automaton, so that
+         * the first match doesn't have to compile the set.
+         *
+         * @since 1.7
+         */
+        public void prepare() {
+            if (ascii == null) {
+                compile();
+            }
+        }
+
+        /**
+         * Checks if this character set is fully compiled. The set
+         * will be compiled if needed.
+         *
+         * @return true if the range table contains all the
+         *         characters matched, or
+         *         false otherwise
+         */
+        private boolean isCompiled() {
+            if (ascii == null) {
+                compile();
+            }
+            return compiled;
+        }
+
+        /**
+         * Compiles this character set into a range table and an
+         * ASCII bitmap.
+         *
+         * @return the ASCII character bitmap
+         */
+        private long[] compile() {
+            ArrayList            list = new ArrayList();
+            CharRangeTransition  set;
+            char[]               res = RangeTable.merge(pairs);
+            boolean              flat = true;
+            long[]               bits = new long[2];
+
+            for (int i = 0; i < sets.length; i++) {
+                if (sets[i] instanceof CharRangeTransition) {
+                    set = (CharRangeTransition) sets[i];
+                    if (set.isCompiled()) {
+                        res = RangeTable.concat(res, set.table);
+                        res = RangeTable.merge(res);
+                        continue;
                     }
                 }
+                list.add(sets[i]);
+                flat = false;
+            }
+            for (int i = 0; flat && i < intersections.length; i++) {
+                flat = intersections[i] instanceof CharRangeTransition
+                    && ((CharRangeTransition) intersections[i]).isCompiled();
+            }
+            if (flat) {
+                for (int i = 0; i < intersections.length; i++) {
+                    set = (CharRangeTransition) intersections[i];
+                    res = RangeTable.intersect(res, set.table);
+                }
+                if (ignoreCase) {
+                    res = RangeTable.fold(res, asciiCase);
+                }
+                if (inverse) {
+                    res = RangeTable.complement(res);
+                }
+            }
+            table = res;
+            others = (Transition[]) list.toArray(new Transition[0]);
+            compiled = flat;
+            for (char c = 0; c < 128; c++) {
+                if (flat ? RangeTable.contains(res, c) : matchSlow(c)) {
+                    bits[c >> 6] |= 1L << c;
+                }
             }
-            return inverse;
+            ascii = bits;
+            return bits;
         }
 
         /**
@@ -729,59 +986,36 @@ class TokenNFA {
         public Transition copy(State state) {
             CharRangeTransition  copy;
 
-            copy = new CharRangeTransition(inverse, ignoreCase, state);
-            copy.contents = contents;
+            copy = new CharRangeTransition(inverse,
+                                           ignoreCase,
+                                           asciiCase,
+                                           state);
+            copy.pairs = pairs;
+            copy.sets = sets;
+            copy.intersections = intersections;
+            copy.table = table;
+            copy.compiled = compiled;
+            copy.others = others;
+            copy.ascii = ascii;
             return copy;
         }
 
         /**
-         * A character range class.
+         * Appends a transition to an array.
+         *
+         * @param array          the transition array
+         * @param value          the transition to append
+         *
+         * @return the new transition array
          */
-        private class Range {
-
-            /**
-             * The minimum character value.
-             */
-            private char min;
-
-            /**
-             * The maximum character value.
-             */
-            private char max;
+        private static Transition[] append(Transition[] array,
+                                           Transition value) {
 
-            /**
-             * Creates a new character range.
-             *
-             * @param min        the minimum character value
-             * @param max        the maximum character value
-             */
-            public Range(char min, char max) {
-                this.min = min;
-                this.max = max;
-            }
-
-            /**
-             * Checks if this range only matches ASCII characters
-             *
-             * @return true if this range only matches ASCII, or
-             *         false otherwise
-             */
-            public boolean isAscii() {
-                return 0 <= min && min < 128 &&
-                       0 <= max && max < 128;
-            }
+            Transition[]  res = new Transition[array.length + 1];
 
-            /**
-             * Checks if the specified character is inside the range.
-             *
-             * @param c          the character to check
-             *
-             * @return true if the character is in the range, or
-             *         false otherwise
-             */
-            public boolean inside(char c) {
-                return min <= c && c <= max;
-            }
+            System.arraycopy(array, 0, res, 0, array.length);
+            res[array.length] = value;
+            return res;
         }
     }
 
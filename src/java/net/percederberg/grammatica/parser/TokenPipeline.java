@@ -0,0 +1,305 @@
+/*
+ * TokenPipeline.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A pipelined tokenizer driver. This class runs the tokenizer on a
+ * separate thread, reading ahead of the parser. The tokens and
+ * errors found are passed in input order through a bounded
+ * single-producer, single-consumer ring buffer. The consumer drains
+ * all the published entries in a batch, without touching the shared
+ * counters, and either side only blocks when the ring is full or
+ * empty. The producer thread is stopped when the pipeline is reset
+ * or stopped, or when the consumer thread has terminated. A stopped
+ * pipeline is restarted by the next call to next(), without losing
+ * any tokens.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+class TokenPipeline {
+
+    /**
+     * The ring buffer size. Must be a power of two.
+     */
+    private static final int RING_SIZE = 1024;
+
+    /**
+     * The end of file marker object.
+     */
+    private static final Object EOF = new Object();
+
+    /**
+     * The producer idle timeout in nanoseconds. A producer waiting
+     * for ring space checks if the consumer thread is still alive
+     * this often.
+     */
+    private static final long IDLE_TIMEOUT = 100000000L;
+
+    /**
+     * The tokenizer being pipelined.
+     */
+    private Tokenizer tokenizer;
+
+    /**
+     * The ring buffer entries. Each entry is either a Token, a
+     * ParseException, a RuntimeException or the end of file marker.
+     */
+    private Object[] ring = new Object[RING_SIZE];
+
+    /**
+     * The number of entries published by the producer.
+     */
+    private AtomicLong tail = new AtomicLong();
+
+    /**
+     * The number of entries consumed by the consumer.
+     */
+    private AtomicLong head = new AtomicLong();
+
+    /**
+     * The last tail value read by the consumer. All entries before
+     * this position can be consumed without reading the tail.
+     */
+    private long tailCache = 0;
+
+    /**
+     * The producer thread, or null if not started.
+     */
+    private Thread producer = null;
+
+    /**
+     * The consumer thread, or null if not started.
+     */
+    private volatile Thread consumer = null;
+
+    /**
+     * The entry read by a stopped producer thread, but not yet added
+     * to the ring buffer, or null if none. This entry is added first
+     * when the producer thread is restarted.
+     */
+    private Object pending = null;
+
+    /**
+     * The consumer thread waiting for an entry, or null if none.
+     */
+    private volatile Thread consumerWaiting = null;
+
+    /**
+     * The producer thread waiting for ring space, or null if none.
+     */
+    private volatile Thread producerWaiting = null;
+
+    /**
+     * The producer stop flag.
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * The end of file flag. Set by the consumer once the end of file
+     * marker has been read.
+     */
+    private boolean eof = false;
+
+    /**
+     * Creates a new pipelined tokenizer driver.
+     *
+     * @param tokenizer      the tokenizer being pipelined
+     */
+    public TokenPipeline(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * Stops the producer thread and resets this driver for another
+     * input stream. This method waits for the producer thread to
+     * finish, so that the tokenizer state can be safely modified.
+     */
+    public void reset() {
+        stop();
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = null;
+        }
+        tail.set(0);
+        head.set(0);
+        tailCache = 0;
+        pending = null;
+        eof = false;
+    }
+
+    /**
+     * Stops the producer thread. This method waits for the producer
+     * thread to finish. The tokens already read are kept, and the
+     * producer thread is restarted by the next call to next().
+     */
+    public void stop() {
+        boolean  interrupted = false;
+
+        if (producer != null) {
+            stopped = true;
+            LockSupport.unpark(producer);
+            while (producer.isAlive()) {
+                try {
+                    producer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            producer = null;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the next token. Any tokenizer error will be thrown in
+     * the same order as it was found in the input.
+     *
+     * @return the next token found, or
+     *         null if end of file was encountered
+     *
+     * @throws ParseException if the input stream couldn't be read or
+     *             parsed correctly
+     */
+    public Token next() throws ParseException {
+        long    pos;
+        int     index;
+        Object  entry;
+
+        if (eof) {
+            return null;
+        } else if (producer == null) {
+            start();
+        } else if (!producer.isAlive() && pending != null) {
+            start();
+        }
+        pos = head.get();
+        while (tailCache <= pos) {
+            tailCache = tail.get();
+            if (tailCache <= pos) {
+                consumerWaiting = Thread.currentThread();
+                if (tail.get() <= pos) {
+                    LockSupport.park(this);
+                }
+                consumerWaiting = null;
+            }
+        }
+        index = (int) pos & (RING_SIZE - 1);
+        entry = ring[index];
+        ring[index] = null;
+        head.set(pos + 1);
+        if (producerWaiting != null) {
+            LockSupport.unpark(producerWaiting);
+        }
+        if (entry == EOF) {
+            eof = true;
+            return null;
+        } else if (entry instanceof ParseException) {
+            throw (ParseException) entry;
+        } else if (entry instanceof RuntimeException) {
+            throw (RuntimeException) entry;
+        } else {
+            return (Token) entry;
+        }
+    }
+
+    /**
+     * Starts the producer thread. The current thread is registered
+     * as the consumer thread.
+     */
+    private void start() {
+        consumer = Thread.currentThread();
+        stopped = false;
+        producer = new Thread(new Runnable() {
+            public void run() {
+                produce();
+            }
+        }, "Grammatica tokenizer");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Reads all the tokens from the tokenizer and adds them to the
+     * ring buffer. This method is run by the producer thread until
+     * end of file is reached or the pipeline is stopped. The
+     * pipeline is also stopped if the consumer thread terminates
+     * while the ring buffer is full.
+     */
+    private void produce() {
+        long    pos = tail.get();
+        long    limit = head.get() + RING_SIZE;
+        Object  entry;
+
+        do {
+            entry = pending;
+            pending = null;
+            if (entry == null) {
+                entry = read();
+            }
+            while (pos >= limit && !stopped) {
+                limit = head.get() + RING_SIZE;
+                if (pos >= limit) {
+                    producerWaiting = Thread.currentThread();
+                    if (pos >= head.get() + RING_SIZE && !stopped) {
+                        LockSupport.parkNanos(this, IDLE_TIMEOUT);
+                    }
+                    if (!consumer.isAlive()) {
+                        stopped = true;
+                    }
+                    producerWaiting = null;
+                }
+            }
+            if (stopped) {
+                pending = entry;
+                return;
+            }
+            ring[(int) pos & (RING_SIZE - 1)] = entry;
+            tail.set(++pos);
+            if (consumerWaiting != null) {
+                LockSupport.unpark(consumerWaiting);
+            }
+        } while (entry != EOF
+              && !(entry instanceof RuntimeException)
+              && !stopped);
+    }
+
+    /**
+     * Reads the next entry from the tokenizer.
+     *
+     * @return the next token, the tokenizer error found, or the end
+     *         of file marker
+     */
+    private Object read() {
+        Object  entry;
+
+        try {
+            entry = tokenizer.readNext();
+            if (entry == null) {
+                entry = EOF;
+            }
+        } catch (ParseException e) {
+            entry = e;
+        } catch (RuntimeException e) {
+            entry = e;
+        }
+        return entry;
+    }
+}
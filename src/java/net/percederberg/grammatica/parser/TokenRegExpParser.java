@@ -21,9 +21,20 @@ import net.percederberg.grammatica.parser.re.RegExpException;
 /**
  * A regular expression parser. The parser creates an NFA for the
  * regular expression having a single start and acceptance states.
+ * Besides the basic regular expression syntax, the parser supports
+ * bounded repeats, non-capturing and case-insensitive groups, nested
+ * character sets with intersections, and the POSIX character classes
+ * (such as \p{Alpha}). Any other construct causes an exception, so
+ * that the regular expression must be handled by java.util.regex
+ * instead. As the NFA matches single UTF-16 characters, this also
+ * applies to the Unicode properties and to any nested, intersected
+ * or escaped character set that can match a surrogate character,
+ * since java.util.regex matches such sets against whole code
+ * points. Bounded repeats with too many copies are also left to
+ * java.util.regex.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  * @since    1.5
  */
 class TokenRegExpParser {
@@ -38,6 +49,25 @@ class TokenRegExpParser {
      */
     private boolean ignoreCase;
 
+    /**
+     * The ASCII-only case ignore flag. This flag is set by the (?i)
+     * group flag, which only folds ASCII characters in
+     * java.util.regex (unless the UNICODE_CASE flag is used).
+     */
+    private boolean asciiCase = false;
+
+    /**
+     * The extended character set flag. This flag is set when a
+     * nested set, an intersection or an escaped set is found inside
+     * a character set.
+     */
+    private boolean extendedSet = false;
+
+    /**
+     * The number of repeated atom copies created so far.
+     */
+    private int copies = 0;
+
     /**
      * The current position in the pattern. This variable is used by
      * the parsing methods.
@@ -54,6 +84,35 @@ class TokenRegExpParser {
      */
     protected TokenNFA.State end = null;
 
+    /**
+     * The maximum number of repeated atom copies in a regular
+     * expression. Bounded repeats are expanded into copies of the
+     * repeated atom, so nested repeats may otherwise create a huge
+     * NFA.
+     */
+    private static final int MAX_COPIES = 1000;
+
+    /**
+     * The POSIX character class names and character ranges. Each
+     * name is followed by the ranges matched, as pairs of minimum
+     * and maximum characters.
+     */
+    private static final String[][] POSIX_CLASSES = {
+        { "Lower", "az" },
+        { "Upper", "AZ" },
+        { "ASCII", "\u0000\u007F" },
+        { "Alpha", "azAZ" },
+        { "Digit", "09" },
+        { "Alnum", "azAZ09" },
+        { "Punct", "!/:@[`{~" },
+        { "Graph", "!~" },
+        { "Print", " ~" },
+        { "Blank", "  \t\t" },
+        { "Cntrl", "\u0000\u001F\u007F\u007F" },
+        { "XDigit", "09afAF" },
+        { "Space", "  \t\r" }
+    };
+
     /**
      * The number of states found.
      */
@@ -115,12 +174,62 @@ class TokenRegExpParser {
      * @return the debug information for the generated NFA
      */
     public String getDebugInfo() {
+        return getStateCount() + " states, " +
+               getTransitionCount() + " transitions, " +
+               getEpsilonCount() + " epsilons";
+    }
+
+    /**
+     * Returns the number of states in the generated NFA.
+     *
+     * @return the number of NFA states
+     *
+     * @since 1.7
+     */
+    public int getStateCount() {
         if (stateCount == 0) {
             updateStats(start, new HashMap());
         }
-        return stateCount + " states, " +
-               transitionCount + " transitions, " +
-               epsilonCount + " epsilons";
+        return stateCount;
+    }
+
+    /**
+     * Returns the number of transitions in the generated NFA.
+     *
+     * @return the number of NFA transitions
+     *
+     * @since 1.7
+     */
+    public int getTransitionCount() {
+        getStateCount();
+        return transitionCount;
+    }
+
+    /**
+     * Returns the number of epsilon transitions in the generated
+     * NFA.
+     *
+     * @return the number of NFA epsilon transitions
+     *
+     * @since 1.7
+     */
+    public int getEpsilonCount() {
+        getStateCount();
+        return epsilonCount;
+    }
+
+    /**
+     * Checks if the NFA start state has incoming transitions. Such
+     * an NFA cannot be merged into the initial tokenizer state, but
+     * must be entered through an epsilon transition for every token.
+     *
+     * @return true if the start state has incoming transitions, or
+     *         false otherwise
+     *
+     * @since 1.7
+     */
+    public boolean isStartReentrant() {
+        return start.incoming.length > 0;
     }
 
     /**
@@ -226,6 +335,7 @@ class TokenRegExpParser {
     private TokenNFA.State parseFact(TokenNFA.State start) throws RegExpException {
         TokenNFA.State  placeholder = new TokenNFA.State();
         TokenNFA.State  end;
+        int             atomPos = pos;
 
         end = parseAtom(placeholder);
         switch (peekChar(0)) {
@@ -233,9 +343,27 @@ class TokenRegExpParser {
         case '*':
         case '+':
         case '{':
-            end = parseAtomModifier(placeholder, end);
+            end = parseAtomModifier(placeholder, end, atomPos);
             break;
         }
+        return append(start, placeholder, end);
+    }
+
+    /**
+     * Appends an NFA fragment to a state. The fragment start state
+     * is merged into the state if possible, or otherwise connected
+     * with an epsilon transition.
+     *
+     * @param start          the state to append to
+     * @param placeholder    the fragment start state
+     * @param end            the fragment end state
+     *
+     * @return the terminating NFA state
+     */
+    private TokenNFA.State append(TokenNFA.State start,
+                                  TokenNFA.State placeholder,
+                                  TokenNFA.State end) {
+
         if (placeholder.incoming.length > 0 && start.outgoing.length > 0) {
             start.addOut(new TokenNFA.EpsilonTransition(placeholder));
             return end;
@@ -245,6 +373,32 @@ class TokenRegExpParser {
         }
     }
 
+    /**
+     * Appends a copy of a regular expression atom to a state. The
+     * atom is parsed again from the specified pattern position, and
+     * the current pattern position is then restored.
+     *
+     * @param start          the state to append to
+     * @param atomPos        the atom position in the pattern
+     *
+     * @return the terminating NFA state
+     *
+     * @throws RegExpException if an error was encountered in the
+     *             pattern string
+     */
+    private TokenNFA.State appendAtom(TokenNFA.State start, int atomPos)
+        throws RegExpException {
+
+        TokenNFA.State  placeholder = new TokenNFA.State();
+        TokenNFA.State  end;
+        int             savedPos = pos;
+
+        pos = atomPos;
+        end = parseAtom(placeholder);
+        pos = savedPos;
+        return append(start, placeholder, end);
+    }
+
     /**
      * Parses a regular expression atom. This method handles the
      * Atom production in the grammar (see regexp.grammar).
@@ -260,21 +414,26 @@ class TokenRegExpParser {
         throws RegExpException {
 
         TokenNFA.State  end;
+        boolean         flag = ignoreCase;
+        boolean         asciiFlag = asciiCase;
 
         switch (peekChar(0)) {
         case '.':
             readChar('.');
-            return start.addOut(new TokenNFA.DotTransition(new TokenNFA.State()));
+            end = new TokenNFA.State();
+            return addCharSet(start, new TokenNFA.DotTransition(end));
         case '(':
             readChar('(');
+            if (peekChar(0) == '?' && !parseGroupFlags()) {
+                return start;
+            }
             end = parseExpr(start);
             readChar(')');
+            ignoreCase = flag;
+            asciiCase = asciiFlag;
             return end;
         case '[':
-            readChar('[');
-            end = parseCharSet(start);
-            readChar(']');
-            return end;
+            return parseCharSet(start);
         case -1:
         case ')':
         case ']':
@@ -293,12 +452,58 @@ class TokenRegExpParser {
         }
     }
 
+    /**
+     * Parses the flags at the start of a group. This method handles
+     * the '(?:', '(?i:' and '(?-i:' group prefixes, as well as the
+     * '(?i)' and '(?-i)' flag groups. The case-insensitive flags are
+     * modified as specified, and should be restored at the end of
+     * the enclosing group. As in java.util.regex, the '(?i)' flag
+     * only folds ASCII characters.
+     *
+     * @return true if a group expression follows, or
+     *         false if this was a flag group
+     *
+     * @throws RegExpException if an error was encountered in the
+     *             pattern string
+     */
+    private boolean parseGroupFlags() throws RegExpException {
+        boolean  on = true;
+        char     c;
+
+        readChar('?');
+        while (true) {
+            c = readChar();
+            switch (c) {
+            case ':':
+                return true;
+            case ')':
+                return false;
+            case 'i':
+                asciiCase = on;
+                ignoreCase = ignoreCase && on;
+                break;
+            case '-':
+                if (on) {
+                    on = false;
+                    break;
+                }
+                // Fall through
+            default:
+                throw new RegExpException(
+                    RegExpException.UNSUPPORTED_SPECIAL_CHARACTER,
+                    pos - 1,
+                    pattern);
+            }
+        }
+    }
+
     /**
      * Parses a regular expression atom modifier. This method handles
      * the AtomModifier production in the grammar (see regexp.grammar).
      *
      * @param start          the initial NFA state
      * @param end            the terminal NFA state
+     * @param atomPos        the atom position in the pattern
      *
      * @return the terminating NFA state
      *
@@ -306,7 +511,8 @@ class TokenRegExpParser {
      *             pattern string
      */
     private TokenNFA.State parseAtomModifier(TokenNFA.State start,
-                                             TokenNFA.State end)
+                                             TokenNFA.State end,
+                                             int atomPos)
         throws RegExpException {
 
         int  min = 0;
@@ -387,16 +593,76 @@ class TokenRegExpParser {
             }
             return end;
         } else {
+            return addRepeats(start, end, atomPos, min, max);
+        }
+    }
+
+    /**
+     * Adds repeated copies of a regular expression atom. The first
+     * copy of the atom is already present between the start and end
+     * states. Additional copies are added for the required count,
+     * followed by either a loop or the optional copies. An
+     * exception is thrown if the total number of copies would be
+     * too large.
+     *
+     * @param start          the initial NFA state
+     * @param end            the terminal NFA state
+     * @param atomPos        the atom position in the pattern
+     * @param min            the minimum repeat count
+     * @param max            the maximum repeat count, or -1
+     *
+     * @return the terminating NFA state
+     *
+     * @throws RegExpException if an error was encountered in the
+     *             pattern string
+     */
+    private TokenNFA.State addRepeats(TokenNFA.State start,
+                                      TokenNFA.State end,
+                                      int atomPos,
+                                      int min,
+                                      int max)
+        throws RegExpException {
+
+        TokenNFA.State  state = end;
+        TokenNFA.State  last;
+
+        copies += Math.max(min, max);
+        if (copies > MAX_COPIES) {
             throw new RegExpException(
-                RegExpException.INVALID_REPEAT_COUNT,
-                firstPos,
+                RegExpException.UNSUPPORTED_SPECIAL_CHARACTER,
+                atomPos,
                 pattern);
         }
+        for (int i = 1; i < min; i++) {
+            state = appendAtom(state, atomPos);
+        }
+        if (max < 0) {
+            last = state;
+            state = appendAtom(last, atomPos);
+            state.addOut(new TokenNFA.EpsilonTransition(last));
+            return last;
+        }
+        last = new TokenNFA.State();
+        if (min == 0) {
+            start.addOut(new TokenNFA.EpsilonTransition(last));
+        }
+        for (int i = Math.max(min, 1); i < max; i++) {
+            state.addOut(new TokenNFA.EpsilonTransition(last));
+            state = appendAtom(state, atomPos);
+        }
+        if (state.outgoing.length == 0) {
+            state.mergeInto(last);
+        } else {
+            state.addOut(new TokenNFA.EpsilonTransition(last));
+        }
+        return last;
     }
 
     /**
      * Parses a regular expression character set. This method handles
-     * the contents of the '[...]' construct in a regular expression.
+     * the '[...]' construct in a regular expression. An exception is
+     * thrown if the set contains nested, intersected or escaped sets
+     * and can match a surrogate character.
      *
      * @param start          the initial NFA state
      *
@@ -408,27 +674,169 @@ class TokenRegExpParser {
     private TokenNFA.State parseCharSet(TokenNFA.State start)
         throws RegExpException {
 
-        TokenNFA.State                end = new TokenNFA.State();
+        TokenNFA.State       end = new TokenNFA.State();
+        TokenNFA.Transition  set;
+        int                  startPos = pos;
+
+        extendedSet = false;
+        readChar('[');
+        set = parseCharSetContents(end);
+        readChar(']');
+        if (extendedSet) {
+            checkSurrogates(set, startPos);
+        }
+        return addCharSet(start, set);
+    }
+
+    /**
+     * Adds a character set transition to the NFA. A character range
+     * set is compiled here, so that the cost isn't added to the
+     * first match. If the set matches all surrogate characters, as
+     * a negated set does, a path matching a whole surrogate pair is
+     * also added. As the longest match is used, a surrogate pair is
+     * then matched as a single code point, as in java.util.regex,
+     * while unpaired surrogates are still matched one at a time.
+     *
+     * @param start          the initial NFA state
+     * @param set            the character set transition
+     *
+     * @return the terminating NFA state
+     */
+    private TokenNFA.State addCharSet(TokenNFA.State start,
+                                      TokenNFA.Transition set) {
+
+        TokenNFA.State                end = start.addOut(set);
+        TokenNFA.CharRangeTransition  high;
+        TokenNFA.CharRangeTransition  low;
+
+        if (set instanceof TokenNFA.CharRangeTransition) {
+            ((TokenNFA.CharRangeTransition) set).prepare();
+        }
+        for (char c = '\uD800'; c <= '\uDFFF'; c++) {
+            if (!set.match(c)) {
+                return end;
+            }
+        }
+        high = new TokenNFA.CharRangeTransition(false,
+                                                false,
+                                                new TokenNFA.State());
+        high.addRange('\uD800', '\uDBFF');
+        low = new TokenNFA.CharRangeTransition(false, false, end);
+        low.addRange('\uDC00', '\uDFFF');
+        high.prepare();
+        low.prepare();
+        start.addOut(high).addOut(low);
+        return end;
+    }
+
+    /**
+     * Checks that a character set transition doesn't match any
+     * surrogate character. The NFA matches the UTF-16 characters in
+     * a surrogate pair separately, whereas java.util.regex matches
+     * character sets against whole code points.
+     *
+     * @param set            the character set transition
+     * @param startPos       the character set position
+     *
+     * @throws RegExpException if the character set matched a
+     *             surrogate character
+     */
+    private void checkSurrogates(TokenNFA.Transition set, int startPos)
+        throws RegExpException {
+
+        for (char c = '\uD800'; c <= '\uDFFF'; c++) {
+            if (set.match(c)) {
+                throw new RegExpException(
+                    RegExpException.UNSUPPORTED_SPECIAL_CHARACTER,
+                    startPos,
+                    pattern);
+            }
+        }
+    }
+
+    /**
+     * Creates a new character range transition with the current
+     * case-insensitive flags.
+     *
+     * @param inverse        the inverse match flag
+     * @param end            the terminal NFA state
+     *
+     * @return the character range transition
+     */
+    private TokenNFA.CharRangeTransition newCharRange(boolean inverse,
+                                                      TokenNFA.State end) {
+
+        return new TokenNFA.CharRangeTransition(inverse,
+                                                ignoreCase || asciiCase,
+                                                !ignoreCase && asciiCase,
+                                                end);
+    }
+
+    /**
+     * Checks if a character is matched case-insensitively with the
+     * current case-insensitive flags.
+     *
+     * @param c              the character to check
+     *
+     * @return true if the character case should be ignored, or
+     *         false otherwise
+     */
+    private boolean isIgnoreCase(char c) {
+        return ignoreCase || (asciiCase && c < 128);
+    }
+
+    /**
+     * Parses the contents of a regular expression character set.
+     * This method handles the contents of the '[...]' construct,
+     * including nested character sets and intersections, but not
+     * the final ']' character.
+     *
+     * @param end            the terminal NFA state
+     *
+     * @return the character set transition
+     *
+     * @throws RegExpException if an error was encountered in the
+     *             pattern string
+     */
+    private TokenNFA.CharRangeTransition parseCharSetContents(
+        TokenNFA.State end)
+        throws RegExpException {
+
         TokenNFA.CharRangeTransition  range;
+        TokenNFA.Transition           set;
         char                          min;
         char                          max;
 
         if (peekChar(0) == '^') {
             readChar('^');
-            range = new TokenNFA.CharRangeTransition(true, ignoreCase, end);
+            range = newCharRange(true, end);
         } else {
-            range = new TokenNFA.CharRangeTransition(false, ignoreCase, end);
+            range = newCharRange(false, end);
         }
-        start.addOut(range);
         while (peekChar(0) > 0) {
             min = (char) peekChar(0);
-            switch (min) {
-            case ']':
-                return end;
-            case '\\':
-                range.addCharacter(readEscapeChar());
+            if (min == ']') {
                 break;
-            default:
+            } else if (min == '[') {
+                extendedSet = true;
+                readChar('[');
+                range.addSet(parseCharSetContents(new TokenNFA.State()));
+                readChar(']');
+            } else if (min == '&' && peekChar(1) == '&') {
+                extendedSet = true;
+                readChar('&');
+                readChar('&');
+                set = parseCharSetContents(new TokenNFA.State());
+                range.addIntersection(set);
+            } else if (min == '\\') {
+                set = parseEscapeSet(new TokenNFA.State());
+                if (set != null) {
+                    extendedSet = true;
+                    range.addSet(set);
+                } else {
+                    range.addCharacter(readEscapeChar());
+                }
+            } else {
                 readChar(min);
                 if (peekChar(0) == '-'
                  && peekChar(1) > 0
@@ -442,7 +850,7 @@ class TokenRegExpParser {
                 }
             }
         }
-        return end;
+        return range;
     }
 
     /**
@@ -459,6 +867,8 @@ class TokenRegExpParser {
     private TokenNFA.State parseChar(TokenNFA.State start)
         throws RegExpException {
 
+        char  c;
+
         switch (peekChar(0)) {
         case '\\':
             return parseEscapeChar(start);
@@ -469,7 +879,8 @@ class TokenRegExpParser {
                 pos,
                 pattern);
         default:
-            return start.addOut(readChar(), ignoreCase, new TokenNFA.State());
+            c = readChar();
+            return start.addOut(c, isIgnoreCase(c), new TokenNFA.State());
         }
     }
 
@@ -487,37 +898,124 @@ class TokenRegExpParser {
     private TokenNFA.State parseEscapeChar(TokenNFA.State start)
         throws RegExpException {
 
-        TokenNFA.State  end = new TokenNFA.State();
+        TokenNFA.State       end = new TokenNFA.State();
+        TokenNFA.Transition  set;
+        int                  startPos = pos;
+        char                 c;
+
+        set = parseEscapeSet(end);
+        if (set instanceof TokenNFA.CharRangeTransition) {
+            checkSurrogates(set, startPos);
+        }
+        if (set != null) {
+            return addCharSet(start, set);
+        }
+        c = readEscapeChar();
+        return start.addOut(c, isIgnoreCase(c), end);
+    }
+
+    /**
+     * Parses a regular expression character set escape. This method
+     * handles the '\d', '\s', '\w' and '\p{...}' escapes and their
+     * inverses. If the next pattern characters aren't one of these
+     * escapes, nothing is read.
+     *
+     * @param end            the terminal NFA state
+     *
+     * @return the character set transition, or
+     *         null if no character set escape was found
+     *
+     * @throws RegExpException if an error was encountered in the
+     *             pattern string
+     */
+    private TokenNFA.Transition parseEscapeSet(TokenNFA.State end)
+        throws RegExpException {
+
+        if (peekChar(0) != '\\' || peekChar(1) <= 0) {
+            return null;
+        }
+        switch ((char) peekChar(1)) {
+        case 'd':
+            readChar();
+            readChar();
+            return new TokenNFA.DigitTransition(end);
+        case 'D':
+            readChar();
+            readChar();
+            return new TokenNFA.NonDigitTransition(end);
+        case 's':
+            readChar();
+            readChar();
+            return new TokenNFA.WhitespaceTransition(end);
+        case 'S':
+            readChar();
+            readChar();
+            return new TokenNFA.NonWhitespaceTransition(end);
+        case 'w':
+            readChar();
+            readChar();
+            return new TokenNFA.WordTransition(end);
+        case 'W':
+            readChar();
+            readChar();
+            return new TokenNFA.NonWordTransition(end);
+        case 'p':
+        case 'P':
+            return parseProperty(end);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Parses a regular expression property escape. This method
+     * handles the '\p{...}' and '\P{...}' escapes for the POSIX
+     * character classes (such as 'Alpha'). Other properties, such as
+     * the Unicode categories, scripts and blocks, may match
+     * supplementary characters and are left to java.util.regex, as
+     * are any unknown property names.
+     *
+     * @param end            the terminal NFA state
+     *
+     * @return the character set transition
+     *
+     * @throws RegExpException if an error was encountered in the
+     *             pattern string
+     */
+    private TokenNFA.Transition parseProperty(TokenNFA.State end)
+        throws RegExpException {
+
+        TokenNFA.CharRangeTransition  range;
+        int                           startPos = pos;
+        boolean                       inverse;
+        String                        name;
 
-        if (peekChar(0) == '\\' && peekChar(1) > 0) {
-            switch ((char) peekChar(1)) {
-            case 'd':
-                readChar();
-                readChar();
-                return start.addOut(new TokenNFA.DigitTransition(end));
-            case 'D':
-                readChar();
-                readChar();
-                return start.addOut(new TokenNFA.NonDigitTransition(end));
-            case 's':
-                readChar();
-                readChar();
-                return start.addOut(new TokenNFA.WhitespaceTransition(end));
-            case 'S':
-                readChar();
-                readChar();
-                return start.addOut(new TokenNFA.NonWhitespaceTransition(end));
-            case 'w':
-                readChar();
-                readChar();
-                return start.addOut(new TokenNFA.WordTransition(end));
-            case 'W':
-                readChar();
-                readChar();
-                return start.addOut(new TokenNFA.NonWordTransition(end));
+        readChar('\\');
+        inverse = (readChar() == 'P');
+        if (peekChar(0) == '{') {
+            readChar('{');
+            name = "";
+            while (peekChar(0) != '}') {
+                name += readChar();
+            }
+            readChar('}');
+        } else {
+            name = String.valueOf(readChar());
+        }
+        for (int i = 0; i < POSIX_CLASSES.length; i++) {
+            if (POSIX_CLASSES[i][0].equals(name)) {
+                range = newCharRange(inverse, end);
+                name = POSIX_CLASSES[i][1];
+                for (int j = 0; j + 1 < name.length(); j += 2) {
+                    range.addRange(name.charAt(j), name.charAt(j + 1));
+                }
+                return range;
             }
         }
-        return start.addOut(readEscapeChar(), ignoreCase, end);
+        throw new RegExpException(
+            RegExpException.UNSUPPORTED_ESCAPE_CHARACTER,
+            startPos,
+            pattern);
     }
 
     /**
@@ -0,0 +1,289 @@
+/*
+ * TokenSampler.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import net.percederberg.grammatica.parser.re.RegExpException;
+
+/**
+ * A random token image generator. This class creates random strings
+ * matching a token pattern. String patterns always produce the
+ * pattern string itself, while regular expression patterns are
+ * compiled to an NFA that is walked randomly from the start to the
+ * end state. Once the maximum length has been reached, the walk
+ * takes the shortest path to the end state.
+ *
+ * Note that the generated images only match the token pattern
+ * itself. Other token patterns may match the same images, so the
+ * images may need to be checked with a tokenizer.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class TokenSampler {
+
+    /**
+     * The probability of stopping at an end state with further
+     * outgoing transitions.
+     */
+    private static final double STOP_PROBABILITY = 0.3;
+
+    /**
+     * The token pattern.
+     */
+    private TokenPattern pattern;
+
+    /**
+     * The random number generator.
+     */
+    private Random random;
+
+    /**
+     * The NFA start state, or null for string patterns.
+     */
+    private TokenNFA.State start = null;
+
+    /**
+     * The NFA end state, or null for string patterns.
+     */
+    private TokenNFA.State end = null;
+
+    /**
+     * The number of transitions from each NFA state to the end
+     * state. States not in this map cannot reach the end state.
+     */
+    private HashMap distances = new HashMap();
+
+    /**
+     * Creates a new token image generator.
+     *
+     * @param pattern        the token pattern
+     * @param ignoreCase     the character case ignore flag
+     * @param random         the random number generator to use
+     *
+     * @throws RegExpException if the regular expression couldn't be
+     *             parsed or isn't supported
+     */
+    public TokenSampler(TokenPattern pattern,
+                        boolean ignoreCase,
+                        Random random)
+        throws RegExpException {
+
+        TokenRegExpParser  parser;
+
+        this.pattern = pattern;
+        this.random = random;
+        if (pattern.getType() == TokenPattern.REGEXP_TYPE) {
+            parser = new TokenRegExpParser(pattern.getPattern(), ignoreCase);
+            start = parser.start;
+            end = parser.end;
+            calculateDistances();
+        }
+    }
+
+    /**
+     * Checks if any images can be generated. This is always the case
+     * for string patterns, but some regular expressions cannot match
+     * anything.
+     *
+     * @return true if images can be generated, or
+     *         false otherwise
+     */
+    public boolean canSample() {
+        return start == null || distances.containsKey(start);
+    }
+
+    /**
+     * Generates a random token image.
+     *
+     * @param maxLength      the preferred maximum image length
+     *
+     * @return the generated token image, or
+     *         null if no image could be generated
+     */
+    public String sample(int maxLength) {
+        StringBuffer          buffer = new StringBuffer();
+        TokenNFA.State        state = start;
+        TokenNFA.Transition   trans;
+        int                   steps = 0;
+
+        if (start == null) {
+            return pattern.getPattern();
+        } else if (!canSample()) {
+            return null;
+        }
+        while (true) {
+            if (state == end) {
+                if (state.outgoing.length == 0 ||
+                    buffer.length() >= maxLength ||
+                    random.nextDouble() < STOP_PROBABILITY) {
+
+                    return buffer.toString();
+                }
+            }
+            if (buffer.length() >= maxLength || steps++ > maxLength * 4) {
+                trans = findShortest(state);
+            } else {
+                trans = findRandom(state);
+            }
+            if (trans instanceof TokenNFA.CharTransition) {
+                buffer.append(((TokenNFA.CharTransition) trans).match);
+            } else if (!(trans instanceof TokenNFA.EpsilonTransition)) {
+                buffer.append(findChar(trans));
+            }
+            state = trans.state;
+        }
+    }
+
+    /**
+     * Calculates the distance to the end state for all NFA states.
+     * The distance is the minimum number of transitions, with
+     * epsilon transitions also counted. The NFA states only keep
+     * their incoming transitions, so the source state for each
+     * transition is first found by searching all the states
+     * reachable from the start state.
+     */
+    private void calculateDistances() {
+        ArrayList            queue = new ArrayList();
+        HashSet              visited = new HashSet();
+        HashMap              sources = new HashMap();
+        TokenNFA.State       state;
+        TokenNFA.Transition  trans;
+        Object               source;
+        Integer              dist;
+
+        queue.add(start);
+        visited.add(start);
+        for (int i = 0; i < queue.size(); i++) {
+            state = (TokenNFA.State) queue.get(i);
+            for (int j = 0; j < state.outgoing.length; j++) {
+                trans = state.outgoing[j];
+                sources.put(trans, state);
+                if (visited.add(trans.state)) {
+                    queue.add(trans.state);
+                }
+            }
+        }
+        queue.clear();
+        distances.put(end, new Integer(0));
+        queue.add(end);
+        for (int i = 0; i < queue.size(); i++) {
+            state = (TokenNFA.State) queue.get(i);
+            dist = new Integer(distance(state) + 1);
+            for (int j = 0; j < state.incoming.length; j++) {
+                source = sources.get(state.incoming[j]);
+                if (source != null && !distances.containsKey(source)) {
+                    distances.put(source, dist);
+                    queue.add(source);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the distance from a state to the end state.
+     *
+     * @param state          the NFA state
+     *
+     * @return the number of transitions to the end state, or
+     *         Integer.MAX_VALUE if the end state isn't reachable
+     */
+    private int distance(TokenNFA.State state) {
+        Integer  dist = (Integer) distances.get(state);
+
+        return (dist == null) ? Integer.MAX_VALUE : dist.intValue();
+    }
+
+    /**
+     * Finds a random outgoing transition leading to the end state.
+     *
+     * @param state          the NFA state
+     *
+     * @return the transition found
+     */
+    private TokenNFA.Transition findRandom(TokenNFA.State state) {
+        TokenNFA.Transition  trans;
+        int                  count = 0;
+        int                  pos;
+
+        for (int i = 0; i < state.outgoing.length; i++) {
+            if (distance(state.outgoing[i].state) < Integer.MAX_VALUE) {
+                count++;
+            }
+        }
+        pos = random.nextInt(count);
+        for (int i = 0; i < state.outgoing.length; i++) {
+            trans = state.outgoing[i];
+            if (distance(trans.state) < Integer.MAX_VALUE && pos-- == 0) {
+                return trans;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds an outgoing transition on a shortest path to the end
+     * state.
+     *
+     * @param state          the NFA state
+     *
+     * @return the transition found
+     */
+    private TokenNFA.Transition findShortest(TokenNFA.State state) {
+        TokenNFA.Transition  res = null;
+
+        for (int i = 0; i < state.outgoing.length; i++) {
+            if (res == null ||
+                distance(state.outgoing[i].state) < distance(res.state)) {
+
+                res = state.outgoing[i];
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Finds a random character matching a transition. Printable
+     * ASCII characters are preferred, but any character will be
+     * returned if no printable ASCII character matches.
+     *
+     * @param trans          the NFA transition
+     *
+     * @return the matching character
+     */
+    private char findChar(TokenNFA.Transition trans) {
+        int   offset = random.nextInt(95);
+        char  c;
+
+        for (int i = 0; i < 95; i++) {
+            c = (char) (32 + (offset + i) % 95);
+            if (trans.match(c)) {
+                return c;
+            }
+        }
+        for (int i = 0; i < 0x10000; i++) {
+            if (trans.match((char) i)) {
+                return (char) i;
+            }
+        }
+        return '?';
+    }
+}
@@ -0,0 +1,565 @@
+/*
+ * TokenSplitter.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A parallel tokenizer driver. This class reads the tokenizer input
+ * in large windows, splits each window into chunks directly after a
+ * delimiter character, and tokenizes the chunks concurrently with
+ * copies of the tokenizer. The resulting tokens are relocated to
+ * their original line and column numbers and returned in order,
+ * together with any tokenizer errors. This is only correct if no
+ * token can contain the delimiter, which is checked by the
+ * Tokenizer.isSplitSafe() method. If no delimiter is found within
+ * the maximum window size, the rest of the input is tokenized
+ * sequentially by a single tokenizer copy instead.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+class TokenSplitter {
+
+    /**
+     * The number of characters to tokenize in each chunk.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of chunks per tokenizer copy in a window.
+     * If no delimiter has been found when a window reaches this
+     * size, the splitter falls back to sequential tokenization.
+     */
+    private static final int MAX_WINDOW_CHUNKS = 4;
+
+    /**
+     * The tokenizer being split.
+     */
+    private Tokenizer tokenizer;
+
+    /**
+     * The delimiter character.
+     */
+    private char delimiter;
+
+    /**
+     * The fork-join pool to use for the chunk tasks.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The tokenizer copies, one per concurrent chunk.
+     */
+    private Tokenizer[] copies;
+
+    /**
+     * The characters read but not yet tokenized.
+     */
+    private StringBuilder pending = new StringBuilder();
+
+    /**
+     * The line number of the first pending character.
+     */
+    private int line = 1;
+
+    /**
+     * The column number of the first pending character.
+     */
+    private int column = 1;
+
+    /**
+     * The end of input flag.
+     */
+    private boolean eof = false;
+
+    /**
+     * The tokens and errors found, but not yet returned. The list
+     * contains Token and ParseException objects in input order.
+     */
+    private ArrayList results = new ArrayList();
+
+    /**
+     * The position of the next result to return.
+     */
+    private int position = 0;
+
+    /**
+     * The last token in the token list, used when the token list
+     * feature is active.
+     */
+    private Token previous = null;
+
+    /**
+     * The sequential tokenizer task, or null if not used. This task
+     * is created when no delimiter could be found in the maximum
+     * window size, and tokenizes the rest of the input one token at
+     * a time.
+     */
+    private ChunkTask sequential = null;
+
+    /**
+     * Creates a new parallel tokenizer driver.
+     *
+     * @param tokenizer      the tokenizer being split
+     * @param delimiter      the delimiter character
+     * @param pool           the fork-join pool to use
+     *
+     * @throws ParserCreationException if the tokenizer couldn't be
+     *             copied
+     */
+    public TokenSplitter(Tokenizer tokenizer,
+                         char delimiter,
+                         ForkJoinPool pool)
+        throws ParserCreationException {
+
+        TokenPattern[]  patterns = tokenizer.getAllPatterns();
+
+        this.tokenizer = tokenizer;
+        this.delimiter = delimiter;
+        this.pool = pool;
+        this.copies = new Tokenizer[Math.max(pool.getParallelism(), 1)];
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = new Tokenizer(new StringReader(""),
+                                      tokenizer.ignoreCase);
+            copies[i].setNativeLookAhead(tokenizer.getNativeLookAhead());
+            for (int j = 0; j < patterns.length; j++) {
+                copies[i].addPattern(patterns[j]);
+            }
+        }
+    }
+
+    /**
+     * Sets the metrics listener in all the tokenizer copies.
+     *
+     * @param metrics        the metrics listener, or null for none
+     */
+    public void setMetrics(ParserMetrics metrics) {
+        for (int i = 0; i < copies.length; i++) {
+            copies[i].setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Resets this driver for another input stream.
+     */
+    public void reset() {
+        pending = new StringBuilder();
+        line = 1;
+        column = 1;
+        eof = false;
+        results.clear();
+        position = 0;
+        previous = null;
+        sequential = null;
+    }
+
+    /**
+     * Returns the next token. Any tokenizer error will be thrown in
+     * the same order as it was found in the input.
+     *
+     * @return the next token found, or
+     *         null if end of file was encountered
+     *
+     * @throws ParseException if the input stream couldn't be read or
+     *             parsed correctly
+     */
+    public Token next() throws ParseException {
+        Object  result;
+
+        while (position >= results.size()) {
+            if (eof && pending.length() == 0 && sequential == null) {
+                previous = null;
+                return null;
+            }
+            results.clear();
+            position = 0;
+            if (sequential != null) {
+                sequential.results.clear();
+                sequential.tokens.clear();
+                if (sequential.step()) {
+                    addResults(sequential);
+                } else {
+                    sequential = null;
+                }
+                continue;
+            }
+            try {
+                tokenizeWindow();
+            } catch (IOException e) {
+                eof = true;
+                pending = new StringBuilder();
+                throw new ParseException(ParseException.IO_ERROR,
+                                         e.getMessage(),
+                                         -1,
+                                         -1);
+            }
+        }
+        result = results.get(position);
+        results.set(position++, null);
+        if (result instanceof ParseException) {
+            throw (ParseException) result;
+        }
+        return (Token) result;
+    }
+
+    /**
+     * Reads and tokenizes the next input window. The window is cut
+     * after the last delimiter and divided into one chunk per
+     * tokenizer copy. Any characters after the last delimiter are
+     * kept pending until the next window. If no delimiter is found
+     * within the maximum window size, a sequential tokenizer task
+     * is started for the rest of the input instead.
+     *
+     * @throws IOException if the input stream couldn't be read
+     */
+    private void tokenizeWindow() throws IOException {
+        ChunkTask[]    tasks;
+        StringBuilder  text = pending;
+        String         str;
+        int            size = CHUNK_SIZE * copies.length;
+        int            end = -1;
+        int            start;
+        int            count = 0;
+
+        while (end < 0 && !eof) {
+            if (text.length() >= size * MAX_WINDOW_CHUNKS) {
+                startSequential(text);
+                return;
+            }
+            str = tokenizer.getBuffer().read(size);
+            if (str == null) {
+                eof = true;
+            } else {
+                text.append(str);
+                end = str.lastIndexOf(delimiter) + 1;
+                end = (end <= 0) ? -1 : text.length() - str.length() + end;
+            }
+        }
+        if (eof) {
+            end = text.length();
+        }
+        tasks = new ChunkTask[copies.length];
+        start = 0;
+        while (start < end) {
+            int pos = start + (end / copies.length) + 1;
+            if (count + 1 >= copies.length || pos >= end) {
+                pos = end;
+            } else {
+                pos = text.indexOf(String.valueOf(delimiter), pos) + 1;
+                pos = (pos <= 0 || pos > end) ? end : pos;
+            }
+            tasks[count] = new ChunkTask(copies[count],
+                                         text.substring(start, pos),
+                                         line,
+                                         column);
+            updatePosition(text, start, pos);
+            pool.execute(tasks[count++]);
+            start = pos;
+        }
+        pending = new StringBuilder(text.length() - end);
+        pending.append(text, end, text.length());
+        for (int i = 0; i < count; i++) {
+            tasks[i].join();
+            addResults(tasks[i]);
+        }
+    }
+
+    /**
+     * Starts the sequential tokenizer task. The task reads the
+     * pending text first, followed by the rest of the input.
+     *
+     * @param text           the pending text
+     */
+    private void startSequential(StringBuilder text) {
+        sequential = new ChunkTask(copies[0],
+                                   new WindowReader(text.toString()),
+                                   line,
+                                   column);
+        pending = new StringBuilder();
+        eof = true;
+    }
+
+    /**
+     * Adds the results from a chunk task. If the token list feature
+     * is active, the chunk tokens are also linked to the previous
+     * tokens.
+     *
+     * @param task           the completed chunk task
+     */
+    private void addResults(ChunkTask task) {
+        results.addAll(task.results);
+        if (tokenizer.getUseTokenList()) {
+            for (int i = 0; i < task.tokens.size(); i++) {
+                Token token = (Token) task.tokens.get(i);
+                token.setPreviousToken(previous);
+                previous = token;
+            }
+        }
+    }
+
+    /**
+     * Updates the current line and column numbers for a range of
+     * characters.
+     *
+     * @param text           the text being processed
+     * @param start          the start index, inclusive
+     * @param end            the end index, exclusive
+     */
+    private void updatePosition(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+    }
+
+
+    /**
+     * A chunk tokenizer task. This task tokenizes a single chunk and
+     * relocates all the tokens and errors found.
+     */
+    private class ChunkTask extends RecursiveAction {
+
+        /**
+         * The tokenizer to use.
+         */
+        private Tokenizer tokenizer;
+
+        /**
+         * The chunk input reader.
+         */
+        private Reader input;
+
+        /**
+         * The line number of the first chunk character.
+         */
+        private int line;
+
+        /**
+         * The column number of the first chunk character.
+         */
+        private int column;
+
+        /**
+         * The tokens and errors found. The list contains Token and
+         * ParseException objects in input order.
+         */
+        public ArrayList results = new ArrayList();
+
+        /**
+         * All the tokens found, including the ignored ones. This
+         * list is only filled when the token list feature is used.
+         */
+        public ArrayList tokens = new ArrayList();
+
+        /**
+         * Creates a new chunk tokenizer task.
+         *
+         * @param tokenizer      the tokenizer to use
+         * @param text           the chunk text
+         * @param line           the first chunk line number
+         * @param column         the first chunk column number
+         */
+        public ChunkTask(Tokenizer tokenizer,
+                         String text,
+                         int line,
+                         int column) {
+
+            this(tokenizer, new StringReader(text), line, column);
+        }
+
+        /**
+         * Creates a new chunk tokenizer task.
+         *
+         * @param tokenizer      the tokenizer to use
+         * @param input          the chunk input reader
+         * @param line           the first chunk line number
+         * @param column         the first chunk column number
+         */
+        public ChunkTask(Tokenizer tokenizer,
+                         Reader input,
+                         int line,
+                         int column) {
+
+            this.tokenizer = tokenizer;
+            this.input = input;
+            this.line = line;
+            this.column = column;
+        }
+
+        /**
+         * Tokenizes the chunk.
+         */
+        protected void compute() {
+            while (step()) {
+                // Continue until end of chunk
+            }
+        }
+
+        /**
+         * Reads the next token or error from the chunk. The tokenizer
+         * is reset to the chunk input on the first call.
+         *
+         * @return true if a token or error was read, or
+         *         false if the end of the chunk was reached
+         */
+        public boolean step() {
+            Token         token;
+            TokenPattern  pattern;
+
+            if (input != null) {
+                tokenizer.reset(input);
+                input = null;
+            }
+            try {
+                token = tokenizer.nextToken();
+            } catch (ParseException e) {
+                results.add(new ParseException(
+                    e.getErrorType(),
+                    e.getInfo(),
+                    relocateLine(e.getLine()),
+                    relocateColumn(e.getLine(), e.getColumn())));
+                return true;
+            }
+            if (token == null) {
+                return false;
+            }
+            pattern = token.getPattern();
+            if (line > 1 || column > 1) {
+                token.init(pattern,
+                           token.getImage(),
+                           relocateLine(token.getStartLine()),
+                           relocateColumn(token.getStartLine(),
+                                          token.getStartColumn()));
+            }
+            if (TokenSplitter.this.tokenizer.getUseTokenList()) {
+                tokens.add(token);
+            }
+            if (pattern.isIgnore()) {
+                // Skip token
+            } else if (pattern.isError()) {
+                results.add(new ParseException(
+                    ParseException.INVALID_TOKEN_ERROR,
+                    pattern.getErrorMessage(),
+                    token.getStartLine(),
+                    token.getStartColumn()));
+            } else {
+                results.add(token);
+            }
+            return true;
+        }
+
+        /**
+         * Relocates a chunk line number to the original input.
+         *
+         * @param value          the chunk line number
+         *
+         * @return the input line number
+         */
+        private int relocateLine(int value) {
+            return (value < 0) ? value : value + line - 1;
+        }
+
+        /**
+         * Relocates a chunk column number to the original input.
+         *
+         * @param lineValue      the chunk line number
+         * @param value          the chunk column number
+         *
+         * @return the input column number
+         */
+        private int relocateColumn(int lineValue, int value) {
+            if (lineValue == 1 && value >= 0) {
+                return value + column - 1;
+            } else {
+                return value;
+            }
+        }
+    }
+
+
+    /**
+     * A sequential input reader. This reader returns the pending
+     * window text first, followed by the rest of the tokenizer
+     * input.
+     */
+    private class WindowReader extends Reader {
+
+        /**
+         * The text currently being returned.
+         */
+        private String text;
+
+        /**
+         * The position of the next text character.
+         */
+        private int pos = 0;
+
+        /**
+         * Creates a new sequential input reader.
+         *
+         * @param text           the pending window text
+         */
+        public WindowReader(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Reads characters into an array.
+         *
+         * @param cbuf           the destination buffer
+         * @param off            the buffer offset
+         * @param len            the maximum number of characters
+         *
+         * @return the number of characters read, or
+         *         -1 if the end of input was reached
+         *
+         * @throws IOException if the input stream couldn't be read
+         */
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int  count;
+
+            while (pos >= text.length()) {
+                text = tokenizer.getBuffer().read(CHUNK_SIZE);
+                pos = 0;
+                if (text == null) {
+                    text = "";
+                    return -1;
+                }
+            }
+            count = Math.min(len, text.length() - pos);
+            text.getChars(pos, pos + count, cbuf, off);
+            pos += count;
+            return count;
+        }
+
+        /**
+         * Closes this reader. The tokenizer input is not closed.
+         */
+        public void close() {
+            // Nothing to close
+        }
+    }
+}
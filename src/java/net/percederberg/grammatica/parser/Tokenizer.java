@@ -16,9 +16,11 @@ package net.percederberg.grammatica.parser;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 
 import net.percederberg.grammatica.parser.re.RegExp;
+import net.percederberg.grammatica.parser.re.RegExpException;
 import net.percederberg.grammatica.parser.re.Matcher;
 
 /**
@@ -29,7 +31,7 @@ import net.percederberg.grammatica.parser.re.Matcher;
  * don't match any of the token patterns, a parse exception is thrown.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 public class Tokenizer {
 
@@ -86,6 +88,61 @@ public class Tokenizer {
      */
     private Token previousToken = null;
 
+    /**
+     * The node arena to use for new tokens, or null for none.
+     */
+    private NodeArena arena = null;
+
+    /**
+     * The parallel tokenizer driver, or null if not used.
+     */
+    private TokenSplitter splitter = null;
+
+    /**
+     * The pipelined tokenizer driver, or null if not used.
+     */
+    private TokenPipeline pipeline = null;
+
+    /**
+     * The metrics listener, or null if not used.
+     */
+    private ParserMetrics metrics = null;
+
+    /**
+     * The current tokenizer event, or null if not recorded.
+     */
+    private Object batchEvent = null;
+
+    /**
+     * The number of tokens in the current tokenizer event batch.
+     */
+    private int batchTokens = 0;
+
+    /**
+     * The number of token characters in the current tokenizer event
+     * batch.
+     */
+    private long batchCharacters = 0;
+
+    /**
+     * The number of errors in the current tokenizer event batch.
+     */
+    private int batchErrors = 0;
+
+    /**
+     * The time spent reading tokens in the current tokenizer event
+     * batch, in nanoseconds.
+     */
+    private long batchTime = 0;
+
+    /**
+     * The native regular expression look-ahead limit. This is the
+     * number of characters buffered in a single step when a native
+     * regular expression without a maximum match length reaches the
+     * end of the buffered input.
+     */
+    private int nativeLookAhead = 64 * 1024;
+
     /**
      * Creates a new case-sensitive tokenizer for the specified input
      * stream.
@@ -111,6 +168,32 @@ public class Tokenizer {
         this.ignoreCase = ignoreCase;
     }
 
+    /**
+     * Returns the node arena used for new tokens.
+     *
+     * @return the node arena, or
+     *         null if no arena is used
+     *
+     * @since 1.7
+     */
+    public NodeArena getNodeArena() {
+        return arena;
+    }
+
+    /**
+     * Sets the node arena to use for new tokens. By default no arena
+     * is used, and all tokens are allocated normally.
+     *
+     * @param arena          the node arena, or null for none
+     *
+     * @see Parser#setNodeArena
+     *
+     * @since 1.7
+     */
+    public void setNodeArena(NodeArena arena) {
+        this.arena = arena;
+    }
+
     /**
      * Checks if the token list feature is used. The token list
      * feature makes all tokens (including ignored tokens) link to
@@ -148,6 +231,265 @@ public class Tokenizer {
         this.useTokenList = useTokenList;
     }
 
+    /**
+     * Returns the metrics listener used by this tokenizer.
+     *
+     * @return the metrics listener, or
+     *         null if not used
+     *
+     * @since 1.7
+     */
+    public ParserMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics listener. The listener will be notified of
+     * each token matched and the time spent in each token matcher.
+     * The listener will also be used by the tokenizer copies in the
+     * parallel split mode. By default no listener is used.
+     *
+     * @param metrics        the metrics listener, or null for none
+     *
+     * @since 1.7
+     */
+    public void setMetrics(ParserMetrics metrics) {
+        this.metrics = metrics;
+        if (splitter != null) {
+            splitter.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Checks if the input can be split after the specified delimiter
+     * character and tokenized in separate chunks. This is the case
+     * if no token pattern can match the delimiter, except for ignored
+     * patterns that only repeat a single character set (such as
+     * whitespace). Regular expressions too complex for the built-in
+     * automaton are always considered unsafe.
+     *
+     * @param delimiter      the delimiter character
+     *
+     * @return true if the input can be split safely, or
+     *         false otherwise
+     *
+     * @see #setParallelSplit
+     *
+     * @since 1.7
+     */
+    public boolean isSplitSafe(char delimiter) {
+        return findSplitUnsafe(delimiter) == null;
+    }
+
+    /**
+     * Finds the first token pattern preventing the input from being
+     * split after the specified delimiter character.
+     *
+     * @param delimiter      the delimiter character
+     *
+     * @return the first unsafe token pattern, or
+     *         null if the input can be split safely
+     */
+    private TokenPattern findSplitUnsafe(char delimiter) {
+        TokenPattern[]     patterns = getAllPatterns();
+        TokenRegExpParser  parser;
+        String             str;
+
+        for (int i = 0; i < patterns.length; i++) {
+            str = patterns[i].getPattern();
+            if (patterns[i].getType() == TokenPattern.STRING_TYPE) {
+                if (str.indexOf(delimiter) >= 0) {
+                    return patterns[i];
+                }
+                continue;
+            }
+            try {
+                parser = new TokenRegExpParser(str, ignoreCase);
+                if (!TokenNFA.canMatch(parser.start, delimiter)) {
+                    continue;
+                }
+                if (patterns[i].isIgnore()
+                 && str.length() > 1
+                 && "+*".indexOf(str.charAt(str.length() - 1)) >= 0
+                 && str.charAt(str.length() - 2) != '\\') {
+
+                    str = str.substring(0, str.length() - 1);
+                    parser = new TokenRegExpParser(str, ignoreCase);
+                    if (TokenNFA.isSingleCharacter(parser.start, parser.end)) {
+                        continue;
+                    }
+                }
+            } catch (RegExpException e) {
+                // Unsupported regular expression, so assume unsafe
+            }
+            return patterns[i];
+        }
+        return null;
+    }
+
+    /**
+     * Sets the parallel split mode. In this mode, the input will be
+     * read in large blocks, each split directly after the delimiter
+     * character into chunks that are tokenized concurrently by copies
+     * of this tokenizer. The tokens and errors are returned in the
+     * normal order, with correct line and column numbers and token
+     * list links. Note that the tokenizer copies only contain the
+     * token patterns, so any subclass overrides (such as newToken())
+     * will not be used for the tokens created. Also, ignored tokens
+     * spanning a delimiter will be returned as several tokens in the
+     * token list.
+     *
+     * @param delimiter      the delimiter character
+     * @param pool           the fork-join pool to use, or null to
+     *                       disable the parallel split mode
+     *
+     * @throws ParserCreationException if the input cannot be split
+     *             safely with the delimiter
+     *
+     * @see #isSplitSafe
+     *
+     * @since 1.7
+     */
+    public void setParallelSplit(char delimiter, ForkJoinPool pool)
+        throws ParserCreationException {
+
+        TokenPattern  pattern;
+
+        if (pool == null) {
+            splitter = null;
+            return;
+        }
+        pattern = findSplitUnsafe(delimiter);
+        if (pattern != null) {
+            throw new ParserCreationException(
+                ParserCreationException.INVALID_TOKEN_ERROR,
+                pattern.getName(),
+                "token may contain the input split delimiter");
+        }
+        splitter = new TokenSplitter(this, delimiter, pool);
+        splitter.setMetrics(metrics);
+    }
+
+    /**
+     * Checks if the pipelined mode is used.
+     *
+     * @return true if the pipelined mode is used, or
+     *         false otherwise
+     *
+     * @see #setPipelined
+     *
+     * @since 1.7
+     */
+    public boolean isPipelined() {
+        return pipeline != null;
+    }
+
+    /**
+     * Sets the pipelined mode. In this mode, the tokenizer reads
+     * ahead of the parser on a separate thread, passing the tokens
+     * found through a bounded queue. The tokens and errors are
+     * returned in the normal order, so the parser error recovery is
+     * not affected. The read-ahead thread is started by the first
+     * call to next() and stopped by reset(), or when the parser has
+     * finished. Note that the current line and column numbers will
+     * not be reliable until end of file has been returned. The
+     * pipelined mode is ignored while a node arena is in use, as the
+     * arena isn't thread-safe. By default the pipelined mode is not
+     * used.
+     *
+     * @param pipelined      the new pipelined mode flag
+     *
+     * @since 1.7
+     */
+    public void setPipelined(boolean pipelined) {
+        if (pipeline != null) {
+            pipeline.reset();
+        }
+        pipeline = pipelined ? new TokenPipeline(this) : null;
+    }
+
+    /**
+     * Stops the pipelined read-ahead thread, if running. The tokens
+     * already read are kept, and the thread is restarted by the next
+     * call to next(). This method is called by the parser once the
+     * parsing has finished, so that no read-ahead thread is left
+     * running after a parse error.
+     *
+     * @since 1.7
+     */
+    void stopPipeline() {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    /**
+     * Returns the native regular expression look-ahead limit.
+     *
+     * @return the number of characters to buffer in a single step
+     *
+     * @see #setNativeLookAhead
+     *
+     * @since 1.7
+     */
+    public int getNativeLookAhead() {
+        return nativeLookAhead;
+    }
+
+    /**
+     * Sets the native regular expression look-ahead limit. Token
+     * patterns matched with java.util.regex normally buffer their
+     * maximum match length in a single step, but never more than
+     * this limit. If the pattern has no maximum match length, the
+     * current input block is matched first. If the match reaches
+     * the end of the buffered input, the input is buffered up to
+     * this limit and matched again, and only longer tokens than
+     * that are matched repeatedly with a doubling buffer size. By
+     * default 64 kB are buffered.
+     *
+     * @param chars          the number of characters to buffer
+     *
+     * @since 1.7
+     */
+    public void setNativeLookAhead(int chars) {
+        this.nativeLookAhead = Math.max(chars, ReaderBuffer.BLOCK_SIZE);
+    }
+
+    /**
+     * Returns all the token patterns in this tokenizer.
+     *
+     * @return an array with all the token patterns
+     */
+    TokenPattern[] getAllPatterns() {
+        TokenMatcher[]  matchers = { stringDfaMatcher,
+                                     nfaMatcher,
+                                     regExpMatcher };
+        TokenPattern[]  res;
+        int             pos = 0;
+
+        res = new TokenPattern[stringDfaMatcher.patterns.length +
+                               nfaMatcher.patterns.length +
+                               regExpMatcher.patterns.length];
+        for (int i = 0; i < matchers.length; i++) {
+            System.arraycopy(matchers[i].patterns,
+                             0,
+                             res,
+                             pos,
+                             matchers[i].patterns.length);
+            pos += matchers[i].patterns.length;
+        }
+        return res;
+    }
+
+    /**
+     * Returns the character stream reader buffer.
+     *
+     * @return the reader buffer in use
+     */
+    ReaderBuffer getBuffer() {
+        return buffer;
+    }
+
     /**
      * Returns a description of the token pattern with the specified
      * id.
@@ -158,6 +500,22 @@ public class Tokenizer {
      *         null if not present
      */
     public String getPatternDescription(int id) {
+        TokenPattern  pattern = getPattern(id);
+
+        return (pattern == null) ? null : pattern.toShortString();
+    }
+
+    /**
+     * Returns the token pattern with the specified id.
+     *
+     * @param id             the token pattern id
+     *
+     * @return the token pattern found, or
+     *         null if not present
+     *
+     * @since 1.7
+     */
+    TokenPattern getPattern(int id) {
         TokenPattern  pattern;
 
         pattern = stringDfaMatcher.getPattern(id);
@@ -167,7 +525,7 @@ public class Tokenizer {
         if (pattern == null) {
             pattern = regExpMatcher.getPattern(id);
         }
-        return (pattern == null) ? null : pattern.toShortString();
+        return pattern;
     }
 
     /**
@@ -253,10 +611,21 @@ public class Tokenizer {
      * @since 1.5
      */
     public void reset(Reader input) {
+        if (pipeline != null) {
+            pipeline.reset();
+        }
         this.buffer.dispose();
         this.buffer = new ReaderBuffer(input);
         this.previousToken = null;
         this.lastMatch.clear();
+        this.batchEvent = null;
+        this.batchTokens = 0;
+        this.batchCharacters = 0;
+        this.batchErrors = 0;
+        this.batchTime = 0;
+        if (splitter != null) {
+            splitter.reset();
+        }
     }
 
     /**
@@ -274,8 +643,85 @@ public class Tokenizer {
      *             parsed correctly
      */
     public Token next() throws ParseException {
+        ParserEvents  events = ParserEvents.INSTANCE;
+        Token         token;
+        long          start;
+
+        if (events == null) {
+            return nextUnrecorded();
+        }
+        if (batchTokens == 0 && batchErrors == 0) {
+            batchEvent = events.beginTokenize();
+        }
+        start = (batchEvent == null) ? 0 : System.nanoTime();
+        try {
+            token = nextUnrecorded();
+        } catch (ParseException e) {
+            batchErrors++;
+            throw e;
+        } finally {
+            if (batchEvent != null) {
+                batchTime += System.nanoTime() - start;
+            }
+        }
+        if (token != null) {
+            batchTokens++;
+            batchCharacters += token.getImage().length();
+        }
+        if (token == null || batchTokens >= ParserEvents.TOKEN_BATCH_SIZE) {
+            if (batchEvent != null) {
+                events.endTokenize(batchEvent,
+                                   this,
+                                   batchTokens,
+                                   batchCharacters,
+                                   batchErrors,
+                                   batchTime);
+            }
+            batchEvent = null;
+            batchTokens = 0;
+            batchCharacters = 0;
+            batchErrors = 0;
+            batchTime = 0;
+        }
+        return token;
+    }
+
+    /**
+     * Finds the next token on the stream, without recording any
+     * tokenizer event.
+     *
+     * @return the next token found, or
+     *         null if end of file was encountered
+     *
+     * @throws ParseException if the input stream couldn't be read or
+     *             parsed correctly
+     */
+    private Token nextUnrecorded() throws ParseException {
+        if (pipeline != null && arena == null) {
+            return pipeline.next();
+        }
+        return readNext();
+    }
+
+    /**
+     * Finds the next token on the stream in the current thread. This
+     * method will return null when end of file has been reached. It
+     * will return a parse exception if no token matched the input
+     * stream, or if a token pattern with the error flag set matched.
+     * Any ignored tokens will be skipped.
+     *
+     * @return the next token found, or
+     *         null if end of file was encountered
+     *
+     * @throws ParseException if the input stream couldn't be read or
+     *             parsed correctly
+     */
+    Token readNext() throws ParseException {
         Token  token = null;
 
+        if (splitter != null) {
+            return splitter.next();
+        }
         do {
             token = nextToken();
             if (token == null) {
@@ -310,20 +756,27 @@ public class Tokenizer {
      * @throws ParseException if the input stream couldn't be read or
      *             parsed correctly
      */
-    private Token nextToken() throws ParseException {
+    Token nextToken() throws ParseException {
         String  str;
         int     line;
         int     column;
 
         try {
             lastMatch.clear();
-            stringDfaMatcher.match(buffer, lastMatch);
-            nfaMatcher.match(buffer, lastMatch);
-            regExpMatcher.match(buffer, lastMatch);
+            if (metrics != null) {
+                matchMeasured();
+            } else {
+                stringDfaMatcher.match(buffer, lastMatch);
+                nfaMatcher.match(buffer, lastMatch);
+                regExpMatcher.match(buffer, lastMatch);
+            }
             if (lastMatch.length() > 0) {
                 line = buffer.lineNumber();
                 column = buffer.columnNumber();
                 str = buffer.read(lastMatch.length());
+                if (metrics != null) {
+                    metrics.tokenMatched(lastMatch.pattern(), str.length());
+                }
                 return newToken(lastMatch.pattern(), str, line, column);
             } else if (buffer.peek(0) < 0) {
                 return null;
@@ -343,10 +796,34 @@ public class Tokenizer {
         }
     }
 
+    /**
+     * Runs all the token matchers on the input buffer, reporting the
+     * time spent in each one to the metrics listener.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    private void matchMeasured() throws IOException {
+        long  time = System.nanoTime();
+        long  now;
+
+        stringDfaMatcher.match(buffer, lastMatch);
+        now = System.nanoTime();
+        metrics.matcherCompleted(ParserMetrics.STRING_MATCHER, now - time);
+        time = now;
+        nfaMatcher.match(buffer, lastMatch);
+        now = System.nanoTime();
+        metrics.matcherCompleted(ParserMetrics.NFA_MATCHER, now - time);
+        time = now;
+        regExpMatcher.match(buffer, lastMatch);
+        now = System.nanoTime();
+        metrics.matcherCompleted(ParserMetrics.REGEXP_MATCHER, now - time);
+    }
+
     /**
      * Factory method for creating a new token. This method can be
      * overridden to provide other token implementations than the
-     * default one.
+     * default one. If a node arena has been set, the token will be
+     * taken from the arena.
      *
      * @param pattern        the token pattern
      * @param image          the token image (i.e. characters)
@@ -362,7 +839,11 @@ public class Tokenizer {
                              int line,
                              int column) {
 
-        return new Token(pattern, image, line, column);
+        if (arena != null) {
+            return arena.newToken(pattern, image, line, column);
+        } else {
+            return new Token(pattern, image, line, column);
+        }
     }
 
     /**
@@ -578,14 +1059,20 @@ public class Tokenizer {
          * @throws Exception if the pattern couldn't be added to the matcher
          */
         public void addPattern(TokenPattern pattern) throws Exception {
-            RE[]  temp = regExps;
-            RE    re;
+            RE[]    temp = regExps;
+            JavaRE  re;
 
             re = new JavaRE(pattern.getPattern());
             regExps = new RE[temp.length + 1];
             System.arraycopy(temp, 0, regExps, 0, temp.length);
             regExps[temp.length] = re;
-            pattern.setDebugInfo("native Java regexp");
+            if (re.maxLength == NativeRegExpLength.UNBOUNDED) {
+                pattern.setDebugInfo("native Java regexp; " +
+                                     "unbounded look-ahead");
+            } else {
+                pattern.setDebugInfo("native Java regexp; " +
+                                     "max length " + re.maxLength);
+            }
             super.addPattern(pattern);
         }
 
@@ -696,6 +1183,17 @@ public class Tokenizer {
          */
         java.util.regex.Matcher  matcher = null;
 
+        /**
+         * The input buffer used by the matcher.
+         */
+        ReaderBuffer  input = null;
+
+        /**
+         * The maximum match length, or NativeRegExpLength.UNBOUNDED
+         * if the pattern has no maximum length.
+         */
+        int  maxLength;
+
         /**
          * Creates a new native regular expression handler.
          *
@@ -706,15 +1204,26 @@ public class Tokenizer {
          */
         public JavaRE(String regex) throws Exception {
             if (ignoreCase) {
-                pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+                pattern = Pattern.compile(regex,
+                                          Pattern.CASE_INSENSITIVE |
+                                          Pattern.UNICODE_CASE);
             } else {
                 pattern = Pattern.compile(regex);
             }
+            maxLength = NativeRegExpLength.estimate(regex);
         }
 
         /**
          * Checks if the start of the input stream matches this
-         * regular expression.
+         * regular expression. If the pattern has a maximum match
+         * length, up to that many characters are buffered, but never
+         * more than the native look-ahead limit at first. Otherwise
+         * a single input block is buffered. The match is repeated
+         * with a larger buffer while it reaches the end of the
+         * buffered input, first up to the native look-ahead limit
+         * and then doubling the size, until any maximum match length
+         * is reached. The matcher is only recreated when the input buffer
+         * changes, as setting the region resets it anyway.
          *
          * @param buffer         the input buffer to check
          *
@@ -724,24 +1233,32 @@ public class Tokenizer {
          * @throws IOException if an I/O error occurred
          */
         public int match(ReaderBuffer buffer) throws IOException {
-            int      minSize = ReaderBuffer.BLOCK_SIZE;
+            int      size = maxLength;
             boolean  match;
             int      c;
 
-            if (matcher == null) {
+            if (input != buffer) {
+                input = buffer;
                 matcher = pattern.matcher(buffer);
+                matcher.useTransparentBounds(true);
+            }
+            if (size == NativeRegExpLength.UNBOUNDED) {
+                size = ReaderBuffer.BLOCK_SIZE;
             } else {
-                matcher.reset(buffer);
+                size = Math.min(size, nativeLookAhead);
             }
-            matcher.useTransparentBounds(true);
-            do {
-                c = buffer.peek(minSize);
+            while (true) {
+                c = buffer.peek(size);
                 matcher.region(buffer.position(), buffer.length());
                 match = matcher.lookingAt();
-                if (matcher.hitEnd()) {
-                    minSize *= 2;
+                if (c < 0 || size == maxLength || !matcher.hitEnd()) {
+                    break;
+                }
+                size = Math.max(size * 2, nativeLookAhead);
+                if (maxLength >= 0) {
+                    size = Math.min(size, maxLength);
                 }
-            } while (c >= 0 && matcher.hitEnd());
+            }
             return match ? matcher.end() - matcher.start() : 0;
         }
     }
@@ -24,7 +24,7 @@ import net.percederberg.grammatica.parser.ReaderBuffer;
  * longest alternative element.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 class AlternativeElement extends Element {
 
@@ -49,6 +49,28 @@ class AlternativeElement extends Element {
         elem2 = second;
     }
 
+    /**
+     * Returns the first alternative element.
+     *
+     * @return the first alternative element
+     *
+     * @since 1.7
+     */
+    public Element getFirst() {
+        return elem1;
+    }
+
+    /**
+     * Returns the second alternative element.
+     *
+     * @return the second alternative element
+     *
+     * @since 1.7
+     */
+    public Element getSecond() {
+        return elem2;
+    }
+
     /**
      * Creates a copy of this element. The copy will be an instance
      * of the same class matching the same strings. Copies of elements
@@ -101,6 +123,26 @@ class AlternativeElement extends Element {
         return length;
     }
 
+    /**
+     * Compiles this element into instructions at the end of a
+     * program.
+     *
+     * @param program        the program to add instructions to
+     *
+     * @since 1.7
+     */
+    public void compile(Program program) {
+        int  split;
+        int  jump;
+
+        split = program.add(Program.SPLIT, 0, 0, null);
+        elem1.compile(program);
+        jump = program.add(Program.JUMP, 0, 0, null);
+        program.patch(split, split + 1, program.size());
+        elem2.compile(program);
+        program.patch(jump, program.size(), 0);
+    }
+
     /**
      * Prints this element to the specified output stream.
      *
@@ -24,10 +24,13 @@ import net.percederberg.grammatica.parser.ReaderBuffer;
  * single character inside (or outside) a character set. The character
  * set is user defined and may contain ranges of characters. The set
  * may also be inverted, meaning that only characters not inside the
- * set will be considered to match.
+ * set will be considered to match. Once complete, a character set
+ * can be compiled into a range table and an ASCII bitmap, which
+ * replaces the search through the stored characters, ranges and
+ * nested sets.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 class CharacterSetElement extends Element {
 
@@ -176,6 +179,19 @@ class CharacterSetElement extends Element {
      */
     private Object[] contents = new Object[0];
 
+    /**
+     * The compiled range table, or null if not compiled. The table
+     * contains sorted and merged pairs of minimum and maximum
+     * characters, with the inverted flag already applied.
+     */
+    private char[] table = null;
+
+    /**
+     * The compiled ASCII bitmap, or null if not compiled. Bit
+     * (c % 64) in element (c / 64) is set if character c matches.
+     */
+    private long[] ascii = null;
+
     /**
      * Creates a new character set element. If the inverted character
      * set flag is set, only characters NOT in the set will match.
@@ -310,6 +326,12 @@ class CharacterSetElement extends Element {
         Range                r;
         CharacterSetElement  e;
 
+        if (ascii != null) {
+            if (value < 128) {
+                return (ascii[value >> 6] & (1L << value)) != 0;
+            }
+            return RangeTable.contains(table, value);
+        }
         for (int i = 0; i < contents.length; i++) {
             obj = contents[i];
             if (obj instanceof Character) {
@@ -332,6 +354,128 @@ class CharacterSetElement extends Element {
         return inverted;
     }
 
+    /**
+     * Compiles this character set into a range table and an ASCII
+     * bitmap. This method must only be called once the character
+     * set is complete, as no characters should be added afterwards.
+     * The predefined character sets are never compiled, as they
+     * don't use the stored contents.
+     *
+     * @since 1.7
+     */
+    void compact() {
+        StringBuffer         pairs = new StringBuffer();
+        Object               obj;
+        Range                r;
+        CharacterSetElement  e;
+        char[]               res;
+        long[]               bits = new long[2];
+
+        if (ascii != null || getClass() != CharacterSetElement.class) {
+            return;
+        }
+        for (int i = 0; i < contents.length; i++) {
+            obj = contents[i];
+            if (obj instanceof Character) {
+                pairs.append(((Character) obj).charValue());
+                pairs.append(((Character) obj).charValue());
+            } else if (obj instanceof Range) {
+                r = (Range) obj;
+                pairs.append(r.min).append(r.max);
+            } else {
+                e = (CharacterSetElement) obj;
+                e.compact();
+                if (e.table != null) {
+                    pairs.append(e.table);
+                } else {
+                    appendRanges(e, pairs);
+                }
+            }
+        }
+        res = RangeTable.merge(pairs.toString().toCharArray());
+        if (inverted) {
+            res = RangeTable.complement(res);
+        }
+        for (char c = 0; c < 128; c++) {
+            if (RangeTable.contains(res, c)) {
+                bits[c >> 6] |= 1L << c;
+            }
+        }
+        table = res;
+        ascii = bits;
+    }
+
+    /**
+     * Returns the single character matched by this character set.
+     * The character set will be compiled if needed.
+     *
+     * @return the single character matched, or
+     *         -1 if the set matches no or several characters
+     *
+     * @since 1.7
+     */
+    int getSingleCharacter() {
+        compact();
+        if (table != null && table.length == 2 && table[0] == table[1]) {
+            return table[0];
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the compiled range table. The character set will be
+     * compiled if needed.
+     *
+     * @return the range table with all the characters matched, or
+     *         null for the predefined character sets
+     *
+     * @since 1.7
+     */
+    char[] getTable() {
+        compact();
+        return table;
+    }
+
+    /**
+     * Appends all the characters matched by a character set to a
+     * buffer of character ranges. This method checks every
+     * character, so it is only used for the predefined sets.
+     *
+     * @param elem           the character set
+     * @param pairs          the buffer of range pairs
+     */
+    private static void appendRanges(CharacterSetElement elem,
+                                     StringBuffer pairs) {
+
+        int  start = -1;
+
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            if (elem.inSet((char) i)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                pairs.append((char) start).append((char) (i - 1));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            pairs.append((char) start).append(Character.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Compiles this element into instructions at the end of a
+     * program.
+     *
+     * @param program        the program to add instructions to
+     *
+     * @since 1.7
+     */
+    public void compile(Program program) {
+        program.add(Program.SET, 0, 0, this);
+    }
+
     /**
      * Prints this element to the specified output stream.
      *
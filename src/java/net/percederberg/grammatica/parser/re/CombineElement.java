@@ -24,7 +24,7 @@ import net.percederberg.grammatica.parser.ReaderBuffer;
  * consecutive elements.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 class CombineElement extends Element {
 
@@ -49,6 +49,28 @@ class CombineElement extends Element {
         elem2 = second;
     }
 
+    /**
+     * Returns the first element.
+     *
+     * @return the first element
+     *
+     * @since 1.7
+     */
+    public Element getFirst() {
+        return elem1;
+    }
+
+    /**
+     * Returns the second element.
+     *
+     * @return the second element
+     *
+     * @since 1.7
+     */
+    public Element getSecond() {
+        return elem2;
+    }
+
     /**
      * Creates a copy of this element. The copy will be an instance
      * of the same class matching the same strings. Copies of elements
@@ -104,6 +126,19 @@ class CombineElement extends Element {
         return length1 + length2;
     }
 
+    /**
+     * Compiles this element into instructions at the end of a
+     * program.
+     *
+     * @param program        the program to add instructions to
+     *
+     * @since 1.7
+     */
+    public void compile(Program program) {
+        elem1.compile(program);
+        elem2.compile(program);
+    }
+
     /**
      * Prints this element to the specified output stream.
      *
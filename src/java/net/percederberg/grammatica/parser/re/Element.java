@@ -26,7 +26,7 @@ import net.percederberg.grammatica.parser.ReaderBuffer;
  * expression.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 abstract class Element implements Cloneable {
 
@@ -63,6 +63,17 @@ abstract class Element implements Cloneable {
                               int skip)
         throws IOException;
 
+    /**
+     * Compiles this element into instructions at the end of a
+     * program. The instructions must continue at the next
+     * instruction added after them.
+     *
+     * @param program        the program to add instructions to
+     *
+     * @since 1.7
+     */
+    public abstract void compile(Program program);
+
     /**
      * Prints this element to the specified output stream.
      *
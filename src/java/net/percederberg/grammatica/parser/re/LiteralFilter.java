@@ -0,0 +1,220 @@
+/*
+ * LiteralFilter.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser.re;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import net.percederberg.grammatica.parser.ReaderBuffer;
+
+/**
+ * A regular expression literal filter. This class holds a literal
+ * string that must be present in every match, as found in the
+ * regular expression elements. It is used to quickly skip input
+ * positions where no match can start, using the Boyer-Moore-Horspool
+ * search algorithm. Once created, the filter is immutable.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+class LiteralFilter {
+
+    /**
+     * The required literal string.
+     */
+    private String literal;
+
+    /**
+     * The literal offset from the match start, or -1 if the offset
+     * is variable. A zero (0) offset means that the literal is a
+     * prefix to every match.
+     */
+    private int offset;
+
+    /**
+     * The Horspool skip table. The table is indexed by the lower
+     * eight bits of each character, using the shortest skip for
+     * characters sharing the same index.
+     */
+    private int[] skip = new int[256];
+
+    /**
+     * Creates a new literal filter for a regular expression element.
+     * The element and all its concatenated elements are checked for
+     * string elements, choosing a literal with a fixed offset if
+     * possible, and otherwise the longest literal.
+     *
+     * @param elem           the regular expression element
+     *
+     * @return the literal filter, or
+     *         null if the element contains no required literal
+     */
+    public static LiteralFilter create(Element elem) {
+        ArrayList  list = new ArrayList();
+        String     best = null;
+        int        bestOffset = -1;
+        String     str;
+        int        offset = 0;
+
+        flatten(elem, list);
+        for (int i = 0; i < list.size(); i++) {
+            elem = (Element) list.get(i);
+            if (elem instanceof StringElement) {
+                str = ((StringElement) elem).getString();
+                if (best == null
+                 || (bestOffset < 0 && offset >= 0)
+                 || ((bestOffset < 0) == (offset < 0)
+                  && best.length() < str.length())) {
+
+                    best = str;
+                    bestOffset = offset;
+                }
+                if (offset >= 0) {
+                    offset += str.length();
+                }
+            } else if (elem instanceof CharacterSetElement) {
+                if (offset >= 0) {
+                    offset++;
+                }
+            } else {
+                offset = -1;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        return new LiteralFilter(best, bestOffset);
+    }
+
+    /**
+     * Adds all the concatenated elements to a list.
+     *
+     * @param elem           the regular expression element
+     * @param list           the list of elements
+     */
+    private static void flatten(Element elem, ArrayList list) {
+        CombineElement  combine;
+
+        if (elem instanceof CombineElement) {
+            combine = (CombineElement) elem;
+            flatten(combine.getFirst(), list);
+            flatten(combine.getSecond(), list);
+        } else {
+            list.add(elem);
+        }
+    }
+
+    /**
+     * Creates a new literal filter.
+     *
+     * @param literal        the required literal string
+     * @param offset         the literal offset, or -1 if variable
+     */
+    private LiteralFilter(String literal, int offset) {
+        int  last = literal.length() - 1;
+
+        this.literal = literal;
+        this.offset = offset;
+        for (int i = 0; i < skip.length; i++) {
+            skip[i] = literal.length();
+        }
+        for (int i = 0; i < last; i++) {
+            skip[literal.charAt(i) & 0xFF] = last - i;
+        }
+    }
+
+    /**
+     * Returns the required literal string.
+     *
+     * @return the required literal string
+     */
+    public String getLiteral() {
+        return literal;
+    }
+
+    /**
+     * Returns the literal offset from the match start.
+     *
+     * @return the literal offset, or
+     *         -1 if the offset is variable
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Searches for the next literal occurrence. The search uses the
+     * Boyer-Moore-Horspool algorithm, comparing the last literal
+     * character first and skipping ahead based on the input
+     * character found there.
+     *
+     * @param buffer         the input character buffer to search
+     * @param pos            the search start position
+     * @param ignoreCase     the character case ignore flag
+     *
+     * @return the position of the next literal occurrence, or
+     *         -1 if no more occurrences were found
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    public int search(ReaderBuffer buffer, int pos, boolean ignoreCase)
+        throws IOException {
+
+        int  last = literal.length() - 1;
+        int  c;
+        int  i;
+
+        while (true) {
+            c = buffer.peek(pos + last);
+            if (c < 0) {
+                return -1;
+            } else if (ignoreCase) {
+                c = Character.toLowerCase((char) c);
+            }
+            if (c == literal.charAt(last)) {
+                for (i = last - 1; i >= 0; i--) {
+                    c = buffer.peek(pos + i);
+                    if (ignoreCase) {
+                        c = Character.toLowerCase((char) c);
+                    }
+                    if (c != literal.charAt(i)) {
+                        break;
+                    }
+                }
+                if (i < 0) {
+                    return pos;
+                }
+                c = literal.charAt(last);
+            }
+            pos += skip[c & 0xFF];
+        }
+    }
+
+    /**
+     * Returns a string representation of this filter.
+     *
+     * @return a string representation of this filter
+     */
+    public String toString() {
+        if (offset == 0) {
+            return "prefix '" + literal + "'";
+        } else if (offset > 0) {
+            return "literal '" + literal + "' at offset " + offset;
+        } else {
+            return "literal '" + literal + "'";
+        }
+    }
+}
@@ -27,7 +27,7 @@ import net.percederberg.grammatica.parser.ReaderBuffer;
  * that were set. This class is not thread-safe.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 public class Matcher {
 
@@ -36,6 +36,17 @@ public class Matcher {
      */
     private Element element;
 
+    /**
+     * The program executor, or null if the backtracking engine is
+     * used.
+     */
+    private PikeVM vm = null;
+
+    /**
+     * The literal filter, or null if not available.
+     */
+    private LiteralFilter filter = null;
+
     /**
      * The input character buffer to work with.
      */
@@ -62,6 +73,11 @@ public class Matcher {
      */
     private boolean endOfString;
 
+    /**
+     * The position to start the next find operation from.
+     */
+    private int findPos = 0;
+
     /**
      * Creates a new matcher with the specified element.
      *
@@ -77,6 +93,21 @@ public class Matcher {
         reset();
     }
 
+    /**
+     * Creates a new matcher with the specified program executor.
+     *
+     * @param vm             the program executor
+     * @param buffer         the input character buffer to work with
+     * @param ignoreCase     the character case ignore flag
+     */
+    Matcher(PikeVM vm, ReaderBuffer buffer, boolean ignoreCase) {
+        this.vm = vm;
+        this.buffer = buffer;
+        this.ignoreCase = ignoreCase;
+        this.start = 0;
+        reset();
+    }
+
     /**
      * Checks if this matcher compares in case-insensitive mode.
      *
@@ -122,9 +153,19 @@ public class Matcher {
      */
     public void reset(ReaderBuffer buffer) {
         this.buffer = buffer;
+        this.findPos = 0;
         reset();
     }
 
+    /**
+     * Sets the literal filter used for finding matches.
+     *
+     * @param filter         the literal filter, or null for none
+     */
+    void setFilter(LiteralFilter filter) {
+        this.filter = filter;
+    }
+
     /**
      * Returns the start position of the latest match. If no match has
      * been encountered, this method returns zero (0).
@@ -210,10 +251,94 @@ public class Matcher {
     public boolean matchFrom(int pos) throws IOException {
         reset();
         start = pos;
-        length = element.match(this, buffer, start, 0);
+        if (vm != null) {
+            length = vm.match(this, buffer, start);
+        } else {
+            length = element.match(this, buffer, start, 0);
+        }
         return length >= 0;
     }
 
+    /**
+     * Attempts to find the next match in the string. The search
+     * starts at the end of the previous match found by this method,
+     * or at the beginning of the string. Repeated calls will thus
+     * find all the non-overlapping matches.
+     *
+     * @return true if a match was found, or
+     *         false otherwise
+     *
+     * @throws IOException if an I/O error occurred while reading an
+     *             input stream
+     *
+     * @since 1.7
+     */
+    public boolean find() throws IOException {
+        boolean  found = find(findPos);
+
+        if (found) {
+            findPos = (length > 0) ? start + length : start + 1;
+        }
+        return found;
+    }
+
+    /**
+     * Attempts to find the first match starting at or after the
+     * specified position in the string. If the regular expression
+     * contains a required literal string, only the positions where
+     * a match may start are checked. The literal is searched for
+     * with a skip loop, which avoids checking most positions.
+     *
+     * @param pos            the starting position of the search
+     *
+     * @return true if a match was found, or
+     *         false otherwise
+     *
+     * @throws IOException if an I/O error occurred while reading an
+     *             input stream
+     *
+     * @since 1.7
+     */
+    public boolean find(int pos) throws IOException {
+        int  offset;
+        int  next;
+
+        if (pos > 0 && buffer.peek(pos - 1) < 0) {
+            reset();
+            return false;
+        } else if (filter == null) {
+            while (!matchFrom(pos)) {
+                if (buffer.peek(pos) < 0) {
+                    return false;
+                }
+                pos++;
+            }
+            return true;
+        }
+        offset = filter.getOffset();
+        while (true) {
+            next = filter.search(buffer,
+                                 pos + Math.max(offset, 0),
+                                 ignoreCase);
+            if (next < 0) {
+                reset();
+                return false;
+            } else if (offset >= 0) {
+                pos = next - offset;
+                if (matchFrom(pos)) {
+                    return true;
+                }
+                pos++;
+            } else {
+                for (; pos <= next; pos++) {
+                    if (matchFrom(pos)) {
+                        return true;
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Returns the latest matched string. If no string has been
      * matched, an empty string will be returned.
@@ -224,7 +349,7 @@ public class Matcher {
         if (length <= 0) {
             return "";
         } else {
-            int pos = buffer.position();
+            int pos = buffer.position() + start;
             return buffer.subSequence(pos, pos + length).toString();
         }
     }
@@ -0,0 +1,461 @@
+/*
+ * Optimizer.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser.re;
+
+import java.util.ArrayList;
+
+/**
+ * A regular expression element optimizer. The optimizer rewrites
+ * the element tree created by the parser into an equivalent tree
+ * that is faster to match. The following optimizations are made:
+ *
+ * <ul>
+ *   <li>Character sets are compiled into range tables, and sets
+ *       matching a single character are replaced by strings.
+ *   <li>Nested concatenations are flattened and adjacent strings
+ *       are merged, also across group boundaries.
+ *   <li>Common string prefixes in consecutive alternatives are
+ *       hoisted out of the alternatives, so that "int|if" is
+ *       matched as "i(nt|f)".
+ *   <li>Greedy repeats of a single character are made possessive
+ *       if the next element cannot start with a repeated character,
+ *       as backtracking into the repeat can never succeed. This is
+ *       only done for the backtracking engine, since the Pike VM
+ *       never backtracks and matches possessive repeats separately.
+ * </ul>
+ *
+ * The order of the alternatives is never changed, so the match
+ * priority of the alternatives is preserved.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+class Optimizer {
+
+    /**
+     * The possessive repeat conversion flag.
+     */
+    private boolean possessive;
+
+    /**
+     * Creates a new regular expression optimizer.
+     *
+     * @param possessive     the possessive repeat conversion flag
+     */
+    public Optimizer(boolean possessive) {
+        this.possessive = possessive;
+    }
+
+    /**
+     * Optimizes a regular expression element.
+     *
+     * @param elem           the element to optimize
+     *
+     * @return the optimized element
+     */
+    public Element optimize(Element elem) {
+        CharacterSetElement  set;
+        RepeatElement        repeat;
+        int                  c;
+
+        if (elem instanceof CombineElement) {
+            return combine(optimizeSequence(elem));
+        } else if (elem instanceof AlternativeElement) {
+            return optimizeAlternatives(elem);
+        } else if (elem instanceof RepeatElement) {
+            repeat = (RepeatElement) elem;
+            return new RepeatElement(optimize(repeat.getElement()),
+                                     repeat.getMin(),
+                                     repeat.getMax(),
+                                     repeat.getType());
+        } else if (elem instanceof CharacterSetElement) {
+            set = (CharacterSetElement) elem;
+            c = set.getSingleCharacter();
+            return (c < 0) ? set : new StringElement((char) c);
+        } else {
+            return elem;
+        }
+    }
+
+    /**
+     * Optimizes a sequence of concatenated elements. The elements
+     * are optimized and flattened into a list, and any adjacent
+     * strings are merged.
+     *
+     * @param elem           the element to optimize
+     *
+     * @return the list of optimized elements
+     */
+    private ArrayList optimizeSequence(Element elem) {
+        ArrayList  list = new ArrayList();
+        ArrayList  res = new ArrayList();
+        Element    prev = null;
+        String     str;
+
+        flatten(elem, list);
+        for (int i = 0; i < list.size(); i++) {
+            flatten(optimize((Element) list.get(i)), res);
+        }
+        list.clear();
+        for (int i = 0; i < res.size(); i++) {
+            elem = (Element) res.get(i);
+            if (elem instanceof StringElement
+             && ((StringElement) elem).getString().length() == 0) {
+                continue;
+            } else if (prev instanceof StringElement
+                    && elem instanceof StringElement) {
+
+                str = ((StringElement) prev).getString() +
+                      ((StringElement) elem).getString();
+                elem = new StringElement(str);
+                list.set(list.size() - 1, elem);
+            } else {
+                list.add(elem);
+            }
+            prev = elem;
+        }
+        if (possessive) {
+            for (int i = 0; i + 1 < list.size(); i++) {
+                elem = makePossessive((Element) list.get(i),
+                                      (Element) list.get(i + 1));
+                list.set(i, elem);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Optimizes a list of alternative elements. The alternatives
+     * are optimized and consecutive alternatives starting with the
+     * same character have their common prefix hoisted.
+     *
+     * @param elem           the element to optimize
+     *
+     * @return the optimized element
+     */
+    private Element optimizeAlternatives(Element elem) {
+        ArrayList  list = new ArrayList();
+        ArrayList  res = new ArrayList();
+
+        flattenAlternatives(elem, list);
+        for (int i = 0; i < list.size(); i++) {
+            elem = optimize((Element) list.get(i));
+            list.set(i, toSequence(elem));
+        }
+        hoistPrefixes(list, res);
+        return alternate(res);
+    }
+
+    /**
+     * Hoists common string prefixes out of consecutive alternatives.
+     * Each alternative is represented by a list of concatenated
+     * elements.
+     *
+     * @param list           the list of alternative sequences
+     * @param res            the list of resulting alternatives
+     */
+    private void hoistPrefixes(ArrayList list, ArrayList res) {
+        ArrayList  rest;
+        ArrayList  seq;
+        String     prefix;
+        String     str;
+        int        end;
+
+        for (int start = 0; start < list.size(); start = end) {
+            prefix = getPrefix((ArrayList) list.get(start));
+            end = start + 1;
+            while (prefix.length() > 0 && end < list.size()) {
+                str = getPrefix((ArrayList) list.get(end));
+                if (str.length() == 0 || str.charAt(0) != prefix.charAt(0)) {
+                    break;
+                }
+                while (!str.startsWith(prefix)) {
+                    prefix = prefix.substring(0, prefix.length() - 1);
+                }
+                end++;
+            }
+            if (end - start < 2) {
+                res.add(combine((ArrayList) list.get(start)));
+                continue;
+            }
+            rest = new ArrayList();
+            for (int i = start; i < end; i++) {
+                seq = new ArrayList((ArrayList) list.get(i));
+                str = getPrefix(seq).substring(prefix.length());
+                seq.remove(0);
+                if (str.length() > 0) {
+                    seq.add(0, new StringElement(str));
+                }
+                rest.add(seq);
+            }
+            seq = new ArrayList();
+            seq.add(new StringElement(prefix));
+            hoistPrefixes(rest, seq);
+            if (seq.size() > 2) {
+                rest = new ArrayList(seq.subList(1, seq.size()));
+                seq.subList(1, seq.size()).clear();
+                seq.add(alternate(rest));
+            }
+            res.add(combine(seq));
+        }
+    }
+
+    /**
+     * Converts a greedy single character repeat to a possessive
+     * repeat, if the next element cannot start with the repeated
+     * character.
+     *
+     * @param elem           the element to convert
+     * @param next           the next element in the sequence
+     *
+     * @return the converted element, or
+     *         the original element if no conversion was possible
+     */
+    private Element makePossessive(Element elem, Element next) {
+        RepeatElement  repeat;
+        Element        first = next;
+
+        if (!(elem instanceof RepeatElement)) {
+            return elem;
+        }
+        repeat = (RepeatElement) elem;
+        if (repeat.getType() != RepeatElement.GREEDY
+         || !isSingleCharacter(repeat.getElement())) {
+
+            return elem;
+        }
+        if (first instanceof RepeatElement
+         && ((RepeatElement) first).getMin() > 0) {
+
+            first = ((RepeatElement) first).getElement();
+        }
+        if (first instanceof StringElement
+         && ((StringElement) first).getString().length() > 0) {
+
+            first = new StringElement(
+                ((StringElement) first).getString().charAt(0));
+        }
+        if (!isSingleCharacter(first)
+         || overlaps(repeat.getElement(), first)) {
+
+            return elem;
+        }
+        return new RepeatElement(repeat.getElement(),
+                                 repeat.getMin(),
+                                 repeat.getMax(),
+                                 RepeatElement.POSSESSIVE);
+    }
+
+    /**
+     * Checks if an element always matches a single character.
+     *
+     * @param elem           the element to check
+     *
+     * @return true if the element matches a single character, or
+     *         false otherwise
+     */
+    private boolean isSingleCharacter(Element elem) {
+        if (elem instanceof StringElement) {
+            return ((StringElement) elem).getString().length() == 1;
+        } else {
+            return elem instanceof CharacterSetElement;
+        }
+    }
+
+    /**
+     * Checks if two single character elements may match the same
+     * character.
+     *
+     * @param first          the first single character element
+     * @param second         the second single character element
+     *
+     * @return true if some character is matched by both, or
+     *         false otherwise
+     */
+    private boolean overlaps(Element first, Element second) {
+        char[]  table1;
+        char[]  table2;
+        char    c;
+
+        if (first instanceof StringElement) {
+            c = ((StringElement) first).getString().charAt(0);
+            return matches(second, c);
+        } else if (second instanceof StringElement) {
+            c = ((StringElement) second).getString().charAt(0);
+            return matches(first, c);
+        }
+        table1 = ((CharacterSetElement) first).getTable();
+        table2 = ((CharacterSetElement) second).getTable();
+        if (table1 != null && table2 != null) {
+            return overlaps(table1, table2);
+        }
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            if (matches(first, (char) i) && matches(second, (char) i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if two range tables have any character in common.
+     *
+     * @param table1         the first range table
+     * @param table2         the second range table
+     *
+     * @return true if some character is in both tables, or
+     *         false otherwise
+     */
+    private boolean overlaps(char[] table1, char[] table2) {
+        int  i = 0;
+        int  j = 0;
+
+        while (i < table1.length && j < table2.length) {
+            if (table1[i + 1] < table2[j]) {
+                i += 2;
+            } else if (table2[j + 1] < table1[i]) {
+                j += 2;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a single character element matches a character.
+     *
+     * @param elem           the single character element
+     * @param c              the character to check
+     *
+     * @return true if the character matches, or
+     *         false otherwise
+     */
+    private boolean matches(Element elem, char c) {
+        if (elem instanceof StringElement) {
+            return ((StringElement) elem).getString().charAt(0) == c;
+        } else {
+            return ((CharacterSetElement) elem).inSet(c);
+        }
+    }
+
+    /**
+     * Returns the string prefix of a sequence of elements.
+     *
+     * @param seq            the list of concatenated elements
+     *
+     * @return the initial string, or
+     *         an empty string if the sequence doesn't start with one
+     */
+    private String getPrefix(ArrayList seq) {
+        if (seq.size() > 0 && seq.get(0) instanceof StringElement) {
+            return ((StringElement) seq.get(0)).getString();
+        }
+        return "";
+    }
+
+    /**
+     * Converts an element to a list of concatenated elements.
+     *
+     * @param elem           the element to convert
+     *
+     * @return the list of concatenated elements
+     */
+    private ArrayList toSequence(Element elem) {
+        ArrayList  list = new ArrayList();
+
+        flatten(elem, list);
+        if (list.size() == 1 && list.get(0) instanceof StringElement
+         && ((StringElement) list.get(0)).getString().length() == 0) {
+
+            list.clear();
+        }
+        return list;
+    }
+
+    /**
+     * Adds all the concatenated elements to a list.
+     *
+     * @param elem           the element to add
+     * @param list           the list of elements
+     */
+    private void flatten(Element elem, ArrayList list) {
+        CombineElement  combine;
+
+        if (elem instanceof CombineElement) {
+            combine = (CombineElement) elem;
+            flatten(combine.getFirst(), list);
+            flatten(combine.getSecond(), list);
+        } else {
+            list.add(elem);
+        }
+    }
+
+    /**
+     * Adds all the alternative elements to a list.
+     *
+     * @param elem           the element to add
+     * @param list           the list of alternatives
+     */
+    private void flattenAlternatives(Element elem, ArrayList list) {
+        AlternativeElement  alt;
+
+        if (elem instanceof AlternativeElement) {
+            alt = (AlternativeElement) elem;
+            flattenAlternatives(alt.getFirst(), list);
+            flattenAlternatives(alt.getSecond(), list);
+        } else {
+            list.add(elem);
+        }
+    }
+
+    /**
+     * Creates a concatenation element from a list of elements.
+     *
+     * @param list           the list of elements
+     *
+     * @return the concatenation element
+     */
+    private Element combine(ArrayList list) {
+        Element  elem;
+
+        if (list.size() == 0) {
+            return new StringElement("");
+        }
+        elem = (Element) list.get(list.size() - 1);
+        for (int i = list.size() - 2; i >= 0; i--) {
+            elem = new CombineElement((Element) list.get(i), elem);
+        }
+        return elem;
+    }
+
+    /**
+     * Creates an alternative element from a list of elements.
+     *
+     * @param list           the list of alternatives
+     *
+     * @return the alternative element
+     */
+    private Element alternate(ArrayList list) {
+        Element  elem;
+
+        elem = (Element) list.get(list.size() - 1);
+        for (int i = list.size() - 2; i >= 0; i--) {
+            elem = new AlternativeElement((Element) list.get(i), elem);
+        }
+        return elem;
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * PikeVM.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser.re;
+
+import java.io.IOException;
+
+import net.percederberg.grammatica.parser.ReaderBuffer;
+
+/**
+ * A regular expression program executor. This class runs a compiled
+ * program as a Pike VM, advancing all the match threads in parallel
+ * one input character at a time. Each instruction is run at most
+ * once per input position, so the matching time is linear in the
+ * input length, regardless of the pattern. Unbounded possessive
+ * repeats are memoized per input position, so that each repetition
+ * is only matched once per call. This class is not thread-safe.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+class PikeVM {
+
+    /**
+     * The program to run.
+     */
+    private Program program;
+
+    /**
+     * The current thread list. Contains the instruction addresses in
+     * priority order.
+     */
+    private int[] current;
+
+    /**
+     * The number of threads in the current thread list.
+     */
+    private int currentSize = 0;
+
+    /**
+     * The next thread list. Contains the instruction addresses in
+     * priority order.
+     */
+    private int[] next;
+
+    /**
+     * The number of threads in the next thread list.
+     */
+    private int nextSize = 0;
+
+    /**
+     * The instruction marks. An instruction has already been added
+     * to the next thread list if its mark is equal to the current
+     * generation.
+     */
+    private int[] marks;
+
+    /**
+     * The current mark generation.
+     */
+    private int generation = 0;
+
+    /**
+     * The stack used when following jumps and splits.
+     */
+    private int[] stack;
+
+    /**
+     * The delayed thread instruction addresses. These threads are
+     * waiting for a possessive repeat match to end.
+     */
+    private int[] delayedPc = new int[4];
+
+    /**
+     * The delayed thread input positions.
+     */
+    private int[] delayedPos = new int[4];
+
+    /**
+     * The number of delayed threads.
+     */
+    private int delayedSize = 0;
+
+    /**
+     * The program executors for the possessive repeat instructions.
+     * The array is indexed by instruction address, and the entries
+     * are created when first needed.
+     */
+    private PikeVM[] nested;
+
+    /**
+     * The memoized possessive repeat end positions. The array is
+     * indexed by instruction address and input position offset, and
+     * the entries are created when first needed.
+     */
+    private int[][] memoEnd;
+
+    /**
+     * The memoized possessive repeat counts. The array is indexed by
+     * instruction address and input position offset.
+     */
+    private int[][] memoCount;
+
+    /**
+     * The memoized possessive repeat match calls. An entry is only
+     * valid if it is equal to the current match call number.
+     */
+    private int[][] memoCall;
+
+    /**
+     * The current match call number.
+     */
+    private int call = 0;
+
+    /**
+     * The starting position of the current match call.
+     */
+    private int base = 0;
+
+    /**
+     * The possessive repeat positions not yet memoized.
+     */
+    private int[] path = new int[16];
+
+    /**
+     * Creates a new program executor.
+     *
+     * @param program        the program to run
+     */
+    public PikeVM(Program program) {
+        this.program = program;
+        this.current = new int[program.size()];
+        this.next = new int[program.size()];
+        this.marks = new int[program.size()];
+        this.stack = new int[program.size() * 2 + 1];
+        this.nested = new PikeVM[program.size()];
+        this.memoEnd = new int[program.size()][];
+        this.memoCount = new int[program.size()][];
+        this.memoCall = new int[program.size()][];
+    }
+
+    /**
+     * Returns the length of a matching string starting at the
+     * specified position. If the program contains no reluctant
+     * repeats, the longest match is returned. Otherwise the match
+     * from the highest priority thread is returned, as greedy
+     * repeats prefer more and reluctant repeats fewer repetitions.
+     *
+     * @param m              the matcher being used
+     * @param buffer         the input character buffer to match
+     * @param start          the starting position
+     *
+     * @return the length of the matching string, or
+     *         -1 if no match was found
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    public int match(Matcher m, ReaderBuffer buffer, int start)
+        throws IOException {
+
+        boolean  reluctant = program.isReluctant();
+        int      result = -1;
+        int      pos = start;
+        int      c;
+        int      pc;
+        int[]    temp;
+
+        delayedSize = 0;
+        nextSize = 0;
+        generation++;
+        call++;
+        base = start;
+        addThread(m, buffer, 0, pos);
+        while (nextSize > 0 || delayedSize > 0) {
+            temp = current;
+            current = next;
+            currentSize = nextSize;
+            next = temp;
+            nextSize = 0;
+            generation++;
+            c = -2;
+            for (int i = 0; i < currentSize; i++) {
+                pc = current[i];
+                switch (program.getOp(pc)) {
+                case Program.MATCH:
+                    result = pos - start;
+                    if (reluctant) {
+                        currentSize = i;
+                    }
+                    break;
+                case Program.CHAR:
+                case Program.SET:
+                    if (c == -2) {
+                        c = buffer.peek(pos);
+                        if (c >= 0 && m.isCaseInsensitive()) {
+                            c = Character.toLowerCase((char) c);
+                        }
+                    }
+                    if (c < 0) {
+                        m.setReadEndOfString();
+                    } else if (isMatch(pc, (char) c)) {
+                        addThread(m, buffer, pc + 1, pos + 1);
+                    }
+                    break;
+                }
+            }
+            pos++;
+            addDelayed(m, buffer, pos);
+        }
+        return result;
+    }
+
+    /**
+     * Checks if an instruction matches an input character.
+     *
+     * @param pc             the instruction address
+     * @param c              the input character
+     *
+     * @return true if the character matches, or
+     *         false otherwise
+     */
+    private boolean isMatch(int pc, char c) {
+        if (program.getOp(pc) == Program.CHAR) {
+            return program.getFirst(pc) == c;
+        } else {
+            return ((CharacterSetElement) program.getData(pc)).inSet(c);
+        }
+    }
+
+    /**
+     * Adds a thread to the next thread list. All jumps and splits
+     * are followed, so that only character, match and delayed
+     * threads are added. Any instruction already added for the
+     * position is skipped.
+     *
+     * @param m              the matcher being used
+     * @param buffer         the input character buffer to match
+     * @param pc             the instruction address
+     * @param pos            the input position
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    private void addThread(Matcher m, ReaderBuffer buffer, int pc, int pos)
+        throws IOException {
+
+        int  top = 0;
+        int  length;
+
+        stack[top++] = pc;
+        while (top > 0) {
+            pc = stack[--top];
+            if (marks[pc] == generation) {
+                continue;
+            }
+            marks[pc] = generation;
+            switch (program.getOp(pc)) {
+            case Program.JUMP:
+                stack[top++] = program.getFirst(pc);
+                break;
+            case Program.SPLIT:
+                stack[top++] = program.getSecond(pc);
+                stack[top++] = program.getFirst(pc);
+                break;
+            case Program.POSSESSIVE:
+                length = matchPossessive(m, buffer, pc, pos);
+                if (length == 0) {
+                    stack[top++] = pc + 1;
+                } else if (length > 0) {
+                    addDelay(pc + 1, pos + length);
+                }
+                break;
+            default:
+                next[nextSize++] = pc;
+            }
+        }
+    }
+
+    /**
+     * Returns the length of a possessive repeat match. The repeated
+     * program is matched as many times as possible, without any
+     * backtracking. For unbounded repeats the end position and the
+     * repeat count is memoized for each position passed, so that
+     * overlapping repeat matches are only run once.
+     *
+     * @param m              the matcher being used
+     * @param buffer         the input character buffer to match
+     * @param pc             the possessive instruction address
+     * @param pos            the input position
+     *
+     * @return the length of the repeated match, or
+     *         -1 if no match was found
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    private int matchPossessive(Matcher m,
+                                ReaderBuffer buffer,
+                                int pc,
+                                int pos)
+        throws IOException {
+
+        int  min = program.getFirst(pc);
+        int  max = program.getSecond(pc);
+        int  count = 0;
+        int  length = 0;
+        int  subLength = 1;
+        int  steps = 0;
+        int  end;
+
+        if (nested[pc] == null) {
+            nested[pc] = new PikeVM((Program) program.getData(pc));
+        }
+        if (max == Integer.MAX_VALUE) {
+            end = pos;
+            while (!isMemoized(pc, end)) {
+                subLength = nested[pc].match(m, buffer, end);
+                if (subLength <= 0) {
+                    memoize(pc, end, end, (subLength == 0) ? 1 : 0);
+                    break;
+                }
+                if (steps >= path.length) {
+                    path = grow(path, steps + 1);
+                }
+                path[steps++] = end;
+                end += subLength;
+            }
+            count = memoCount[pc][end - base];
+            end = memoEnd[pc][end - base];
+            while (steps > 0) {
+                count++;
+                memoize(pc, path[--steps], end, count);
+            }
+            return (count >= min) ? end - pos : -1;
+        }
+        while (subLength > 0 && count < max) {
+            subLength = nested[pc].match(m, buffer, pos + length);
+            if (subLength >= 0) {
+                count++;
+                length += subLength;
+            }
+        }
+        return (count >= min) ? length : -1;
+    }
+
+    /**
+     * Checks if a possessive repeat result has been memoized for an
+     * input position in the current match call.
+     *
+     * @param pc             the possessive instruction address
+     * @param pos            the input position
+     *
+     * @return true if the result has been memoized, or
+     *         false otherwise
+     */
+    private boolean isMemoized(int pc, int pos) {
+        int[]  calls = memoCall[pc];
+
+        return calls != null
+            && pos - base < calls.length
+            && calls[pos - base] == call;
+    }
+
+    /**
+     * Memoizes a possessive repeat result for an input position in
+     * the current match call.
+     *
+     * @param pc             the possessive instruction address
+     * @param pos            the input position
+     * @param end            the repeat match end position
+     * @param count          the repeat count
+     */
+    private void memoize(int pc, int pos, int end, int count) {
+        int  offset = pos - base;
+
+        if (memoCall[pc] == null || offset >= memoCall[pc].length) {
+            memoEnd[pc] = grow(memoEnd[pc], offset + 1);
+            memoCount[pc] = grow(memoCount[pc], offset + 1);
+            memoCall[pc] = grow(memoCall[pc], offset + 1);
+        }
+        memoEnd[pc][offset] = end;
+        memoCount[pc][offset] = count;
+        memoCall[pc][offset] = call;
+    }
+
+    /**
+     * Returns an array with room for at least the specified number
+     * of elements. The existing array contents are copied to the new
+     * array.
+     *
+     * @param array          the array to grow, or null
+     * @param size           the minimum array size
+     *
+     * @return the new array
+     */
+    private static int[] grow(int[] array, int size) {
+        int    length = (array == null) ? 0 : array.length;
+        int[]  res = new int[Math.max(size, Math.max(16, length * 2))];
+
+        if (array != null) {
+            System.arraycopy(array, 0, res, 0, length);
+        }
+        return res;
+    }
+
+    /**
+     * Adds a delayed thread. The thread will be added to the thread
+     * list once the specified input position is reached. A thread
+     * already delayed to the same position is not added again.
+     *
+     * @param pc             the instruction address
+     * @param pos            the input position
+     */
+    private void addDelay(int pc, int pos) {
+        for (int i = 0; i < delayedSize; i++) {
+            if (delayedPc[i] == pc && delayedPos[i] == pos) {
+                return;
+            }
+        }
+        if (delayedSize >= delayedPc.length) {
+            delayedPc = grow(delayedPc, delayedSize + 1);
+            delayedPos = grow(delayedPos, delayedSize + 1);
+        }
+        delayedPc[delayedSize] = pc;
+        delayedPos[delayedSize] = pos;
+        delayedSize++;
+    }
+
+    /**
+     * Adds all the delayed threads for an input position to the next
+     * thread list. The delayed threads have the lowest priority.
+     *
+     * @param m              the matcher being used
+     * @param buffer         the input character buffer to match
+     * @param pos            the input position
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    private void addDelayed(Matcher m, ReaderBuffer buffer, int pos)
+        throws IOException {
+
+        int  pc;
+        int  i = 0;
+
+        while (i < delayedSize) {
+            if (delayedPos[i] == pos) {
+                pc = delayedPc[i];
+                delayedSize--;
+                System.arraycopy(delayedPc, i + 1, delayedPc, i,
+                                 delayedSize - i);
+                System.arraycopy(delayedPos, i + 1, delayedPos, i,
+                                 delayedSize - i);
+                addThread(m, buffer, pc, pos);
+            } else {
+                i++;
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Program.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser.re;
+
+import java.util.ArrayList;
+
+/**
+ * A compiled regular expression program. The program is a list of
+ * instructions for a Pike VM, i.e. a non-backtracking automaton that
+ * runs all possible matches in parallel. Each instruction has an
+ * operation code, two integer arguments and an optional data object.
+ * The program is created by compiling the regular expression
+ * elements, and is immutable once completed.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+class Program {
+
+    /**
+     * The character instruction. Matches a single character, given
+     * by the first argument.
+     */
+    public static final int CHAR = 1;
+
+    /**
+     * The character set instruction. Matches a single character in
+     * the character set element given as data.
+     */
+    public static final int SET = 2;
+
+    /**
+     * The split instruction. Continues at both the first and the
+     * second argument, with the first one having priority.
+     */
+    public static final int SPLIT = 3;
+
+    /**
+     * The jump instruction. Continues at the first argument.
+     */
+    public static final int JUMP = 4;
+
+    /**
+     * The possessive repeat instruction. Matches the program given as
+     * data as many times as possible, with the first and second
+     * arguments as minimum and maximum counts. No backtracking into
+     * the repeated matches is done.
+     */
+    public static final int POSSESSIVE = 5;
+
+    /**
+     * The match instruction. Reports a successful match.
+     */
+    public static final int MATCH = 6;
+
+    /**
+     * The maximum number of instructions in a program. As bounded
+     * repeats are expanded into copies of the repeated element, the
+     * program size may grow exponentially with nested repeats.
+     */
+    public static final int MAX_SIZE = 10000;
+
+    /**
+     * The instruction operation codes.
+     */
+    private ArrayList ops = new ArrayList();
+
+    /**
+     * The instruction first arguments.
+     */
+    private ArrayList firsts = new ArrayList();
+
+    /**
+     * The instruction second arguments.
+     */
+    private ArrayList seconds = new ArrayList();
+
+    /**
+     * The instruction data objects.
+     */
+    private ArrayList data = new ArrayList();
+
+    /**
+     * The reluctant repeat flag. This flag is set if the program
+     * contains reluctant repeats, in which case the match found
+     * depends on the thread priorities.
+     */
+    private boolean reluctant = false;
+
+    /**
+     * The compiled operation codes array, or null if the program
+     * hasn't been completed.
+     */
+    private int[] opArray = null;
+
+    /**
+     * The compiled first arguments array.
+     */
+    private int[] firstArray = null;
+
+    /**
+     * The compiled second arguments array.
+     */
+    private int[] secondArray = null;
+
+    /**
+     * Creates a new program from a regular expression element.
+     *
+     * @param elem           the regular expression element
+     */
+    public Program(Element elem) {
+        elem.compile(this);
+        add(MATCH, 0, 0, null);
+        opArray = toArray(ops);
+        firstArray = toArray(firsts);
+        secondArray = toArray(seconds);
+    }
+
+    /**
+     * Returns the number of instructions needed for a regular
+     * expression element. The size of nested possessive repeat
+     * programs is included. Any size above MAX_SIZE is returned as
+     * MAX_SIZE + 1, so that the program can be rejected before
+     * being compiled.
+     *
+     * @param elem           the regular expression element
+     *
+     * @return the number of instructions needed
+     */
+    public static int sizeOf(Element elem) {
+        RepeatElement  repeat;
+        long           size;
+        long           min;
+        long           max;
+
+        if (elem instanceof StringElement) {
+            size = ((StringElement) elem).getString().length();
+        } else if (elem instanceof CombineElement) {
+            size = (long) sizeOf(((CombineElement) elem).getFirst())
+                 + sizeOf(((CombineElement) elem).getSecond());
+        } else if (elem instanceof AlternativeElement) {
+            size = (long) sizeOf(((AlternativeElement) elem).getFirst())
+                 + sizeOf(((AlternativeElement) elem).getSecond())
+                 + 2;
+        } else if (elem instanceof RepeatElement) {
+            repeat = (RepeatElement) elem;
+            size = sizeOf(repeat.getElement());
+            min = repeat.getMin();
+            max = repeat.getMax();
+            if (repeat.getType() == RepeatElement.POSSESSIVE) {
+                size += 2;
+            } else if (max == Integer.MAX_VALUE) {
+                size = min * size + size + 2;
+            } else {
+                size = min * size + (max - min) * (size + 1);
+            }
+        } else {
+            size = 1;
+        }
+        return (int) Math.min(size, MAX_SIZE + 1);
+    }
+
+    /**
+     * Returns the number of instructions in the program.
+     *
+     * @return the number of instructions in the program
+     */
+    public int size() {
+        return ops.size();
+    }
+
+    /**
+     * Adds an instruction to the end of the program.
+     *
+     * @param op             the operation code
+     * @param first          the first argument
+     * @param second         the second argument
+     * @param obj            the data object, or null
+     *
+     * @return the address of the new instruction
+     */
+    public int add(int op, int first, int second, Object obj) {
+        ops.add(new Integer(op));
+        firsts.add(new Integer(first));
+        seconds.add(new Integer(second));
+        data.add(obj);
+        return ops.size() - 1;
+    }
+
+    /**
+     * Sets the arguments of an existing instruction. This is used to
+     * patch forward jumps once the target address is known.
+     *
+     * @param pc             the instruction address
+     * @param first          the first argument
+     * @param second         the second argument
+     */
+    public void patch(int pc, int first, int second) {
+        firsts.set(pc, new Integer(first));
+        seconds.set(pc, new Integer(second));
+    }
+
+    /**
+     * Marks the program as containing reluctant repeats.
+     */
+    public void setReluctant() {
+        reluctant = true;
+    }
+
+    /**
+     * Checks if the program contains reluctant repeats. The match
+     * found then depends on the thread priorities. Otherwise the
+     * longest match is always used.
+     *
+     * @return true if the program contains reluctant repeats, or
+     *         false otherwise
+     */
+    public boolean isReluctant() {
+        return reluctant;
+    }
+
+    /**
+     * Returns the operation code of an instruction.
+     *
+     * @param pc             the instruction address
+     *
+     * @return the instruction operation code
+     */
+    public int getOp(int pc) {
+        return opArray[pc];
+    }
+
+    /**
+     * Returns the first argument of an instruction.
+     *
+     * @param pc             the instruction address
+     *
+     * @return the instruction first argument
+     */
+    public int getFirst(int pc) {
+        return firstArray[pc];
+    }
+
+    /**
+     * Returns the second argument of an instruction.
+     *
+     * @param pc             the instruction address
+     *
+     * @return the instruction second argument
+     */
+    public int getSecond(int pc) {
+        return secondArray[pc];
+    }
+
+    /**
+     * Returns the data object of an instruction.
+     *
+     * @param pc             the instruction address
+     *
+     * @return the instruction data object, or null
+     */
+    public Object getData(int pc) {
+        return data.get(pc);
+    }
+
+    /**
+     * Converts a list of integers to an array.
+     *
+     * @param list           the list of Integer objects
+     *
+     * @return the array of integer values
+     */
+    private int[] toArray(ArrayList list) {
+        int[]  res = new int[list.size()];
+
+        for (int i = 0; i < res.length; i++) {
+            res[i] = ((Integer) list.get(i)).intValue();
+        }
+        return res;
+    }
+
+    /**
+     * Returns a string representation of this program.
+     *
+     * @return a string representation of this program
+     */
+    public String toString() {
+        StringBuffer  buffer = new StringBuffer();
+
+        for (int pc = 0; pc < size(); pc++) {
+            buffer.append(pc);
+            buffer.append(": ");
+            switch (getOp(pc)) {
+            case CHAR:
+                buffer.append("char '" + (char) getFirst(pc) + "'");
+                break;
+            case SET:
+                buffer.append("set " + getData(pc));
+                break;
+            case SPLIT:
+                buffer.append("split " + getFirst(pc) + ", " +
+                              getSecond(pc));
+                break;
+            case JUMP:
+                buffer.append("jump " + getFirst(pc));
+                break;
+            case POSSESSIVE:
+                buffer.append("possessive (" + getFirst(pc) + "," +
+                              getSecond(pc) + ")");
+                break;
+            case MATCH:
+                buffer.append("match");
+                break;
+            }
+            buffer.append("\n");
+        }
+        return buffer.toString();
+    }
+}
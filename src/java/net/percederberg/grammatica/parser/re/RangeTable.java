@@ -0,0 +1,206 @@
+/*
+ * RangeTable.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser.re;
+
+import java.util.Arrays;
+
+/**
+ * A character range table utility. A range table is a sorted array
+ * of non-overlapping and non-adjacent character range pairs, each
+ * pair containing the minimum and maximum character (inclusive).
+ * This class is shared by the regular expression character sets and
+ * the tokenizer NFA, and is not intended for other uses.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+public class RangeTable {
+
+    /**
+     * Creates a new range table utility. This constructor is private
+     * as all the methods are static.
+     */
+    private RangeTable() {
+        // Nothing to initialize
+    }
+
+    /**
+     * Concatenates two range tables. The result must be merged
+     * before use.
+     *
+     * @param a              the first range table
+     * @param b              the second range table
+     *
+     * @return the concatenated range pairs
+     */
+    public static char[] concat(char[] a, char[] b) {
+        char[]  res = new char[a.length + b.length];
+
+        System.arraycopy(a, 0, res, 0, a.length);
+        System.arraycopy(b, 0, res, a.length, b.length);
+        return res;
+    }
+
+    /**
+     * Sorts and merges character range pairs into a range table.
+     * Overlapping and adjacent ranges are merged, and ranges with
+     * the minimum larger than the maximum are ignored.
+     *
+     * @param pairs          the character range pairs
+     *
+     * @return the range table
+     */
+    public static char[] merge(char[] pairs) {
+        StringBuffer  res = new StringBuffer();
+        long[]        sorted = new long[pairs.length / 2];
+        int           count = 0;
+        long          min;
+        long          max;
+
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (pairs[i] <= pairs[i + 1]) {
+                sorted[count++] = ((long) pairs[i] << 16) | pairs[i + 1];
+            }
+        }
+        Arrays.sort(sorted, 0, count);
+        for (int i = 0; i < count; i++) {
+            min = sorted[i] >>> 16;
+            max = sorted[i] & 0xFFFF;
+            while (i + 1 < count && (sorted[i + 1] >>> 16) <= max + 1) {
+                max = Math.max(max, sorted[++i] & 0xFFFF);
+            }
+            res.append((char) min).append((char) max);
+        }
+        return res.toString().toCharArray();
+    }
+
+    /**
+     * Intersects two range tables.
+     *
+     * @param a              the first range table
+     * @param b              the second range table
+     *
+     * @return the range table with characters in both tables
+     */
+    public static char[] intersect(char[] a, char[] b) {
+        StringBuffer  res = new StringBuffer();
+        int           i = 0;
+        int           j = 0;
+        char          min;
+        char          max;
+
+        while (i < a.length && j < b.length) {
+            min = (char) Math.max(a[i], b[j]);
+            max = (char) Math.min(a[i + 1], b[j + 1]);
+            if (min <= max) {
+                res.append(min).append(max);
+            }
+            if (a[i + 1] < b[j + 1]) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+        return res.toString().toCharArray();
+    }
+
+    /**
+     * Returns the complement of a range table.
+     *
+     * @param table          the range table
+     *
+     * @return the range table with all other characters
+     */
+    public static char[] complement(char[] table) {
+        StringBuffer  res = new StringBuffer();
+        int           next = 0;
+
+        for (int i = 0; i < table.length; i += 2) {
+            if (next < table[i]) {
+                res.append((char) next).append((char) (table[i] - 1));
+            }
+            next = table[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            res.append((char) next).append(Character.MAX_VALUE);
+        }
+        return res.toString().toCharArray();
+    }
+
+    /**
+     * Folds the character case in a range table. The result
+     * contains all characters that are either in the table, or
+     * have a lower-case or upper-case form in the table.
+     *
+     * @param table          the range table
+     * @param asciiOnly      the ASCII-only case folding flag
+     *
+     * @return the case-folded range table
+     */
+    public static char[] fold(char[] table, boolean asciiOnly) {
+        StringBuffer  res = new StringBuffer();
+        boolean       found;
+        int           start = -1;
+        char          c;
+
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            c = (char) i;
+            found = contains(table, c);
+            if (!found && (!asciiOnly || c < 128)) {
+                found = contains(table, Character.toLowerCase(c))
+                     || contains(table, Character.toUpperCase(c));
+            }
+            if (found && start < 0) {
+                start = i;
+            } else if (!found && start >= 0) {
+                res.append((char) start).append((char) (i - 1));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            res.append((char) start).append(Character.MAX_VALUE);
+        }
+        return res.toString().toCharArray();
+    }
+
+    /**
+     * Checks if a range table contains a character. This method
+     * uses a binary search over the range pairs.
+     *
+     * @param table          the range table
+     * @param ch             the character to check
+     *
+     * @return true if the character is in a range, or
+     *         false otherwise
+     */
+    public static boolean contains(char[] table, char ch) {
+        int  low = 0;
+        int  high = table.length / 2 - 1;
+        int  mid;
+
+        while (low <= high) {
+            mid = (low + high) >>> 1;
+            if (ch < table[mid * 2]) {
+                high = mid - 1;
+            } else if (ch > table[mid * 2 + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -27,11 +27,42 @@ import net.percederberg.grammatica.parser.ReaderBuffer;
  * creating matchers. This class is thread-safe. Multiple matchers may
  * operate simultanously on the same regular expression.
  *
+ * Two matching engines are available. The default backtracking
+ * engine tries the possible matches one by one, and may require
+ * exponential time for some expressions. The Pike VM engine
+ * compiles the expression into a program that runs all possible
+ * matches in parallel, guaranteeing linear matching time. It always
+ * returns the longest match, unless the expression contains
+ * reluctant repeats, so it may find a different match than the
+ * backtracking engine. As bounded repeats are expanded in the Pike
+ * VM program, expressions that would compile into more than
+ * Program.MAX_SIZE instructions cannot use the Pike VM engine.
+ * With either engine, the parsed expression is optimized before
+ * matching, for example by compiling character sets into range
+ * tables and merging common prefixes.
+ *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 public class RegExp {
 
+    /**
+     * The backtracking engine constant. This engine tries the
+     * possible matches one by one, caching intermediate results.
+     * This is the default engine.
+     *
+     * @since 1.7
+     */
+    public static final int BACKTRACKING = 1;
+
+    /**
+     * The Pike VM engine constant. This engine runs all the possible
+     * matches in parallel, in linear time.
+     *
+     * @since 1.7
+     */
+    public static final int PIKE_VM = 2;
+
     /**
      * The base regular expression element.
      */
@@ -47,6 +78,16 @@ public class RegExp {
      */
     private boolean ignoreCase;
 
+    /**
+     * The compiled program, or null for the backtracking engine.
+     */
+    private Program program = null;
+
+    /**
+     * The literal filter, or null if no required literal was found.
+     */
+    private LiteralFilter filter;
+
     /**
      * The current position in the pattern. This variable is used by
      * the parsing methods.
@@ -80,6 +121,34 @@ public class RegExp {
     public RegExp(String pattern, boolean ignoreCase)
         throws RegExpException {
 
+        this(pattern, ignoreCase, BACKTRACKING);
+    }
+
+    /**
+     * Creates a new regular expression with the specified matching
+     * engine. The regular expression can be either case-sensitive or
+     * case-insensitive. The Pike VM engine cannot be used if the
+     * program would be too large, for example due to nested bounded
+     * repeats.
+     *
+     * @param pattern        the regular expression pattern
+     * @param ignoreCase     the character case ignore flag
+     * @param engine         the matching engine constant
+     *
+     * @throws RegExpException if the regular expression couldn't be
+     *             parsed correctly, or if it was too large for the
+     *             Pike VM engine
+     *
+     * @see #BACKTRACKING
+     * @see #PIKE_VM
+     *
+     * @since 1.7
+     */
+    public RegExp(String pattern, boolean ignoreCase, int engine)
+        throws RegExpException {
+
+        Optimizer  optimizer;
+
         this.pattern = pattern;
         this.ignoreCase = ignoreCase;
         this.pos = 0;
@@ -90,6 +159,32 @@ public class RegExp {
                 pos,
                 pattern);
         }
+        optimizer = new Optimizer(engine == BACKTRACKING);
+        this.element = optimizer.optimize(element);
+        if (engine == PIKE_VM) {
+            if (Program.sizeOf(element) > Program.MAX_SIZE) {
+                throw new RegExpException(
+                    RegExpException.PATTERN_TOO_LARGE,
+                    0,
+                    pattern);
+            }
+            this.program = new Program(element);
+        }
+        this.filter = LiteralFilter.create(element);
+    }
+
+    /**
+     * Returns the matching engine used.
+     *
+     * @return the matching engine constant
+     *
+     * @see #BACKTRACKING
+     * @see #PIKE_VM
+     *
+     * @since 1.7
+     */
+    public int getEngine() {
+        return (program == null) ? BACKTRACKING : PIKE_VM;
     }
 
     /**
@@ -129,7 +224,15 @@ public class RegExp {
      * @since 1.5
      */
     public Matcher matcher(ReaderBuffer buffer) {
-        return new Matcher((Element) element.clone(), buffer, ignoreCase);
+        Matcher  m;
+
+        if (program != null) {
+            m = new Matcher(new PikeVM(program), buffer, ignoreCase);
+        } else {
+            m = new Matcher((Element) element.clone(), buffer, ignoreCase);
+        }
+        m.setFilter(filter);
+        return m;
     }
 
     /**
@@ -147,7 +250,13 @@ public class RegExp {
         if (ignoreCase) {
             str.write(" caseignore");
         }
+        if (program == null) {
+            str.write(" backtracking");
+        }
         str.write("\n");
+        if (filter != null) {
+            str.write("  Filter: " + filter + "\n");
+        }
         str.write("  Compiled:\n");
         element.printTo(new PrintWriter(str), "    ");
         return str.toString();
@@ -19,7 +19,7 @@ package net.percederberg.grammatica.parser.re;
  * regular expression couldn't be processed (or "compiled") properly.
  *
  * @author   Per Cederberg
- * @version  1.0
+ * @version  1.7
  */
 public class RegExpException extends Exception {
 
@@ -57,6 +57,16 @@ public class RegExpException extends Exception {
      */
     public static final int INVALID_REPEAT_COUNT = 5;
 
+    /**
+     * The pattern too large error constant. This error is used when
+     * a pattern would compile into too many instructions for the
+     * Pike VM matching engine, for example due to nested bounded
+     * repeats.
+     *
+     * @since 1.7
+     */
+    public static final int PATTERN_TOO_LARGE = 6;
+
     /**
      * The error type constant.
      */
@@ -110,6 +120,9 @@ public class RegExpException extends Exception {
         case INVALID_REPEAT_COUNT:
             buffer.append("invalid repeat count");
             break;
+        case PATTERN_TOO_LARGE:
+            buffer.append("pattern too large");
+            break;
         default:
             buffer.append("internal error");
             break;
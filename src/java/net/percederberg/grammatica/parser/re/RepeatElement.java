@@ -16,6 +16,7 @@ package net.percederberg.grammatica.parser.re;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.BitSet;
 
 import net.percederberg.grammatica.parser.ReaderBuffer;
@@ -26,7 +27,7 @@ import net.percederberg.grammatica.parser.ReaderBuffer;
  * repetition count.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 class RepeatElement extends Element {
 
@@ -101,6 +102,55 @@ class RepeatElement extends Element {
         this.matches = null;
     }
 
+    /**
+     * Returns the repeated element.
+     *
+     * @return the repeated element
+     *
+     * @since 1.7
+     */
+    public Element getElement() {
+        return elem;
+    }
+
+    /**
+     * Returns the minimum number of repetitions.
+     *
+     * @return the minimum number of repetitions
+     *
+     * @since 1.7
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the maximum number of repetitions.
+     *
+     * @return the maximum number of repetitions, or
+     *         Integer.MAX_VALUE for unbounded repeats
+     *
+     * @since 1.7
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the repeat type.
+     *
+     * @return the repeat type constant
+     *
+     * @see #GREEDY
+     * @see #RELUCTANT
+     * @see #POSSESSIVE
+     *
+     * @since 1.7
+     */
+    public int getType() {
+        return type;
+    }
+
     /**
      * Creates a copy of this element. The copy will be an instance
      * of the same class matching the same strings. Copies of elements
@@ -326,6 +376,54 @@ class RepeatElement extends Element {
                     0);
     }
 
+    /**
+     * Compiles this element into instructions at the end of a
+     * program. The repeated element is compiled once for each
+     * required repetition, followed by either a loop or a chain of
+     * optional repetitions. Possessive repeats are compiled into a
+     * separate program.
+     *
+     * @param program        the program to add instructions to
+     *
+     * @since 1.7
+     */
+    public void compile(Program program) {
+        ArrayList  splits = new ArrayList();
+        int        split;
+        int        end;
+
+        if (type == POSSESSIVE) {
+            program.add(Program.POSSESSIVE, min, max, new Program(elem));
+            return;
+        } else if (type == RELUCTANT) {
+            program.setReluctant();
+        }
+        for (int i = 0; i < min; i++) {
+            elem.compile(program);
+        }
+        if (max == Integer.MAX_VALUE) {
+            split = program.add(Program.SPLIT, 0, 0, null);
+            elem.compile(program);
+            program.add(Program.JUMP, split, 0, null);
+            splits.add(new Integer(split));
+        } else {
+            for (int i = min; i < max; i++) {
+                split = program.add(Program.SPLIT, 0, 0, null);
+                elem.compile(program);
+                splits.add(new Integer(split));
+            }
+        }
+        end = program.size();
+        for (int i = 0; i < splits.size(); i++) {
+            split = ((Integer) splits.get(i)).intValue();
+            if (type == RELUCTANT) {
+                program.patch(split, end, split + 1);
+            } else {
+                program.patch(split, split + 1, end);
+            }
+        }
+    }
+
     /**
      * Prints this element to the specified output stream.
      *
@@ -24,7 +24,7 @@ import net.percederberg.grammatica.parser.ReaderBuffer;
  * exact string. Once created, the string element is immutable.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 class StringElement extends Element {
 
@@ -110,6 +110,20 @@ class StringElement extends Element {
         return value.length();
     }
 
+    /**
+     * Compiles this element into instructions at the end of a
+     * program.
+     *
+     * @param program        the program to add instructions to
+     *
+     * @since 1.7
+     */
+    public void compile(Program program) {
+        for (int i = 0; i < value.length(); i++) {
+            program.add(Program.CHAR, value.charAt(i), 0, null);
+        }
+    }
+
     /**
      * Prints this element to the specified output stream.
      *
@@ -0,0 +1,151 @@
+/*
+ * ParserBenchmark.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.bench;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.percederberg.grammatica.Grammar;
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.Parser;
+import net.percederberg.grammatica.parser.ParserCreationException;
+import net.percederberg.grammatica.parser.ParserLogException;
+
+/**
+ * A parser benchmark. This benchmark measures the time to tokenize
+ * and parse generated inputs for the arithmetic and regexp test
+ * grammars. The inputs are balanced expression trees of a specified
+ * depth, so the input size doubles for each depth level while the
+ * parser recursion depth grows linearly.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParserBenchmark {
+
+    /**
+     * The test grammar name, either "arithmetic" or "regexp".
+     */
+    @Param({ "arithmetic", "regexp" })
+    public String grammar;
+
+    /**
+     * The generated expression tree depth.
+     */
+    @Param({ "6", "10", "14" })
+    public int depth;
+
+    /**
+     * The parser to use.
+     */
+    private Parser parser;
+
+    /**
+     * The input text.
+     */
+    private String input;
+
+    /**
+     * Creates the parser and the input text.
+     *
+     * @throws Exception if the grammar couldn't be read or the
+     *             parser couldn't be created
+     */
+    @Setup
+    public void setUp() throws Exception {
+        File     file = new File("test/src/grammar/" + grammar + ".grammar");
+        Grammar  gr = new Grammar(file);
+
+        parser = gr.createParser(gr.createTokenizer(null));
+        if (grammar.equals("arithmetic")) {
+            input = createArithmetic(depth, 0);
+        } else {
+            input = createRegexp(depth, 0);
+        }
+    }
+
+    /**
+     * Tokenizes and parses the input text.
+     *
+     * @return the parse tree root node
+     *
+     * @throws ParserCreationException if the parser couldn't be
+     *             initialized correctly
+     * @throws ParserLogException if the input couldn't be parsed
+     *             correctly
+     */
+    @Benchmark
+    public Node parse() throws ParserCreationException, ParserLogException {
+        parser.reset(new StringReader(input));
+        return parser.parse();
+    }
+
+    /**
+     * Creates a balanced arithmetic expression.
+     *
+     * @param depth          the expression tree depth
+     * @param seed           the seed value for varying the output
+     *
+     * @return the arithmetic expression
+     */
+    private static String createArithmetic(int depth, int seed) {
+        String  ops = "+-*/";
+
+        if (depth <= 0) {
+            return (seed % 2 == 0) ? String.valueOf(seed) : "x";
+        }
+        return "(" + createArithmetic(depth - 1, seed * 2) + " " +
+               ops.charAt(seed % ops.length()) + " " +
+               createArithmetic(depth - 1, seed * 2 + 1) + ")";
+    }
+
+    /**
+     * Creates a balanced regular expression.
+     *
+     * @param depth          the expression tree depth
+     * @param seed           the seed value for varying the output
+     *
+     * @return the regular expression
+     */
+    private static String createRegexp(int depth, int seed) {
+        String  mods = "*+?";
+
+        if (depth <= 0) {
+            return (seed % 3 == 0) ? "[a-z]" : "ab";
+        } else if (depth % 2 == 0) {
+            return "(" + createRegexp(depth - 1, seed * 2) + "|" +
+                   createRegexp(depth - 1, seed * 2 + 1) + ")" +
+                   mods.charAt(seed % mods.length());
+        } else {
+            return createRegexp(depth - 1, seed * 2) +
+                   createRegexp(depth - 1, seed * 2 + 1);
+        }
+    }
+}
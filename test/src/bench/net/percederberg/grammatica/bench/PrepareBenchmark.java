@@ -0,0 +1,86 @@
+/*
+ * PrepareBenchmark.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.percederberg.grammatica.Grammar;
+import net.percederberg.grammatica.GrammarException;
+import net.percederberg.grammatica.parser.Parser;
+
+/**
+ * A parser creation benchmark. This benchmark measures the time to
+ * create and prepare a parser for a grammar, which is dominated by
+ * the look-ahead set calculations. The grammar file is only read
+ * once, so the file parsing isn't included.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrepareBenchmark {
+
+    /**
+     * The grammar file name.
+     */
+    @Param({
+        "test/src/grammar/arithmetic.grammar",
+        "test/src/grammar/regexp.grammar",
+        "src/grammar/grammar.grammar"
+    })
+    public String file;
+
+    /**
+     * The grammar to use.
+     */
+    private Grammar grammar;
+
+    /**
+     * Reads the grammar file.
+     *
+     * @throws Exception if the grammar couldn't be read
+     */
+    @Setup
+    public void setUp() throws Exception {
+        grammar = new Grammar(new File(file));
+    }
+
+    /**
+     * Creates and prepares a new parser for the grammar.
+     *
+     * @return the new parser
+     *
+     * @throws GrammarException if the parser couldn't be created or
+     *             prepared
+     */
+    @Benchmark
+    public Parser createParser() throws GrammarException {
+        return grammar.createParser(grammar.createTokenizer(null));
+    }
+}
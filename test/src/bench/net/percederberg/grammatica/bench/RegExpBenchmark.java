@@ -0,0 +1,150 @@
+/*
+ * RegExpBenchmark.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.percederberg.grammatica.parser.re.Matcher;
+import net.percederberg.grammatica.parser.re.RegExp;
+import net.percederberg.grammatica.parser.re.RegExpException;
+
+/**
+ * A regular expression benchmark. This benchmark compares the
+ * Grammatica regular expression engine with java.util.regex. Both
+ * engines scan the input for anchored matches at each position, in
+ * the same way as the tokenizer uses them.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RegExpBenchmark {
+
+    /**
+     * The regular expression pattern.
+     */
+    @Param({ "[a-z]+", "(ab|cd)+e", "[0-9]+\\.[0-9]*", "a[^ ]*e" })
+    public String pattern;
+
+    /**
+     * The Grammatica matching engine, either RegExp.PIKE_VM (2) or
+     * RegExp.BACKTRACKING (1).
+     */
+    @Param({ "2", "1" })
+    public int engine;
+
+    /**
+     * The approximate input size in kilobytes.
+     */
+    @Param({ "16" })
+    public int size;
+
+    /**
+     * The Grammatica regular expression matcher.
+     */
+    private Matcher grammaticaMatcher;
+
+    /**
+     * The Java regular expression matcher.
+     */
+    private java.util.regex.Matcher javaMatcher;
+
+    /**
+     * The input text.
+     */
+    private String input;
+
+    /**
+     * Creates the regular expression matchers and the input text.
+     *
+     * @throws RegExpException if the regular expression couldn't be
+     *             parsed
+     */
+    @Setup
+    public void setUp() throws RegExpException {
+        StringBuffer  buffer = new StringBuffer();
+        RegExp        regExp;
+        String[]      words = { "abcde", "12.5", "cdabe", "xyz", "a-z" };
+
+        for (int i = 0; buffer.length() < size * 1024; i++) {
+            buffer.append(words[(i * 3) % words.length]);
+            buffer.append(' ');
+        }
+        input = buffer.toString();
+        regExp = new RegExp(pattern, false, engine);
+        grammaticaMatcher = regExp.matcher(input);
+        javaMatcher = Pattern.compile(pattern).matcher(input);
+    }
+
+    /**
+     * Finds all matches with the Grammatica engine.
+     *
+     * @return the number of matches found
+     *
+     * @throws IOException if the input couldn't be read
+     */
+    @Benchmark
+    public int grammatica() throws IOException {
+        int  count = 0;
+        int  pos = 0;
+
+        while (pos < input.length()) {
+            if (grammaticaMatcher.matchFrom(pos)) {
+                count++;
+                pos += Math.max(grammaticaMatcher.length(), 1);
+            } else {
+                pos++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds all matches with the java.util.regex engine.
+     *
+     * @return the number of matches found
+     */
+    @Benchmark
+    public int javaRegex() {
+        int  count = 0;
+        int  pos = 0;
+
+        while (pos < input.length()) {
+            javaMatcher.region(pos, input.length());
+            if (javaMatcher.lookingAt()) {
+                count++;
+                pos += Math.max(javaMatcher.end() - pos, 1);
+            } else {
+                pos++;
+            }
+        }
+        return count;
+    }
+}
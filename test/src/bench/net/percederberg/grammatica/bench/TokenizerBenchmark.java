@@ -0,0 +1,145 @@
+/*
+ * TokenizerBenchmark.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.bench;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import net.percederberg.grammatica.parser.ParseException;
+import net.percederberg.grammatica.parser.ParserCreationException;
+import net.percederberg.grammatica.parser.TokenPattern;
+import net.percederberg.grammatica.parser.Tokenizer;
+
+/**
+ * A tokenizer benchmark. This benchmark measures the tokenizer
+ * throughput for each of the token matcher types. The same input is
+ * tokenized with either string patterns (the string DFA matcher),
+ * simple regular expressions (the NFA matcher), or possessive
+ * regular expressions that are only supported by the native Java
+ * regular expression matcher.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ * @since    1.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TokenizerBenchmark {
+
+    /**
+     * The keywords used in the input.
+     */
+    private static final String[] KEYWORDS = {
+        "if", "then", "else", "while", "do", "end"
+    };
+
+    /**
+     * The token matcher type, one of "string", "nfa" or "native".
+     */
+    @Param({ "string", "nfa", "native" })
+    public String matcher;
+
+    /**
+     * The approximate input size in kilobytes.
+     */
+    @Param({ "64" })
+    public int size;
+
+    /**
+     * The tokenizer to use.
+     */
+    private Tokenizer tokenizer;
+
+    /**
+     * The input text.
+     */
+    private String input;
+
+    /**
+     * Creates the tokenizer and the input text.
+     *
+     * @throws ParserCreationException if the tokenizer couldn't be
+     *             created
+     */
+    @Setup
+    public void setUp() throws ParserCreationException {
+        StringBuffer  buffer = new StringBuffer();
+        String        suffix;
+        TokenPattern  pattern;
+
+        tokenizer = new Tokenizer(null);
+        if (matcher.equals("string")) {
+            for (int i = 0; i < KEYWORDS.length; i++) {
+                pattern = new TokenPattern(i + 1, KEYWORDS[i],
+                                           TokenPattern.STRING_TYPE,
+                                           KEYWORDS[i]);
+                tokenizer.addPattern(pattern);
+            }
+            pattern = new TokenPattern(100, "SPACE",
+                                       TokenPattern.STRING_TYPE, " ");
+            pattern.setIgnore();
+            tokenizer.addPattern(pattern);
+            pattern = new TokenPattern(101, "NEWLINE",
+                                       TokenPattern.STRING_TYPE, "\n");
+            pattern.setIgnore();
+            tokenizer.addPattern(pattern);
+        } else {
+            suffix = matcher.equals("native") ? "++" : "+";
+            pattern = new TokenPattern(1, "WORD",
+                                       TokenPattern.REGEXP_TYPE,
+                                       "[a-z]" + suffix);
+            tokenizer.addPattern(pattern);
+            pattern = new TokenPattern(100, "WHITESPACE",
+                                       TokenPattern.REGEXP_TYPE,
+                                       "[ \\n]" + suffix);
+            pattern.setIgnore();
+            tokenizer.addPattern(pattern);
+        }
+        for (int i = 0; buffer.length() < size * 1024; i++) {
+            buffer.append(KEYWORDS[(i * 7) % KEYWORDS.length]);
+            buffer.append((i % 10 == 9) ? '\n' : ' ');
+        }
+        input = buffer.toString();
+    }
+
+    /**
+     * Tokenizes the input text.
+     *
+     * @return the number of tokens found
+     *
+     * @throws ParseException if the input couldn't be tokenized
+     */
+    @Benchmark
+    public int tokenize() throws ParseException {
+        int  count = 0;
+
+        tokenizer.reset(new StringReader(input));
+        while (tokenizer.next() != null) {
+            count++;
+        }
+        return count;
+    }
+}
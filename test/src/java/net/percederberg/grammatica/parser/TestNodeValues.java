@@ -0,0 +1,130 @@
+/*
+ * TestNodeValues.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.parser;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+/**
+ * A test case for the Node value methods.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestNodeValues extends TestCase {
+
+    /**
+     * The token pattern used in all tests.
+     */
+    private static final TokenPattern PATTERN =
+        new TokenPattern(1001, "T1", TokenPattern.STRING_TYPE, "t");
+
+    /**
+     * Tests adding and reading primitive values.
+     */
+    public void testPrimitiveValues() {
+        Node  node = createNode();
+
+        node.addIntValue(42);
+        node.addValue("op");
+        node.addLongValue(1L << 40);
+        node.addDoubleValue(2.5);
+        assertEquals("value count", 4, node.getValueCount());
+        assertEquals("int value", 42, node.getIntValue(0));
+        assertEquals("long value", 1L << 40, node.getLongValue(2));
+        assertEquals("double value", 2.5, node.getDoubleValue(3), 0.0);
+        assertEquals("int type", Integer.class, node.getValueType(0));
+        assertEquals("string type", String.class, node.getValueType(1));
+        assertEquals("boxed value", new Integer(42), node.getValue(0));
+        assertEquals("object value", "op", node.getValue(1));
+        assertNull("missing value", node.getValue(4));
+        assertNull("missing type", node.getValueType(4));
+    }
+
+    /**
+     * Tests reading all values as a list.
+     */
+    public void testValueList() {
+        Node       node = createNode();
+        ArrayList  list;
+
+        assertNull("empty list", node.getAllValues());
+        node.addIntValue(1);
+        node.addValue("two");
+        list = node.getAllValues();
+        assertEquals("list size", 2, list.size());
+        assertEquals("list value", new Integer(1), list.get(0));
+        node.addIntValue(3);
+        assertEquals("list size", 3, list.size());
+        assertEquals("int value", 3, node.getIntValue(2));
+        node.removeAllValues();
+        assertEquals("value count", 0, node.getValueCount());
+    }
+
+    /**
+     * Tests copying values between nodes.
+     */
+    public void testCopyValues() {
+        Node  node = createNode();
+        Node  copy = createNode();
+
+        node.addIntValue(7);
+        node.addValue("x");
+        copy.addValues(node);
+        copy.addValues(copy);
+        assertEquals("value count", 4, copy.getValueCount());
+        assertEquals("int value", 7, copy.getIntValue(2));
+        assertEquals("object value", "x", copy.getValue(3));
+    }
+
+    /**
+     * Tests reading typed values through the analyzer.
+     *
+     * @throws ParseException if a value couldn't be read
+     */
+    public void testAnalyzerValues() throws ParseException {
+        Analyzer  analyzer = new Analyzer();
+        Node      node = createNode();
+
+        node.addIntValue(5);
+        node.addValue(new Integer(6));
+        node.addDoubleValue(0.5);
+        assertEquals("int value", 5, analyzer.getIntValue(node, 0));
+        assertEquals("boxed int value", 6, analyzer.getIntValue(node, 1));
+        assertEquals("long value", 5L, analyzer.getLongValue(node, 0));
+        assertEquals("double value",
+                     0.5,
+                     analyzer.getDoubleValue(node, 2),
+                     0.0);
+        try {
+            analyzer.getIntValue(node, 2);
+            fail("read double value as integer");
+        } catch (ParseException e) {
+            assertEquals("error type",
+                         ParseException.INTERNAL_ERROR,
+                         e.getErrorType());
+        }
+    }
+
+    /**
+     * Creates a new node.
+     *
+     * @return the node created
+     */
+    private Node createNode() {
+        return new Token(PATTERN, "t", 1, 1);
+    }
+}
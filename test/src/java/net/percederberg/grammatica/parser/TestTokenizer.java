@@ -15,6 +15,7 @@
 package net.percederberg.grammatica.parser;
 
 import java.io.StringReader;
+import java.util.concurrent.ForkJoinPool;
 
 import junit.framework.TestCase;
 
@@ -22,7 +23,7 @@ import junit.framework.TestCase;
  * A test case for the Tokenizer class.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 public class TestTokenizer extends TestCase {
 
@@ -193,6 +194,531 @@ public class TestTokenizer extends TestCase {
         readToken(tokenizer, EOF);
     }
 
+    /**
+     * Tests the extended regular expression syntax handled by the
+     * NFA tokenizer, without falling back to java.util.regex.
+     */
+    public void testExtendedRegExp() {
+        Tokenizer     tokenizer;
+        TokenPattern  pattern;
+        String[]      regexps = {
+            "[a-z]{2,4}",
+            "x{3}y{0,2}z{2,}",
+            "(?i:select)",
+            "(?i)from",
+            "[a-z&&[^aeiou]]+",
+            "\\p{Upper}\\p{Lower}*",
+            "[\\d_]+",
+            "[\\p{Alpha}&&\\P{Upper}]+"
+        };
+        String[]      inputs = {
+            "abcdef",
+            "xxxyyzzz",
+            "SeLeCt",
+            "FROM",
+            "bcdfa",
+            "Apple",
+            "1_2_3a",
+            "abcD"
+        };
+        String[]      images = {
+            "abcd",
+            "xxxyyzzz",
+            "SeLeCt",
+            "FROM",
+            "bcdf",
+            "Apple",
+            "1_2_3",
+            "abc"
+        };
+
+        for (int i = 0; i < regexps.length; i++) {
+            tokenizer = createTokenizer(inputs[i], false);
+            pattern = new TokenPattern(IDENTIFIER,
+                                       "IDENTIFIER",
+                                       TokenPattern.REGEXP_TYPE,
+                                       regexps[i]);
+            addPattern(tokenizer, pattern);
+            assertTrue("NFA regexp " + regexps[i],
+                       pattern.getDebugInfo().startsWith("DFA regexp"));
+            assertEquals("token image " + regexps[i],
+                         images[i],
+                         readToken(tokenizer, IDENTIFIER).getImage());
+        }
+        tokenizer = createTokenizer("xxyyy", false);
+        pattern = new TokenPattern(IDENTIFIER,
+                                   "IDENTIFIER",
+                                   TokenPattern.REGEXP_TYPE,
+                                   "x{3}|x{1,2}y{2,3}");
+        addPattern(tokenizer, pattern);
+        assertEquals("token image",
+                     "xxyyy",
+                     readToken(tokenizer, IDENTIFIER).getImage());
+        readToken(tokenizer, EOF);
+    }
+
+    /**
+     * Tests that regular expressions that the NFA can't match
+     * exactly as java.util.regex are left to java.util.regex.
+     */
+    public void testNativeFallback() {
+        Tokenizer     tokenizer;
+        TokenPattern  pattern;
+        String[]      regexps = {
+            "\\p{L}+",
+            "\\P{Alpha}+",
+            "[^\\d]+",
+            "[\\p{Alpha}&&[^a]]|[\\W&&[^!]]",
+            "(x{40}){40}"
+        };
+
+        for (int i = 0; i < regexps.length; i++) {
+            tokenizer = createTokenizer("", false);
+            pattern = new TokenPattern(IDENTIFIER,
+                                       "IDENTIFIER",
+                                       TokenPattern.REGEXP_TYPE,
+                                       regexps[i]);
+            addPattern(tokenizer, pattern);
+            assertTrue("native regexp " + regexps[i],
+                       pattern.getDebugInfo().startsWith("native"));
+        }
+        checkToken("\\p{L}+", false, "\uD835\uDC00x!", "\uD835\uDC00x");
+        checkToken("\\P{L}+", false, "!\uD835\uDC00x", "!");
+        checkToken("[\\S&&[^x]]", false, "\uD835\uDC00x", "\uD835\uDC00");
+        checkToken("(?i)\u00E4+", false, "\u00E4\u00C4", "\u00E4");
+        checkToken("(?i)[\u00E4a]+", false, "aA\u00E4\u00C4", "aA\u00E4");
+        checkToken("\\p{L}[\u00E4k]+",
+                   true,
+                   "x\u00C4\u212Ak!",
+                   "x\u00C4\u212Ak");
+        checkToken("[a-z][\u00E4k]+",
+                   true,
+                   "x\u00C4\u212Ak!",
+                   "x\u00C4\u212Ak");
+        failAddPattern(createTokenizer("", false),
+                       new TokenPattern(IDENTIFIER,
+                                        "IDENTIFIER",
+                                        TokenPattern.REGEXP_TYPE,
+                                        "\\p{Latin}"));
+    }
+
+    /**
+     * Tests matching character sets with the compiled range tables.
+     */
+    public void testCharacterSets() {
+        String[]  regexps = {
+            "[k-p\\u9000-\\uFFFFa-fe-m]+",
+            "[^a-cX]+",
+            "[^\\u0100-\\uFFFF]+",
+            "[a-z&&[^d-w]]+",
+            "[\\p{Lu}0-9]+"
+        };
+        String[]  inputs = {
+            "abpo\uFFFF\u9000q",
+            "dYzA\u8000\uFFFFx",
+            "a\u00FF~\u0100",
+            "abcxyzd",
+            "\u00C40A9b"
+        };
+        String[]  images = {
+            "abpo\uFFFF\u9000",
+            "dYzA\u8000\uFFFFx",
+            "a\u00FF~",
+            "abcxyz",
+            "\u00C40A9"
+        };
+
+        for (int i = 0; i < regexps.length; i++) {
+            checkToken(regexps[i], false, inputs[i], images[i]);
+        }
+        checkToken("[^a-cX]+", true, "dYzA\u8000\uFFFFx", "dYz");
+        checkToken("[^a-c]+", true, "\u00C4\u212AB", "\u00C4\u212A");
+        checkToken("[k]+", true, "kK\u212Ax", "kK\u212A");
+        checkToken("[^\\p{Ll}a-z]+", true, "12Ab", "12");
+        checkToken("(?i)[^a]", false, "\uD835\uDC00x", "\uD835\uDC00");
+        checkToken("[^a]x", false, "\uD835\uDC00x", "\uD835\uDC00x");
+        checkToken(".", false, "\uD835\uDC00x", "\uD835\uDC00");
+        checkToken("\\D", false, "\uD835\uDC00x", "\uD835\uDC00");
+        checkToken("[^a]", false, "\uD835x", "\uD835");
+    }
+
+    /**
+     * Tests the native regular expression maximum length estimate.
+     */
+    public void testNativeLength() {
+        assertEquals("literal", 3, NativeRegExpLength.estimate("abc"));
+        assertEquals("alternatives",
+                     4,
+                     NativeRegExpLength.estimate("a|b(c|de)x"));
+        assertEquals("repeats",
+                     9,
+                     NativeRegExpLength.estimate("a?[bc]{2,4}+"));
+        assertEquals("look-around",
+                     5,
+                     NativeRegExpLength.estimate("(?<=x)ab(?=\\.\\w)"));
+        assertEquals("quoted",
+                     5,
+                     NativeRegExpLength.estimate("\\Q*+?\\E(?i)."));
+        assertEquals("assertions",
+                     9,
+                     NativeRegExpLength.estimate("^\\bab\\B$|\\Aa\\z"));
+        assertEquals("unbounded",
+                     NativeRegExpLength.UNBOUNDED,
+                     NativeRegExpLength.estimate("[a-z]+(?=:)"));
+        assertEquals("back reference",
+                     NativeRegExpLength.UNBOUNDED,
+                     NativeRegExpLength.estimate("(a)\\1"));
+        assertEquals("comments",
+                     NativeRegExpLength.UNBOUNDED,
+                     NativeRegExpLength.estimate("(?x)a b"));
+    }
+
+    /**
+     * Tests matching long tokens with a native regular expression.
+     */
+    public void testNativeLookAhead() {
+        StringBuffer  input = new StringBuffer();
+        Tokenizer     tokenizer;
+        TokenPattern  pattern;
+
+        for (int i = 0; i < 5000; i++) {
+            input.append("abcdefgh");
+        }
+        input.append(";ab;");
+        tokenizer = createTokenizer(input.toString(), false);
+        tokenizer.setNativeLookAhead(10);
+        assertEquals("look-ahead limit",
+                     ReaderBuffer.BLOCK_SIZE,
+                     tokenizer.getNativeLookAhead());
+        pattern = new TokenPattern(IDENTIFIER,
+                                   "IDENTIFIER",
+                                   TokenPattern.REGEXP_TYPE,
+                                   "[a-z]+(?=;)");
+        addPattern(tokenizer, pattern);
+        assertEquals("debug info",
+                     "native Java regexp; unbounded look-ahead",
+                     pattern.getDebugInfo());
+        pattern = new TokenPattern(NUMBER,
+                                   "SEPARATOR",
+                                   TokenPattern.REGEXP_TYPE,
+                                   ";(?!$)");
+        addPattern(tokenizer, pattern);
+        assertEquals("debug info",
+                     "native Java regexp; max length 4",
+                     pattern.getDebugInfo());
+        assertEquals("token length",
+                     40000,
+                     readToken(tokenizer, IDENTIFIER).getImage().length());
+        readToken(tokenizer, NUMBER);
+        readToken(tokenizer, IDENTIFIER);
+        failReadToken(tokenizer);
+        readToken(tokenizer, EOF);
+
+        tokenizer = createTokenizer(input.toString(), false);
+        pattern = new TokenPattern(IDENTIFIER,
+                                   "IDENTIFIER",
+                                   TokenPattern.REGEXP_TYPE,
+                                   "[a-z]{1,1000000}(?=;)");
+        addPattern(tokenizer, pattern);
+        assertEquals("debug info",
+                     "native Java regexp; max length 2000001",
+                     pattern.getDebugInfo());
+        assertEquals("bounded token length",
+                     40000,
+                     readToken(tokenizer, IDENTIFIER).getImage().length());
+    }
+
+    /**
+     * Tests that a native regular expression match ending at the
+     * end of the buffered input checks any trailing assertion
+     * against the following input.
+     */
+    public void testNativeAssertion() {
+        StringBuffer  input = new StringBuffer();
+        Tokenizer     tokenizer;
+
+        for (int i = 3; i < ReaderBuffer.BLOCK_SIZE; i++) {
+            input.append("x");
+        }
+        input.append("ab\ny");
+        tokenizer = createTokenizer(input.toString(), false);
+        addPattern(tokenizer, new TokenPattern(KEYWORD,
+                                               "KEYWORD",
+                                               TokenPattern.REGEXP_TYPE,
+                                               "x+"));
+        addPattern(tokenizer, new TokenPattern(IDENTIFIER,
+                                               "IDENTIFIER",
+                                               TokenPattern.REGEXP_TYPE,
+                                               "ab$"));
+        addPattern(tokenizer, new TokenPattern(NUMBER,
+                                               "NUMBER",
+                                               TokenPattern.REGEXP_TYPE,
+                                               "[ab\ny]"));
+        readToken(tokenizer, KEYWORD);
+        assertEquals("token image",
+                     "a",
+                     readToken(tokenizer, NUMBER).getImage());
+    }
+
+    /**
+     * Tests the parallel split safety check.
+     */
+    public void testSplitSafe() {
+        Tokenizer     tokenizer = createDefaultTokenizer("", false);
+        TokenPattern  pattern;
+
+        assertEquals("split safe on newline",
+                     true,
+                     tokenizer.isSplitSafe('\n'));
+        assertEquals("split safe on 'e'",
+                     false,
+                     tokenizer.isSplitSafe('e'));
+        pattern = new TokenPattern(6,
+                                   "COMMENT",
+                                   TokenPattern.REGEXP_TYPE,
+                                   "/\\*(.|\n)*\\*/");
+        addPattern(tokenizer, pattern);
+        assertEquals("split safe with comment",
+                     false,
+                     tokenizer.isSplitSafe('\n'));
+        try {
+            tokenizer.setParallelSplit('\n', ForkJoinPool.commonPool());
+            fail("could set unsafe parallel split");
+        } catch (ParserCreationException e) {
+            // Failure was expected
+        }
+    }
+
+    /**
+     * Tests the parallel split mode.
+     */
+    public void testParallelSplit() {
+        ForkJoinPool  pool = new ForkJoinPool(2);
+        String        input = createLongInput(20000);
+        Tokenizer     split;
+
+        split = createDefaultTokenizer(input, true);
+        try {
+            split.setParallelSplit('\n', pool);
+            compareTokens(createDefaultTokenizer(input, true), split);
+        } catch (ParserCreationException e) {
+            fail("couldn't set parallel split: " + e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests the parallel split mode with the token list feature and
+     * input lines longer than the maximum window size.
+     */
+    public void testParallelSplitWindows() {
+        ForkJoinPool  pool = new ForkJoinPool(2);
+        StringBuffer  buffer = new StringBuffer();
+        String        input;
+        Tokenizer     expected;
+        Tokenizer     split;
+
+        buffer.append(createLongInput(20000));
+        buffer.append(createLongInput(40000).replace('\n', ' '));
+        buffer.append(createLongInput(20000));
+        input = buffer.toString();
+        expected = createDefaultTokenizer(input, true);
+        expected.setUseTokenList(true);
+        split = createDefaultTokenizer(input, true);
+        split.setUseTokenList(true);
+        try {
+            split.setParallelSplit('\n', pool);
+            compareTokenList(expected, split);
+        } catch (ParserCreationException e) {
+            fail("couldn't set parallel split: " + e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Tests the pipelined mode.
+     */
+    public void testPipelined() {
+        String     input = createLongInput(5000);
+        Tokenizer  tokenizer;
+
+        tokenizer = createDefaultTokenizer(input, true);
+        tokenizer.setPipelined(true);
+        assertEquals("pipelined", true, tokenizer.isPipelined());
+        compareTokens(createDefaultTokenizer(input, true), tokenizer);
+
+        tokenizer.reset(new StringReader(input));
+        readToken(tokenizer, KEYWORD);
+        readToken(tokenizer, NUMBER);
+        tokenizer.reset(new StringReader("12 (keyword)"));
+        readToken(tokenizer, NUMBER);
+        failReadToken(tokenizer);
+        readToken(tokenizer, KEYWORD);
+        failReadToken(tokenizer);
+        readToken(tokenizer, EOF);
+        readToken(tokenizer, EOF);
+        tokenizer.setPipelined(false);
+        assertEquals("pipelined", false, tokenizer.isPipelined());
+    }
+
+    /**
+     * Tokenizes an input string with a single regular expression
+     * token pattern and checks the first token image. This method
+     * reports a test failure if the token couldn't be read.
+     *
+     * @param regexp         the regular expression pattern
+     * @param ignoreCase     the character case ignore flag
+     * @param input          the input string
+     * @param image          the expected token image
+     */
+    private void checkToken(String regexp,
+                            boolean ignoreCase,
+                            String input,
+                            String image) {
+
+        Tokenizer     tokenizer = createTokenizer(input, ignoreCase);
+        TokenPattern  pattern;
+
+        pattern = new TokenPattern(IDENTIFIER,
+                                   "IDENTIFIER",
+                                   TokenPattern.REGEXP_TYPE,
+                                   regexp);
+        addPattern(tokenizer, pattern);
+        assertEquals("token image " + regexp,
+                     image,
+                     readToken(tokenizer, IDENTIFIER).getImage());
+    }
+
+    /**
+     * Creates a long multi-line input string for the default
+     * tokenizer. Every seventh line will contain an error token.
+     *
+     * @param lines          the number of lines
+     *
+     * @return the input string
+     */
+    private String createLongInput(int lines) {
+        StringBuffer  buffer = new StringBuffer();
+
+        for (int i = 0; i < lines; i++) {
+            buffer.append(" keyword ");
+            buffer.append(i);
+            buffer.append((i % 7 == 0) ? " error\n" : " abc\n");
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Reads all tokens from two tokenizers and compares them. This
+     * method reports a test failure if the tokens or errors read
+     * differ in any way.
+     *
+     * @param expected       the reference tokenizer
+     * @param tokenizer      the tokenizer to check
+     */
+    private void compareTokens(Tokenizer expected, Tokenizer tokenizer) {
+        Token  token1;
+        Token  token2;
+
+        while (true) {
+            try {
+                token1 = expected.next();
+            } catch (ParseException e) {
+                failReadToken(tokenizer);
+                continue;
+            }
+            token2 = readToken(tokenizer);
+            if (token1 == null) {
+                assertEquals("end of file", null, token2);
+                break;
+            }
+            assertEquals("token id", token1.getId(), token2.getId());
+            assertEquals("token image",
+                         token1.getImage(),
+                         token2.getImage());
+            assertEquals("token line",
+                         token1.getStartLine(),
+                         token2.getStartLine());
+            assertEquals("token column",
+                         token1.getStartColumn(),
+                         token2.getStartColumn());
+        }
+    }
+
+    /**
+     * Reads all tokens from two tokenizers and compares them,
+     * including the previous and next token links. The ignored
+     * tokens may be split differently, so only their combined text
+     * is compared. This method reports a test failure if the tokens
+     * or links differ.
+     *
+     * @param expected       the reference tokenizer
+     * @param tokenizer      the tokenizer to check
+     */
+    private void compareTokenList(Tokenizer expected, Tokenizer tokenizer) {
+        Token  token1;
+        Token  token2;
+        Token  last1 = null;
+        Token  last2 = null;
+
+        while (true) {
+            try {
+                token1 = expected.next();
+            } catch (ParseException e) {
+                failReadToken(tokenizer);
+                continue;
+            }
+            token2 = readToken(tokenizer);
+            if (token1 == null) {
+                assertEquals("end of file", null, token2);
+                break;
+            }
+            assertEquals("token image",
+                         token1.getImage(),
+                         token2.getImage());
+            assertEquals("token line",
+                         token1.getStartLine(),
+                         token2.getStartLine());
+            assertEquals("ignored text before " + token2,
+                         readIgnored(token1, last1),
+                         readIgnored(token2, last2));
+            last1 = token1;
+            last2 = token2;
+        }
+    }
+
+    /**
+     * Returns the text of the ignored tokens between two tokens in
+     * the token list. This method reports a test failure if the
+     * previous and next token links are inconsistent, or if the
+     * last token isn't found.
+     *
+     * @param token          the current token
+     * @param last           the last token returned, or null
+     *
+     * @return the text of the ignored tokens in between
+     */
+    private String readIgnored(Token token, Token last) {
+        StringBuffer  buffer = new StringBuffer();
+        Token         previous = token.getPreviousToken();
+
+        while (previous != last) {
+            assertNotNull("previous token for " + token, previous);
+            assertSame("next token for " + previous,
+                       token,
+                       previous.getNextToken());
+            buffer.insert(0, previous.getImage());
+            token = previous;
+            previous = token.getPreviousToken();
+        }
+        if (last != null) {
+            assertSame("next token for " + last, token, last.getNextToken());
+        }
+        return buffer.toString();
+    }
+
     /**
      * Creates a new tokenizer.
      *
@@ -22,7 +22,7 @@ import junit.framework.TestCase;
  * A test case for the RegExp class.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 public class TestRegExp extends TestCase {
 
@@ -51,6 +51,13 @@ public class TestRegExp extends TestCase {
         "\u00de\u00ae\u00aa\u00df\u00ab\u00bb\u00b5\u00a1\u00bf\u00b2" +
         "\u00b3\u00bc\u00a2";
 
+    /**
+     * The matching engines to test.
+     */
+    private static final int[] ENGINES = {
+        RegExp.PIKE_VM, RegExp.BACKTRACKING
+    };
+
     /**
      * A set of digit characters.
      */
@@ -450,6 +457,162 @@ public class TestRegExp extends TestCase {
         matchRegExp("(a+)+aa", "aaaa");
     }
 
+    /**
+     * Tests the optimized element trees and their matching.
+     */
+    public void testOptimizer() {
+        String  str;
+
+        str = createRegExp("[a]b(c)[dd]").toString();
+        assertTrue("merged strings", str.indexOf("'abcd'") > 0);
+        str = createRegExp("int|if|in|x").toString();
+        assertTrue("hoisted prefix", str.indexOf("    'i'\n") > 0);
+        assertTrue("hoisted suffix", str.indexOf("'nt'") > 0);
+        str = createRegExp("[a-z]+[0-9]", RegExp.BACKTRACKING).toString();
+        assertTrue("possessive repeat", str.indexOf(")+\n") > 0);
+        str = createRegExp("[a-z]+[0-9]").toString();
+        assertTrue("greedy repeat", str.indexOf(")+\n") < 0);
+        str = createRegExp("[a-z]+[a0]", RegExp.BACKTRACKING).toString();
+        assertTrue("greedy repeat", str.indexOf(")+\n") < 0);
+        matchRegExp("int|if|in|x", "int");
+        matchRegExp("int|if|in|x", "in");
+        matchRegExp("int|if|in|x", "if");
+        matchRegExp("int|if|in|x", "x");
+        matchRegExp("(ab|abc)d", "abcd");
+        matchRegExp("(ab|abc|a)d", "ad");
+        failMatchRegExp("int|if|in", "ix");
+        matchRegExp("[a-z]+[0-9]", "abc1");
+        failMatchRegExp("[a-z]+[0-9]", "abc;");
+        matchRegExp("[a-z]+a", "aba");
+        matchRegExp("[^\\d\\s]+", "\u9000x+", "\u9000x+");
+        matchRegExp("[\\w&]+", "a_&9");
+        failMatchRegExp("[^\\w\\u9001]", "\u9001");
+    }
+
+    /**
+     * Tests the matching engine selection.
+     */
+    public void testEngines() {
+        RegExp  r;
+
+        try {
+            r = new RegExp("a", false);
+            assertEquals("default engine",
+                         RegExp.BACKTRACKING,
+                         r.getEngine());
+            r = new RegExp("(ab|a)(bc)?", false);
+            assertEquals("default engine match",
+                         "ab",
+                         firstMatch(r, "abc"));
+            r = new RegExp("(a|ab)(c|bcd)", false);
+            assertEquals("default engine match",
+                         "abc",
+                         firstMatch(r, "abcd"));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+        assertEquals("Pike VM engine",
+                     RegExp.PIKE_VM,
+                     createRegExp("a").getEngine());
+        assertEquals("bounded repeat engine",
+                     RegExp.PIKE_VM,
+                     createRegExp("(a{10}b){20}").getEngine());
+        assertEquals("large bounded repeat engine",
+                     RegExp.BACKTRACKING,
+                     createRegExp("((a{1000}){1000}){50}",
+                                  RegExp.BACKTRACKING).getEngine());
+        try {
+            new RegExp("(a|a)*b{20000}", false, RegExp.PIKE_VM);
+            fail("too large Pike VM program was accepted");
+        } catch (RegExpException e) {
+            assertTrue("error message",
+                       e.getMessage().startsWith("pattern too large"));
+        }
+        matchRegExp("(a{2}b?){4}c", "aabaaaaaabc");
+    }
+
+    /**
+     * Returns the match found at the start of an input string.
+     *
+     * @param r              the regular expression to use
+     * @param input          the input string
+     *
+     * @return the matched string, or null if no match was found
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    private String firstMatch(RegExp r, String input) throws IOException {
+        Matcher  m = r.matcher(input);
+
+        return m.matchFromBeginning() ? m.toString() : null;
+    }
+
+    /**
+     * Tests the Pike VM engine with expressions requiring
+     * exponential time or deep recursion when backtracking.
+     */
+    public void testLinearTime() {
+        StringBuffer  buffer = new StringBuffer();
+        String        str;
+        RegExp        r;
+        Matcher       m;
+
+        for (int i = 0; i < 100000; i++) {
+            buffer.append("a");
+        }
+        str = buffer.toString();
+        try {
+            r = createRegExp("(a|a)*(a|a)*b");
+            m = r.matcher(str);
+            assertFalse("exponential match", m.matchFromBeginning());
+            assertTrue("end of string read", m.hasReadEndOfString());
+            m = createRegExp("a.*z").matcher(str + "z");
+            assertTrue("long match", m.matchFromBeginning());
+            assertEquals("long match length", str.length() + 1, m.length());
+            m = createRegExp("(a*)*").matcher(str);
+            assertTrue("empty loop match", m.matchFromBeginning());
+            assertEquals("empty loop length", str.length(), m.length());
+            m = createRegExp(".*a++b").matcher(str);
+            assertFalse("possessive match", m.matchFromBeginning());
+            m = createRegExp("(a|b)*?a++b").matcher(str);
+            assertFalse("reluctant possessive match",
+                        m.matchFromBeginning());
+            m = createRegExp("(a|b)*a++").matcher(str);
+            assertTrue("greedy possessive match", m.matchFromBeginning());
+            assertEquals("greedy possessive length",
+                         str.length(),
+                         m.length());
+        } catch (IOException e) {
+            fail("io error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tests finding all matches in a string, with and without
+     * literal filters.
+     */
+    public void testFind() {
+        String   input = "id=12, ID = 7; x=, name=value, id=3";
+        Matcher  m;
+
+        findRegExp("id *= *[0-9]+", input, "id=12,id=3");
+        findRegExp("[a-z]+=[a-z]+", input, "name=value");
+        findRegExp("[a-z]*=", input, "id=,=,x=,name=,id=");
+        findRegExp("[0-9]", input, "1,2,7,3");
+        findRegExp("a*", "baab", ",aa,,");
+        findRegExp("value|x", input, "x,value");
+        findRegExp("zzz", input, "");
+        try {
+            m = new RegExp("id *=", true).matcher(input);
+            assertTrue("case-insensitive find", m.find());
+            assertTrue("case-insensitive find", m.find());
+            assertEquals("case-insensitive match", "ID =", m.toString());
+            assertEquals("case-insensitive start", 7, m.start());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
     /**
      * Tests resetting the matcher with another input string.
      */
@@ -495,8 +658,22 @@ public class TestRegExp extends TestCase {
      * @return the newly created regular expression
      */
     private RegExp createRegExp(String pattern) {
+        return createRegExp(pattern, RegExp.PIKE_VM);
+    }
+
+    /**
+     * Creates a new regular expression with the specified matching
+     * engine. If the expression couldn't be parsed correctly, a test
+     * failure will be reported.
+     *
+     * @param pattern        the pattern to use
+     * @param engine         the matching engine to use
+     *
+     * @return the newly created regular expression
+     */
+    private RegExp createRegExp(String pattern, int engine) {
         try {
-            return new RegExp(pattern, false);
+            return new RegExp(pattern, false, engine);
         } catch (RegExpException e) {
             fail("couldn't create regular expression '" + pattern +
                  "': " + e.getMessage());
@@ -538,49 +715,107 @@ public class TestRegExp extends TestCase {
      * Checks that a specified regular expression matches an input
      * string. The exact match is compared to a specified match. This
      * method will report a failure if the regular expression couldn't
-     * be created or if the match wasn't exact.
+     * be created or if the match wasn't exact. All the matching
+     * engines are checked.
      *
      * @param pattern        the regular expression to check
      * @param input          the input string
      * @param match          the match string
      */
     private void matchRegExp(String pattern, String input, String match) {
-        RegExp   r = createRegExp(pattern);
-        Matcher  m = r.matcher(input);
+        RegExp   r;
+        Matcher  m;
 
-        try {
-            if (!m.matchFromBeginning()) {
-                fail("couldn't match '" + input + "' to regexp '" +
-                     pattern + "'");
-            } else if (!match.equals(m.toString())) {
-                fail("incorrect match for '" + pattern + "', found: '" +
-                     m.toString() + "', expected: '" + match + "'");
+        for (int i = 0; i < ENGINES.length; i++) {
+            r = createRegExp(pattern, ENGINES[i]);
+            m = r.matcher(input);
+            try {
+                if (!m.matchFromBeginning()) {
+                    fail("couldn't match '" + input + "' to regexp '" +
+                         pattern + "'");
+                } else if (!match.equals(m.toString())) {
+                    fail("incorrect match for '" + pattern +
+                         "', found: '" + m.toString() +
+                         "', expected: '" + match + "'");
+                }
+            } catch (IOException e) {
+                fail("io error: " + e.getMessage());
             }
-        } catch (IOException e) {
-            fail("io error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks that all the matches of a regular expression are found
+     * in an input string. The matches found are compared to the ones
+     * found by attempting a match at each position. All the
+     * matching engines are checked.
+     *
+     * @param pattern        the regular expression to check
+     * @param input          the input string
+     * @param matches        the comma-separated matches expected
+     */
+    private void findRegExp(String pattern, String input, String matches) {
+        StringBuffer  found;
+        StringBuffer  expected;
+        Matcher       m;
+        int           pos;
+
+        for (int i = 0; i < ENGINES.length; i++) {
+            m = createRegExp(pattern, ENGINES[i]).matcher(input);
+            found = new StringBuffer();
+            expected = new StringBuffer();
+            try {
+                while (m.find()) {
+                    found.append(",");
+                    found.append(m.toString());
+                }
+                pos = 0;
+                while (pos <= input.length()) {
+                    if (m.matchFrom(pos)) {
+                        expected.append(",");
+                        expected.append(m.toString());
+                        pos += Math.max(m.length(), 1);
+                    } else {
+                        pos++;
+                    }
+                }
+            } catch (IOException e) {
+                fail("io error: " + e.getMessage());
+            }
+            assertEquals("matches for '" + pattern + "'",
+                         matches.length() > 0 ? "," + matches : "",
+                         found.toString());
+            assertEquals("matches for '" + pattern + "'",
+                         expected.toString(),
+                         found.toString());
         }
     }
 
     /**
      * Checks that a specified regular expression does not match the
      * input string. This method will report a failure if the regular
-     * expression couldn't be created or if a match was found.
+     * expression couldn't be created or if a match was found. All
+     * the matching engines are checked.
      *
      * @param pattern        the regular expression to check
      * @param input          the input and match string
      */
     private void failMatchRegExp(String pattern, String input) {
-        RegExp   r = createRegExp(pattern);
-        Matcher  m = r.matcher(input);
+        RegExp   r;
+        Matcher  m;
 
-        try {
-            if (m.matchFromBeginning()) {
-                fail("found invalid match '" + m.toString() +
-                     "' to regexp '" + pattern + "' in input '" +
-                     input + "'");
+        for (int i = 0; i < ENGINES.length; i++) {
+            r = createRegExp(pattern, ENGINES[i]);
+            m = r.matcher(input);
+            try {
+                if (m.matchFromBeginning()) {
+                    fail("found invalid match '" + m.toString() +
+                         "' to regexp '" + pattern + "' in input '" +
+                         input + "'");
+                }
+            } catch (IOException e) {
+                fail("io error: " + e.getMessage());
             }
-        } catch (IOException e) {
-            fail("io error: " + e.getMessage());
         }
     }
 }
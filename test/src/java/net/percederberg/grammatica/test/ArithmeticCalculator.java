@@ -15,7 +15,6 @@
 package net.percederberg.grammatica.test;
 
 import java.io.StringReader;
-import java.util.ArrayList;
 import java.util.HashMap;
 
 import net.percederberg.grammatica.parser.Node;
@@ -27,7 +26,7 @@ import net.percederberg.grammatica.parser.Token;
  * A simple arithmetic calculator.
  *
  * @author   Per Cederberg
- * @version  1.0
+ * @version  1.7
  */
 class ArithmeticCalculator extends ArithmeticAnalyzer {
 
@@ -68,7 +67,7 @@ class ArithmeticCalculator extends ArithmeticAnalyzer {
         parser = new ArithmeticParser(new StringReader(expression), this);
         parser.prepare();
         node = parser.parse();
-        return ((Integer) node.getValue(0)).intValue();
+        return node.getIntValue(0);
     }
 
     /**
@@ -127,7 +126,7 @@ class ArithmeticCalculator extends ArithmeticAnalyzer {
      * @return the node to add to the parse tree
      */
     protected Node exitNumber(Token node) {
-        node.addValue(new Integer(node.getImage()));
+        node.addIntValue(Integer.parseInt(node.getImage()));
         return node;
     }
 
@@ -139,33 +138,33 @@ class ArithmeticCalculator extends ArithmeticAnalyzer {
      * @return the node to add to the parse tree
      */
     protected Node exitIdentifier(Token node) {
-        node.addValue(variables.get(node.getImage()));
+        Integer  value = (Integer) variables.get(node.getImage());
+
+        if (value != null) {
+            node.addIntValue(value.intValue());
+        }
         return node;
     }
 
     /**
-     * Adds the expression result as a node value.
+     * Adds the expression result as a node value. The operator and
+     * second operand are read from the rest node, if present.
      *
      * @param node           the node being exited
      *
      * @return the node to add to the parse tree
      */
     protected Node exitExpression(Production node) {
-        ArrayList  values = getChildValues(node);
-        Integer    value1;
-        Integer    value2;
-        String     op;
-        int        result;
+        int   result = node.getChildAt(0).getIntValue(0);
+        Node  rest;
 
-        if (values.size() == 1) {
-            result = ((Integer) values.get(0)).intValue();
-        } else {
-            value1 = (Integer) values.get(0);
-            value2 = (Integer) values.get(2);
-            op = (String) values.get(1);
-            result = operate(op, value1, value2);
+        if (node.getChildCount() > 1) {
+            rest = node.getChildAt(1);
+            result = operate((String) rest.getValue(0),
+                             result,
+                             rest.getIntValue(1));
         }
-        node.addValue(new Integer(result));
+        node.addIntValue(result);
         return node;
     }
 
@@ -177,33 +176,29 @@ class ArithmeticCalculator extends ArithmeticAnalyzer {
      * @return the node to add to the parse tree
      */
     protected Node exitExpressionRest(Production node) {
-        node.addValues(getChildValues(node));
+        addChildValues(node);
         return node;
     }
 
     /**
-     * Adds the term result as a node value.
+     * Adds the term result as a node value. The operator and
+     * second operand are read from the rest node, if present.
      *
      * @param node           the node being exited
      *
      * @return the node to add to the parse tree
      */
     protected Node exitTerm(Production node) {
-        ArrayList  values = getChildValues(node);
-        Integer    value1;
-        Integer    value2;
-        String     op;
-        int        result;
+        int   result = node.getChildAt(0).getIntValue(0);
+        Node  rest;
 
-        if (values.size() == 1) {
-            result = ((Integer) values.get(0)).intValue();
-        } else {
-            value1 = (Integer) values.get(0);
-            value2 = (Integer) values.get(2);
-            op = (String) values.get(1);
-            result = operate(op, value1, value2);
+        if (node.getChildCount() > 1) {
+            rest = node.getChildAt(1);
+            result = operate((String) rest.getValue(0),
+                             result,
+                             rest.getIntValue(1));
         }
-        node.addValue(new Integer(result));
+        node.addIntValue(result);
         return node;
     }
 
@@ -215,7 +210,7 @@ class ArithmeticCalculator extends ArithmeticAnalyzer {
      * @return the node to add to the parse tree
      */
     protected Node exitTermRest(Production node) {
-        node.addValues(getChildValues(node));
+        addChildValues(node);
         return node;
     }
 
@@ -236,7 +231,7 @@ class ArithmeticCalculator extends ArithmeticAnalyzer {
         } else {
             result = getIntValue(getChildAt(node, 1), 0);
         }
-        node.addValue(new Integer(result));
+        node.addIntValue(result);
         return node;
     }
 
@@ -248,7 +243,7 @@ class ArithmeticCalculator extends ArithmeticAnalyzer {
      * @return the node to add to the parse tree
      */
     protected Node exitAtom(Production node) {
-        node.addValues(getChildValues(node));
+        addChildValues(node);
         return node;
     }
 
@@ -256,15 +251,12 @@ class ArithmeticCalculator extends ArithmeticAnalyzer {
      * Performs a numerical operation.
      *
      * @param op             the operator to use
-     * @param value1         the first value
-     * @param value2         the second value
+     * @param i              the first value
+     * @param j              the second value
      *
      * @return the result of performing the operation
      */
-    private int operate(String op, Integer value1, Integer value2) {
-        int  i = value1.intValue();
-        int  j = value2.intValue();
-
+    private int operate(String op, int i, int j) {
         switch (op.charAt(0)) {
         case '+':
             return i + j;
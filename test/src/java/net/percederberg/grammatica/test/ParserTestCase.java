@@ -98,7 +98,7 @@ abstract class ParserTestCase extends TestCase {
      * @param root           the parse tree root node
      * @param str            the string representation
      */
-    private void validateTree(Node root, String str) {
+    protected void validateTree(Node root, String str) {
         StringWriter output = new StringWriter();
 
         root.printTo(new PrintWriter(output));
@@ -14,15 +14,19 @@
 
 package net.percederberg.grammatica.test;
 
+import java.io.StringReader;
 import java.util.HashMap;
 
 import junit.framework.TestCase;
 
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.Token;
+
 /**
  * A test case for the ArithmeticCalculator class.
  *
  * @author   Per Cederberg
- * @version  1.0
+ * @version  1.7
  */
 public class TestArithmeticCalculator extends TestCase {
 
@@ -55,6 +59,63 @@ public class TestArithmeticCalculator extends TestCase {
         calculate(VALID_INPUT, 350);
     }
 
+    /**
+     * Tests the calculator with in-place analysis of a parse tree.
+     */
+    public void testInPlaceAnalysis() {
+        ArithmeticCalculator  calc;
+        Node                  root;
+        Node                  result;
+
+        try {
+            calc = new ArithmeticCalculator(variables);
+            root = new ArithmeticParser(new StringReader(VALID_INPUT)).parse();
+            for (int i = 0; i < 2; i++) {
+                result = calc.analyzeInPlace(root);
+                assertSame("root node", root, result);
+                assertEquals("expression result", 350, result.getIntValue(0));
+                assertEquals("value count", 1, result.getValueCount());
+                assertEquals("child count", 2, result.getChildCount());
+            }
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests the calculator with nested in-place analysis, where
+     * each variable is an expression analyzed by the same
+     * calculator while the outer parse tree is being analyzed.
+     */
+    public void testNestedInPlaceAnalysis() {
+        ArithmeticCalculator  calc;
+        Node                  root;
+
+        calc = new ArithmeticCalculator() {
+            protected Node exitIdentifier(Token node) {
+                Node  expr;
+
+                try {
+                    expr = new ArithmeticParser(
+                        new StringReader("3 * (4 + 1)")).parse();
+                    expr = analyzeInPlace(expr);
+                } catch (Exception e) {
+                    fail(e.getMessage());
+                    return node;
+                }
+                node.addIntValue(expr.getIntValue(0));
+                return node;
+            }
+        };
+        try {
+            root = new ArithmeticParser(new StringReader(VALID_INPUT)).parse();
+            root = calc.analyzeInPlace(root);
+            assertEquals("expression result", 376, root.getIntValue(0));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
     /**
      * Calculates an expression and checks the result. If the
      * calculation failed or if the result didn't match the specified
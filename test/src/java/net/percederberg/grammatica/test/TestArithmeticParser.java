@@ -16,15 +16,18 @@ package net.percederberg.grammatica.test;
 
 import java.io.StringReader;
 
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.NodeArena;
 import net.percederberg.grammatica.parser.ParseException;
 import net.percederberg.grammatica.parser.Parser;
 import net.percederberg.grammatica.parser.ParserCreationException;
+import net.percederberg.grammatica.parser.ParserLogException;
 
 /**
  * A test case for the generated ArithmeticParser class.
  *
  * @author   Per Cederberg
- * @version  1.5
+ * @version  1.7
  */
 public class TestArithmeticParser extends ParserTestCase {
 
@@ -140,6 +143,123 @@ public class TestArithmeticParser extends ParserTestCase {
         parse(p, VALID_OUTPUT);
     }
 
+    /**
+     * Tests parsing with a pipelined tokenizer.
+     */
+    public void testPipelinedTokenizer() {
+        Parser  p;
+
+        p = createParser(VALID_INPUT);
+        p.getTokenizer().setPipelined(true);
+        parse(p, VALID_OUTPUT);
+        p.getTokenizer().reset(new StringReader(UNEXPECTED_CHAR_INPUT));
+        failParse(p, ParseException.UNEXPECTED_CHAR_ERROR, 2, 2);
+        p.getTokenizer().reset(new StringReader(UNEXPECTED_EOF_INPUT));
+        failParse(p, ParseException.UNEXPECTED_EOF_ERROR, 2, 1);
+        p.getTokenizer().reset(new StringReader(VALID_INPUT));
+        parse(p, VALID_OUTPUT);
+    }
+
+    /**
+     * Tests that no pipelined tokenizer threads are left running
+     * after a failed parse.
+     */
+    public void testPipelinedThreads() {
+        StringBuffer  input = new StringBuffer("1 ) ");
+        Parser        p;
+
+        for (int i = 0; i < 5000; i++) {
+            input.append("1 + ");
+        }
+        for (int i = 0; i < 3; i++) {
+            p = createParser(input.toString());
+            p.getTokenizer().setPipelined(true);
+            try {
+                p.parse();
+                fail("parsing succeeded although input isn't valid");
+            } catch (ParserLogException e) {
+                // Failure was expected
+            } catch (ParserCreationException e) {
+                fail(e.getMessage());
+            }
+        }
+        assertEquals("tokenizer threads", 0, countTokenizerThreads());
+    }
+
+    /**
+     * Tests reusing parse tree nodes from a node arena.
+     */
+    public void testNodeArena() {
+        NodeArena  arena = new NodeArena();
+        Parser     p;
+        Node       first = null;
+        Node       second = null;
+        int        count;
+
+        p = createParser(VALID_INPUT);
+        p.setNodeArena(arena);
+        try {
+            first = p.parse();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+        count = arena.getProductionCount() + arena.getTokenCount();
+        assertTrue("node count", count >= 25);
+        arena.release();
+        p.getTokenizer().reset(new StringReader(VALID_INPUT));
+        parse(p, VALID_OUTPUT);
+        assertEquals("node count",
+                     count,
+                     arena.getProductionCount() + arena.getTokenCount());
+        arena.release();
+        p.getTokenizer().reset(new StringReader(VALID_INPUT));
+        try {
+            second = p.parse();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+        assertSame("reused root node", first, second);
+    }
+
+    /**
+     * Tests the cached production positions and descendant count.
+     */
+    public void testNodePositions() {
+        Node  root = null;
+
+        try {
+            root = createParser(VALID_INPUT).parse();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+        assertEquals("start line", 1, root.getStartLine());
+        assertEquals("start column", 1, root.getStartColumn());
+        assertEquals("end line", 2, root.getEndLine());
+        assertEquals("end column", 6, root.getEndColumn());
+        assertEquals("descendant count", 24, root.getDescendantCount());
+        root = root.getChildAt(1);
+        assertEquals("child start column", 3, root.getStartColumn());
+        assertEquals("child descendant count", 19, root.getDescendantCount());
+    }
+
+    /**
+     * Returns the number of running pipelined tokenizer threads.
+     *
+     * @return the number of running pipelined tokenizer threads
+     */
+    private int countTokenizerThreads() {
+        Thread[]  threads = new Thread[Thread.activeCount() + 10];
+        int       size = Thread.enumerate(threads);
+        int       count = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (threads[i].getName().equals("Grammatica tokenizer")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Creates a new parser.
      *
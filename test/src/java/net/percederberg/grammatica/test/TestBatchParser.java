@@ -0,0 +1,184 @@
+/*
+ * TestBatchParser.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.AnalyzerFactory;
+import net.percederberg.grammatica.BatchListener;
+import net.percederberg.grammatica.BatchParser;
+import net.percederberg.grammatica.BatchResult;
+import net.percederberg.grammatica.Grammar;
+import net.percederberg.grammatica.parser.Analyzer;
+import net.percederberg.grammatica.parser.ParseException;
+
+/**
+ * A test case for the BatchParser class.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestBatchParser extends TestCase {
+
+    /**
+     * The arithmetic grammar file.
+     */
+    private static final String GRAMMAR_FILE =
+        "test/src/grammar/arithmetic.grammar";
+
+    /**
+     * The temporary input files created.
+     */
+    private ArrayList files = new ArrayList();
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestBatchParser(String name) {
+        super(name);
+    }
+
+    /**
+     * Removes all the temporary input files.
+     */
+    protected void tearDown() {
+        for (int i = 0; i < files.size(); i++) {
+            ((File) files.get(i)).delete();
+        }
+        files.clear();
+    }
+
+    /**
+     * Tests parsing a batch of input files with several threads.
+     */
+    public void testParseAll() {
+        BatchParser      parser;
+        BatchResult[]    results;
+        AnalyzerFactory  factory;
+        ParseException   error;
+        int              count = 50;
+
+        factory = new AnalyzerFactory() {
+            public Analyzer createAnalyzer() {
+                return new ArithmeticCalculator(new HashMap());
+            }
+        };
+        try {
+            for (int i = 0; i < count; i++) {
+                createFile(i + " * 2 + 1\n");
+            }
+            createFile("1 + (2\n");
+            files.add(new File(GRAMMAR_FILE + ".missing"));
+            parser = new BatchParser(new Grammar(new File(GRAMMAR_FILE)), 3);
+            results = parser.parseAll(files, factory);
+            assertEquals("result count", files.size(), results.length);
+            for (int i = 0; i < count; i++) {
+                assertEquals("file", files.get(i), results[i].getFile());
+                assertEquals("success", true, results[i].isSuccess());
+                assertEquals("result",
+                             new Integer(i * 2 + 1),
+                             results[i].getRoot().getValue(0));
+            }
+            assertEquals("success", false, results[count].isSuccess());
+            error = results[count].getErrors().getError(0);
+            assertEquals("error type",
+                         ParseException.UNEXPECTED_EOF_ERROR,
+                         error.getErrorType());
+            assertEquals("success", false, results[count + 1].isSuccess());
+            error = results[count + 1].getErrors().getError(0);
+            assertEquals("error type",
+                         ParseException.IO_ERROR,
+                         error.getErrorType());
+            results = parser.parseAll(files.subList(0, 2), factory);
+            assertEquals("result count", 2, results.length);
+            assertEquals("result",
+                         new Integer(3),
+                         results[1].getRoot().getValue(0));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests parsing a batch of input files with a result listener.
+     */
+    public void testParseAllListener() {
+        BatchParser      parser;
+        AnalyzerFactory  factory;
+        BatchListener    listener;
+        final ArrayList  results = new ArrayList();
+        BatchResult      result;
+        int              count = 100;
+
+        factory = new AnalyzerFactory() {
+            public Analyzer createAnalyzer() {
+                return new ArithmeticCalculator(new HashMap());
+            }
+        };
+        listener = new BatchListener() {
+            public void batchResult(BatchResult result) {
+                results.add(result);
+            }
+        };
+        try {
+            for (int i = 0; i < count; i++) {
+                createFile(i + " * 2 + 1\n");
+            }
+            createFile("1 + (2\n");
+            parser = new BatchParser(new Grammar(new File(GRAMMAR_FILE)), 3);
+            parser.parseAll(files, factory, listener);
+            assertEquals("result count", files.size(), results.size());
+            for (int i = 0; i < count; i++) {
+                result = (BatchResult) results.get(i);
+                assertEquals("file", files.get(i), result.getFile());
+                assertEquals("success", true, result.isSuccess());
+                assertEquals("result",
+                             new Integer(i * 2 + 1),
+                             result.getRoot().getValue(0));
+            }
+            result = (BatchResult) results.get(count);
+            assertEquals("success", false, result.isSuccess());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a temporary input file.
+     *
+     * @param input          the input file contents
+     *
+     * @throws IOException if the file couldn't be written
+     */
+    private void createFile(String input) throws IOException {
+        File        file = File.createTempFile("batch", ".txt");
+        FileWriter  writer = new FileWriter(file);
+
+        files.add(file);
+        try {
+            writer.write(input);
+        } finally {
+            writer.close();
+        }
+    }
+}
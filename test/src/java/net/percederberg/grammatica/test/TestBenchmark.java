@@ -0,0 +1,153 @@
+/*
+ * TestBenchmark.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.Benchmark;
+import net.percederberg.grammatica.BenchmarkPhase;
+import net.percederberg.grammatica.Grammar;
+import net.percederberg.grammatica.parser.ParserLogException;
+
+/**
+ * A test case for the Benchmark class.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestBenchmark extends TestCase {
+
+    /**
+     * The arithmetic grammar file.
+     */
+    private static final String GRAMMAR_FILE =
+        "test/src/grammar/arithmetic.grammar";
+
+    /**
+     * The temporary input files created.
+     */
+    private ArrayList files = new ArrayList();
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestBenchmark(String name) {
+        super(name);
+    }
+
+    /**
+     * Removes all the temporary input files.
+     */
+    protected void tearDown() {
+        for (int i = 0; i < files.size(); i++) {
+            ((File) files.get(i)).delete();
+        }
+        files.clear();
+    }
+
+    /**
+     * Tests running a benchmark.
+     */
+    public void testRun() {
+        Benchmark         benchmark;
+        BenchmarkPhase[]  phases;
+        String            json;
+
+        try {
+            createFile("1 + 2 * 3\n");
+            createFile("(a + b) / c\n");
+            benchmark = new Benchmark(new Grammar(new File(GRAMMAR_FILE)));
+            benchmark.setWarmup(1);
+            benchmark.setIterations(4);
+            benchmark.run(files);
+            phases = benchmark.getPhases();
+            assertEquals("phase count", 3, phases.length);
+            assertEquals("phase name", "tokenizer", phases[0].getName());
+            assertEquals("token count", 12, phases[0].getCount());
+            assertEquals("phase name", "parser", phases[1].getName());
+            assertEquals("node count",
+                         phases[1].getCount(),
+                         phases[2].getCount());
+            for (int i = 0; i < phases.length; i++) {
+                assertEquals("iterations", 4, phases[i].getIterations());
+                assertTrue("min <= p50",
+                           phases[i].getMinTime() <=
+                           phases[i].getPercentileTime(50));
+                assertTrue("p50 <= p99",
+                           phases[i].getPercentileTime(50) <=
+                           phases[i].getPercentileTime(99));
+                assertEquals("p100",
+                             phases[i].getMaxTime(),
+                             phases[i].getPercentileTime(100));
+                assertTrue("item rate", phases[i].getItemRate() > 0);
+            }
+            json = benchmark.toJson();
+            assertTrue("json", json.startsWith("{"));
+            assertTrue("json", json.indexOf("\"iterations\": 4") > 0);
+            assertTrue("json", json.indexOf("\"name\": \"analyzer\"") > 0);
+            assertNull("error file", benchmark.getErrorFile());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests running a benchmark with an invalid input file.
+     */
+    public void testRunError() {
+        Benchmark  benchmark = null;
+
+        try {
+            createFile("1 + 2\n");
+            createFile("1 + (2\n");
+            benchmark = new Benchmark(new Grammar(new File(GRAMMAR_FILE)));
+            benchmark.run(files);
+            fail("benchmark with invalid input succeeded");
+        } catch (ParserLogException e) {
+            assertEquals("error file",
+                         files.get(1),
+                         benchmark.getErrorFile());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a temporary input file.
+     *
+     * @param input          the input file contents
+     *
+     * @throws IOException if the file couldn't be written
+     */
+    private void createFile(String input) throws IOException {
+        File        file = File.createTempFile("benchmark", ".txt");
+        FileWriter  writer = new FileWriter(file);
+
+        files.add(file);
+        try {
+            writer.write(input);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * TestCompactTree.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.test;
+
+import java.io.StringReader;
+import java.util.HashMap;
+
+import net.percederberg.grammatica.parser.Analyzer;
+import net.percederberg.grammatica.parser.CompactTree;
+import net.percederberg.grammatica.parser.CompactTreeBuilder;
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.Parser;
+import net.percederberg.grammatica.parser.Production;
+
+/**
+ * A test case for the CompactTree class.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestCompactTree extends ParserTestCase {
+
+    /**
+     * The valid input string.
+     */
+    private static final String VALID_INPUT =
+        "1 + 2*a\n" +
+        " + 345";
+
+    /**
+     * The parse tree for the valid input string.
+     */
+    private static final String VALID_OUTPUT =
+        "Expression(2001)\n" +
+        "  Term(2003)\n" +
+        "    Factor(2005)\n" +
+        "      Atom(2006)\n" +
+        "        NUMBER(1007): \"1\", line: 1, col: 1\n" +
+        "  ExpressionRest(2002)\n" +
+        "    ADD(1001): \"+\", line: 1, col: 3\n" +
+        "    Expression(2001)\n" +
+        "      Term(2003)\n" +
+        "        Factor(2005)\n" +
+        "          Atom(2006)\n" +
+        "            NUMBER(1007): \"2\", line: 1, col: 5\n" +
+        "        TermRest(2004)\n" +
+        "          MUL(1003): \"*\", line: 1, col: 6\n" +
+        "          Term(2003)\n" +
+        "            Factor(2005)\n" +
+        "              Atom(2006)\n" +
+        "                IDENTIFIER(1008): \"a\", line: 1, col: 7\n" +
+        "      ExpressionRest(2002)\n" +
+        "        ADD(1001): \"+\", line: 2, col: 2\n" +
+        "        Expression(2001)\n" +
+        "          Term(2003)\n" +
+        "            Factor(2005)\n" +
+        "              Atom(2006)\n" +
+        "                NUMBER(1007): \"345\", line: 2, col: 4\n";
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestCompactTree(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests building a compact tree while parsing.
+     */
+    public void testBuilder() {
+        CompactTree  tree = build(VALID_INPUT);
+
+        assertEquals("node count", 25, tree.getNodeCount());
+        validateTree(tree.getRoot(), VALID_OUTPUT);
+    }
+
+    /**
+     * Tests creating a compact tree from a normal parse tree.
+     */
+    public void testCopy() {
+        Parser  parser = createParser(VALID_INPUT, null);
+
+        try {
+            validateTree(new CompactTree(parser.parse()).getRoot(),
+                         VALID_OUTPUT);
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests the index-based cursor methods.
+     */
+    public void testCursor() {
+        CompactTree  tree = build(VALID_INPUT);
+        int          root = tree.getRootIndex();
+        int          node;
+
+        assertEquals("root id", 2001, tree.getId(root));
+        assertEquals("root parent", -1, tree.getParentIndex(root));
+        assertEquals("root children", 2, tree.getChildCount(root));
+        assertEquals("root line", 1, tree.getStartLine(root));
+        node = tree.getFirstChildIndex(root);
+        node = tree.getNextSiblingIndex(node);
+        assertEquals("second child", "ExpressionRest", tree.getName(node));
+        assertEquals("parent", root, tree.getParentIndex(node));
+        node = tree.getFirstChildIndex(node);
+        assertTrue("token", tree.isToken(node));
+        assertEquals("image", "+", tree.getImage(node));
+        assertEquals("column", 3, tree.getStartColumn(node));
+    }
+
+    /**
+     * Tests that the same node view is returned for each node.
+     */
+    public void testViews() {
+        CompactTree  tree = build(VALID_INPUT);
+        Node         root = tree.getRoot();
+        Node         child = root.getChildAt(1);
+        int          index;
+
+        index = tree.getFirstChildIndex(tree.getRootIndex());
+        index = tree.getNextSiblingIndex(index);
+        assertSame("root view", root, tree.getRoot());
+        assertSame("child view", child, root.getChildAt(1));
+        assertSame("index view", child, tree.getNode(index));
+        assertSame("parent view", root, child.getParent());
+        try {
+            ((Production) root).addChild(child);
+            fail("node view was modified");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Tests analyzing the node views with a normal analyzer.
+     */
+    public void testAnalyze() {
+        CompactTree           tree = build(VALID_INPUT);
+        HashMap               variables = new HashMap();
+        ArithmeticCalculator  calc;
+        Node                  node;
+
+        variables.put("a", new Integer(2));
+        calc = new ArithmeticCalculator(variables);
+        try {
+            node = calc.analyze(tree.getRoot());
+            assertEquals("result", new Integer(350), node.getValue(0));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Parses an input string into a compact tree.
+     *
+     * @param input          the input string to parse
+     *
+     * @return the compact tree created
+     */
+    private CompactTree build(String input) {
+        CompactTreeBuilder  builder = new CompactTreeBuilder();
+
+        try {
+            assertNull("parse tree", createParser(input, builder).parse());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+        return builder.getTree();
+    }
+
+    /**
+     * Creates a new parser.
+     *
+     * @param input          the input to parse
+     * @param analyzer       the analyzer to use, or null
+     *
+     * @return the parser created
+     */
+    private Parser createParser(String input, Analyzer analyzer) {
+        Parser  parser = null;
+
+        try {
+            parser = new ArithmeticParser(new StringReader(input));
+            if (analyzer != null) {
+                parser.reset(new StringReader(input), analyzer);
+            }
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+        return parser;
+    }
+}
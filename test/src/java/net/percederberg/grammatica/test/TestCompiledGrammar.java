@@ -0,0 +1,228 @@
+/*
+ * TestCompiledGrammar.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.Grammar;
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.Parser;
+
+/**
+ * A test case for loading compiled grammars.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestCompiledGrammar extends TestCase {
+
+    /**
+     * The arithmetic grammar file.
+     */
+    private static final String ARITHMETIC_GRAMMAR =
+        "test/src/grammar/arithmetic.grammar";
+
+    /**
+     * The regexp grammar file.
+     */
+    private static final String REGEXP_GRAMMAR =
+        "test/src/grammar/regexp.grammar";
+
+    /**
+     * The compiled grammar file.
+     */
+    private File compiled;
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestCompiledGrammar(String name) {
+        super(name);
+    }
+
+    /**
+     * Creates the compiled grammar file name.
+     *
+     * @throws Exception if the file couldn't be created
+     */
+    protected void setUp() throws Exception {
+        compiled = File.createTempFile("grammar", ".compiled");
+        compiled.delete();
+    }
+
+    /**
+     * Removes the compiled grammar file.
+     */
+    protected void tearDown() {
+        compiled.delete();
+    }
+
+    /**
+     * Tests loading the arithmetic grammar from a compiled grammar.
+     */
+    public void testArithmetic() {
+        compare(ARITHMETIC_GRAMMAR, "1 + 2 * (3 - a)");
+    }
+
+    /**
+     * Tests loading the regexp grammar from a compiled grammar.
+     */
+    public void testRegexp() {
+        compare(REGEXP_GRAMMAR, "a(b|[c-e]+)*?\\.{2,3}");
+    }
+
+    /**
+     * Tests that invalid compiled grammar files are rebuilt.
+     */
+    public void testInvalidFile() {
+        FileWriter  writer;
+        long        length;
+
+        try {
+            Grammar.load(new File(ARITHMETIC_GRAMMAR), compiled);
+            length = compiled.length();
+            writer = new FileWriter(compiled);
+            writer.write("invalid");
+            writer.close();
+            Grammar.load(new File(ARITHMETIC_GRAMMAR), compiled);
+            assertEquals("compiled file length", length, compiled.length());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that corrupt compiled grammar files are rebuilt.
+     */
+    public void testCorruptFile() {
+        File     file = new File(ARITHMETIC_GRAMMAR);
+        String   expected;
+        Grammar  grammar;
+        byte[]   data;
+        byte[]   corrupt;
+        byte[]   rebuilt;
+
+        try {
+            grammar = Grammar.load(file, compiled);
+            expected = toString(grammar);
+            data = Files.readAllBytes(compiled.toPath());
+            for (int i = 0; i < data.length; i += 37) {
+                corrupt = (byte[]) data.clone();
+                corrupt[i] ^= (i % 2 == 0) ? 0x01 : 0x80;
+                Files.write(compiled.toPath(), corrupt);
+                grammar = Grammar.load(file, compiled);
+                assertEquals("parser after corrupt byte " + i,
+                             expected,
+                             toString(grammar));
+                rebuilt = Files.readAllBytes(compiled.toPath());
+                assertTrue("compiled file rebuilt after byte " + i,
+                           Arrays.equals(data, rebuilt));
+            }
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests the default compiled grammar file location.
+     */
+    public void testCompiledFile() {
+        File  file1 = Grammar.getCompiledFile(new File(ARITHMETIC_GRAMMAR));
+        File  file2 = Grammar.getCompiledFile(new File(REGEXP_GRAMMAR));
+
+        assertEquals("compiled file directory",
+                     file1.getParentFile(),
+                     file2.getParentFile());
+        assertFalse("compiled file names differ", file1.equals(file2));
+    }
+
+    /**
+     * Loads a grammar both normally and from a compiled grammar file,
+     * and checks that the parsers and parse results are identical.
+     *
+     * @param file           the grammar file name
+     * @param input          the input string to parse
+     */
+    private void compare(String file, String input) {
+        Grammar  source;
+        Grammar  grammar;
+        Parser   expected;
+        Parser   parser;
+
+        try {
+            source = new Grammar(new File(file));
+            grammar = Grammar.load(new File(file), compiled);
+            assertTrue("compiled file created", compiled.isFile());
+            grammar = Grammar.load(new File(file), compiled);
+            expected = source.createParser(source.createTokenizer(null));
+            parser = grammar.createParser(grammar.createTokenizer(null));
+            assertEquals("parser", expected.toString(), parser.toString());
+            assertEquals("tokenizer",
+                         expected.getTokenizer().toString(),
+                         parser.getTokenizer().toString());
+            assertEquals("declaration",
+                         source.getDeclaration(Grammar.AUTHOR_DECLARATION),
+                         grammar.getDeclaration(Grammar.AUTHOR_DECLARATION));
+            expected.reset(new StringReader(input));
+            parser.reset(new StringReader(input));
+            assertEquals("parse tree",
+                         toString(expected.parse()),
+                         toString(parser.parse()));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a string representation of a grammar parser.
+     *
+     * @param grammar        the grammar to use
+     *
+     * @return the parser string representation
+     *
+     * @throws Exception if the parser couldn't be created
+     */
+    private String toString(Grammar grammar) throws Exception {
+        return grammar.createParser(grammar.createTokenizer(null)).toString();
+    }
+
+    /**
+     * Returns a string representation of a parse tree.
+     *
+     * @param node           the parse tree root node
+     *
+     * @return the parse tree string representation
+     */
+    private String toString(Node node) {
+        StringBuffer  buffer = new StringBuffer();
+
+        buffer.append(node.toString());
+        buffer.append("[");
+        for (int i = 0; i < node.getChildCount(); i++) {
+            buffer.append(toString(node.getChildAt(i)));
+        }
+        buffer.append("]");
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * TestCorpusGenerator.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.CorpusGenerator;
+import net.percederberg.grammatica.Grammar;
+import net.percederberg.grammatica.GrammarException;
+import net.percederberg.grammatica.parser.Parser;
+
+/**
+ * A test case for the CorpusGenerator class.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestCorpusGenerator extends TestCase {
+
+    /**
+     * The arithmetic grammar file.
+     */
+    private static final String ARITHMETIC_FILE =
+        "test/src/grammar/arithmetic.grammar";
+
+    /**
+     * The regexp grammar file.
+     */
+    private static final String REGEXP_FILE =
+        "test/src/grammar/regexp.grammar";
+
+    /**
+     * The grammar grammar file.
+     */
+    private static final String GRAMMAR_FILE =
+        "src/grammar/grammar.grammar";
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestCorpusGenerator(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests generating arithmetic input.
+     */
+    public void testArithmetic() {
+        String  input = generate(ARITHMETIC_FILE, 500, 1);
+
+        assertTrue("input size", input.length() > 100);
+    }
+
+    /**
+     * Tests generating regular expression input. This grammar has
+     * no ignored white space, so adjacent tokens must not merge.
+     */
+    public void testRegexp() {
+        for (int i = 1; i <= 5; i++) {
+            generate(REGEXP_FILE, 2000, i);
+        }
+    }
+
+    /**
+     * Tests generating large regular expression inputs. Some token
+     * images, such as a trailing backslash, merge with any following
+     * token and must be replaced.
+     */
+    public void testLargeRegexp() {
+        for (int i = 1; i <= 31; i++) {
+            generate(REGEXP_FILE, 200000, i);
+        }
+    }
+
+    /**
+     * Tests generating grammar file input with a size target.
+     */
+    public void testTargetSize() {
+        String  input = generate(GRAMMAR_FILE, 20000, 1);
+
+        assertTrue("input size", input.length() >= 20000);
+        assertTrue("input size", input.length() < 40000);
+    }
+
+    /**
+     * Tests that the same seed generates the same input.
+     */
+    public void testSeed() {
+        assertEquals("same seed",
+                     generate(GRAMMAR_FILE, 5000, 42),
+                     generate(GRAMMAR_FILE, 5000, 42));
+    }
+
+    /**
+     * Tests setting an invalid alternative weight.
+     */
+    public void testInvalidWeight() {
+        CorpusGenerator  gen;
+
+        try {
+            gen = new CorpusGenerator(new Grammar(new File(GRAMMAR_FILE)));
+            gen.setWeight("NoSuchProduction", 0, 1.0);
+            fail("weight for missing production accepted");
+        } catch (GrammarException e) {
+            // Expected
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Generates an input string and checks that it can be parsed.
+     *
+     * @param file           the grammar file name
+     * @param size           the target size
+     * @param seed           the random seed
+     *
+     * @return the generated input string
+     */
+    private String generate(String file, long size, long seed) {
+        Grammar          grammar;
+        CorpusGenerator  gen;
+        StringWriter     out = new StringWriter();
+        Parser           parser;
+
+        try {
+            grammar = new Grammar(new File(file));
+            gen = new CorpusGenerator(grammar);
+            gen.setTargetSize(size);
+            gen.setSeed(seed);
+            assertEquals("size", gen.generate(out), out.toString().length());
+            parser = grammar.createParser(grammar.createTokenizer(
+                new StringReader(out.toString())));
+            parser.parse();
+        } catch (Exception e) {
+            fail(file + ": " + e.getMessage());
+        }
+        return out.toString();
+    }
+}
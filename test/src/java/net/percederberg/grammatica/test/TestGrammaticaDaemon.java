@@ -0,0 +1,274 @@
+/*
+ * TestGrammaticaDaemon.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.GrammaticaClient;
+import net.percederberg.grammatica.GrammaticaDaemon;
+
+/**
+ * A test case for the GrammaticaDaemon and GrammaticaClient classes.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestGrammaticaDaemon extends TestCase {
+
+    /**
+     * The arithmetic grammar file.
+     */
+    private static final String GRAMMAR_FILE =
+        "test/src/grammar/arithmetic.grammar";
+
+    /**
+     * The daemon being tested.
+     */
+    private GrammaticaDaemon daemon;
+
+    /**
+     * The daemon thread.
+     */
+    private Thread thread;
+
+    /**
+     * The temporary input file.
+     */
+    private File file;
+
+    /**
+     * The output stream contents.
+     */
+    private ByteArrayOutputStream out;
+
+    /**
+     * The error stream contents.
+     */
+    private ByteArrayOutputStream err;
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestGrammaticaDaemon(String name) {
+        super(name);
+    }
+
+    /**
+     * Starts the daemon on a free port.
+     *
+     * @throws IOException if the daemon couldn't be started
+     */
+    protected void setUp() throws IOException {
+        daemon = new GrammaticaDaemon(0);
+        thread = new Thread(new Runnable() {
+            public void run() {
+                daemon.run();
+            }
+        });
+        thread.start();
+        file = File.createTempFile("daemon", ".txt");
+    }
+
+    /**
+     * Stops the daemon and removes the temporary input file.
+     *
+     * @throws InterruptedException if the daemon thread was
+     *             interrupted
+     */
+    protected void tearDown() throws InterruptedException {
+        daemon.stop();
+        thread.join();
+        file.delete();
+    }
+
+    /**
+     * Tests tokenize, parse and validate requests.
+     */
+    public void testRequests() {
+        try {
+            writeFile("1 + 2\n");
+            assertEquals("exit code", 0, send("tokenize"));
+            assertTrue("tokens", out.toString().indexOf("NUMBER") > 0);
+            assertEquals("exit code", 0, send("parse"));
+            assertTrue("tree", out.toString().indexOf("Expression(") > 0);
+            assertEquals("exit code", 0, send("validate"));
+            assertEquals("output", "", out.toString());
+            assertEquals("errors", "", err.toString());
+            writeFile("1 + (2\n");
+            assertEquals("exit code", 1, send("validate"));
+            assertTrue("error", err.toString().startsWith("Error: in "));
+            assertEquals("exit code", 1, send("unknown"));
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests concurrent requests to the same grammar.
+     */
+    public void testConcurrentRequests() {
+        Thread[]         threads = new Thread[8];
+        final int[]      failures = new int[1];
+        final Runnable   request;
+
+        try {
+            writeFile("1 + 2 * 3\n");
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+        request = new Runnable() {
+            public void run() {
+                PrintStream  ps;
+
+                ps = new PrintStream(new ByteArrayOutputStream());
+
+                for (int i = 0; i < 20; i++) {
+                    try {
+                        if (GrammaticaClient.send(daemon.getPort(),
+                                                  "parse",
+                                                  new File(GRAMMAR_FILE),
+                                                  file,
+                                                  ps,
+                                                  ps) != 0) {
+                            throw new IOException("parse failed");
+                        }
+                    } catch (IOException e) {
+                        synchronized (failures) {
+                            failures[0]++;
+                        }
+                    }
+                }
+            }
+        };
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(request);
+            threads[i].start();
+        }
+        try {
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].join();
+            }
+        } catch (InterruptedException e) {
+            fail(e.getMessage());
+        }
+        assertEquals("failures", 0, failures[0]);
+    }
+
+    /**
+     * Tests that requests without the daemon secret are rejected.
+     */
+    public void testSecret() {
+        File            secret = GrammaticaClient.getSecretFile(
+            daemon.getPort());
+        Socket          socket;
+        Writer          writer;
+        BufferedReader  reader;
+
+        assertTrue("secret file", secret.isFile());
+        try {
+            socket = new Socket(InetAddress.getByName(null),
+                                daemon.getPort());
+            try {
+                writer = new OutputStreamWriter(socket.getOutputStream(),
+                                                "UTF-8");
+                writer.write("stop\n");
+                writer.flush();
+                reader = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), "UTF-8"));
+                assertEquals("response",
+                             "err Error: invalid daemon secret",
+                             reader.readLine());
+                assertEquals("response", "exit 2", reader.readLine());
+            } finally {
+                socket.close();
+            }
+            writeFile("1 + 2\n");
+            assertEquals("exit code", 0, send("validate"));
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+        daemon.stop();
+        assertFalse("secret file removed", secret.exists());
+    }
+
+    /**
+     * Tests stopping the daemon with a request.
+     */
+    public void testStop() {
+        try {
+            assertEquals("exit code", 0,
+                         GrammaticaClient.send(daemon.getPort(), "stop",
+                                               null, null,
+                                               System.out, System.err));
+            thread.join(5000);
+            assertFalse("daemon running", thread.isAlive());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a request for the arithmetic grammar and the temporary
+     * input file.
+     *
+     * @param action         the request action
+     *
+     * @return the request exit code
+     *
+     * @throws IOException if the daemon couldn't be contacted
+     */
+    private int send(String action) throws IOException {
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+        return GrammaticaClient.send(daemon.getPort(),
+                                     action,
+                                     new File(GRAMMAR_FILE),
+                                     file,
+                                     new PrintStream(out),
+                                     new PrintStream(err));
+    }
+
+    /**
+     * Writes the temporary input file.
+     *
+     * @param input          the input file contents
+     *
+     * @throws IOException if the file couldn't be written
+     */
+    private void writeFile(String input) throws IOException {
+        FileWriter  writer = new FileWriter(file);
+
+        try {
+            writer.write(input);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * TestLookAheadProfiler.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.parser.LookAheadDecision;
+import net.percederberg.grammatica.parser.LookAheadProfiler;
+import net.percederberg.grammatica.parser.Parser;
+
+/**
+ * A test case for the LookAheadProfiler class.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestLookAheadProfiler extends TestCase {
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestLookAheadProfiler(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests profiling the look-ahead decisions.
+     */
+    public void testDecisions() {
+        LookAheadProfiler    profiler = new LookAheadProfiler();
+        LookAheadDecision[]  decisions;
+        LookAheadDecision    d;
+
+        parse("1 + 2*a\n + 345", profiler);
+        decisions = profiler.getDecisions();
+        for (int i = 1; i < decisions.length; i++) {
+            assertTrue("ranking",
+                       decisions[i - 1].getTokenCount() >=
+                       decisions[i].getTokenCount());
+        }
+        d = findDecision(decisions, "Expression");
+        assertTrue("alternative choice", d.isAlternativeChoice());
+        assertEquals("count", 3, d.getCount());
+        assertEquals("alternatives", 3, d.getAlternativeCount());
+        assertEquals("tokens", 3, d.getTokenCount());
+        d = findDecision(decisions, "Expression, alternative 1, element 2");
+        assertFalse("alternative choice", d.isAlternativeChoice());
+        assertEquals("count", 3, d.getCount());
+        assertEquals("matches", 2, d.getMatchCount());
+        d = findDecision(decisions, "Atom");
+        assertEquals("count", 4, d.getCount());
+        assertEquals("default", 0, d.getDefaultCount());
+        profiler.reset();
+        assertEquals("decisions", 0, profiler.getDecisions().length);
+    }
+
+    /**
+     * Tests printing the decision report.
+     */
+    public void testPrint() {
+        LookAheadProfiler      profiler = new LookAheadProfiler();
+        ByteArrayOutputStream  buffer = new ByteArrayOutputStream();
+        String                 output;
+
+        parse("1 + 2", profiler);
+        profiler.print(new PrintStream(buffer), 2);
+        output = buffer.toString();
+        assertTrue("header", output.startsWith("    Tokens"));
+        assertEquals("lines", 3, output.split("\n").length);
+    }
+
+    /**
+     * Parses an input string with a look-ahead profiler.
+     *
+     * @param input          the input string
+     * @param profiler       the look-ahead profiler
+     */
+    private void parse(String input, LookAheadProfiler profiler) {
+        Parser  parser;
+
+        try {
+            parser = new ArithmeticParser(new StringReader(input));
+            parser.setMetrics(profiler);
+            parser.parse();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Finds a decision point by description.
+     *
+     * @param decisions      the decision points
+     * @param name           the decision point description
+     *
+     * @return the decision point found
+     */
+    private LookAheadDecision findDecision(LookAheadDecision[] decisions,
+                                           String name) {
+
+        for (int i = 0; i < decisions.length; i++) {
+            if (decisions[i].toString().equals(name)) {
+                return decisions[i];
+            }
+        }
+        fail("no decision point " + name);
+        return null;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * TestParallelAnalyzer.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+package net.percederberg.grammatica.test;
+
+import java.io.StringReader;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.ParallelAnalyzer;
+import net.percederberg.grammatica.parser.ParseException;
+import net.percederberg.grammatica.parser.ParserLogException;
+import net.percederberg.grammatica.parser.Production;
+import net.percederberg.grammatica.parser.Token;
+
+/**
+ * A test case for the ParallelAnalyzer class.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestParallelAnalyzer extends TestCase {
+
+    /**
+     * The valid input string.
+     */
+    private static final String VALID_INPUT =
+        "1 + 2*a\n" +
+        " + 345 - (6 + 7) * 8";
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestParallelAnalyzer(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests parallel analysis with the calculator.
+     */
+    public void testCalculator() {
+        HashMap           variables = new HashMap();
+        ParallelAnalyzer  analyzer;
+        Node              node;
+
+        variables.put("a", new Integer(2));
+        analyzer = new ParallelAnalyzer(new ArithmeticCalculator(variables));
+        analyzer.addParallelProduction(ArithmeticConstants.TERM);
+        try {
+            node = analyzer.analyze(parse(VALID_INPUT));
+            assertEquals("result", new Integer(246), node.getValue(0));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that the errors are merged in tree order.
+     */
+    public void testErrorOrder() {
+        ParallelAnalyzer  analyzer;
+
+        analyzer = new ParallelAnalyzer(new NumberErrorAnalyzer());
+        analyzer.addParallelProduction(ArithmeticConstants.TERM);
+        analyzer.addParallelProduction(ArithmeticConstants.ATOM);
+        try {
+            analyzer.analyze(parse(VALID_INPUT));
+            fail("analysis succeeded");
+        } catch (ParserLogException e) {
+            assertEquals("error count", 6, e.getErrorCount());
+            assertEquals("first error", 1, e.getError(0).getColumn());
+            assertEquals("second error", 5, e.getError(1).getColumn());
+            assertEquals("third error", 2, e.getError(2).getLine());
+            assertEquals("last error", 20, e.getError(5).getColumn());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that the spine productions are entered before their
+     * parallel subtrees are analyzed.
+     */
+    public void testEnterOrder() {
+        ParallelAnalyzer  analyzer;
+
+        analyzer = new ParallelAnalyzer(new EnterOrderAnalyzer());
+        analyzer.addParallelProduction(ArithmeticConstants.TERM);
+        try {
+            analyzer.analyze(parse(VALID_INPUT));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Parses an input string.
+     *
+     * @param input          the input string to parse
+     *
+     * @return the parse tree
+     *
+     * @throws Exception if the input couldn't be parsed
+     */
+    private Node parse(String input) throws Exception {
+        return new ArithmeticParser(new StringReader(input)).parse();
+    }
+
+
+    /**
+     * An analyzer that reports an error for each number.
+     */
+    private static class NumberErrorAnalyzer extends ArithmeticAnalyzer {
+
+        /**
+         * Reports an error for the number token.
+         *
+         * @param node           the node being exited
+         *
+         * @return never returns
+         *
+         * @throws ParseException always
+         */
+        protected Node exitNumber(Token node) throws ParseException {
+            throw new ParseException(ParseException.ANALYSIS_ERROR,
+                                     "number " + node.getImage(),
+                                     node.getStartLine(),
+                                     node.getStartColumn());
+        }
+    }
+
+
+    /**
+     * An analyzer that checks that an expression has been entered
+     * before each term.
+     */
+    private static class EnterOrderAnalyzer extends ArithmeticAnalyzer {
+
+        /**
+         * The expression entered flag.
+         */
+        private volatile boolean entered = false;
+
+        /**
+         * Sets the expression entered flag.
+         *
+         * @param node           the node being entered
+         */
+        protected void enterExpression(Production node) {
+            entered = true;
+        }
+
+        /**
+         * Checks the expression entered flag.
+         *
+         * @param node           the node being entered
+         *
+         * @throws ParseException if no expression has been entered
+         */
+        protected void enterTerm(Production node) throws ParseException {
+            if (!entered) {
+                throw new ParseException(ParseException.ANALYSIS_ERROR,
+                                         "term entered first",
+                                         node.getStartLine(),
+                                         node.getStartColumn());
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * TestParseCache.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.ParseCache;
+import net.percederberg.grammatica.parser.Parser;
+import net.percederberg.grammatica.parser.ParserLogException;
+
+/**
+ * A test case for the ParseCache class.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestParseCache extends TestCase {
+
+    /**
+     * The valid input string.
+     */
+    private static final String VALID_INPUT =
+        "1 + 2*a\n" +
+        " + 345";
+
+    /**
+     * The invalid input string.
+     */
+    private static final String INVALID_INPUT = "1 + (2";
+
+    /**
+     * The variable bindings.
+     */
+    private HashMap variables = new HashMap();
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestParseCache(String name) {
+        super(name);
+        variables.put("a", new Integer(2));
+    }
+
+    /**
+     * Tests cache hits and misses in the memory cache.
+     */
+    public void testMemoryCache() {
+        ParseCache  cache = new ParseCache(1024 * 1024);
+
+        calculate(cache, VALID_INPUT, 350);
+        calculate(cache, VALID_INPUT, 350);
+        calculate(cache, "1 + 2", 3);
+        assertEquals("hit count", 1, cache.getHitCount());
+        assertEquals("miss count", 2, cache.getMissCount());
+        assertTrue("memory size", cache.getMemorySize() > 0);
+        cache.clear();
+        assertEquals("memory size", 0, cache.getMemorySize());
+        calculate(cache, VALID_INPUT, 350);
+        assertEquals("miss count", 3, cache.getMissCount());
+    }
+
+    /**
+     * Tests that the parse tree from a cache hit is identical to the
+     * parsed one.
+     */
+    public void testCachedTree() {
+        ParseCache  cache = new ParseCache(1024 * 1024);
+        Node        first;
+        Node        second;
+
+        try {
+            first = cache.parse(createParser(),
+                                new StringReader(VALID_INPUT));
+            second = cache.parse(createParser(),
+                                 new StringReader(VALID_INPUT));
+            assertNotSame("root node", first, second);
+            assertEquals("descendant count",
+                         first.getDescendantCount(),
+                         second.getDescendantCount());
+            assertEquals("end line", 2, second.getEndLine());
+            assertEquals("end column", 6, second.getEndColumn());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that failed parses are not cached.
+     */
+    public void testParseErrors() {
+        ParseCache  cache = new ParseCache(1024 * 1024);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.parse(createParser(), new StringReader(INVALID_INPUT));
+                fail("could parse invalid input");
+            } catch (ParserLogException e) {
+                assertEquals("error count", 1, e.getErrorCount());
+            } catch (Exception e) {
+                fail(e.getMessage());
+            }
+        }
+        assertEquals("hit count", 0, cache.getHitCount());
+        assertEquals("miss count", 2, cache.getMissCount());
+    }
+
+    /**
+     * Tests the memory cache size limit.
+     */
+    public void testEviction() {
+        ParseCache  cache = new ParseCache(16 * 1024);
+
+        for (int i = 0; i < 200; i++) {
+            calculate(cache, i + " + 1", i + 1);
+            assertTrue("memory size", cache.getMemorySize() <= 16 * 1024);
+        }
+        calculate(cache, "0 + 1", 1);
+        assertEquals("hit count", 0, cache.getHitCount());
+    }
+
+    /**
+     * Tests caching a tree larger than a memory cache segment share.
+     */
+    public void testLargeTree() {
+        ParseCache  cache = new ParseCache(1024 * 1024);
+        long        size;
+
+        calculate(cache, VALID_INPUT, 350);
+        size = cache.getMemorySize();
+        cache = new ParseCache(size * 4);
+        calculate(cache, VALID_INPUT, 350);
+        calculate(cache, VALID_INPUT, 350);
+        assertEquals("hit count", 1, cache.getHitCount());
+        assertEquals("memory size", size, cache.getMemorySize());
+        cache = new ParseCache(size - 1);
+        calculate(cache, VALID_INPUT, 350);
+        assertEquals("memory size", 0, cache.getMemorySize());
+    }
+
+    /**
+     * Tests cache hits from the disk cache.
+     */
+    public void testDiskCache() {
+        File        dir = new File(System.getProperty("java.io.tmpdir"),
+                                   "grammatica-cache-" + System.nanoTime());
+        ParseCache  cache;
+        File[]      files;
+
+        try {
+            cache = new ParseCache(1024 * 1024, dir);
+            calculate(cache, VALID_INPUT, 350);
+            assertEquals("miss count", 1, cache.getMissCount());
+            cache = new ParseCache(1024 * 1024, dir);
+            calculate(cache, VALID_INPUT, 350);
+            assertEquals("hit count", 1, cache.getHitCount());
+            assertEquals("miss count", 0, cache.getMissCount());
+        } finally {
+            files = dir.listFiles();
+            for (int i = 0; files != null && i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Tests that corrupt disk cache files are treated as cache
+     * misses and replaced.
+     */
+    public void testCorruptDiskCache() {
+        File        dir = new File(System.getProperty("java.io.tmpdir"),
+                                   "grammatica-cache-" + System.nanoTime());
+        ParseCache  cache;
+        File[]      files;
+        byte[]      data;
+        byte[]      copy;
+        int         offset;
+
+        try {
+            cache = new ParseCache(1024 * 1024, dir);
+            calculate(cache, VALID_INPUT, 350);
+            files = dir.listFiles();
+            assertEquals("file count", 1, files.length);
+            data = readFile(files[0]);
+            for (int i = 4; i < data.length; i++) {
+                copy = new byte[i];
+                System.arraycopy(data, 0, copy, 0, i);
+                checkCorruptFile(dir, files[0], copy);
+            }
+            offset = 4;
+            copy = (byte[]) data.clone();
+            copy[offset] = 0x7f;
+            checkCorruptFile(dir, files[0], copy);
+            offset += 4 + 5 * (data[offset + 3] & 0xff);
+            copy = (byte[]) data.clone();
+            copy[offset] = 0x7f;
+            checkCorruptFile(dir, files[0], copy);
+            copy = (byte[]) data.clone();
+            for (int i = offset + 8; i < copy.length; i += 4) {
+                copy[i] = 0x01;
+            }
+            checkCorruptFile(dir, files[0], copy);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } finally {
+            files = dir.listFiles();
+            for (int i = 0; files != null && i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Writes a corrupt disk cache file and checks that it is
+     * replaced by a valid one on the next parse.
+     *
+     * @param dir            the cache directory
+     * @param file           the cache file
+     * @param data           the corrupt file data
+     *
+     * @throws IOException if the file couldn't be written
+     */
+    private void checkCorruptFile(File dir, File file, byte[] data)
+        throws IOException {
+
+        FileOutputStream  out = new FileOutputStream(file);
+        ParseCache        cache;
+
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        cache = new ParseCache(1024 * 1024, dir);
+        calculate(cache, VALID_INPUT, 350);
+        assertEquals("miss count", 1, cache.getMissCount());
+        cache = new ParseCache(1024 * 1024, dir);
+        calculate(cache, VALID_INPUT, 350);
+        assertEquals("hit count", 1, cache.getHitCount());
+    }
+
+    /**
+     * Reads the contents of a file.
+     *
+     * @param file           the file to read
+     *
+     * @return the file contents
+     *
+     * @throws IOException if the file couldn't be read
+     */
+    private byte[] readFile(File file) throws IOException {
+        DataInputStream  in = new DataInputStream(new FileInputStream(file));
+        byte[]           data = new byte[(int) file.length()];
+
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    /**
+     * Creates a new arithmetic parser with the default analyzer.
+     *
+     * @return the new parser
+     *
+     * @throws Exception if the parser couldn't be created
+     */
+    private Parser createParser() throws Exception {
+        return new ArithmeticParser(new StringReader(""));
+    }
+
+    /**
+     * Calculates an expression through the cache and checks the
+     * result. If the calculation failed or if the result didn't
+     * match the specified one, a test failure will be reported.
+     *
+     * @param cache          the parse cache to use
+     * @param expr           the expression to use
+     * @param result         the result to expect
+     */
+    private void calculate(ParseCache cache, String expr, int result) {
+        ArithmeticCalculator  calc = new ArithmeticCalculator(variables);
+        Parser                parser;
+        Node                  node;
+
+        try {
+            parser = new ArithmeticParser(new StringReader(""), calc);
+            node = cache.parse(parser, new StringReader(expr));
+            assertEquals("expression result", result, node.getIntValue(0));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * TestParserEvents.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.parser.Node;
+import net.percederberg.grammatica.parser.Parser;
+
+/**
+ * A test case for the Java Flight Recorder parser events.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestParserEvents extends TestCase {
+
+    /**
+     * The event name prefix.
+     */
+    private static final String PREFIX = "net.percederberg.grammatica.";
+
+    /**
+     * The event names, without prefix.
+     */
+    private static final String[] EVENTS = {
+        "Tokenize", "Prepare", "Parse", "Analyze"
+    };
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestParserEvents(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests recording the parser events.
+     */
+    public void testRecording() {
+        Recording      recording = new Recording();
+        File           file = null;
+        Parser         parser;
+        Node           root;
+        List           events;
+        RecordedEvent  event;
+
+        try {
+            for (int i = 0; i < EVENTS.length; i++) {
+                recording.enable(PREFIX + EVENTS[i])
+                         .withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            parser = new ArithmeticParser(new StringReader("1 + 2 * 3"));
+            root = parser.parse();
+            new ArithmeticCalculator().analyze(root);
+            recording.stop();
+            file = File.createTempFile("events", ".jfr");
+            recording.dump(file.toPath());
+            events = RecordingFile.readAllEvents(file.toPath());
+            event = findEvent(events, "Parse");
+            assertEquals("parser",
+                         ArithmeticParser.class.getName(),
+                         event.getString("parser"));
+            assertEquals("start",
+                         "Expression",
+                         event.getString("startProduction"));
+            assertEquals("characters", 9, event.getLong("characters"));
+            assertEquals("tokens", 5, event.getInt("tokens"));
+            assertEquals("errors", 0, event.getInt("errors"));
+            event = findEvent(events, "Tokenize");
+            assertEquals("tokens", 5, event.getInt("tokens"));
+            assertEquals("characters", 5, event.getLong("characters"));
+            assertTrue("tokenizer time",
+                       event.getLong("time") > 0
+                    && event.getLong("time")
+                    <= event.getDuration().toNanos());
+            event = findEvent(events, "Prepare");
+            assertEquals("productions", 6, event.getInt("productions"));
+            assertNotNull("analyze", findEvent(events, "Analyze"));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } finally {
+            recording.close();
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Finds the first recorded event of a type.
+     *
+     * @param events         the list of recorded events
+     * @param name           the event name, without prefix
+     *
+     * @return the first event found
+     */
+    private RecordedEvent findEvent(List events, String name) {
+        RecordedEvent  event;
+
+        for (int i = 0; i < events.size(); i++) {
+            event = (RecordedEvent) events.get(i);
+            if (event.getEventType().getName().equals(PREFIX + name)) {
+                return event;
+            }
+        }
+        fail("no " + name + " event recorded");
+        return null;
+    }
+}
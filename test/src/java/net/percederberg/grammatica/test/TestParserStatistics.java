@@ -0,0 +1,174 @@
+/*
+ * TestParserStatistics.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.test;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.parser.Parser;
+import net.percederberg.grammatica.parser.ParserLogException;
+import net.percederberg.grammatica.parser.ParserStatistics;
+
+/**
+ * A test case for the ParserStatistics class.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestParserStatistics extends TestCase {
+
+    /**
+     * The MBean object name used.
+     */
+    private static final String MBEAN_NAME =
+        "net.percederberg.grammatica:type=TestParserStatistics";
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestParserStatistics(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests the token and production counters.
+     */
+    public void testCounters() {
+        ParserStatistics  stats = new ParserStatistics();
+        List              lines;
+
+        parse("1 + 2*a\n + 345", stats);
+        lines = Arrays.asList(stats.getTopTokens());
+        assertTrue("NUMBER",
+                   lines.contains("NUMBER: 3 tokens, 5 characters"));
+        assertTrue("ADD", lines.contains("ADD: 2 tokens, 2 characters"));
+        assertEquals("characters", 14, stats.getTokenCharacters());
+        assertEquals("productions", 18, stats.getProductionCount());
+        assertEquals("decisions", 18, stats.getDecisionCount());
+        assertTrue("look-ahead", stats.getLookAheadCount() >= 18);
+        assertTrue("matcher time", stats.getStringMatcherTime() > 0);
+        assertEquals("errors", 0, stats.getErrorRecoveryCount());
+        lines = Arrays.asList(stats.getTopProductions());
+        assertTrue("top production",
+                   ((String) lines.get(0)).startsWith("Expression: 3 calls"));
+        parse("4", stats);
+        assertEquals("productions", 22, stats.getProductionCount());
+        stats.reset();
+        assertEquals("token count", 0, stats.getTokenCount());
+        assertEquals("productions", 0, stats.getProductionCount());
+    }
+
+    /**
+     * Tests the counters with several parser threads.
+     */
+    public void testThreads() {
+        final ParserStatistics  stats = new ParserStatistics();
+        Thread[]                threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 50; j++) {
+                        parse("1 + 2*a\n + 345", stats);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        try {
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].join();
+            }
+        } catch (InterruptedException e) {
+            fail(e.getMessage());
+        }
+        assertEquals("characters", 200 * 14, stats.getTokenCharacters());
+        assertEquals("productions", 200 * 18, stats.getProductionCount());
+        parse("4", stats);
+        assertEquals("productions", 200 * 18 + 4, stats.getProductionCount());
+        assertEquals("decisions", 200 * 18 + 4, stats.getDecisionCount());
+    }
+
+    /**
+     * Tests the error recovery counter.
+     */
+    public void testErrorRecovery() {
+        ParserStatistics  stats = new ParserStatistics();
+        Parser            parser;
+
+        try {
+            parser = new ArithmeticParser(new StringReader("1 + * 2"));
+            parser.setMetrics(stats);
+            parser.parse();
+            fail("parsing invalid input succeeded");
+        } catch (ParserLogException e) {
+            assertEquals("errors", 1, stats.getErrorRecoveryCount());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests reading the counters through the MBean server.
+     */
+    public void testMBean() {
+        MBeanServer       server = ManagementFactory.getPlatformMBeanServer();
+        ParserStatistics  stats = new ParserStatistics();
+        ObjectName        name;
+
+        try {
+            stats.register(MBEAN_NAME);
+            name = new ObjectName(MBEAN_NAME);
+            parse("1 + 2", stats);
+            assertEquals("token count",
+                         new Long(stats.getTokenCount()),
+                         server.getAttribute(name, "TokenCount"));
+            server.invoke(name, "reset", null, null);
+            assertEquals("token count", 0, stats.getTokenCount());
+            stats.unregister();
+            assertFalse("registered", server.isRegistered(name));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Parses an input string with a metrics listener.
+     *
+     * @param input          the input string
+     * @param stats          the metrics listener
+     */
+    private void parse(String input, ParserStatistics stats) {
+        Parser  parser;
+
+        try {
+            parser = new ArithmeticParser(new StringReader(input));
+            parser.setMetrics(stats);
+            parser.parse();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+}
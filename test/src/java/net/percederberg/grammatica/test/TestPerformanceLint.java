@@ -0,0 +1,119 @@
+/*
+ * TestPerformanceLint.java
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the BSD license.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * LICENSE.txt file for more details.
+ *
+ * Copyright (c) 2003-2015 Per Cederberg. All rights reserved.
+ */
+
+
+package net.percederberg.grammatica.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import net.percederberg.grammatica.parser.LintFinding;
+import net.percederberg.grammatica.parser.PerformanceLint;
+import net.percederberg.grammatica.parser.ProductionPattern;
+import net.percederberg.grammatica.parser.ProductionPatternAlternative;
+import net.percederberg.grammatica.parser.RecursiveDescentParser;
+import net.percederberg.grammatica.parser.TokenPattern;
+import net.percederberg.grammatica.parser.Tokenizer;
+
+/**
+ * A test case for the PerformanceLint class.
+ *
+ * @author   Per Cederberg
+ * @version  1.7
+ */
+public class TestPerformanceLint extends TestCase {
+
+    /**
+     * Creates a new test case.
+     *
+     * @param name           the test case name
+     */
+    public TestPerformanceLint(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests checking a grammar with performance problems.
+     */
+    public void testFindings() {
+        Tokenizer                     tokenizer;
+        RecursiveDescentParser        parser;
+        TokenPattern                  token;
+        ProductionPattern             pattern;
+        ProductionPatternAlternative  alt;
+        LintFinding[]                 findings;
+
+        try {
+            tokenizer = new Tokenizer(new StringReader(""));
+            tokenizer.addPattern(new TokenPattern(1, "X", 1, "x"));
+            tokenizer.addPattern(new TokenPattern(2, "Y", 1, "y"));
+            tokenizer.addPattern(new TokenPattern(3, "Z", 1, "z"));
+            tokenizer.addPattern(new TokenPattern(4, "NUMBER", 2, "[0-9]+"));
+            token = new TokenPattern(5, "NAME", 2, "[a-z]+(?=:)");
+            tokenizer.addPattern(token);
+            parser = new RecursiveDescentParser(tokenizer);
+            pattern = new ProductionPattern(1001, "Item");
+            alt = new ProductionPatternAlternative();
+            alt.addToken(1, 1, 1);
+            alt.addToken(2, 1, 1);
+            pattern.addAlternative(alt);
+            alt = new ProductionPatternAlternative();
+            alt.addToken(1, 1, 1);
+            alt.addToken(3, 1, 1);
+            pattern.addAlternative(alt);
+            alt = new ProductionPatternAlternative();
+            alt.addToken(4, 1, 1);
+            pattern.addAlternative(alt);
+            parser.addPattern(pattern);
+            parser.prepare();
+            findings = new PerformanceLint(tokenizer, parser).check();
+            assertEquals("finding count", 2, findings.length);
+            assertEquals("type",
+                         LintFinding.NATIVE_REGEXP,
+                         findings[0].getType());
+            assertEquals("name", "NAME", findings[0].getName());
+            assertEquals("type",
+                         LintFinding.LONG_LOOKAHEAD,
+                         findings[1].getType());
+            assertEquals("name", "Item", findings[1].getName());
+            assertEquals("cost", 5, findings[1].getCost());
+            assertNotNull("suggestion", findings[1].getSuggestion());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests checking a grammar without performance problems.
+     */
+    public void testNoFindings() {
+        ArithmeticParser       parser;
+        PerformanceLint        lint;
+        ByteArrayOutputStream  buffer = new ByteArrayOutputStream();
+
+        try {
+            parser = new ArithmeticParser(new StringReader(""));
+            parser.prepare();
+            lint = new PerformanceLint(parser.getTokenizer(), parser);
+            assertEquals("finding count", 0, lint.check().length);
+            assertEquals("printed", 0, lint.print(new PrintStream(buffer)));
+            assertEquals("output", 0, buffer.size());
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+}